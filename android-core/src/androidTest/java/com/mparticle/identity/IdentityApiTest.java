@@ -151,7 +151,7 @@ public final class IdentityApiTest extends BaseCleanStartedEachTest {
             }
         });
 
-        com.mparticle.internal.AccessUtils.awaitUploadHandler();
+        com.mparticle.internal.AccessUtils.awaitIdentityHandler();
 
         request = IdentityApiRequest.withEmptyUser().build();
         result = MParticle.getInstance().Identity().identify(request);
@@ -1,16 +1,25 @@
 package com.mparticle.internal.database.services;
 
+import android.database.Cursor;
 import android.os.Handler;
 import android.os.Looper;
 import androidx.annotation.Nullable;
 
+import com.mparticle.MParticle;
 import com.mparticle.UserAttributeListener;
+import com.mparticle.internal.ConfigManager;
+import com.mparticle.internal.Constants;
+import com.mparticle.internal.InternalSession;
+import com.mparticle.internal.MessageManager;
+import com.mparticle.internal.database.tables.SessionTable;
+import com.mparticle.internal.messages.BaseMPMessage;
 import com.mparticle.testutils.AndroidUtils.Mutable;
 import com.mparticle.testutils.BaseCleanInstallEachTest;
 import com.mparticle.testutils.MPLatch;
 
 import junit.framework.Assert;
 
+import org.json.JSONObject;
 import org.junit.Test;
 
 import java.util.ArrayList;
@@ -18,6 +27,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
@@ -165,4 +175,52 @@ public class MParticleDBManagerTest extends BaseCleanInstallEachTest{
         //thread is know to not be an issue w/db access
         assertEquals("mParticleMessageHandler", dbAccessThread.value.getName());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPreviousSessionInfoKeptForEveryLane() throws Exception {
+        startMParticle();
+        MessageManager messageManager = com.mparticle.AccessUtils.getMessageManager();
+        com.mparticle.internal.AccessUtils.clearMessages(messageManager);
+        ConfigManager configManager = MParticle.getInstance().Internal().getConfigManager();
+        MParticleDBManager manager = new MParticleDBManager(mContext);
+        String apiKey = configManager.getApiKey();
+        long mpid = ran.nextLong();
+
+        InternalSession previousSession = new InternalSession();
+        previousSession.mSessionID = UUID.randomUUID().toString();
+        JSONObject appInfo = new JSONObject().put("foo", "previous app info");
+        JSONObject deviceInfo = new JSONObject().put("foo", "previous device info");
+        BaseMPMessage sessionStart = new BaseMPMessage.Builder(Constants.MessageType.EVENT).build(previousSession, null, mpid);
+        manager.insertSession(sessionStart, apiKey, appInfo, deviceInfo);
+
+        //one message in the NORMAL lane and one in the BULK lane
+        BaseMPMessage event = new BaseMPMessage.Builder(Constants.MessageType.EVENT).build(previousSession, null, mpid);
+        BaseMPMessage screenView = new BaseMPMessage.Builder(Constants.MessageType.SCREEN_VIEW).build(previousSession, null, mpid);
+        assertEquals(Constants.MessagePriority.NORMAL, event.getPriority());
+        assertEquals(Constants.MessagePriority.BULK, screenView.getPriority());
+        MessageService.insertMessage(manager.getDatabase(), apiKey, event, mpid, null, null);
+        MessageService.insertMessage(manager.getDatabase(), apiKey, screenView, mpid, null, null);
+
+        manager.createMessagesForUploadMessage(configManager, messageManager.getDeviceAttributes(), UUID.randomUUID().toString(), false);
+
+        int previousSessionBatches = 0;
+        for (MParticleDBManager.ReadyUpload readyUpload : UploadService.getReadyUploads(manager.getDatabase())) {
+            if (readyUpload.getMessage().contains(previousSession.mSessionID)) {
+                JSONObject batch = new JSONObject(readyUpload.getMessage());
+                assertEquals("previous app info", batch.getJSONObject(Constants.MessageKey.APP_INFO).getString("foo"));
+                assertEquals("previous device info", batch.getJSONObject(Constants.MessageKey.DEVICE_INFO).getString("foo"));
+                previousSessionBatches++;
+            }
+        }
+        assertEquals(2, previousSessionBatches);
+        //once every lane has been packaged, the previous session is deleted
+        Cursor sessions = SessionService.getSessions(manager.getDatabase());
+        try {
+            while (sessions.moveToNext()) {
+                assertNotEquals(previousSession.mSessionID, sessions.getString(sessions.getColumnIndex(SessionTable.SessionTableColumns.SESSION_ID)));
+            }
+        } finally {
+            sessions.close();
+        }
+    }
+}
@@ -182,6 +182,32 @@ public class MessageServiceTest extends BaseMPServiceTest {
         assertEquals(MessageService.getMessagesForUpload(database).size(), 20);
     }
 
+    @Test
+    public void testMessagesForUploadByPriority() throws JSONException {
+        for (int i = 0; i < 10; i++) {
+            BaseMPMessage screenView = new BaseMPMessage.Builder(Constants.MessageType.SCREEN_VIEW).build(new InternalSession(), null, 1);
+            MessageService.insertMessage(database, "apiKey", screenView, 1, null, null);
+            BaseMPMessage critical = getMpMessage();
+            critical.setPriority(Constants.MessagePriority.CRITICAL);
+            MessageService.insertMessage(database, "apiKey", critical, 1, null, null);
+        }
+        List<MessageService.ReadyMessage> criticalMessages = MessageService.getMessagesForUpload(database, Constants.MessagePriority.CRITICAL);
+        assertEquals(criticalMessages.size(), 10);
+        assertEquals(MessageService.getMessagesForUpload(database, Constants.MessagePriority.NORMAL).size(), 0);
+        assertEquals(MessageService.getMessagesForUpload(database, Constants.MessagePriority.BULK).size(), 10);
+
+        //the screen views are interleaved with the critical messages, and must not be caught by
+        //the critical lane's watermark
+        int max = getMaxId(criticalMessages);
+        assertEquals(MessageService.markMessagesAsUploaded(database, max, Constants.MessagePriority.CRITICAL), 10);
+        assertEquals(MessageService.getMessagesForUpload(database, Constants.MessagePriority.CRITICAL).size(), 0);
+        assertEquals(MessageService.getMessagesForUpload(database, Constants.MessagePriority.BULK).size(), 10);
+
+        assertEquals(MessageService.deleteMessages(database, Integer.MAX_VALUE, Constants.MessagePriority.BULK), 10);
+        assertEquals(MessageService.getMessagesForUpload(database).size(), 0);
+        assertEquals(MessageService.getSessionHistory(database, "").size(), 10);
+    }
+
     private int getMaxId(List<MessageService.ReadyMessage> messages) {
         int max = 0;
         for (MessageService.ReadyMessage message: messages) {
@@ -0,0 +1,26 @@
+package com.mparticle.internal.database.services;
+
+import com.mparticle.internal.Constants;
+import com.mparticle.internal.MessageBatch;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+
+public class UploadServiceTest extends BaseMPServiceTest {
+
+    @Test
+    public void testLargeMpidIsStoredExactly() throws Exception {
+        //2^53 + 1 is the smallest long that a double can not represent.
+        long mpid = 9007199254740993L;
+        MessageBatch batch = new MessageBatch() { };
+        batch.put(Constants.MessageKey.MPID, String.valueOf(mpid));
+        UploadService.insertUpload(database, batch, "foo-app-key");
+
+        List<MParticleDBManager.ReadyUpload> readyUploads = UploadService.getReadyUploads(database);
+        assertEquals(1, readyUploads.size());
+        assertEquals(mpid, readyUploads.get(0).getMpId().longValue());
+    }
+}
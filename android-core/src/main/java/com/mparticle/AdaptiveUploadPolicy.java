@@ -0,0 +1,77 @@
+package com.mparticle;
+
+import androidx.annotation.NonNull;
+
+import com.mparticle.internal.Constants;
+
+/**
+ * An {@link UploadPolicy} which uploads less often on cellular networks, on low battery and while
+ * uploads are failing, and drains a backlog faster on Wi-Fi or while the device is charging.
+ *
+ * Starting from the configured upload interval:
+ * - on Wi-Fi, or while charging, a backlog of more than one batch is uploaded 4 times as often,
+ *   but no more than every 15 seconds, in batches of up to 4 times the usual size
+ * - on a cellular network, while not charging, uploads are sent half as often, in batches of up
+ *   to twice the usual size when there is a backlog, so the radio wakes up less
+ * - below 15% battery, while not charging, uploads are sent half as often again
+ * - while recent uploads are failing, uploads are sent up to 4 times less often, in batches of half
+ *   the usual size
+ *
+ * The interval never exceeds 8 times the configured interval.
+ */
+public class AdaptiveUploadPolicy implements UploadPolicy {
+    static final long MIN_DRAIN_INTERVAL_MILLIS = 15 * 1000;
+    static final int MAX_INTERVAL_MULTIPLIER = 8;
+    static final double LOW_BATTERY_LEVEL = 0.15;
+    static final double HIGH_FAILURE_RATE = 0.5;
+
+    @Override
+    public long getUploadInterval(@NonNull Conditions conditions) {
+        long configuredInterval = conditions.getUploadInterval();
+        long interval = configuredInterval;
+        if (canDrain(conditions) && hasBacklog(conditions)) {
+            interval = Math.max(configuredInterval / 4, Math.min(configuredInterval, MIN_DRAIN_INTERVAL_MILLIS));
+        } else if (conditions.getNetworkType() == NetworkType.CELLULAR && !conditions.isCharging()) {
+            interval *= 2;
+        }
+        if (isLowBattery(conditions)) {
+            interval *= 2;
+        }
+        if (conditions.getRecentFailureRate() >= HIGH_FAILURE_RATE) {
+            interval *= 4;
+        } else if (conditions.getRecentFailureRate() > 0) {
+            interval *= 2;
+        }
+        return Math.min(interval, configuredInterval * MAX_INTERVAL_MULTIPLIER);
+    }
+
+    @Override
+    public int getBatchSize(@NonNull Conditions conditions) {
+        int batchSize = Constants.DEFAULT_UPLOAD_BATCH_SIZE;
+        if (conditions.getRecentFailureRate() >= HIGH_FAILURE_RATE) {
+            return batchSize / 2;
+        }
+        if (conditions.getPendingMessages() > batchSize) {
+            if (canDrain(conditions)) {
+                return Math.min(conditions.getPendingMessages(), batchSize * 4);
+            }
+            if (conditions.getNetworkType() == NetworkType.CELLULAR) {
+                return Math.min(conditions.getPendingMessages(), batchSize * 2);
+            }
+        }
+        return batchSize;
+    }
+
+    private static boolean canDrain(Conditions conditions) {
+        return conditions.getNetworkType() == NetworkType.WIFI ||
+                (conditions.isCharging() && conditions.getNetworkType() != NetworkType.OFFLINE);
+    }
+
+    private static boolean hasBacklog(Conditions conditions) {
+        return conditions.getPendingMessages() > Constants.DEFAULT_UPLOAD_BATCH_SIZE || conditions.getPendingUploads() > 1;
+    }
+
+    private static boolean isLowBattery(Conditions conditions) {
+        return !conditions.isCharging() && conditions.getBatteryLevel() >= 0 && conditions.getBatteryLevel() < LOW_BATTERY_LEVEL;
+    }
+}
@@ -11,6 +11,7 @@ import com.android.installreferrer.api.InstallReferrerClient;
 import com.android.installreferrer.api.InstallReferrerStateListener;
 import com.android.installreferrer.api.ReferrerDetails;
 import com.mparticle.internal.Constants;
+import com.mparticle.internal.KeyValueStore;
 import com.mparticle.internal.Logger;
 import com.mparticle.internal.MPUtility;
 
@@ -21,13 +22,13 @@ public class InstallReferrerHelper {
         if (context == null) {
             return null;
         }
-        return context.getSharedPreferences(Constants.PREFS_FILE, 0).getString(Constants.PrefKeys.INSTALL_REFERRER, null);
+        return KeyValueStore.getSharedPreferences(context, Constants.PREFS_FILE).getString(Constants.PrefKeys.INSTALL_REFERRER, null);
     }
 
 
     public static void setInstallReferrer(@NonNull Context context, @Nullable String referrer) {
         if (context != null) {
-            SharedPreferences preferences = context.getSharedPreferences(Constants.PREFS_FILE, Context.MODE_PRIVATE);
+            SharedPreferences preferences = KeyValueStore.getSharedPreferences(context, Constants.PREFS_FILE);
             preferences.edit().putString(Constants.PrefKeys.INSTALL_REFERRER, referrer).apply();
             MParticle instance = MParticle.getInstance();
             if (instance != null) {
@@ -35,6 +35,8 @@ import com.mparticle.internal.Constants.PrefKeys;
 import com.mparticle.internal.DeviceAttributes;
 import com.mparticle.internal.InternalSession;
 import com.mparticle.internal.KitFrameworkWrapper;
+import com.mparticle.internal.KeyValueStore;
+import com.mparticle.internal.KitInvocationStats;
 import com.mparticle.internal.Logger;
 import com.mparticle.internal.MPLocationListener;
 import com.mparticle.internal.MPUtility;
@@ -49,6 +51,8 @@ import com.mparticle.media.MPMediaAPI;
 import com.mparticle.media.MediaCallbacks;
 import com.mparticle.messaging.MPMessagingAPI;
 import com.mparticle.messaging.ProviderCloudMessage;
+import com.mparticle.networking.EndpointBackoff;
+import com.mparticle.networking.MParticleBaseClientImpl;
 import com.mparticle.segmentation.SegmentListener;
 
 import org.json.JSONObject;
@@ -109,7 +113,7 @@ public class MParticle {
         mAppContext = options.getContext();
         mConfigManager = configManager;
         mAppStateManager = appStateManager;
-        mDatabaseManager = new MParticleDBManager(mAppContext);
+        mDatabaseManager = new MParticleDBManager(mAppContext, options.getStorageQuota());
         if (options.isUncaughtExceptionLoggingEnabled()) {
             enableUncaughtExceptionLogging();
         } else {
@@ -117,7 +121,7 @@ public class MParticle {
         }
         mMessageManager = new MessageManager(configManager, appStateManager, sDevicePerformanceMetricsDisabled, mDatabaseManager, options);
         mConfigManager.setNetworkOptions(options.getNetworkOptions());
-        mPreferences = options.getContext().getSharedPreferences(Constants.PREFS_FILE, Context.MODE_PRIVATE);
+        mPreferences = KeyValueStore.getSharedPreferences(options.getContext(), Constants.PREFS_FILE);
     }
 
     /**
@@ -152,8 +156,9 @@ public class MParticle {
                         Logger.error("mParticle requires android.permission.INTERNET permission.");
                     }
 
+                    KeyValueStore.setEnabled(context, options.isConsolidatedStorageEnabled());
                     instance = new MParticle(options);
-                    instance.mKitManager = new KitFrameworkWrapper(options.getContext(), instance.mMessageManager, instance.Internal().getConfigManager(), instance.Internal().getAppStateManager(), instance.mMessageManager.getTaskHandler());
+                    instance.mKitManager = new KitFrameworkWrapper(options.getContext(), instance.mMessageManager, instance.Internal().getConfigManager(), instance.Internal().getAppStateManager(), instance.mMessageManager.getTaskHandler(), false, options.getKitDispatchQueueSize());
                     instance.mIdentityApi = new IdentityApi(options.getContext(), instance.mInternal.getAppStateManager(), instance.mMessageManager, instance.mConfigManager, instance.mKitManager, options.getOperatingSystem());
                     instance.mMessageManager.refreshConfiguration();
                     instance.identify(options);
@@ -1082,7 +1087,7 @@ public class MParticle {
             //"commit" will force all async writes stemming from an "apply" call to finish. We need to do this
             //because we need to ensure that the "getMpids()" call is returning all calls that have been made
             // up to this point, otherwise we will miss deleting some files.
-            context.getSharedPreferences(ConfigManager.PREFERENCES_FILE, Context.MODE_PRIVATE).edit().commit();
+            KeyValueStore.getSharedPreferences(context, ConfigManager.PREFERENCES_FILE).edit().commit();
             if (instance != null) {
                 if (instance.isLocationTrackingEnabled()) {
                     instance.disableLocationTracking();
@@ -1117,6 +1122,7 @@ public class MParticle {
                     file.delete();
                 }
             }
+            KeyValueStore.delete(context);
             context.getApplicationContext().deleteDatabase(MParticleDatabaseHelper.DB_NAME);
             Logger.debug("MParticle destroyed");
         }
@@ -1616,5 +1622,38 @@ public class MParticle {
             return mMessageManager;
         }
 
+        /**
+         * Query how long each active kit has taken to handle the calls forwarded to it, keyed by kit id.
+         */
+        @NonNull
+        public Map<Integer, KitInvocationStats> getKitInvocationStats() {
+            return mKitManager.getKitInvocationStats();
+        }
+
+        /**
+         * Query how many messages have been evicted since the SDK started, to keep the backlog
+         * within the {@link MParticleOptions.StorageQuota}.
+         */
+        public long getEvictedMessageCount() {
+            return mDatabaseManager.getEvictedMessageCount();
+        }
+
+        /**
+         * Query how many upload batches have been evicted since the SDK started, to keep the backlog
+         * within the {@link MParticleOptions.StorageQuota}.
+         */
+        public long getEvictedUploadCount() {
+            return mDatabaseManager.getEvictedUploadCount();
+        }
+
+        /**
+         * Query the retry state of an mParticle endpoint, such as how many requests have failed in a
+         * row and how long is left before the next request is allowed.
+         */
+        @NonNull
+        public EndpointBackoff.State getBackoffState(@NonNull MParticleBaseClientImpl.Endpoint endpoint) {
+            return EndpointBackoff.getInstance(mAppContext).getState(endpoint);
+        }
+
     }
 }
@@ -7,7 +7,9 @@ import androidx.annotation.Nullable;
 import com.mparticle.identity.BaseIdentityTask;
 import com.mparticle.identity.IdentityApiRequest;
 import com.mparticle.identity.IdentityStateListener;
+import com.mparticle.internal.Constants;
 import com.mparticle.internal.ConfigManager;
+import com.mparticle.internal.DeviceStateSampler;
 import com.mparticle.internal.Logger;
 import com.mparticle.internal.MPUtility;
 import com.mparticle.internal.PushRegistrationHelper;
@@ -48,6 +50,13 @@ public class MParticleOptions {
     private Integer mDataplanVersion;
     private MParticle.OperatingSystem mOperatingSystem = MParticle.OperatingSystem.ANDROID;
     private DataplanOptions mDataplanOptions;
+    private Boolean mCoalesceMessageStorage = false;
+    private Integer mMpidUploadThreads = 1;
+    private Integer mDeviceStateSamplingInterval = DeviceStateSampler.DEFAULT_SAMPLING_INTERVAL_MILLIS / 1000;
+    private Boolean mConsolidatedStorageEnabled = false;
+    private Integer mKitDispatchQueueSize = 0;
+    private StorageQuota mStorageQuota;
+    private UploadPolicy mUploadPolicy;
 
     private MParticleOptions() {
     }
@@ -119,6 +128,38 @@ public class MParticleOptions {
         this.mDataplanId = builder.dataplanId;
         this.mDataplanVersion = builder.dataplanVersion;
         this.mDataplanOptions = builder.dataplanOptions;
+        if (builder.coalesceMessageStorage != null) {
+            this.mCoalesceMessageStorage = builder.coalesceMessageStorage;
+        }
+        if (builder.mpidUploadThreads != null) {
+            if (builder.mpidUploadThreads <= 0) {
+                Logger.warning("MPID Upload Threads must be a positive number, disregarding value.");
+            } else if (builder.mpidUploadThreads > Constants.LIMIT_MAX_MPID_UPLOAD_THREADS) {
+                Logger.warning(String.format("MPID Upload Threads may not exceed %s, using %s.", Constants.LIMIT_MAX_MPID_UPLOAD_THREADS, Constants.LIMIT_MAX_MPID_UPLOAD_THREADS));
+                this.mMpidUploadThreads = Constants.LIMIT_MAX_MPID_UPLOAD_THREADS;
+            } else {
+                this.mMpidUploadThreads = builder.mpidUploadThreads;
+            }
+        }
+        if (builder.deviceStateSamplingInterval != null) {
+            if (builder.deviceStateSamplingInterval < 0) {
+                Logger.warning("Device State Sampling Interval must not be negative, disregarding value.");
+            } else {
+                this.mDeviceStateSamplingInterval = builder.deviceStateSamplingInterval;
+            }
+        }
+        if (builder.consolidatedStorageEnabled != null) {
+            this.mConsolidatedStorageEnabled = builder.consolidatedStorageEnabled;
+        }
+        if (builder.kitDispatchQueueSize != null) {
+            if (builder.kitDispatchQueueSize < 0) {
+                Logger.warning("Kit Dispatch Queue Size must not be negative, disregarding value.");
+            } else {
+                this.mKitDispatchQueueSize = builder.kitDispatchQueueSize;
+            }
+        }
+        this.mStorageQuota = builder.storageQuota;
+        this.mUploadPolicy = builder.uploadPolicy;
     }
 
     /**
@@ -275,6 +316,69 @@ public class MParticleOptions {
         return mDataplanOptions;
     }
 
+    /**
+     * Query whether queued messages are written to the database in batched transactions.
+     * @return true if message storage is coalesced, false if each message is written individually
+     */
+    @NonNull
+    public Boolean isMessageStorageCoalescingEnabled() {
+        return mCoalesceMessageStorage;
+    }
+
+    /**
+     * Query the number of threads used to upload a backlog that holds batches for more than one MPID.
+     * @return the number of MPID upload threads, 1 if every batch is uploaded on the upload thread
+     */
+    @NonNull
+    public Integer getMpidUploadThreads() {
+        return mMpidUploadThreads;
+    }
+
+    /**
+     * Query how long device state, such as available disk and memory, is cached for.
+     * @return the sampling interval in seconds, 0 if device state is queried for every message
+     */
+    @NonNull
+    public Integer getDeviceStateSamplingInterval() {
+        return mDeviceStateSamplingInterval;
+    }
+
+    /**
+     * Query whether the SDK keeps its preferences in a single key-value store, rather than in SharedPreferences.
+     * @return
+     */
+    @NonNull
+    public Boolean isConsolidatedStorageEnabled() {
+        return mConsolidatedStorageEnabled;
+    }
+
+    /**
+     * Query the size of each kit's background dispatch queue, 0 if kits are called on the caller's thread.
+     * @return
+     */
+    @NonNull
+    public Integer getKitDispatchQueueSize() {
+        return mKitDispatchQueueSize;
+    }
+
+    /**
+     * Query the limits on the number and size of messages and upload batches which are stored while waiting to be uploaded.
+     * @return the storage quota, null if the backlog is unbounded
+     */
+    @Nullable
+    public StorageQuota getStorageQuota() {
+        return mStorageQuota;
+    }
+
+    /**
+     * Query the policy which adapts the upload interval and batch size to the conditions on the device.
+     * @return the upload policy, null if uploads are sent at the configured upload interval
+     */
+    @Nullable
+    public UploadPolicy getUploadPolicy() {
+        return mUploadPolicy;
+    }
+
     public static class Builder {
         private Context context;
         String apiKey;
@@ -299,6 +403,13 @@ public class MParticleOptions {
         private Integer dataplanVersion;
         private MParticle.OperatingSystem operatingSystem;
         private DataplanOptions dataplanOptions;
+        private Boolean coalesceMessageStorage = null;
+        private Integer mpidUploadThreads = null;
+        private Integer deviceStateSamplingInterval = null;
+        private Boolean consolidatedStorageEnabled = null;
+        private Integer kitDispatchQueueSize = null;
+        private StorageQuota storageQuota;
+        private UploadPolicy uploadPolicy;
 
         private Builder(Context context) {
             this.context = context;
@@ -574,6 +685,120 @@ public class MParticleOptions {
             return this;
         }
 
+        /**
+         * Enable coalesced message storage. When enabled, messages logged in quick succession are
+         * written to the mParticle database in a single transaction, and the session end time is
+         * updated once per session rather than once per message. This reduces disk I/O during
+         * bursts of events.
+         *
+         * @param enabled true to coalesce message storage (false by default)
+         *
+         * @return the instance of the builder, for chaining calls
+         */
+        @NonNull
+        public Builder coalesceMessageStorage(boolean enabled) {
+            this.coalesceMessageStorage = enabled;
+            return this;
+        }
+
+        /**
+         * Set the number of threads used to upload a backlog that holds batches for more than one
+         * user (MPID), for example after the device was offline while users logged in and out. Each
+         * user's batches are given to one thread and are still sent one at a time, in order, so this
+         * has no effect on a backlog that belongs to a single user. The SDK's upload thread waits
+         * until every user's batches have been sent before it continues.
+         *
+         * @param mpidUploadThreads the number of threads, between 1 (the default) and 8
+         *
+         * @return the instance of the builder, for chaining calls
+         */
+        @NonNull
+        public Builder mpidUploadThreads(int mpidUploadThreads) {
+            this.mpidUploadThreads = mpidUploadThreads;
+            return this;
+        }
+
+        /**
+         * Set how long the device state reported with each message, such as available disk space,
+         * memory, orientation and network type, is cached for. Network and orientation changes
+         * are picked up immediately regardless of this interval.
+         *
+         * @param deviceStateSamplingInterval the interval in seconds (10 by default), or 0 to query the device state for every message
+         *
+         * @return the instance of the builder, for chaining calls
+         */
+        @NonNull
+        public Builder deviceStateSamplingInterval(int deviceStateSamplingInterval) {
+            this.deviceStateSamplingInterval = deviceStateSamplingInterval;
+            return this;
+        }
+
+        /**
+         * Keep the SDK's preferences, such as its configuration and user attributes, in a single file
+         * which is loaded once and written in batches, rather than in several SharedPreferences files.
+         * Existing SharedPreferences are imported the first time they are used, and are written back
+         * if this is later disabled.
+         *
+         * @param enabled true to use the consolidated store, false (the default) to use SharedPreferences
+         *
+         * @return the instance of the builder, for chaining calls
+         */
+        @NonNull
+        public Builder consolidatedStorage(boolean enabled) {
+            this.consolidatedStorageEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * Forward events, screen views, user attributes and identity changes to each kit on its own
+         * background thread, rather than on the thread which logged them. Each kit receives calls in
+         * order, and a slow kit does not hold up the app or the other kits. If more than queueSize
+         * events, screen views and commerce events are pending for a kit, the oldest of them are
+         * dropped. Calls which change the kit's state, such as opt out, consent, identity and user
+         * attribute changes, are never dropped. Activity and application
+         * lifecycle callbacks are always delivered on the main thread. Kits which do not support
+         * background dispatch are still called on the thread which made the call.
+         *
+         * @param queueSize the number of events which may be pending for each kit, or 0 (the default) to call kits on the caller's thread
+         *
+         * @return the instance of the builder, for chaining calls
+         */
+        @NonNull
+        public Builder kitDispatchQueueSize(int queueSize) {
+            this.kitDispatchQueueSize = queueSize;
+            return this;
+        }
+
+        /**
+         * Bound the backlog of messages and upload batches which builds up in the mParticle database
+         * while a device is offline or uploads are throttled. When the backlog exceeds the quota,
+         * messages are evicted according to the quota's {@link StorageQuota.EvictionPolicy}.
+         *
+         * @param storageQuota the quota, or null (the default) to store every message until it is uploaded
+         *
+         * @return the instance of the builder, for chaining calls
+         */
+        @NonNull
+        public Builder storageQuota(@Nullable StorageQuota storageQuota) {
+            this.storageQuota = storageQuota;
+            return this;
+        }
+
+        /**
+         * Adapt how often messages are uploaded, and how many are packaged into each upload, to the
+         * upload backlog, the network type, the battery and the recent upload failure rate, rather than
+         * uploading at a fixed interval. The policy is given the configured upload interval to adapt.
+         *
+         * @param uploadPolicy the policy, such as an {@link AdaptiveUploadPolicy}, or null (the default) to upload at the configured upload interval
+         *
+         * @return the instance of the builder, for chaining calls
+         */
+        @NonNull
+        public Builder uploadPolicy(@Nullable UploadPolicy uploadPolicy) {
+            this.uploadPolicy = uploadPolicy;
+            return this;
+        }
+
         /**
          * Builds this Builder into an MParticleOptions object which can be used to start the SDK.
          *
@@ -839,4 +1064,222 @@ public class MParticleOptions {
             }
         }
     }
+
+    /**
+     * Limits on the messages and upload batches which are stored in the mParticle database while
+     * waiting to be uploaded. Messages are stored as they are logged, and are periodically packaged
+     * into upload batches, so both are bounded. A limit of 0 means unlimited.
+     */
+    public static class StorageQuota {
+        private int maxMessages;
+        private long maxMessageBytes;
+        private int maxUploads;
+        private long maxUploadBytes;
+        private long maxAge;
+        private EvictionPolicy evictionPolicy;
+
+        /**
+         * How messages or upload batches are chosen for eviction when the quota is exceeded.
+         */
+        public enum EvictionPolicy {
+            /**
+             * Evict the oldest messages first.
+             */
+            OLDEST_FIRST,
+            /**
+             * Evict messages which have already been uploaded and are only kept for session history
+             * first, then breadcrumbs, screen views and network performance messages, then all other
+             * messages. Messages which trigger an immediate upload are evicted last. Upload batches
+             * are evicted in the same order, and before alias requests. Within each group the oldest
+             * messages are evicted first.
+             */
+            LOWEST_PRIORITY_FIRST
+        }
+
+        private StorageQuota(@NonNull Builder builder) {
+            maxMessages = builder.maxMessages;
+            maxMessageBytes = builder.maxMessageBytes;
+            maxUploads = builder.maxUploads;
+            maxUploadBytes = builder.maxUploadBytes;
+            maxAge = builder.maxAge;
+            evictionPolicy = builder.evictionPolicy;
+        }
+
+        /**
+         * Query the maximum number of stored messages
+         * @return the number of messages, 0 if unlimited
+         */
+        public int getMaxMessages() {
+            return maxMessages;
+        }
+
+        /**
+         * Query the maximum combined size of the stored messages
+         * @return the size in bytes, 0 if unlimited
+         */
+        public long getMaxMessageBytes() {
+            return maxMessageBytes;
+        }
+
+        /**
+         * Query the maximum number of stored upload batches
+         * @return the number of upload batches, 0 if unlimited
+         */
+        public int getMaxUploads() {
+            return maxUploads;
+        }
+
+        /**
+         * Query the maximum combined size of the stored upload batches
+         * @return the size in bytes, 0 if unlimited
+         */
+        public long getMaxUploadBytes() {
+            return maxUploadBytes;
+        }
+
+        /**
+         * Query how long messages and upload batches are kept before they are evicted
+         * @return the age in seconds, 0 if unlimited
+         */
+        public long getMaxAge() {
+            return maxAge;
+        }
+
+        /**
+         * Query how messages and upload batches are chosen for eviction
+         * @return the eviction policy
+         */
+        @NonNull
+        public EvictionPolicy getEvictionPolicy() {
+            return evictionPolicy;
+        }
+
+        @Override
+        public String toString() {
+            return "StorageQuota {" +
+                    "\n\tmaxMessages=" + maxMessages +
+                    ", \n\tmaxMessageBytes=" + maxMessageBytes +
+                    ", \n\tmaxUploads=" + maxUploads +
+                    ", \n\tmaxUploadBytes=" + maxUploadBytes +
+                    ", \n\tmaxAge=" + maxAge +
+                    ", \n\tevictionPolicy=" + evictionPolicy +
+                    "\n}";
+        }
+
+        @NonNull
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public static class Builder {
+            private int maxMessages;
+            private long maxMessageBytes;
+            private int maxUploads;
+            private long maxUploadBytes;
+            private long maxAge;
+            private EvictionPolicy evictionPolicy = EvictionPolicy.OLDEST_FIRST;
+
+            private Builder() {}
+
+            /**
+             * Set the maximum number of messages which are stored, including messages which have
+             * been uploaded and are kept for session history
+             * @param maxMessages the number of messages, or 0 (the default) for no limit
+             * @return the Builder instance
+             */
+            @NonNull
+            public Builder maxMessages(int maxMessages) {
+                if (maxMessages < 0) {
+                    Logger.warning("Max Messages must not be negative, disregarding value.");
+                } else {
+                    this.maxMessages = maxMessages;
+                }
+                return this;
+            }
+
+            /**
+             * Set the maximum combined size of the stored messages
+             * @param maxMessageBytes the size in bytes, or 0 (the default) for no limit
+             * @return the Builder instance
+             */
+            @NonNull
+            public Builder maxMessageBytes(long maxMessageBytes) {
+                if (maxMessageBytes < 0) {
+                    Logger.warning("Max Message Bytes must not be negative, disregarding value.");
+                } else {
+                    this.maxMessageBytes = maxMessageBytes;
+                }
+                return this;
+            }
+
+            /**
+             * Set the maximum number of upload batches which are stored, each of which holds up to
+             * 100 messages
+             * @param maxUploads the number of upload batches, or 0 (the default) for no limit
+             * @return the Builder instance
+             */
+            @NonNull
+            public Builder maxUploads(int maxUploads) {
+                if (maxUploads < 0) {
+                    Logger.warning("Max Uploads must not be negative, disregarding value.");
+                } else {
+                    this.maxUploads = maxUploads;
+                }
+                return this;
+            }
+
+            /**
+             * Set the maximum combined size of the stored upload batches, which are stored compressed
+             * @param maxUploadBytes the size in bytes, or 0 (the default) for no limit
+             * @return the Builder instance
+             */
+            @NonNull
+            public Builder maxUploadBytes(long maxUploadBytes) {
+                if (maxUploadBytes < 0) {
+                    Logger.warning("Max Upload Bytes must not be negative, disregarding value.");
+                } else {
+                    this.maxUploadBytes = maxUploadBytes;
+                }
+                return this;
+            }
+
+            /**
+             * Set how long messages and upload batches are kept before they are evicted, regardless
+             * of the other limits. Expired messages are evicted each time the SDK prepares an upload.
+             * @param maxAge the age in seconds, or 0 (the default) for no limit
+             * @return the Builder instance
+             */
+            @NonNull
+            public Builder maxAge(long maxAge) {
+                if (maxAge < 0) {
+                    Logger.warning("Max Age must not be negative, disregarding value.");
+                } else {
+                    this.maxAge = maxAge;
+                }
+                return this;
+            }
+
+            /**
+             * Set how messages and upload batches are chosen for eviction when a limit is exceeded
+             * @param evictionPolicy the policy, {@link EvictionPolicy#OLDEST_FIRST} by default
+             * @return the Builder instance
+             */
+            @NonNull
+            public Builder evictionPolicy(@NonNull EvictionPolicy evictionPolicy) {
+                if (evictionPolicy != null) {
+                    this.evictionPolicy = evictionPolicy;
+                }
+                return this;
+            }
+
+            /**
+             * Transform the Builder instance into an immutable {@link StorageQuota} instance.
+             * @return the StorageQuota instance
+             */
+            @NonNull
+            public StorageQuota build() {
+                return new StorageQuota(this);
+            }
+        }
+    }
 }
@@ -7,6 +7,7 @@ import com.mparticle.identity.AliasRequest;
 import com.mparticle.identity.AliasResponse;
 import com.mparticle.identity.MParticleUser;
 import com.mparticle.internal.InternalSession;
+import com.mparticle.internal.KitInvocationStats;
 
 import org.json.JSONObject;
 
@@ -118,6 +119,16 @@ public class SdkListener {
 
     }
 
+    /**
+     * Indicates how long a kit has taken to handle the events, screen views, user attributes and identity
+     * changes forwarded to it since it was started. This is reported each time the app goes to the background.
+     * @param kitId the id of the kit, corresponse with a {@link com.mparticle.MParticle.ServiceProviders}
+     * @param stats the kit's invocation count, latency percentiles and exception count
+     */
+    public void onKitInvocationStats(int kitId, @NonNull KitInvocationStats stats) {
+
+    }
+
     /**
      * Indicates that state of a Session may have changed.
      * @param session the current {@link InternalSession} instance
@@ -0,0 +1,137 @@
+package com.mparticle;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Implement this interface to decide how often the SDK uploads, and how many messages it packages
+ * into each upload, from the conditions on the device. Set it with
+ * {@link MParticleOptions.Builder#uploadPolicy(UploadPolicy)}, or use the {@link AdaptiveUploadPolicy}.
+ *
+ * Policies are called on the SDK's upload thread, once before each periodic upload and once after it.
+ * Uploads triggered by the server configuration are sent immediately, regardless of the policy.
+ */
+public interface UploadPolicy {
+
+    /**
+     * @param conditions the conditions on the device after the latest upload
+     *
+     * @return the delay until the next upload, in milliseconds
+     */
+    long getUploadInterval(@NonNull Conditions conditions);
+
+    /**
+     * @param conditions the conditions on the device before an upload
+     *
+     * @return the maximum number of messages in each upload lane which are packaged for the upload
+     */
+    int getBatchSize(@NonNull Conditions conditions);
+
+    enum NetworkType {
+        /**
+         * Wi-Fi, Ethernet, or any other network which is usually unmetered.
+         */
+        WIFI,
+        /**
+         * A mobile data network.
+         */
+        CELLULAR,
+        /**
+         * Any other connected network, such as Bluetooth or a VPN.
+         */
+        OTHER,
+        OFFLINE
+    }
+
+    /**
+     * A snapshot of the upload backlog, the device's network and battery, and how recent uploads went.
+     */
+    final class Conditions {
+        private final long mUploadInterval;
+        private final int mPendingMessages;
+        private final int mPendingUploads;
+        private final NetworkType mNetworkType;
+        private final boolean mCharging;
+        private final double mBatteryLevel;
+        private final int mRecentUploads;
+        private final double mRecentFailureRate;
+
+        public Conditions(long uploadInterval, int pendingMessages, int pendingUploads, @NonNull NetworkType networkType, boolean charging, double batteryLevel, int recentUploads, double recentFailureRate) {
+            mUploadInterval = uploadInterval;
+            mPendingMessages = pendingMessages;
+            mPendingUploads = pendingUploads;
+            mNetworkType = networkType;
+            mCharging = charging;
+            mBatteryLevel = batteryLevel;
+            mRecentUploads = recentUploads;
+            mRecentFailureRate = recentFailureRate;
+        }
+
+        /**
+         * Query the upload interval from {@link MParticleOptions} or the server configuration.
+         * @return the interval in milliseconds
+         */
+        public long getUploadInterval() {
+            return mUploadInterval;
+        }
+
+        /**
+         * Query the number of stored messages which have not been packaged into an upload yet.
+         */
+        public int getPendingMessages() {
+            return mPendingMessages;
+        }
+
+        /**
+         * Query the number of packaged upload batches which have not been sent yet.
+         */
+        public int getPendingUploads() {
+            return mPendingUploads;
+        }
+
+        @NonNull
+        public NetworkType getNetworkType() {
+            return mNetworkType;
+        }
+
+        public boolean isCharging() {
+            return mCharging;
+        }
+
+        /**
+         * Query the battery level.
+         * @return the level between 0 and 1, or a negative value if it is unknown
+         */
+        public double getBatteryLevel() {
+            return mBatteryLevel;
+        }
+
+        /**
+         * Query the number of upload batches which have been sent recently.
+         */
+        public int getRecentUploads() {
+            return mRecentUploads;
+        }
+
+        /**
+         * Query the fraction of recent upload batches which failed and will be retried.
+         * @return the failure rate between 0 and 1, 0 if there have been no recent uploads
+         */
+        public double getRecentFailureRate() {
+            return mRecentFailureRate;
+        }
+
+        @Override
+        public String toString() {
+            return "Conditions{" +
+                    "uploadInterval=" + mUploadInterval +
+                    ", pendingMessages=" + mPendingMessages +
+                    ", pendingUploads=" + mPendingUploads +
+                    ", networkType=" + mNetworkType +
+                    ", charging=" + mCharging +
+                    ", batteryLevel=" + mBatteryLevel +
+                    ", recentUploads=" + mRecentUploads +
+                    ", recentFailureRate=" + mRecentFailureRate +
+                    '}';
+        }
+    }
+}
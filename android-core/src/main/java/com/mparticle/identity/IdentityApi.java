@@ -3,7 +3,9 @@ package com.mparticle.identity;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.Process;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
@@ -50,13 +52,18 @@ public class IdentityApi {
 
     Set<IdentityStateListener> identityStateListeners = new HashSet<IdentityStateListener>();
     private static Object lock = new Object();
+    /**
+     * Identity requests have their own thread, rather than sharing the upload thread, so that a
+     * login is never queued behind a backlog of batch uploads. It also runs at a higher priority
+     * than the upload thread, since the user is usually waiting on the result.
+     */
+    private static HandlerThread sIdentityHandlerThread;
 
     protected IdentityApi() {}
 
     @SuppressLint("UnknownNullness")
     public IdentityApi(Context context, AppStateManager appStateManager, MessageManager messageManager, ConfigManager configManager, KitManager kitManager, MParticle.OperatingSystem operatingSystem) {
         this.mContext = context;
-        this.mBackgroundHandler = messageManager.mUploadHandler;
         this.mUserDelegate = new MParticleUserDelegate(appStateManager, configManager, messageManager, kitManager);
         this.mConfigManager = configManager;
         this.mMessageManager = messageManager;
@@ -268,7 +275,7 @@ public class IdentityApi {
             task.setFailed(new IdentityHttpResponse(IdentityApi.UNKNOWN_ERROR, message));
             return task;
         }
-        mBackgroundHandler.post(new Runnable() {
+        getBackgroundHandler().post(new Runnable() {
             @Override
             public void run() {
                 try {
@@ -343,10 +350,26 @@ public class IdentityApi {
         });
     }
 
+    synchronized BaseHandler getBackgroundHandler() {
+        if (mBackgroundHandler == null) {
+            mBackgroundHandler = new BaseHandler(getIdentityLooper());
+        }
+        return mBackgroundHandler;
+    }
+
+    private static synchronized Looper getIdentityLooper() {
+        if (sIdentityHandlerThread == null) {
+            sIdentityHandlerThread = new HandlerThread("mParticleIdentityHandler", Process.THREAD_PRIORITY_DEFAULT);
+            sIdentityHandlerThread.start();
+        }
+        return sIdentityHandlerThread.getLooper();
+    }
+
     private void reset() {
         identityStateListeners = new HashSet<IdentityStateListener>();
-        mBackgroundHandler.removeCallbacksAndMessages(null);
-        mBackgroundHandler.disable(true);
+        BaseHandler backgroundHandler = getBackgroundHandler();
+        backgroundHandler.removeCallbacksAndMessages(null);
+        backgroundHandler.disable(true);
         if (mMainHandler != null) {
             mMainHandler.disable(true);
             mMainHandler.removeCallbacksAndMessages(null);
@@ -360,11 +383,12 @@ public class IdentityApi {
         final BaseIdentityTask task = new BaseIdentityTask();
         ConfigManager.setIdentityRequestInProgress(true);
         final IdentityApiRequest identityApiRequest = request;
-        mBackgroundHandler.post(new Runnable() {
+        final BaseHandler backgroundHandler = getBackgroundHandler();
+        backgroundHandler.post(new Runnable() {
             @Override
             public void run() {
                 synchronized (lock) {
-                    if (mBackgroundHandler.isDisabled()) {
+                    if (backgroundHandler.isDisabled()) {
                         return;
                     }
                     try {
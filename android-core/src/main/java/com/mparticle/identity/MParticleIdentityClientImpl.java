@@ -2,6 +2,8 @@ package com.mparticle.identity;
 
 import android.content.Context;
 
+import androidx.annotation.Nullable;
+
 import com.mparticle.BuildConfig;
 import com.mparticle.MParticle;
 import com.mparticle.SdkListener;
@@ -74,6 +76,10 @@ public class MParticleIdentityClientImpl extends MParticleBaseClientImpl impleme
     }
 
     public IdentityHttpResponse login(IdentityApiRequest request) throws JSONException, IOException {
+        IdentityHttpResponse throttled = checkBackoff();
+        if (throttled != null) {
+            return throttled;
+        }
         JSONObject jsonObject = getStateJson(request);
         Logger.verbose("Identity login request: " + jsonObject.toString());
         MPConnection connection = getPostConnection(LOGIN_PATH, jsonObject.toString());
@@ -82,11 +88,16 @@ public class MParticleIdentityClientImpl extends MParticleBaseClientImpl impleme
         connection = makeUrlRequest(Endpoint.IDENTITY, connection, jsonObject.toString(), false);
         int responseCode = connection.getResponseCode();
         JSONObject response = MPUtility.getJsonResponse(connection);
+        releaseConnection(connection);
         InternalListenerManager.getListener().onNetworkRequestFinished(SdkListener.Endpoint.IDENTITY_LOGIN, url, response, responseCode);
         return parseIdentityResponse(responseCode, response);
     }
 
     public IdentityHttpResponse logout(IdentityApiRequest request) throws JSONException, IOException {
+        IdentityHttpResponse throttled = checkBackoff();
+        if (throttled != null) {
+            return throttled;
+        }
         JSONObject jsonObject = getStateJson(request);
         Logger.verbose("Identity logout request: \n" + jsonObject.toString());
         MPConnection connection = getPostConnection(LOGOUT_PATH, jsonObject.toString());
@@ -95,11 +106,16 @@ public class MParticleIdentityClientImpl extends MParticleBaseClientImpl impleme
         connection = makeUrlRequest(Endpoint.IDENTITY, connection, jsonObject.toString(), false);
         int responseCode = connection.getResponseCode();
         JSONObject response = MPUtility.getJsonResponse(connection);
+        releaseConnection(connection);
         InternalListenerManager.getListener().onNetworkRequestFinished(SdkListener.Endpoint.IDENTITY_LOGOUT, url, response, responseCode);
         return parseIdentityResponse(responseCode, response);
     }
 
     public IdentityHttpResponse identify(IdentityApiRequest request) throws JSONException, IOException {
+        IdentityHttpResponse throttled = checkBackoff();
+        if (throttled != null) {
+            return throttled;
+        }
         JSONObject jsonObject = getStateJson(request);
         Logger.verbose("Identity identify request: \n" + jsonObject.toString());
         MPConnection connection = getPostConnection(IDENTIFY_PATH, jsonObject.toString());
@@ -108,6 +124,7 @@ public class MParticleIdentityClientImpl extends MParticleBaseClientImpl impleme
         connection = makeUrlRequest(Endpoint.IDENTITY, connection, jsonObject.toString(), false);
         int responseCode = connection.getResponseCode();
         JSONObject response = MPUtility.getJsonResponse(connection);
+        releaseConnection(connection);
         InternalListenerManager.getListener().onNetworkRequestFinished(SdkListener.Endpoint.IDENTITY_IDENTIFY, url, response, responseCode);
         return parseIdentityResponse(responseCode, response);
     }
@@ -119,12 +136,17 @@ public class MParticleIdentityClientImpl extends MParticleBaseClientImpl impleme
         if (identityChanges != null && identityChanges.length() == 0) {
             return new IdentityHttpResponse(200, request.mpid, "", null);
         }
+        IdentityHttpResponse throttled = checkBackoff();
+        if (throttled != null) {
+            return throttled;
+        }
         MPConnection connection = getPostConnection(request.mpid, MODIFY_PATH, jsonObject.toString());
         String url = connection.getURL().toString();
         InternalListenerManager.getListener().onNetworkRequestStarted(SdkListener.Endpoint.IDENTITY_MODIFY, url, jsonObject, request);
         connection = makeUrlRequest(Endpoint.IDENTITY, connection, jsonObject.toString(), false);
         int responseCode = connection.getResponseCode();
         JSONObject response = MPUtility.getJsonResponse(connection);
+        releaseConnection(connection);
         InternalListenerManager.getListener().onNetworkRequestFinished(SdkListener.Endpoint.IDENTITY_MODIFY, url, response, responseCode);
         return parseIdentityResponse(responseCode, response);
     }
@@ -238,6 +260,18 @@ public class MParticleIdentityClientImpl extends MParticleBaseClientImpl impleme
         return jsonObject;
     }
 
+    /**
+     * @return a throttled response if identity requests are being held back, otherwise null
+     */
+    @Nullable
+    private IdentityHttpResponse checkBackoff() {
+        if (isBackingOff(Endpoint.IDENTITY)) {
+            Logger.debug("Identity request deferred, backing off after a failed request.");
+            return new IdentityHttpResponse(IdentityApi.THROTTLE_ERROR, "Identity requests have been throttled.");
+        }
+        return null;
+    }
+
     private IdentityHttpResponse parseIdentityResponse(int httpCode, JSONObject jsonObject) {
         try {
             Logger.verbose("Identity response code: " + httpCode);
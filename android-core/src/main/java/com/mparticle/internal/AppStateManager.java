@@ -83,7 +83,7 @@ public class  AppStateManager {
         mUnitTesting = unitTesting;
         mContext = context.getApplicationContext();
         mLastStoppedTime = new AtomicLong(getTime());
-        mPreferences = context.getSharedPreferences(Constants.PREFS_FILE, Context.MODE_PRIVATE);
+        mPreferences = KeyValueStore.getSharedPreferences(context, Constants.PREFS_FILE);
         ConfigManager.addMpIdChangeListener(new IdentityApi.MpIdChangeListener() {
             @Override
             public void onMpIdChanged(long newMpid, long previousMpid) {
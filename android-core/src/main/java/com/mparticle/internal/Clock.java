@@ -0,0 +1,15 @@
+package com.mparticle.internal;
+
+/**
+ * The source of the current time for components which are unit tested against a fake clock.
+ */
+public interface Clock {
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    long currentTimeMillis();
+}
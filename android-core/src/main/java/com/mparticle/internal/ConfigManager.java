@@ -89,6 +89,7 @@ public class ConfigManager {
     private int mUploadInterval = -1;
     private long mInfluenceOpenTimeout = 3600 * 1000;
     private JSONArray mTriggerMessageMatches, mTriggerMessageHashes = null;
+    private UploadTriggers mUploadTriggers = UploadTriggers.NONE;
     private ExceptionHandler mExHandler;
     private boolean mIncludeSessionHistory = false;
     private JSONObject mCurrentCookies;
@@ -194,12 +195,12 @@ public class ConfigManager {
     }
 
     static void deleteConfigManager(Context context) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && !KeyValueStore.isEnabled(context)) {
             context.deleteSharedPreferences(PREFERENCES_FILE);
-            sPreferences = context.getSharedPreferences(PREFERENCES_FILE, Context.MODE_PRIVATE);
+            sPreferences = KeyValueStore.getSharedPreferences(context, PREFERENCES_FILE);
         } else {
             if (sPreferences == null) {
-                sPreferences = context.getSharedPreferences(PREFERENCES_FILE, Context.MODE_PRIVATE);
+                sPreferences = KeyValueStore.getSharedPreferences(context, PREFERENCES_FILE);
             }
             sPreferences.edit().clear().commit();
         }
@@ -263,6 +264,7 @@ public class ConfigManager {
             }
 
         }
+        mUploadTriggers = UploadTriggers.compile(mTriggerMessageMatches, mTriggerMessageHashes);
 
         if (responseJSON.has(KEY_INFLUENCE_OPEN)) {
             mInfluenceOpenTimeout = responseJSON.getLong(KEY_INFLUENCE_OPEN) * 60 * 1000;
@@ -594,7 +596,7 @@ public class ConfigManager {
     }
 
     private static SharedPreferences getPreferences(Context context){
-        return context.getSharedPreferences(PREFERENCES_FILE, Context.MODE_PRIVATE);
+        return KeyValueStore.getSharedPreferences(context, PREFERENCES_FILE);
     }
 
     public static JSONArray getPushKeys(Context context) {
@@ -675,7 +677,7 @@ public class ConfigManager {
     //for testing
     static void clearMpid(Context context) {
         if (sPreferences == null) {
-            sPreferences = context.getSharedPreferences(PREFERENCES_FILE, Context.MODE_PRIVATE);
+            sPreferences = KeyValueStore.getSharedPreferences(context, PREFERENCES_FILE);
         }
         sPreferences.edit().remove(Constants.PrefKeys.MPID).apply();
     }
@@ -698,7 +700,7 @@ public class ConfigManager {
 
     public static long getMpid(Context context, boolean allowTemporary) {
         if (sPreferences == null) {
-            sPreferences = context.getSharedPreferences(PREFERENCES_FILE, Context.MODE_PRIVATE);
+            sPreferences = KeyValueStore.getSharedPreferences(context, PREFERENCES_FILE);
         }
         if (allowTemporary && sInProgress) {
             return Constants.TEMPORARY_MPID;
@@ -739,63 +741,16 @@ public class ConfigManager {
     }
 
     public boolean shouldTrigger(BaseMPMessage message) {
-        JSONArray messageMatches = getTriggerMessageMatches();
-        JSONArray triggerHashes = getTriggerMessageHashes();
-
-        boolean isBackgroundAst = false;
-        try {
-            isBackgroundAst = (message.getMessageType().equals(Constants.MessageType.APP_STATE_TRANSITION) && message.get(Constants.MessageKey.STATE_TRANSITION_TYPE).equals(Constants.StateTransitionType.STATE_TRANS_BG));
-        }
-        catch (JSONException ex) {}
-        boolean shouldTrigger = message.getMessageType().equals(Constants.MessageType.PUSH_RECEIVED)
-                || message.getMessageType().equals(Constants.MessageType.COMMERCE_EVENT)
-                || isBackgroundAst;
-
-        if (!shouldTrigger && messageMatches != null && messageMatches.length() > 0) {
-            shouldTrigger = true;
-            int i = 0;
-            while (shouldTrigger && i < messageMatches.length()) {
-                try {
-                    JSONObject messageMatch = messageMatches.getJSONObject(i);
-                    Iterator<?> keys = messageMatch.keys();
-                    while (shouldTrigger && keys.hasNext()) {
-                        String key = (String) keys.next();
-                        shouldTrigger = message.has(key);
-                        if (shouldTrigger) {
-                            try {
-                                shouldTrigger = messageMatch.getString(key).equalsIgnoreCase(message.getString(key));
-                            } catch (JSONException stringex) {
-                                try {
-                                    shouldTrigger = message.getBoolean(key) == messageMatch.getBoolean(key);
-                                } catch (JSONException boolex) {
-                                    try {
-                                        shouldTrigger = message.getDouble(key) == messageMatch.getDouble(key);
-                                    } catch (JSONException doubleex) {
-                                        shouldTrigger = false;
-                                    }
-                                }
-                            }
-                        }
-                    }
-                } catch (Exception e) {
-
-                }
-                i++;
-            }
+        String messageType = message.getMessageType();
+        if (messageType.equals(Constants.MessageType.PUSH_RECEIVED)
+                || messageType.equals(Constants.MessageType.COMMERCE_EVENT)) {
+            return true;
         }
-        if (!shouldTrigger && triggerHashes != null) {
-            for (int i = 0; i < triggerHashes.length(); i++) {
-                try {
-                    if (triggerHashes.getInt(i) == message.getTypeNameHash()) {
-                        shouldTrigger = true;
-                        break;
-                    }
-                } catch (JSONException jse) {
-
-                }
-            }
+        if (messageType.equals(Constants.MessageType.APP_STATE_TRANSITION)
+                && Constants.StateTransitionType.STATE_TRANS_BG.equals(message.opt(Constants.MessageKey.STATE_TRANSITION_TYPE))) {
+            return true;
         }
-        return shouldTrigger;
+        return mUploadTriggers.shouldTrigger(message);
     }
 
     public int getUserBucket() {
@@ -24,6 +24,14 @@ public class Constants {
     public static final int LIMIT_ATTR_VALUE = 4096;
     public static final int LIMIT_MAX_MESSAGE_SIZE = 100 * 1024;
     public static final int LIMIT_MAX_UPLOAD_SIZE = 2 * LIMIT_MAX_MESSAGE_SIZE;
+    // max number of queued messages written in a single transaction when message storage is coalesced
+    public static final int LIMIT_MAX_MESSAGES_PER_TRANSACTION = 100;
+    // max number of threads used to upload a backlog that holds batches for more than one MPID
+    public static final int LIMIT_MAX_MPID_UPLOAD_THREADS = 8;
+    // number of messages in each upload lane packaged per upload, unless an upload policy adapts it
+    public static final int DEFAULT_UPLOAD_BATCH_SIZE = 100;
+    // max number of messages in each upload lane packaged per upload when an upload policy is set
+    public static final int LIMIT_MAX_UPLOAD_BATCH_SIZE = 1000;
 
     public final static String GODADDY_INTERMEDIATE_CRT = "-----BEGIN CERTIFICATE-----\n" +
             "MIIE0DCCA7igAwIBAgIBBzANBgkqhkiG9w0BAQsFADCBgzELMAkGA1UEBhMCVVMx\n" +
@@ -499,6 +507,10 @@ public class Constants {
         String MPID = "mp::mpid::identity";
         String CRASHED_IN_FOREGROUND = "mp::crashed_in_foreground";
         String NEXT_REQUEST_TIME = "mp::next_valid_request_time";
+        String BACKOFF_FAILURES = "mp::backoff::failures";
+        String BACKOFF_DELAY = "mp::backoff::delay";
+        String BACKOFF_FAILED_AT = "mp::backoff::failed_at";
+        String BACKOFF_THROTTLED = "mp::backoff::throttled";
         String EVENT_COUNTER = "mp::events::counter";
         String API_KEY = "mp::config::apikey";
         String API_SECRET = "mp::config::apisecret";
@@ -528,6 +540,21 @@ public class Constants {
         int UPLOADED = 3;
     }
 
+    /**
+     * The upload lanes of messages and upload batches. Higher lanes are packaged and uploaded first.
+     */
+    public interface MessagePriority {
+        /**
+         * Messages which trigger an immediate upload, see ConfigManager.shouldTrigger().
+         */
+        int CRITICAL = 2;
+        int NORMAL = 1;
+        /**
+         * Screen views, breadcrumbs and network performance messages, and session history.
+         */
+        int BULK = 0;
+    }
+
     public interface StateTransitionType {
         String STATE_TRANS_INIT = "app_init";
         String STATE_TRANS_EXIT = "app_exit";
@@ -25,6 +25,7 @@ public interface CoreCallbacks {
     Uri getLaunchUri();
     String getLaunchAction();
     void replayAndDisableQueue();
+    int getKitDispatchQueueSize();
     KitListener getKitListener();
 
     interface KitListener {
@@ -35,6 +36,7 @@ public interface CoreCallbacks {
         void kitStarted(int kitId);
         void onKitApiCalled(int kitId, Boolean used, Object... objects);
         void onKitApiCalled(String methodName, int kitId, Boolean used, Object... objects);
+        void kitInvocationStats(KitInvocationStats stats);
 
         KitListener EMPTY = new KitListener() {
             public void kitFound(int kitId) {}
@@ -43,6 +45,7 @@ public interface CoreCallbacks {
             public void kitStarted(int kitId) { }
             public void onKitApiCalled(int kitId, Boolean used, Object... objects) { }
             public void onKitApiCalled(String methodName, int kitId, Boolean used, Object... objects) { }
+            public void kitInvocationStats(KitInvocationStats stats) { }
         };
     }
 }
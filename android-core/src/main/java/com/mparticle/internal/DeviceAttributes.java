@@ -52,7 +52,7 @@ public class DeviceAttributes {
      */
     public JSONObject getStaticApplicationInfo(Context appContext) {
         JSONObject attributes = new JSONObject();
-        SharedPreferences preferences = appContext.getSharedPreferences(Constants.PREFS_FILE, Context.MODE_PRIVATE);
+        SharedPreferences preferences = KeyValueStore.getSharedPreferences(appContext, Constants.PREFS_FILE);
         SharedPreferences.Editor editor = preferences.edit();
         try {
             long now = System.currentTimeMillis();
@@ -132,7 +132,7 @@ public class DeviceAttributes {
     }
 
     void updateInstallReferrer(Context context, JSONObject attributes) {
-        SharedPreferences preferences = context.getSharedPreferences(Constants.PREFS_FILE, Context.MODE_PRIVATE);
+        SharedPreferences preferences = KeyValueStore.getSharedPreferences(context, Constants.PREFS_FILE);
         try {
             attributes.put(MessageKey.INSTALL_REFERRER, preferences.getString(Constants.PrefKeys.INSTALL_REFERRER, null));
         }
@@ -0,0 +1,133 @@
+package com.mparticle.internal;
+
+import android.content.Context;
+import android.telephony.TelephonyManager;
+
+/**
+ * Samples the parts of each message's state info which are expensive to query - disk space,
+ * system memory, GPS, orientation and network type. Samples are reused until they are older than
+ * the sampling interval, or until {@link #invalidate()} is called when one of the values is known
+ * to have changed.
+ */
+public class DeviceStateSampler {
+    public static final int DEFAULT_SAMPLING_INTERVAL_MILLIS = 10 * 1000;
+
+    private final Context mContext;
+    private final long mSamplingIntervalMillis;
+    private TelephonyManager mTelephonyManager;
+    private volatile Snapshot mSnapshot;
+
+    /**
+     * @param samplingIntervalMillis how long a sample is reused for, 0 to sample for every message
+     */
+    public DeviceStateSampler(Context context, long samplingIntervalMillis) {
+        mContext = context;
+        mSamplingIntervalMillis = samplingIntervalMillis;
+    }
+
+    /**
+     * Get the current sample, taking a new one if the previous sample is stale.
+     *
+     * @param includeDisk whether the sample needs to include available disk space
+     */
+    public Snapshot getSnapshot(boolean includeDisk) {
+        Snapshot snapshot = mSnapshot;
+        long now = now();
+        if (snapshot == null || (includeDisk && !snapshot.hasDisk) || now - snapshot.sampledAt >= mSamplingIntervalMillis) {
+            snapshot = sample(includeDisk, now);
+            mSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Discard the current sample, so that the next message will take a new one.
+     */
+    public void invalidate() {
+        mSnapshot = null;
+    }
+
+    Snapshot sample(boolean includeDisk, long now) {
+        long availableDisk = 0;
+        long availableExternalDisk = 0;
+        if (includeDisk) {
+            availableDisk = MPUtility.getAvailableInternalDisk(mContext);
+            availableExternalDisk = MPUtility.getAvailableExternalDisk(mContext);
+        }
+        return new Snapshot(now,
+                includeDisk,
+                availableDisk,
+                availableExternalDisk,
+                MPUtility.getAvailableMemory(mContext),
+                MPUtility.isSystemMemoryLow(mContext),
+                MPUtility.getGpsEnabled(mContext),
+                MPUtility.getOrientation(mContext),
+                MPUtility.getNetworkType(mContext, getTelephonyManager()));
+    }
+
+    long now() {
+        return MPUtility.millitime();
+    }
+
+    private TelephonyManager getTelephonyManager() {
+        if (mTelephonyManager == null) {
+            mTelephonyManager = (TelephonyManager) mContext.getSystemService(Context.TELEPHONY_SERVICE);
+        }
+        return mTelephonyManager;
+    }
+
+    public static final class Snapshot {
+        private final long sampledAt;
+        private final boolean hasDisk;
+        private final long availableDisk;
+        private final long availableExternalDisk;
+        private final long availableMemory;
+        private final boolean memoryLow;
+        private final String gpsEnabled;
+        private final int orientation;
+        private final Integer networkType;
+
+        Snapshot(long sampledAt, boolean hasDisk, long availableDisk, long availableExternalDisk, long availableMemory, boolean memoryLow, String gpsEnabled, int orientation, Integer networkType) {
+            this.sampledAt = sampledAt;
+            this.hasDisk = hasDisk;
+            this.availableDisk = availableDisk;
+            this.availableExternalDisk = availableExternalDisk;
+            this.availableMemory = availableMemory;
+            this.memoryLow = memoryLow;
+            this.gpsEnabled = gpsEnabled;
+            this.orientation = orientation;
+            this.networkType = networkType;
+        }
+
+        public long getAvailableDisk() {
+            return availableDisk;
+        }
+
+        public long getAvailableExternalDisk() {
+            return availableExternalDisk;
+        }
+
+        public long getAvailableMemory() {
+            return availableMemory;
+        }
+
+        public boolean isMemoryLow() {
+            return memoryLow;
+        }
+
+        /**
+         * @return "true" or "false", or null if the app does not have the location permission
+         */
+        public String getGpsEnabled() {
+            return gpsEnabled;
+        }
+
+        public int getOrientation() {
+            return orientation;
+        }
+
+        public Integer getNetworkType() {
+            return networkType;
+        }
+    }
+}
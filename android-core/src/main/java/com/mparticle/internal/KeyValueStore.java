@@ -0,0 +1,855 @@
+package com.mparticle.internal;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * A single file which holds all of the SDK's key-value data, in place of the separate
+ * SharedPreferences files for the SDK, the ConfigManager and each MPID. Each of those files becomes
+ * a namespace in the store, and is exposed through the SharedPreferences interface, so callers do not
+ * need to know which storage is in use - they should always go through {@link #getSharedPreferences(Context, String)}.
+ *
+ * The whole store is read once, when it is first used. Edits are applied in memory straight away, and
+ * appended to the file in batches on a background thread, so unlike SharedPreferences#apply() they are
+ * never waited on when an Activity pauses. The file is compacted once it holds mostly stale records.
+ *
+ * The store is only used once it has been enabled with {@link #setEnabled(Context, boolean)}. Each
+ * SharedPreferences file is imported the first time its namespace is opened, and when the store is
+ * disabled again the namespaces are written back to their SharedPreferences files.
+ */
+public class KeyValueStore {
+    static final String FILE_NAME = "mp_kv_store";
+    /**
+     * Reserved namespace, recording which SharedPreferences files have been imported.
+     */
+    static final String IMPORTED_NAMESPACES = "mp::kv::imported";
+    private static final int MAGIC = 0x6d706b76;
+    private static final int VERSION = 1;
+    private static final int MIN_COMPACTION_RECORDS = 512;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_CLEAR = 3;
+
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_FLOAT = 4;
+    private static final byte TYPE_BOOLEAN = 5;
+    private static final byte TYPE_STRING_SET = 6;
+
+    //read on every SharedPreferences call, so only the first load takes the lock
+    private static volatile boolean sInitialized;
+    private static volatile KeyValueStore sInstance;
+
+    private final Context mContext;
+    private final File mFile;
+    /**
+     * Guards the in-memory values and the pending records.
+     */
+    private final Object mLock = new Object();
+    /**
+     * Guards the file.
+     */
+    private final Object mFileLock = new Object();
+    private final Map<String, Map<String, Object>> mValues = new HashMap<String, Map<String, Object>>();
+    private final Map<String, Namespace> mNamespaces = new HashMap<String, Namespace>();
+    private ByteArrayOutputStream mPendingBytes = new ByteArrayOutputStream();
+    private DataOutputStream mPending = new DataOutputStream(mPendingBytes);
+    private int mPendingRecords;
+    private int mFileRecords;
+    private boolean mFlushScheduled;
+    private ThreadPoolExecutor mWriter;
+
+    /**
+     * Get the SharedPreferences for the given file name. The store may be enabled, disabled or deleted
+     * while the result is held, so each call on it goes to the store if it is enabled at the time,
+     * otherwise to the Context's SharedPreferences.
+     */
+    @NonNull
+    public static SharedPreferences getSharedPreferences(@NonNull Context context, @NonNull String name) {
+        return new ActivePreferences(context, name);
+    }
+
+    @NonNull
+    static SharedPreferences getActiveSharedPreferences(@NonNull Context context, @NonNull String name) {
+        KeyValueStore store = getInstance(context);
+        if (store != null) {
+            return store.getNamespace(name);
+        }
+        return context.getSharedPreferences(name, Context.MODE_PRIVATE);
+    }
+
+    public static boolean isEnabled(@NonNull Context context) {
+        return getInstance(context) != null;
+    }
+
+    /**
+     * Start or stop using the store. When the store is disabled, its contents are written back
+     * to SharedPreferences and the store is deleted.
+     */
+    public static synchronized void setEnabled(@NonNull Context context, boolean enabled) {
+        KeyValueStore store = getInstance(context);
+        if (enabled && store == null) {
+            File file = getFile(context);
+            if (file != null) {
+                try {
+                    sInstance = new KeyValueStore(context, file);
+                } catch (IOException e) {
+                    Logger.error(e, "Unable to create key-value store, using SharedPreferences.");
+                }
+            }
+        } else if (!enabled && store != null) {
+            store.export();
+            store.delete();
+            sInstance = null;
+        }
+    }
+
+    /**
+     * Delete the store, if it exists, along with all of its data.
+     */
+    public static synchronized void delete(@NonNull Context context) {
+        KeyValueStore store = getInstance(context);
+        if (store != null) {
+            store.delete();
+            sInstance = null;
+        }
+    }
+
+    private static KeyValueStore getInstance(Context context) {
+        if (sInitialized) {
+            return sInstance;
+        }
+        synchronized (KeyValueStore.class) {
+            if (!sInitialized) {
+                try {
+                    File file = getFile(context);
+                    if (file != null && file.exists()) {
+                        sInstance = new KeyValueStore(context, file);
+                    }
+                } catch (IOException e) {
+                    Logger.error(e, "Unable to load key-value store, using SharedPreferences.");
+                } finally {
+                    sInitialized = true;
+                }
+            }
+            return sInstance;
+        }
+    }
+
+    @Nullable
+    private static File getFile(Context context) {
+        File filesDir = context.getFilesDir();
+        return filesDir == null ? null : new File(filesDir, FILE_NAME);
+    }
+
+    KeyValueStore(Context context, File file) throws IOException {
+        mContext = context;
+        mFile = file;
+        load();
+    }
+
+    SharedPreferences getNamespace(String name) {
+        synchronized (mLock) {
+            Namespace namespace = mNamespaces.get(name);
+            if (namespace == null) {
+                Map<String, Object> imported = mValues.get(IMPORTED_NAMESPACES);
+                if (imported == null || !imported.containsKey(name)) {
+                    importNamespace(name);
+                }
+                namespace = new Namespace(name);
+                mNamespaces.put(name, namespace);
+            }
+            return namespace;
+        }
+    }
+
+    /**
+     * Write any pending edits to the file.
+     * @return false if the edits could not be written
+     */
+    boolean flush() {
+        synchronized (mFileLock) {
+            byte[] batch;
+            int records;
+            synchronized (mLock) {
+                mFlushScheduled = false;
+                if (mPendingRecords == 0) {
+                    return true;
+                }
+                batch = mPendingBytes.toByteArray();
+                records = mPendingRecords;
+                mPendingBytes = new ByteArrayOutputStream();
+                mPending = new DataOutputStream(mPendingBytes);
+                mPendingRecords = 0;
+            }
+            try {
+                if (!mFile.exists()) {
+                    //the store was deleted
+                    return false;
+                }
+                FileOutputStream outputStream = new FileOutputStream(mFile, true);
+                try {
+                    DataOutputStream out = new DataOutputStream(outputStream);
+                    writeFrame(out, batch);
+                    out.flush();
+                } finally {
+                    outputStream.close();
+                }
+                mFileRecords += records;
+                if (mFileRecords > MIN_COMPACTION_RECORDS && mFileRecords > 2 * countValues()) {
+                    compact();
+                }
+                return true;
+            } catch (IOException e) {
+                Logger.error(e, "Failed to write to key-value store.");
+                return false;
+            }
+        }
+    }
+
+    private void scheduleFlush() {
+        synchronized (mLock) {
+            if (mFlushScheduled) {
+                return;
+            }
+            mFlushScheduled = true;
+            if (mWriter == null) {
+                mWriter = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "mParticleKeyValueStore");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+                mWriter.allowCoreThreadTimeOut(true);
+            }
+        }
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        });
+    }
+
+    private void load() throws IOException {
+        synchronized (mFileLock) {
+            if (!mFile.exists() || mFile.length() == 0) {
+                compact();
+                return;
+            }
+            boolean rewrite = false;
+            //bytes left after the magic number and version
+            long remaining = mFile.length() - 8;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    Logger.warning("Unrecognized key-value store, discarding it.");
+                    rewrite = true;
+                } else {
+                    while (true) {
+                        int length;
+                        try {
+                            length = in.readInt();
+                        } catch (EOFException e) {
+                            break;
+                        }
+                        //a torn or corrupt length is treated like any other incomplete write
+                        remaining -= 8;
+                        if (length < 0 || length > remaining) {
+                            throw new IOException("Invalid batch length: " + length);
+                        }
+                        remaining -= length;
+                        byte[] batch = new byte[length];
+                        long crc = in.readInt() & 0xffffffffL;
+                        in.readFully(batch);
+                        if (crc != crc(batch)) {
+                            throw new IOException("Checksum mismatch");
+                        }
+                        mFileRecords += replay(batch);
+                    }
+                }
+            } catch (IOException e) {
+                //A write was interrupted, keep everything up to the last complete batch.
+                Logger.warning("Key-value store is incomplete, discarding the last write.");
+                rewrite = true;
+            } finally {
+                in.close();
+            }
+            if (rewrite) {
+                compact();
+            }
+        }
+    }
+
+    /**
+     * Rewrite the file as a single batch holding the current values.
+     */
+    private void compact() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream records = new DataOutputStream(bytes);
+        int count = 0;
+        synchronized (mLock) {
+            for (Map.Entry<String, Map<String, Object>> namespace : mValues.entrySet()) {
+                for (Map.Entry<String, Object> value : namespace.getValue().entrySet()) {
+                    writePut(records, namespace.getKey(), value.getKey(), value.getValue());
+                    count++;
+                }
+            }
+        }
+        File temp = new File(mFile.getPath() + ".tmp");
+        FileOutputStream outputStream = new FileOutputStream(temp);
+        try {
+            DataOutputStream out = new DataOutputStream(outputStream);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            if (count > 0) {
+                writeFrame(out, bytes.toByteArray());
+            }
+            out.flush();
+            outputStream.getFD().sync();
+        } finally {
+            outputStream.close();
+        }
+        if (!temp.renameTo(mFile)) {
+            throw new IOException("Unable to replace " + mFile.getPath());
+        }
+        mFileRecords = count;
+    }
+
+    private void importNamespace(String name) {
+        Map<String, ?> legacyValues = mContext.getSharedPreferences(name, Context.MODE_PRIVATE).getAll();
+        Map<String, Object> values = getValues(name);
+        try {
+            if (legacyValues != null) {
+                for (Map.Entry<String, ?> entry : legacyValues.entrySet()) {
+                    Object value = copy(entry.getValue());
+                    if (value != null) {
+                        values.put(entry.getKey(), value);
+                        writePut(mPending, name, entry.getKey(), value);
+                        mPendingRecords++;
+                    }
+                }
+            }
+            getValues(IMPORTED_NAMESPACES).put(name, Boolean.TRUE);
+            writePut(mPending, IMPORTED_NAMESPACES, name, Boolean.TRUE);
+            mPendingRecords++;
+        } catch (IOException e) {
+            //not possible when writing to memory
+        }
+        scheduleFlush();
+    }
+
+    private void export() {
+        synchronized (mLock) {
+            for (Map.Entry<String, Map<String, Object>> namespace : mValues.entrySet()) {
+                if (IMPORTED_NAMESPACES.equals(namespace.getKey())) {
+                    continue;
+                }
+                SharedPreferences.Editor editor = mContext.getSharedPreferences(namespace.getKey(), Context.MODE_PRIVATE).edit().clear();
+                for (Map.Entry<String, Object> value : namespace.getValue().entrySet()) {
+                    put(editor, value.getKey(), value.getValue());
+                }
+                editor.commit();
+            }
+        }
+    }
+
+    private void delete() {
+        synchronized (mFileLock) {
+            synchronized (mLock) {
+                mValues.clear();
+                mNamespaces.clear();
+                mPendingBytes.reset();
+                mPendingRecords = 0;
+            }
+            if (mFile.exists() && !mFile.delete()) {
+                Logger.warning("Unable to delete key-value store.");
+            }
+        }
+    }
+
+    private int replay(byte[] batch) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(batch));
+        int records = 0;
+        while (in.available() > 0) {
+            byte op = in.readByte();
+            String namespace = readString(in);
+            switch (op) {
+                case OP_PUT:
+                    String key = readString(in);
+                    getValues(namespace).put(key, readValue(in));
+                    break;
+                case OP_REMOVE:
+                    getValues(namespace).remove(readString(in));
+                    break;
+                case OP_CLEAR:
+                    getValues(namespace).clear();
+                    break;
+                default:
+                    throw new IOException("Unknown operation: " + op);
+            }
+            records++;
+        }
+        return records;
+    }
+
+    private Map<String, Object> getValues(String namespace) {
+        Map<String, Object> values = mValues.get(namespace);
+        if (values == null) {
+            values = new HashMap<String, Object>();
+            mValues.put(namespace, values);
+        }
+        return values;
+    }
+
+    private int countValues() {
+        synchronized (mLock) {
+            int count = 0;
+            for (Map<String, Object> values : mValues.values()) {
+                count += values.size();
+            }
+            return count;
+        }
+    }
+
+    private static void writeFrame(DataOutputStream out, byte[] batch) throws IOException {
+        out.writeInt(batch.length);
+        out.writeInt((int) crc(batch));
+        out.write(batch);
+    }
+
+    private static long crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+
+    private static void writePut(DataOutputStream out, String namespace, String key, Object value) throws IOException {
+        out.writeByte(OP_PUT);
+        writeString(out, namespace);
+        writeString(out, key);
+        if (value instanceof String) {
+            out.writeByte(TYPE_STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Set) {
+            Set<?> set = (Set<?>) value;
+            out.writeByte(TYPE_STRING_SET);
+            out.writeInt(set.size());
+            for (Object item : set) {
+                writeString(out, (String) item);
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported value: " + value);
+        }
+    }
+
+    private static void writeRemove(DataOutputStream out, String namespace, String key) throws IOException {
+        out.writeByte(OP_REMOVE);
+        writeString(out, namespace);
+        writeString(out, key);
+    }
+
+    private static void writeClear(DataOutputStream out, String namespace) throws IOException {
+        out.writeByte(OP_CLEAR);
+        writeString(out, namespace);
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_STRING:
+                return readString(in);
+            case TYPE_INT:
+                return in.readInt();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_FLOAT:
+                return in.readFloat();
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_STRING_SET:
+                int size = in.readInt();
+                //each string takes at least 4 bytes
+                if (size < 0 || size > in.available() / 4) {
+                    throw new IOException("Invalid set size: " + size);
+                }
+                Set<String> set = new HashSet<String>(size);
+                for (int i = 0; i < size; i++) {
+                    set.add(readString(in));
+                }
+                return Collections.unmodifiableSet(set);
+            default:
+                throw new IOException("Unknown value type: " + type);
+        }
+    }
+
+    /**
+     * DataOutputStream#writeUTF is limited to 64KB, which is not enough for some of the values the SDK stores.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Records are always read from an in-memory batch, so available() is the exact number of bytes left.
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Invalid string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static Object copy(Object value) {
+        if (value instanceof Set) {
+            Set<String> set = new HashSet<String>();
+            for (Object item : (Set<?>) value) {
+                set.add((String) item);
+            }
+            return Collections.unmodifiableSet(set);
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void put(SharedPreferences.Editor editor, String key, Object value) {
+        if (value instanceof String) {
+            editor.putString(key, (String) value);
+        } else if (value instanceof Integer) {
+            editor.putInt(key, (Integer) value);
+        } else if (value instanceof Long) {
+            editor.putLong(key, (Long) value);
+        } else if (value instanceof Float) {
+            editor.putFloat(key, (Float) value);
+        } else if (value instanceof Boolean) {
+            editor.putBoolean(key, (Boolean) value);
+        } else if (value instanceof Set) {
+            editor.putStringSet(key, (Set<String>) value);
+        }
+    }
+
+    /**
+     * Resolves the SharedPreferences for its file name on every call, so that a reference held
+     * across {@link #setEnabled(Context, boolean)} or {@link #delete(Context)} never reads or writes
+     * a store that is no longer in use. An Editor, and a registered listener, belong to the
+     * SharedPreferences that were active when they were created.
+     */
+    private static class ActivePreferences implements SharedPreferences {
+        private final Context mContext;
+        private final String mName;
+
+        ActivePreferences(Context context, String name) {
+            mContext = context;
+            mName = name;
+        }
+
+        private SharedPreferences resolve() {
+            return getActiveSharedPreferences(mContext, mName);
+        }
+
+        @Override
+        public Map<String, ?> getAll() {
+            return resolve().getAll();
+        }
+
+        @Nullable
+        @Override
+        public String getString(String key, @Nullable String defValue) {
+            return resolve().getString(key, defValue);
+        }
+
+        @Nullable
+        @Override
+        public Set<String> getStringSet(String key, @Nullable Set<String> defValues) {
+            return resolve().getStringSet(key, defValues);
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            return resolve().getInt(key, defValue);
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            return resolve().getLong(key, defValue);
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            return resolve().getFloat(key, defValue);
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            return resolve().getBoolean(key, defValue);
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return resolve().contains(key);
+        }
+
+        @Override
+        public Editor edit() {
+            return resolve().edit();
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+            resolve().registerOnSharedPreferenceChangeListener(listener);
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+            resolve().unregisterOnSharedPreferenceChangeListener(listener);
+        }
+    }
+
+    private class Namespace implements SharedPreferences {
+        private final String mName;
+        private final List<OnSharedPreferenceChangeListener> mListeners = new CopyOnWriteArrayList<OnSharedPreferenceChangeListener>();
+
+        Namespace(String name) {
+            mName = name;
+        }
+
+        private Object get(String key) {
+            synchronized (mLock) {
+                Map<String, Object> values = mValues.get(mName);
+                return values == null ? null : values.get(key);
+            }
+        }
+
+        @Override
+        public Map<String, ?> getAll() {
+            synchronized (mLock) {
+                Map<String, Object> values = mValues.get(mName);
+                return values == null ? new HashMap<String, Object>() : new HashMap<String, Object>(values);
+            }
+        }
+
+        @Nullable
+        @Override
+        public String getString(String key, @Nullable String defValue) {
+            String value = (String) get(key);
+            return value != null ? value : defValue;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Nullable
+        @Override
+        public Set<String> getStringSet(String key, @Nullable Set<String> defValues) {
+            Set<String> value = (Set<String>) get(key);
+            return value != null ? value : defValues;
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            Integer value = (Integer) get(key);
+            return value != null ? value : defValue;
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            Long value = (Long) get(key);
+            return value != null ? value : defValue;
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            Float value = (Float) get(key);
+            return value != null ? value : defValue;
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            Boolean value = (Boolean) get(key);
+            return value != null ? value : defValue;
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Editor edit() {
+            return new NamespaceEditor(this);
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+            mListeners.add(listener);
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+            mListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Like the platform's Editor, changes are only visible once they are applied or committed, and
+     * a clear() is applied before any other changes in the same edit.
+     */
+    private class NamespaceEditor implements SharedPreferences.Editor {
+        private final Namespace mNamespace;
+        private final Map<String, Object> mModified = new HashMap<String, Object>();
+        private boolean mClear;
+
+        NamespaceEditor(Namespace namespace) {
+            mNamespace = namespace;
+        }
+
+        private SharedPreferences.Editor set(String key, Object value) {
+            synchronized (this) {
+                //a null value removes the key, and the editor itself marks a removal
+                mModified.put(key, value == null ? this : value);
+            }
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putString(String key, @Nullable String value) {
+            return set(key, value);
+        }
+
+        @Override
+        public SharedPreferences.Editor putStringSet(String key, @Nullable Set<String> values) {
+            return set(key, copy(values));
+        }
+
+        @Override
+        public SharedPreferences.Editor putInt(String key, int value) {
+            return set(key, value);
+        }
+
+        @Override
+        public SharedPreferences.Editor putLong(String key, long value) {
+            return set(key, value);
+        }
+
+        @Override
+        public SharedPreferences.Editor putFloat(String key, float value) {
+            return set(key, value);
+        }
+
+        @Override
+        public SharedPreferences.Editor putBoolean(String key, boolean value) {
+            return set(key, value);
+        }
+
+        @Override
+        public SharedPreferences.Editor remove(String key) {
+            return set(key, null);
+        }
+
+        @Override
+        public synchronized SharedPreferences.Editor clear() {
+            mClear = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            write();
+            return flush();
+        }
+
+        @Override
+        public void apply() {
+            write();
+            scheduleFlush();
+        }
+
+        private void write() {
+            List<String> changedKeys = new ArrayList<String>();
+            synchronized (this) {
+                synchronized (mLock) {
+                    String name = mNamespace.mName;
+                    Map<String, Object> values = getValues(name);
+                    try {
+                        if (mClear) {
+                            changedKeys.addAll(values.keySet());
+                            values.clear();
+                            writeClear(mPending, name);
+                            mPendingRecords++;
+                            mClear = false;
+                        }
+                        for (Map.Entry<String, Object> entry : mModified.entrySet()) {
+                            String key = entry.getKey();
+                            Object value = entry.getValue();
+                            if (value == this) {
+                                if (values.remove(key) == null) {
+                                    continue;
+                                }
+                                writeRemove(mPending, name, key);
+                            } else {
+                                values.put(key, value);
+                                writePut(mPending, name, key, value);
+                            }
+                            mPendingRecords++;
+                            changedKeys.add(key);
+                        }
+                    } catch (IOException e) {
+                        //not possible when writing to memory
+                    }
+                    mModified.clear();
+                }
+            }
+            for (SharedPreferences.OnSharedPreferenceChangeListener listener : mNamespace.mListeners) {
+                for (String key : changedKeys) {
+                    listener.onSharedPreferenceChanged(mNamespace, key);
+                }
+            }
+        }
+    }
+}
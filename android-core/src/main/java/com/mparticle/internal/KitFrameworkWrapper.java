@@ -35,6 +35,7 @@ public class KitFrameworkWrapper implements KitManager {
     final CoreCallbacks mCoreCallbacks;
     private final ReportingManager mReportingManager;
     private final BackgroundTaskHandler mBackgroundTaskHandler;
+    private final int mKitDispatchQueueSize;
     KitManager mKitManager;
     private volatile boolean frameworkLoadAttempted = false;
     private static volatile boolean kitsLoaded = false;
@@ -49,10 +50,15 @@ public class KitFrameworkWrapper implements KitManager {
     }
 
     public KitFrameworkWrapper(Context context, ReportingManager reportingManager, ConfigManager configManager, AppStateManager appStateManager, BackgroundTaskHandler backgroundTaskHandler, boolean testing) {
+        this(context, reportingManager, configManager, appStateManager, backgroundTaskHandler, testing, 0);
+    }
+
+    public KitFrameworkWrapper(Context context, ReportingManager reportingManager, ConfigManager configManager, AppStateManager appStateManager, BackgroundTaskHandler backgroundTaskHandler, boolean testing, int kitDispatchQueueSize) {
         this.mContext = testing ? context : new KitContext(context);
         this.mReportingManager = reportingManager;
         this.mCoreCallbacks = new CoreCallbacksImpl(this, configManager, appStateManager);
         this.mBackgroundTaskHandler = backgroundTaskHandler;
+        this.mKitDispatchQueueSize = kitDispatchQueueSize;
         kitsLoaded = false;
     }
 
@@ -561,6 +567,14 @@ public class KitFrameworkWrapper implements KitManager {
         return new TreeMap<Integer, AttributionResult>();
     }
 
+    @Override
+    public Map<Integer, KitInvocationStats> getKitInvocationStats() {
+        if (mKitManager != null) {
+            return mKitManager.getKitInvocationStats();
+        }
+        return new TreeMap<Integer, KitInvocationStats>();
+    }
+
     @Override
     public void onIdentifyCompleted(MParticleUser user, IdentityApiRequest request) {
         if (mKitManager != null) {
@@ -685,6 +699,11 @@ public class KitFrameworkWrapper implements KitManager {
             mKitFrameworkWrapper.replayAndDisableQueue();
         }
 
+        @Override
+        public int getKitDispatchQueueSize() {
+            return mKitFrameworkWrapper.mKitDispatchQueueSize;
+        }
+
         @Override
         public KitListener getKitListener() {
             return kitListener;
@@ -720,6 +739,11 @@ public class KitFrameworkWrapper implements KitManager {
             public void onKitApiCalled(String methodName, int kitId, Boolean used, Object... objects) {
                 InternalListenerManager.getListener().onKitApiCalled(methodName, kitId, used, objects);
             }
+
+            @Override
+            public void kitInvocationStats(KitInvocationStats stats) {
+                InternalListenerManager.getListener().onKitInvocationStats(stats.getKitId(), stats);
+            }
         };
     }
 }
\ No newline at end of file
@@ -0,0 +1,80 @@
+package com.mparticle.internal;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A snapshot of how long a kit has taken to handle the events, screen views, commerce events, user
+ * attributes and identity changes forwarded to it, since it was started.
+ * <p>
+ * Percentiles are approximate, they are accurate to within 1/8 of the reported value.
+ */
+public class KitInvocationStats {
+    private final int mKitId;
+    private final long mCount;
+    private final long mExceptionCount;
+    private final long mTotalNanos;
+    private final long mP50Nanos;
+    private final long mP95Nanos;
+    private final long mMaxNanos;
+
+    public KitInvocationStats(int kitId, long count, long exceptionCount, long totalNanos, long p50Nanos, long p95Nanos, long maxNanos) {
+        mKitId = kitId;
+        mCount = count;
+        mExceptionCount = exceptionCount;
+        mTotalNanos = totalNanos;
+        mP50Nanos = p50Nanos;
+        mP95Nanos = p95Nanos;
+        mMaxNanos = maxNanos;
+    }
+
+    public int getKitId() {
+        return mKitId;
+    }
+
+    /**
+     * @return the number of times the kit was invoked
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return the number of invocations which threw an exception
+     */
+    public long getExceptionCount() {
+        return mExceptionCount;
+    }
+
+    /**
+     * @return the total time spent in the kit, in nanoseconds
+     */
+    public long getTotalNanos() {
+        return mTotalNanos;
+    }
+
+    public long getP50Nanos() {
+        return mP50Nanos;
+    }
+
+    public long getP95Nanos() {
+        return mP95Nanos;
+    }
+
+    public long getMaxNanos() {
+        return mMaxNanos;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "KitInvocationStats{" +
+                "kitId=" + mKitId +
+                ", count=" + mCount +
+                ", exceptions=" + mExceptionCount +
+                ", totalNanos=" + mTotalNanos +
+                ", p50Nanos=" + mP50Nanos +
+                ", p95Nanos=" + mP95Nanos +
+                ", maxNanos=" + mMaxNanos +
+                '}';
+    }
+}
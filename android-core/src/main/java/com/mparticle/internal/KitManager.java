@@ -107,6 +107,8 @@ public interface KitManager {
 
     Map<Integer, AttributionResult> getAttributionResults();
 
+    Map<Integer, KitInvocationStats> getKitInvocationStats();
+
     void onIdentifyCompleted(MParticleUser user, IdentityApiRequest request);
 
     void onLoginCompleted(MParticleUser user, IdentityApiRequest request);
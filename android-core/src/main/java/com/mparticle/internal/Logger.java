@@ -29,6 +29,14 @@ public class Logger {
         return sMinLogLevel;
     }
 
+    /**
+     * Whether a message at this level would be logged by the current log handler. Useful to avoid
+     * building log messages which are expensive to create.
+     */
+    public static boolean isLoggable(LogLevel logLevel) {
+        return getLogHandler().isLoggable(logLevel.logLevel);
+    }
+
     public static void verbose(String... messages) {
         verbose(null, messages);
     }
@@ -117,7 +125,7 @@ public class Logger {
             }
         }
 
-        private boolean isLoggable(int logLevel) {
+        boolean isLoggable(int logLevel) {
             boolean isAPILoggable = logLevel >= Logger.sMinLogLevel.logLevel;
             boolean isADBLoggable;
 
@@ -35,12 +35,16 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.math.BigInteger;
@@ -53,10 +57,13 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
@@ -260,6 +267,32 @@ public class MPUtility {
         return asHex(sha256_HMAC.doFinal(data.getBytes("utf-8")));
     }
 
+    public static byte[] gzip(String data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(32, data.length() / 4));
+        Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), "UTF-8");
+        try {
+            writer.write(data);
+        } finally {
+            writer.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    public static String gunzip(byte[] data) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(data)), "UTF-8"));
+        try {
+            StringBuilder builder = new StringBuilder(data.length * 4);
+            char[] buffer = new char[4096];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                builder.append(buffer, 0, read);
+            }
+            return builder.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
     private static String asHex(byte[] buf) {
         char[] chars = new char[2 * buf.length];
         for (int i = 0; i < buf.length; ++i) {
@@ -414,8 +447,7 @@ public class MPUtility {
 
     public static String getOpenUDID(Context context) {
         if (sOpenUDID == null) {
-            SharedPreferences sharedPrefs = context.getSharedPreferences(
-                    Constants.PREFS_FILE, Context.MODE_PRIVATE);
+            SharedPreferences sharedPrefs = KeyValueStore.getSharedPreferences(context, Constants.PREFS_FILE);
             sOpenUDID = sharedPrefs.getString(Constants.PrefKeys.OPEN_UDID, null);
             if (sOpenUDID == null) {
                 sOpenUDID = getAndroidID(context);
@@ -431,8 +463,7 @@ public class MPUtility {
     }
 
     public static String getRampUdid(Context context) {
-        SharedPreferences sharedPrefs = context.getSharedPreferences(
-                    Constants.PREFS_FILE, Context.MODE_PRIVATE);
+        SharedPreferences sharedPrefs = KeyValueStore.getSharedPreferences(context, Constants.PREFS_FILE);
         String rampUdid = sharedPrefs.getString(Constants.PrefKeys.DEVICE_RAMP_UDID, null);
         if (rampUdid == null) {
             rampUdid = getGeneratedUdid();
@@ -501,20 +532,50 @@ public class MPUtility {
     }
 
     public static int mpHash(String input) {
-        int hash = 0;
+        return mpHash(0, input);
+    }
 
-        if (input == null || input.length() == 0)
+    /**
+     * Continue a hash with more input, so that mpHash(mpHash(a), b) == mpHash(a + b), and a hash of
+     * several concatenated strings can be built without concatenating them (the exception being
+     * lower case forms which depend on the next character, such as a final Greek sigma). Upper case ASCII is
+     * folded inline; the input is only copied when it contains other characters, or when the default
+     * locale does not lower case ASCII letters to ASCII.
+     */
+    public static int mpHash(int hash, String input) {
+        if (input == null) {
             return hash;
-
-        char[] chars = input.toLowerCase().toCharArray();
-
-        for (char c : chars) {
+        }
+        if (!isAsciiLowerCaseLocale()) {
+            return foldHash(hash, input.toLowerCase());
+        }
+        int start = hash;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c >= 0x80) {
+                //lower casing may depend on the surrounding characters, so start again with the whole input
+                return foldHash(start, input.toLowerCase());
+            }
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
             hash = ((hash << 5) - hash) + c;
         }
+        return hash;
+    }
 
+    private static int foldHash(int hash, String lowerCaseInput) {
+        for (int i = 0; i < lowerCaseInput.length(); i++) {
+            hash = ((hash << 5) - hash) + lowerCaseInput.charAt(i);
+        }
         return hash;
     }
 
+    private static boolean isAsciiLowerCaseLocale() {
+        String language = Locale.getDefault().getLanguage();
+        return !"tr".equals(language) && !"az".equals(language);
+    }
+
     public static boolean hasTelephony(Context context) {
         return context.getPackageManager().hasSystemFeature(PackageManager.FEATURE_TELEPHONY);
     }
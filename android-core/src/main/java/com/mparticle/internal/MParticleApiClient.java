@@ -17,6 +17,7 @@ public interface MParticleApiClient extends MParticleBaseClient {
     void fetchConfig() throws IOException, MParticleApiClientImpl.MPConfigException;
     void fetchConfig(boolean force) throws IOException, MParticleApiClientImpl.MPConfigException;
     int sendMessageBatch(String message) throws IOException, MParticleApiClientImpl.MPThrottleException, MParticleApiClientImpl.MPRampException;
+    int sendMessageBatch(String message, @Nullable byte[] gzippedMessage) throws IOException, MParticleApiClientImpl.MPThrottleException, MParticleApiClientImpl.MPRampException;
     JSONObject fetchAudiences();
     JSONObject getCookies();
     @NonNull
@@ -3,6 +3,8 @@ package com.mparticle.internal;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import androidx.annotation.Nullable;
+
 import com.mparticle.MParticle;
 import com.mparticle.SdkListener;
 import com.mparticle.internal.listeners.InternalListenerManager;
@@ -121,6 +123,10 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
      *             request will take place regardless of elapsed time
      */
     public void fetchConfig(boolean force) throws IOException, MPConfigException {
+        if (isBackingOff(Endpoint.CONFIG)) {
+            Logger.verbose("Config request deferred, backing off after a failed request.");
+            return;
+        }
         if (!force) {
             if (System.currentTimeMillis() - mConfigLastFetched > MIN_CONFIG_REQUEST_INTERVAL) {
                 mConfigLastFetched = System.currentTimeMillis();
@@ -171,6 +177,7 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
                 InternalListenerManager.getListener().onNetworkRequestFinished(SdkListener.Endpoint.CONFIG, connection.getURL().toString(), response, responseCode);
             }
             catch (Exception ex) {}
+            releaseConnection(connection);
             if (responseCode >= 200 && responseCode < 300) {
                 parseCookies(response);
 
@@ -211,6 +218,10 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
     public JSONObject fetchAudiences()  {
 
         JSONObject response = null;
+        if (isBackingOff(Endpoint.AUDIENCE)) {
+            Logger.debug("Segment request deferred, backing off after a failed request.");
+            return response;
+        }
         try {
             Logger.debug("Starting Segment Network request");
             MPConnection connection = getUrl(Endpoint.AUDIENCE).openConnection();
@@ -224,6 +235,7 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
                 Logger.error("Segment call forbidden: is Segmentation enabled for your account?");
             }
             response =  MPUtility.getJsonResponse(connection);
+            releaseConnection(connection);
             parseCookies(response);
 
         }catch (Exception e){
@@ -233,12 +245,19 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
     }
 
     public int sendMessageBatch(String message) throws IOException, MPThrottleException, MPRampException {
+        return sendMessageBatch(message, null);
+    }
+
+    /**
+     * @param message the batch, which is always needed to sign the request
+     * @param gzippedMessage the batch as stored in the uploads table, if it was stored gzipped. When
+     *                       present, these bytes are sent as the request body without recompressing.
+     */
+    public int sendMessageBatch(String message, @Nullable byte[] gzippedMessage) throws IOException, MPThrottleException, MPRampException {
         checkThrottleTime(Endpoint.EVENTS);
         checkRampValue();
-        if (mEventUrl == null){
-            mEventUrl = getUrl(Endpoint.EVENTS);
-        }
-        MPConnection connection = mEventUrl.openConnection();
+        MPUrl eventUrl = getEventUrl();
+        MPConnection connection = eventUrl.openConnection();
         connection.setConnectTimeout(mConfigManager.getConnectionTimeout());
         connection.setReadTimeout(mConfigManager.getConnectionTimeout());
         connection.setDoOutput(true);
@@ -258,16 +277,24 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
 
         addMessageSignature(connection, message);
 
-        logUpload(message);
-
-        try {
-            InternalListenerManager.getListener().onNetworkRequestStarted(SdkListener.Endpoint.EVENTS, connection.getURL().toString(), new JSONObject(message), message);
-        } catch (Exception e) { }
+        //Both of these parse the whole batch, so skip them unless someone is going to see the result.
+        if (Logger.isLoggable(MParticle.LogLevel.VERBOSE)) {
+            logUpload(message);
+        }
+        if (InternalListenerManager.isEnabled()) {
+            try {
+                InternalListenerManager.getListener().onNetworkRequestStarted(SdkListener.Endpoint.EVENTS, connection.getURL().toString(), new JSONObject(message), message);
+            } catch (Exception e) { }
+        }
 
-        makeUrlRequest(Endpoint.EVENTS, connection, message, true);
+        if (gzippedMessage != null) {
+            makeGzippedUrlRequest(Endpoint.EVENTS, connection, gzippedMessage, true);
+        } else {
+            makeUrlRequest(Endpoint.EVENTS, connection, message, true);
+        }
 
         Logger.verbose("Upload request attempt:\n" +
-                "URL- " + mEventUrl.toString());
+                "URL- " + eventUrl.toString());
 
         Logger.verbose(message);
 
@@ -290,6 +317,7 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
                 InternalListenerManager.getListener().onNetworkRequestFinished(SdkListener.Endpoint.EVENTS, connection.getURL().getFile(), new JSONObject().put(SdkListener.ERROR_MESSAGE, connection.getResponseMessage()), responseCode);
             } catch (Exception e) { }
         }
+        releaseConnection(connection);
         return connection.getResponseCode();
     }
     
@@ -298,10 +326,7 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
         checkThrottleTime(Endpoint.ALIAS);
         Logger.verbose("Identity alias request:\n" + message);
 
-        if (mAliasUrl == null) {
-            mAliasUrl = getUrl(Endpoint.ALIAS);
-        }
-        MPConnection connection = mAliasUrl.openConnection();
+        MPConnection connection = getAliasUrl().openConnection();
         connection.setConnectTimeout(mConfigManager.getConnectionTimeout());
         connection.setReadTimeout(mConfigManager.getConnectionTimeout());
         connection.setDoOutput(true);
@@ -332,10 +357,26 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
             }
             Logger.error("Alias Request failed- " + responseCode + ": " + error);
         }
+        releaseConnection(connection);
         InternalListenerManager.getListener().onNetworkRequestFinished(SdkListener.Endpoint.EVENTS, url, response, responseCode);
         return new AliasNetworkResponse(responseCode, error);
     }
 
+    //Batches may be uploaded concurrently, so the lazily created URLs and ramp number are guarded.
+    private synchronized MPUrl getEventUrl() throws MalformedURLException {
+        if (mEventUrl == null) {
+            mEventUrl = getUrl(Endpoint.EVENTS);
+        }
+        return mEventUrl;
+    }
+
+    private synchronized MPUrl getAliasUrl() throws MalformedURLException {
+        if (mAliasUrl == null) {
+            mAliasUrl = getUrl(Endpoint.ALIAS);
+        }
+        return mAliasUrl;
+    }
+
     private void logUpload(String message) {
         try {
             JSONObject messageJson = new JSONObject(message);
@@ -403,22 +444,27 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
     }
 
     void checkThrottleTime(Endpoint endpoint) throws MPThrottleException {
-        if (System.currentTimeMillis() < getNextRequestTime(endpoint)){
+        if (isBackingOff(endpoint)){
             throw new MPThrottleException();
         }
     }
 
     private void checkRampValue() throws MPRampException {
+        int deviceRampNumber = getDeviceRampNumber();
+        int currentRamp = mConfigManager.getCurrentRampValue();
+        if (currentRamp > 0 && currentRamp < 100 &&
+                deviceRampNumber > mConfigManager.getCurrentRampValue()){
+            throw new MPRampException();
+        }
+    }
+
+    private synchronized int getDeviceRampNumber() {
         if (mDeviceRampNumber == null){
             mDeviceRampNumber = MPUtility.hashFnv1A(MPUtility.getRampUdid(mContext).getBytes())
                     .mod(BigInteger.valueOf(100))
                     .intValue();
         }
-        int currentRamp = mConfigManager.getCurrentRampValue();
-        if (currentRamp > 0 && currentRamp < 100 &&
-                mDeviceRampNumber > mConfigManager.getCurrentRampValue()){
-            throw new MPRampException();
-        }
+        return mDeviceRampNumber;
     }
 
     private String getSupportedKitString(){
@@ -442,7 +488,7 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
         return sSupportedKits;
     }
 
-    public void setCookies(JSONObject serverCookies) {
+    public synchronized void setCookies(JSONObject serverCookies) {
         if (serverCookies != null) {
             try {
                 JSONObject localCookies = getCookies();
@@ -460,7 +506,7 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
         }
     }
 
-    public JSONObject getCookies()  {
+    public synchronized JSONObject getCookies()  {
         if (mCurrentCookies == null){
             String currentCookies = mConfigManager.getUserStorage().getCookies();
             if (MPUtility.isEmpty(currentCookies)) {
@@ -11,7 +11,10 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -22,6 +25,17 @@ import static com.mparticle.internal.Constants.MessageKey.DATA_PLAN_VERSION;
 
 public class MessageBatch extends JSONObject {
     private long messageLengthBytes;
+    private boolean containsSessionEnd;
+    /**
+     * Messages and session history messages are not part of the underlying JSONObject. They are
+     * held either as the already-serialized String they were stored as, or as a JSONObject when
+     * they need to be inspected before upload, and are spliced into the payload by {@link #toString()}.
+     * They can still be read, replaced and removed by key through the JSONObject methods, see
+     * {@link #opt(String)}, and are included in {@link #keys()}, {@link #length()}, {@link #names()}
+     * and {@link #toString(int)}.
+     */
+    private final List<Object> messages = new ArrayList<Object>();
+    private final List<Object> sessionHistoryMessages = new ArrayList<Object>();
 
     protected MessageBatch() {
         super();
@@ -102,23 +116,25 @@ public class MessageBatch extends JSONObject {
     }
 
     public void addSessionHistoryMessage(JSONObject message) {
-        try {
-            if (!has(Constants.MessageKey.HISTORY)) {
-                put(Constants.MessageKey.HISTORY, new JSONArray());
-            }
-            getJSONArray(Constants.MessageKey.HISTORY).put(message);
-        } catch (JSONException e) {
-        }
+        sessionHistoryMessages.add(message);
+    }
+
+    /**
+     * @param message a message in its serialized form, which will be written to the batch as-is
+     */
+    public void addSessionHistoryMessage(String message) {
+        sessionHistoryMessages.add(message);
     }
 
     public void addMessage(JSONObject message) {
-        try {
-            if (!has(Constants.MessageKey.MESSAGES)) {
-                put(Constants.MessageKey.MESSAGES, new JSONArray());
-            }
-            getJSONArray(Constants.MessageKey.MESSAGES).put(message);
-        } catch (JSONException e) {
-        }
+        messages.add(message);
+    }
+
+    /**
+     * @param message a message in its serialized form, which will be written to the batch as-is
+     */
+    public void addMessage(String message) {
+        messages.add(message);
     }
 
     public void addReportingMessage(JSONObject reportingMessage) {
@@ -163,20 +179,28 @@ public class MessageBatch extends JSONObject {
         }
     }
 
-    public JSONArray getSessionHistoryMessages() {
-        try {
-            return getJSONArray(Constants.MessageKey.HISTORY);
-        } catch (JSONException e) {
-            return null;
-        }
+    /**
+     * @return the session history messages which are held as JSONObjects, in the order they were added
+     */
+    public List<JSONObject> getParsedSessionHistoryMessages() {
+        return getParsed(sessionHistoryMessages);
     }
 
-    public JSONArray getMessages() {
-        try {
-            return getJSONArray(Constants.MessageKey.MESSAGES);
-        } catch (JSONException e) {
-            return null;
+    /**
+     * @return the messages which are held as JSONObjects, in the order they were added
+     */
+    public List<JSONObject> getParsedMessages() {
+        return getParsed(messages);
+    }
+
+    private static List<JSONObject> getParsed(List<Object> messages) {
+        List<JSONObject> parsed = new ArrayList<JSONObject>();
+        for (Object message : messages) {
+            if (message instanceof JSONObject) {
+                parsed.add((JSONObject) message);
+            }
         }
+        return parsed;
     }
 
     public void setIdentities(JSONArray identities) {
@@ -195,6 +219,167 @@ public class MessageBatch extends JSONObject {
         }
     }
 
+    /**
+     * The messages and session history messages are returned as a JSONArray built from the batch's
+     * current messages. Messages which are still held in their serialized form are parsed, and are
+     * held parsed from then on, so that changes made to the array's messages are uploaded.
+     */
+    @Override
+    public Object opt(String name) {
+        if (isMessagesKey(name)) {
+            return getMessagesArray(name);
+        }
+        return super.opt(name);
+    }
+
+    @Override
+    public Object get(String name) throws JSONException {
+        if (isMessagesKey(name)) {
+            JSONArray messagesArray = getMessagesArray(name);
+            if (messagesArray == null) {
+                throw new JSONException("No value for " + name);
+            }
+            return messagesArray;
+        }
+        return super.get(name);
+    }
+
+    @Override
+    public boolean has(String name) {
+        if (isMessagesKey(name)) {
+            return !getMessagesList(name).isEmpty();
+        }
+        return super.has(name);
+    }
+
+    /**
+     * Putting a JSONArray under the messages or session history key replaces the batch's messages
+     * with its elements, putting null removes them.
+     */
+    @Override
+    public JSONObject put(String name, Object value) throws JSONException {
+        if (isMessagesKey(name)) {
+            List<Object> messagesList = getMessagesList(name);
+            messagesList.clear();
+            if (value instanceof JSONArray) {
+                JSONArray messagesArray = (JSONArray) value;
+                for (int i = 0; i < messagesArray.length(); i++) {
+                    messagesList.add(messagesArray.get(i));
+                }
+            } else if (value != null) {
+                throw new JSONException("Value for " + name + " must be a JSONArray");
+            }
+            return this;
+        }
+        return super.put(name, value);
+    }
+
+    @Override
+    public Object remove(String name) {
+        if (isMessagesKey(name)) {
+            JSONArray messagesArray = getMessagesArray(name);
+            getMessagesList(name).clear();
+            return messagesArray;
+        }
+        return super.remove(name);
+    }
+
+    /**
+     * The keys are a snapshot, removing through the iterator does not change the batch.
+     */
+    @Override
+    public Iterator<String> keys() {
+        List<String> keys = new ArrayList<String>();
+        Iterator<String> headerKeys = super.keys();
+        while (headerKeys.hasNext()) {
+            keys.add(headerKeys.next());
+        }
+        if (!messages.isEmpty()) {
+            keys.add(Constants.MessageKey.MESSAGES);
+        }
+        if (!sessionHistoryMessages.isEmpty()) {
+            keys.add(Constants.MessageKey.HISTORY);
+        }
+        return keys.iterator();
+    }
+
+    @Override
+    public int length() {
+        int length = super.length();
+        if (!messages.isEmpty()) {
+            length++;
+        }
+        if (!sessionHistoryMessages.isEmpty()) {
+            length++;
+        }
+        return length;
+    }
+
+    @Override
+    public JSONArray names() {
+        JSONArray names = new JSONArray();
+        Iterator<String> keys = keys();
+        while (keys.hasNext()) {
+            names.put(keys.next());
+        }
+        return names.length() == 0 ? null : names;
+    }
+
+    /**
+     * Unlike {@link #toString()}, messages still held in their serialized form are parsed.
+     */
+    @Override
+    public String toString(int indentSpaces) throws JSONException {
+        JSONObject batch = new JSONObject();
+        Iterator<String> keys = keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            batch.put(key, opt(key));
+        }
+        return batch.toString(indentSpaces);
+    }
+
+    private static boolean isMessagesKey(String name) {
+        return Constants.MessageKey.MESSAGES.equals(name) || Constants.MessageKey.HISTORY.equals(name);
+    }
+
+    private List<Object> getMessagesList(String name) {
+        return Constants.MessageKey.MESSAGES.equals(name) ? messages : sessionHistoryMessages;
+    }
+
+    private JSONArray getMessagesArray(String name) {
+        List<Object> messagesList = getMessagesList(name);
+        if (messagesList.isEmpty()) {
+            return null;
+        }
+        JSONArray messagesArray = new JSONArray();
+        for (int i = 0; i < messagesList.size(); i++) {
+            Object message = messagesList.get(i);
+            if (message instanceof String) {
+                try {
+                    message = new JSONObject((String) message);
+                    messagesList.set(i, message);
+                } catch (JSONException e) {
+                    Logger.error(e, "Unable to parse message in batch.");
+                }
+            }
+            messagesArray.put(message);
+        }
+        return messagesArray;
+    }
+
+    /**
+     * Record that one of the batch's messages is a session end message, so that the upload can be
+     * recognized without reading it back.
+     */
+    public void setContainsSessionEnd(boolean containsSessionEnd) {
+        this.containsSessionEnd = containsSessionEnd;
+    }
+
+    public boolean containsSessionEnd() {
+        return containsSessionEnd;
+    }
+
     public long getMessageLengthBytes() {
         return messageLengthBytes;
     }
@@ -203,6 +388,52 @@ public class MessageBatch extends JSONObject {
         messageLengthBytes = messageLengthBytes + bytes;
     }
 
+    /**
+     * The header is copied into a plain JSONObject, so that it is serialized without the messages
+     * however the JSONObject implementation builds its string.
+     */
+    @Override
+    public String toString() {
+        JSONObject headerObject = new JSONObject();
+        Iterator<String> headerKeys = super.keys();
+        try {
+            while (headerKeys.hasNext()) {
+                String key = headerKeys.next();
+                headerObject.put(key, super.opt(key));
+            }
+        } catch (JSONException e) {
+            return null;
+        }
+        String header = headerObject.toString();
+        if (header == null || (messages.isEmpty() && sessionHistoryMessages.isEmpty())) {
+            return header;
+        }
+        StringBuilder builder = new StringBuilder(header.length() + (int) messageLengthBytes + 32);
+        builder.append(header, 0, header.length() - 1);
+        boolean first = header.length() <= 2;
+        first = appendMessages(builder, Constants.MessageKey.MESSAGES, messages, first);
+        appendMessages(builder, Constants.MessageKey.HISTORY, sessionHistoryMessages, first);
+        return builder.append('}').toString();
+    }
+
+    private static boolean appendMessages(StringBuilder builder, String key, List<Object> messages, boolean first) {
+        if (messages.isEmpty()) {
+            return first;
+        }
+        if (!first) {
+            builder.append(',');
+        }
+        builder.append(JSONObject.quote(key)).append(":[");
+        for (int i = 0; i < messages.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(messages.get(i).toString());
+        }
+        builder.append(']');
+        return false;
+    }
+
     private void addConsentStateJSON(JSONObject parentJSON, String key, ConsentInstance consentInstance) throws JSONException {
         JSONObject consentInstanceJSON = new JSONObject();
         parentJSON.put(key, consentInstanceJSON);
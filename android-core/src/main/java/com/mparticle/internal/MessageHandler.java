@@ -7,6 +7,7 @@ import android.os.Message;
 import com.mparticle.MParticle;
 import com.mparticle.internal.Constants.MessageKey;
 import com.mparticle.internal.Constants.MessageType;
+import com.mparticle.internal.database.MPDatabase;
 import com.mparticle.internal.database.services.MParticleDBManager;
 import com.mparticle.internal.database.tables.SessionTable;
 import com.mparticle.internal.messages.BaseMPMessage;
@@ -15,8 +16,10 @@ import com.mparticle.internal.messages.MPAliasMessage;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -42,29 +45,87 @@ import java.util.UUID;
     public static final int INSTALL_REFERRER_UPDATED = 13;
     public static final int CLEAR_MESSAGES_FOR_UPLOAD = 14;
     public static final int STORE_ALIAS_MESSAGE = 15;
+    public static final int STORE_PENDING_MESSAGES = 16;
 
     private final MessageManagerCallbacks mMessageManagerCallbacks;
     String mDataplanId;
     Integer mDataplanVersion;
 
+    /**
+     * When coalescing, a run of STORE_MESSAGE requests sent one after the other is captured in a
+     * single list, and posted as one STORE_PENDING_MESSAGES in place of the first of them. Any other
+     * message closes the run, so the STORE_MESSAGEs sent after it are stored after it is handled,
+     * just as they would have been without coalescing.
+     */
+    private final boolean mCoalesceMessages;
+    private final Object mPendingMessagesLock = new Object();
+    private List<BaseMPMessage> mPendingMessages;
+
     /**
      * for unit testing only
      */
     MessageHandler(MessageManagerCallbacks messageManager, Context context, MParticleDBManager dbManager, String dataplanId, Integer dataplanVersion) {
+        this(messageManager, context, dbManager, dataplanId, dataplanVersion, false);
+    }
+
+    /**
+     * for unit testing only
+     */
+    MessageHandler(MessageManagerCallbacks messageManager, Context context, MParticleDBManager dbManager, String dataplanId, Integer dataplanVersion, boolean coalesceMessages) {
         mMessageManagerCallbacks = messageManager;
         mContext = context;
         mMParticleDBManager = dbManager;
         mDataplanId = dataplanId;
         mDataplanVersion = dataplanVersion;
+        mCoalesceMessages = coalesceMessages;
     }
 
-    public MessageHandler(Looper looper, MessageManagerCallbacks messageManager, Context context, MParticleDBManager dbManager, String dataplanId, Integer dataplanVersion) {
+    public MessageHandler(Looper looper, MessageManagerCallbacks messageManager, Context context, MParticleDBManager dbManager, String dataplanId, Integer dataplanVersion, boolean coalesceMessages) {
         super(looper);
         mMessageManagerCallbacks = messageManager;
         mContext = context;
         mMParticleDBManager = dbManager;
         mDataplanId = dataplanId;
         mDataplanVersion = dataplanVersion;
+        mCoalesceMessages = coalesceMessages;
+    }
+
+    @Override
+    public boolean sendMessageAtTime(Message msg, long uptimeMillis) {
+        if (mCoalesceMessages && !isDisabled()) {
+            synchronized (mPendingMessagesLock) {
+                if (msg.what == STORE_MESSAGE && msg.obj instanceof BaseMPMessage) {
+                    if (mPendingMessages != null) {
+                        mPendingMessages.add((BaseMPMessage) msg.obj);
+                        return true;
+                    }
+                    mPendingMessages = new ArrayList<BaseMPMessage>();
+                    mPendingMessages.add((BaseMPMessage) msg.obj);
+                    msg.what = STORE_PENDING_MESSAGES;
+                    msg.obj = mPendingMessages;
+                } else {
+                    mPendingMessages = null;
+                }
+                //posted while holding the lock, so that no other message can be posted between the run's drain and its first message
+                return postMessageAtTime(msg, uptimeMillis);
+            }
+        }
+        return postMessageAtTime(msg, uptimeMillis);
+    }
+
+    /**
+     * Post a message to the Looper's queue, without coalescing it.
+     */
+    boolean postMessageAtTime(Message msg, long uptimeMillis) {
+        return super.sendMessageAtTime(msg, uptimeMillis);
+    }
+
+    @Override
+    public void disable(boolean disable) {
+        super.disable(disable);
+        synchronized (mPendingMessagesLock) {
+            mPendingMessages = null;
+        }
     }
 
     boolean databaseAvailable() {
@@ -103,6 +164,7 @@ import java.util.UUID;
                     if (MessageType.ERROR.equals(messageType)){
                         mMParticleDBManager.appendBreadcrumbs(message);
                     }
+                    mMessageManagerCallbacks.prioritize(message);
                     try {
                         mMParticleDBManager.insertMessage(mMessageManagerCallbacks.getApiKey(), message, mDataplanId, mDataplanVersion);
                     } catch (MParticleApiClientImpl.MPNoConfigException e) {
@@ -115,6 +177,18 @@ import java.util.UUID;
                     Logger.error(e, "Error saving message to mParticle DB.");
                 }
                 break;
+            case STORE_PENDING_MESSAGES:
+                List<BaseMPMessage> pendingMessages = (List<BaseMPMessage>) msg.obj;
+                synchronized (mPendingMessagesLock) {
+                    //close the run, if it is still open, so nothing is added to it while it is stored
+                    if (mPendingMessages == pendingMessages) {
+                        mPendingMessages = null;
+                    }
+                }
+                for (int i = 0; i < pendingMessages.size(); i += Constants.LIMIT_MAX_MESSAGES_PER_TRANSACTION) {
+                    storeMessages(pendingMessages.subList(i, Math.min(pendingMessages.size(), i + Constants.LIMIT_MAX_MESSAGES_PER_TRANSACTION)));
+                }
+                break;
             case INSTALL_REFERRER_UPDATED:
                 try {
                     mMParticleDBManager.updateSessionInstallReferrer((String) msg.obj, mMessageManagerCallbacks.getDeviceAttributes().getAppInfo(mContext, true));
@@ -251,6 +325,64 @@ import java.util.UUID;
         }
     }
 
+    /**
+     * Store a batch of messages in a single database transaction. Session end times are collected
+     * while iterating and written once per session, and triggers are only checked once the
+     * transaction has been committed.
+     */
+    void storeMessages(List<BaseMPMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        String apiKey;
+        try {
+            apiKey = mMessageManagerCallbacks.getApiKey();
+        } catch (MParticleApiClientImpl.MPNoConfigException e) {
+            Logger.error("Unable to process uploads, API key and/or API Secret are missing.");
+            return;
+        }
+        List<BaseMPMessage> storedMessages = new ArrayList<BaseMPMessage>(messages.size());
+        try {
+            MPDatabase db = mMParticleDBManager.getDatabase();
+            db.beginTransaction();
+            try {
+                Map<String, Long> sessionEndTimes = new LinkedHashMap<String, Long>();
+                for (BaseMPMessage message : messages) {
+                    try {
+                        message.put(MessageKey.STATE_INFO_KEY, MessageManager.getStateInfo());
+                        String messageType = message.getString(MessageKey.TYPE);
+                        if (MessageType.SESSION_START.equals(messageType)) {
+                            dbInsertSession(message);
+                        } else {
+                            sessionEndTimes.put(message.getSessionId(), message.getLong(MessageKey.TIMESTAMP));
+                            message.put(Constants.MessageKey.ID, UUID.randomUUID().toString());
+                        }
+                        if (MessageType.ERROR.equals(messageType)) {
+                            mMParticleDBManager.appendBreadcrumbs(message);
+                        }
+                        mMessageManagerCallbacks.prioritize(message);
+                        mMParticleDBManager.insertMessage(apiKey, message, mDataplanId, mDataplanVersion);
+                        storedMessages.add(message);
+                    } catch (Exception e) {
+                        Logger.error(e, "Error saving message to mParticle DB.");
+                    }
+                }
+                for (Map.Entry<String, Long> sessionEndTime : sessionEndTimes.entrySet()) {
+                    mMParticleDBManager.updateSessionEndTime(sessionEndTime.getKey(), sessionEndTime.getValue(), 0);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (Exception e) {
+            Logger.error(e, "Error saving messages to mParticle DB.");
+            return;
+        }
+        for (BaseMPMessage message : storedMessages) {
+            mMessageManagerCallbacks.checkForTrigger(message);
+        }
+    }
+
     void setUserAttributes(MParticleDBManager.UserAttributeResponse response) {
         List<MParticleDBManager.AttributionChange> attributionChanges = mMParticleDBManager.setUserAttribute(response);
         for (MParticleDBManager.AttributionChange attributionChange : attributionChanges) {
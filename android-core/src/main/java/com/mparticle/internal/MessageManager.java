@@ -17,12 +17,12 @@ import android.os.HandlerThread;
 import android.os.Message;
 import android.os.Process;
 import androidx.annotation.Nullable;
-import android.telephony.TelephonyManager;
 
 import com.mparticle.InstallReferrerHelper;
 import com.mparticle.MPEvent;
 import com.mparticle.MParticle;
 import com.mparticle.MParticleOptions;
+import com.mparticle.UploadPolicy;
 import com.mparticle.UserAttributeListener;
 import com.mparticle.commerce.CommerceEvent;
 import com.mparticle.identity.AliasRequest;
@@ -47,6 +47,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class is primarily responsible for generating BaseMPMessage objects, and then adding them to a
@@ -109,6 +110,20 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
      * Keep a reference to the current battery life as populated by the BroadcastReceiver described above.
      */
     private static double sBatteryLevel;
+    /**
+     * Whether the device is plugged in, and the type of the active network, for the upload policy.
+     */
+    private static boolean sCharging;
+    private static UploadPolicy.NetworkType sNetworkType = UploadPolicy.NetworkType.OFFLINE;
+    /**
+     * Caches the state info values which are expensive to query, so they are not queried for every message.
+     */
+    private static DeviceStateSampler sDeviceStateSampler;
+    /**
+     * Number of events logged in the current session. This is only written to storage on each periodic
+     * upload, when the app is backgrounded, and when the session ends, rather than for every event.
+     */
+    private static final AtomicInteger sEventCounter = new AtomicInteger();
     /**
      * The app-customAttributes dictionary in each batch need to know the runtime of the SDK/app itself.
      */
@@ -117,10 +132,6 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
      * Every state-transition message needs to know if this was an upgrade or an install.
      */
     MParticle.InstallType mInstallType = MParticle.InstallType.AutoDetect;
-    /**
-     * Batches/messages need to communicate the current telephony status when available.
-     */
-    private static TelephonyManager sTelephonyManager;
 
     private boolean delayedStartOccurred = false;
 
@@ -143,8 +154,10 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
         mMParticleDBManager = dbManager;
         mMessageHandler = messageHandler;
         mUploadHandler = uploadHandler;
-        sPreferences = appContext.getSharedPreferences(Constants.PREFS_FILE, Context.MODE_PRIVATE);
+        sPreferences = KeyValueStore.getSharedPreferences(appContext, Constants.PREFS_FILE);
+        sEventCounter.set(sPreferences.getInt(Constants.PrefKeys.EVENT_COUNTER, 0));
         mInstallType = installType;
+        sDeviceStateSampler = new DeviceStateSampler(sContext, DeviceStateSampler.DEFAULT_SAMPLING_INTERVAL_MILLIS);
     }
 
     public MessageManager(ConfigManager configManager, AppStateManager appStateManager, boolean devicePerformanceMetricsDisabled, MParticleDBManager dbManager, MParticleOptions options) {
@@ -156,17 +169,12 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
         mAppStateManager = appStateManager;
         mAppStateManager.setMessageManager(this);
         mMParticleDBManager = dbManager;
-        mMessageHandler = new MessageHandler(sMessageHandlerThread.getLooper(), this, options.getContext(), dbManager, options.getDataplanId(), options.getDataplanVersion());
-        mUploadHandler = new UploadHandler(options.getContext(), sUploadHandlerThread.getLooper(), configManager, appStateManager, this, dbManager);
-        sPreferences = options.getContext().getSharedPreferences(Constants.PREFS_FILE, Context.MODE_PRIVATE);
+        mMessageHandler = new MessageHandler(sMessageHandlerThread.getLooper(), this, options.getContext(), dbManager, options.getDataplanId(), options.getDataplanVersion(), options.isMessageStorageCoalescingEnabled());
+        mUploadHandler = new UploadHandler(options.getContext(), sUploadHandlerThread.getLooper(), configManager, appStateManager, this, dbManager, options.getMpidUploadThreads(), options.getUploadPolicy());
+        sPreferences = KeyValueStore.getSharedPreferences(options.getContext(), Constants.PREFS_FILE);
+        sEventCounter.set(sPreferences.getInt(Constants.PrefKeys.EVENT_COUNTER, 0));
         mInstallType = options.getInstallType();
-    }
-
-    private static TelephonyManager getTelephonyManager() {
-        if (sTelephonyManager == null) {
-            sTelephonyManager = (TelephonyManager) sContext.getSystemService(Context.TELEPHONY_SERVICE);
-        }
-        return sTelephonyManager;
+        sDeviceStateSampler = new DeviceStateSampler(sContext, options.getDeviceStateSamplingInterval() * 1000L);
     }
 
     public boolean isDevicePerformanceMetricsDisabled() {
@@ -180,30 +188,34 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
     public static JSONObject getStateInfo() throws JSONException {
         JSONObject infoJson = new JSONObject();
         try {
+            if (sDeviceStateSampler == null) {
+                sDeviceStateSampler = new DeviceStateSampler(sContext, DeviceStateSampler.DEFAULT_SAMPLING_INTERVAL_MILLIS);
+            }
+            DeviceStateSampler.Snapshot deviceState = sDeviceStateSampler.getSnapshot(!devicePerformanceMetricsDisabled);
             if (!devicePerformanceMetricsDisabled) {
-                infoJson.put(MessageKey.STATE_INFO_AVAILABLE_DISK, MPUtility.getAvailableInternalDisk(sContext));
-                infoJson.put(MessageKey.STATE_INFO_AVAILABLE_EXT_DISK, MPUtility.getAvailableExternalDisk(sContext));
+                infoJson.put(MessageKey.STATE_INFO_AVAILABLE_DISK, deviceState.getAvailableDisk());
+                infoJson.put(MessageKey.STATE_INFO_AVAILABLE_EXT_DISK, deviceState.getAvailableExternalDisk());
                 final Runtime rt = Runtime.getRuntime();
                 infoJson.put(MessageKey.STATE_INFO_APP_MEMORY_USAGE, rt.totalMemory());
                 infoJson.put(MessageKey.STATE_INFO_APP_MEMORY_AVAIL, rt.freeMemory());
                 infoJson.put(MessageKey.STATE_INFO_APP_MEMORY_MAX, rt.maxMemory());
             }
-            infoJson.put(MessageKey.STATE_INFO_AVAILABLE_MEMORY, MPUtility.getAvailableMemory(sContext));
+            infoJson.put(MessageKey.STATE_INFO_AVAILABLE_MEMORY, deviceState.getAvailableMemory());
             infoJson.put(MessageKey.STATE_INFO_TOTAL_MEMORY, getTotalMemory());
             infoJson.put(MessageKey.STATE_INFO_BATTERY_LVL, sBatteryLevel);
             infoJson.put(MessageKey.STATE_INFO_TIME_SINCE_START, MPUtility.millitime() - sStartTime);
 
-            String gps = MPUtility.getGpsEnabled(sContext);
+            String gps = deviceState.getGpsEnabled();
             if (gps != null) {
                 infoJson.put(MessageKey.STATE_INFO_GPS, Boolean.parseBoolean(gps));
             }
             infoJson.put(MessageKey.STATE_INFO_DATA_CONNECTION, sActiveNetworkName);
-            int orientation = MPUtility.getOrientation(sContext);
+            int orientation = deviceState.getOrientation();
             infoJson.put(MessageKey.STATE_INFO_ORIENTATION, orientation);
             infoJson.put(MessageKey.STATE_INFO_BAR_ORIENTATION, orientation);
-            infoJson.put(MessageKey.STATE_INFO_MEMORY_LOW, MPUtility.isSystemMemoryLow(sContext));
+            infoJson.put(MessageKey.STATE_INFO_MEMORY_LOW, deviceState.isMemoryLow());
             infoJson.put(MessageKey.STATE_INFO_MEMORY_THRESHOLD, getSystemMemoryThreshold());
-            Integer networkType = MPUtility.getNetworkType(sContext, getTelephonyManager());
+            Integer networkType = deviceState.getNetworkType();
             if (networkType != null) {
                 infoJson.put(MessageKey.STATE_INFO_NETWORK_TYPE, networkType);
             }
@@ -214,6 +226,31 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
         return infoJson;
     }
 
+    /**
+     * Get the number of events logged in the session which is ending, and start counting from 0.
+     */
+    public static synchronized int resetEventCounter() {
+        int count = sEventCounter.getAndSet(0);
+        if (sPreferences != null) {
+            sPreferences.edit().putInt(Constants.PrefKeys.EVENT_COUNTER, 0).apply();
+        }
+        return count;
+    }
+
+    /**
+     * Write the number of events logged in the current session to storage, if it has changed. This
+     * runs with each periodic upload, so a process that dies in the foreground only loses the events
+     * counted since the last one.
+     */
+    static synchronized void persistEventCounter() {
+        if (sPreferences != null) {
+            int count = sEventCounter.get();
+            if (sPreferences.getInt(Constants.PrefKeys.EVENT_COUNTER, 0) != count) {
+                sPreferences.edit().putInt(Constants.PrefKeys.EVENT_COUNTER, count).apply();
+            }
+        }
+    }
+
     public static long getTotalMemory() {
         long total = sPreferences.getLong(Constants.MiscStorageKeys.TOTAL_MEMORY, -1);
         if (total < 0) {
@@ -333,9 +370,7 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
                     message.put(MessageKey.CURRENT_ACTIVITY, currentActivity);
                 }
 
-                int count = sPreferences.getInt(Constants.PrefKeys.EVENT_COUNTER, 0);
-                message.put(MessageKey.EVENT_COUNTER, count);
-                sPreferences.edit().putInt(Constants.PrefKeys.EVENT_COUNTER, ++count).apply();
+                message.put(MessageKey.EVENT_COUNTER, sEventCounter.getAndIncrement());
 
                 mMessageHandler.sendMessage(mMessageHandler.obtainMessage(MessageHandler.STORE_MESSAGE, message));
                 return message;
@@ -603,7 +638,10 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
                 }
 
                 if (stateTransInit.equals(Constants.StateTransitionType.STATE_TRANS_BG)) {
-                    sPreferences.edit().putBoolean(Constants.PrefKeys.CRASHED_IN_FOREGROUND, false).apply();
+                    sPreferences.edit()
+                            .putBoolean(Constants.PrefKeys.CRASHED_IN_FOREGROUND, false)
+                            .putInt(Constants.PrefKeys.EVENT_COUNTER, sEventCounter.get())
+                            .apply();
                 }
 
                 mMessageHandler.sendMessage(mMessageHandler.obtainMessage(MessageHandler.STORE_MESSAGE, message));
@@ -772,6 +810,7 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
                 int level = batteryIntent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
                 int scale = batteryIntent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
                 sBatteryLevel = level / (double) scale;
+                sCharging = batteryIntent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
 
                 sStatusBroadcastReceiver = new StatusBroadcastReceiver();
                 // NOTE: if permissions are not correct all messages will be tagged as 'offline'
@@ -784,6 +823,8 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
                     setDataConnection(activeNetwork);
                     filter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
                 }
+                //orientation changes
+                filter.addAction(Intent.ACTION_CONFIGURATION_CHANGED);
                 sContext.registerReceiver(sStatusBroadcastReceiver, filter);
 
                 InstallReferrerHelper.fetchInstallReferrer(sContext, new InstallReferrerHelper.InstallReferrerCallback() {
@@ -811,12 +852,38 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
         MParticle.getInstance().upload();
     }
 
+    /**
+     * Place messages which trigger an immediate upload in the critical upload lane, so that they
+     * are packaged and uploaded ahead of any backlog.
+     */
+    @Override
+    public void prioritize(BaseMPMessage message) {
+        if (mConfigManager.shouldTrigger(message)) {
+            message.setPriority(Constants.MessagePriority.CRITICAL);
+        }
+    }
+
+    /**
+     * Messages in the critical lane trigger an upload of that lane. The app going to the background
+     * or a session ending may be the last chance to upload before the process is killed, so those
+     * trigger an upload of every lane.
+     */
     @Override
     public void checkForTrigger(BaseMPMessage message) {
-        if (mConfigManager.shouldTrigger(message)){
-            mUploadHandler.removeMessages(UploadHandler.UPLOAD_TRIGGER_MESSAGES, mConfigManager.getMpid());
-            mUploadHandler.sendMessageDelayed(mUploadHandler.obtainMessage(UploadHandler.UPLOAD_TRIGGER_MESSAGES, 1, 0, mConfigManager.getMpid()), Constants.TRIGGER_MESSAGE_DELAY);
+        if (message.getPriority() == Constants.MessagePriority.CRITICAL){
+            int what = isLifecycleTrigger(message) ? UploadHandler.UPLOAD_TRIGGER_MESSAGES : UploadHandler.UPLOAD_CRITICAL_MESSAGES;
+            mUploadHandler.removeMessages(what, mConfigManager.getMpid());
+            mUploadHandler.sendMessageDelayed(mUploadHandler.obtainMessage(what, 1, 0, mConfigManager.getMpid()), Constants.TRIGGER_MESSAGE_DELAY);
+        }
+    }
+
+    private static boolean isLifecycleTrigger(BaseMPMessage message) {
+        String messageType = message.getMessageType();
+        if (Constants.MessageType.SESSION_END.equals(messageType)) {
+            return true;
         }
+        return Constants.MessageType.APP_STATE_TRANSITION.equals(messageType)
+                && Constants.StateTransitionType.STATE_TRANS_BG.equals(message.opt(Constants.MessageKey.STATE_TRANSITION_TYPE));
     }
 
     public void refreshConfiguration() {
@@ -982,10 +1049,14 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
                             .getSystemService(Context.CONNECTIVITY_SERVICE);
                     NetworkInfo activeNetwork = connectivityManager.getActiveNetworkInfo();
                     MessageManager.this.setDataConnection(activeNetwork);
+                    sDeviceStateSampler.invalidate();
+                } else if (Intent.ACTION_CONFIGURATION_CHANGED.equals(intent.getAction())) {
+                    sDeviceStateSampler.invalidate();
                 } else if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
                     int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
                     int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
                     sBatteryLevel = level / (double) scale;
+                    sCharging = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
                 }
             }catch (Exception e){
                 //sometimes we're given a null intent,
@@ -1001,13 +1072,43 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
                 activeNetworkName += "/" + activeNetwork.getSubtypeName();
             }
             sActiveNetworkName = activeNetworkName.toLowerCase(Locale.US);
+            sNetworkType = getNetworkType(activeNetwork);
             mUploadHandler.setConnected(activeNetwork.isConnectedOrConnecting());
         } else {
             sActiveNetworkName = "offline";
+            sNetworkType = UploadPolicy.NetworkType.OFFLINE;
             mUploadHandler.setConnected(false);
         }
     }
 
+    private static UploadPolicy.NetworkType getNetworkType(NetworkInfo activeNetwork) {
+        if (!activeNetwork.isConnectedOrConnecting()) {
+            return UploadPolicy.NetworkType.OFFLINE;
+        }
+        switch (activeNetwork.getType()) {
+            case ConnectivityManager.TYPE_WIFI:
+            case ConnectivityManager.TYPE_ETHERNET:
+                return UploadPolicy.NetworkType.WIFI;
+            case ConnectivityManager.TYPE_MOBILE:
+            case ConnectivityManager.TYPE_WIMAX:
+                return UploadPolicy.NetworkType.CELLULAR;
+            default:
+                return UploadPolicy.NetworkType.OTHER;
+        }
+    }
+
+    public UploadPolicy.NetworkType getNetworkType() {
+        return sNetworkType;
+    }
+
+    public boolean isCharging() {
+        return sCharging;
+    }
+
+    public double getBatteryLevel() {
+        return sBatteryLevel;
+    }
+
     public BackgroundTaskHandler getTaskHandler() {
         return mUploadHandler;
     }
@@ -6,6 +6,7 @@ public interface MessageManagerCallbacks {
     String getApiKey() throws MParticleApiClientImpl.MPNoConfigException;
     void delayedStart();
     void endUploadLoop();
+    void prioritize(BaseMPMessage message);
     void checkForTrigger(BaseMPMessage message);
     void logNotification(int contentId, String payload, String appState, int behavior);
     void attributeRemoved(String key, long mpId);
@@ -5,19 +5,36 @@ import android.content.SharedPreferences;
 import android.os.Looper;
 import android.os.Message;
 
+import androidx.annotation.Nullable;
+
 import com.mparticle.MParticle;
+import com.mparticle.UploadPolicy;
 import com.mparticle.identity.AliasRequest;
 import com.mparticle.identity.AliasResponse;
 import com.mparticle.internal.database.services.MParticleDBManager;
 import com.mparticle.internal.listeners.InternalListenerManager;
 import com.mparticle.internal.messages.MPAliasMessage;
+import com.mparticle.networking.EndpointBackoff;
 import com.mparticle.segmentation.SegmentListener;
 
 import org.json.JSONException;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.ssl.SSLHandshakeException;
 
@@ -48,7 +65,7 @@ public class UploadHandler extends BaseHandler implements BackgroundTaskHandler
     public static final int UPDATE_CONFIG = 4;
     /**
      * Some messages need to be uploaded immediately for accurate attribution and segmentation/audience behavior, this message will be trigger after
-     * one of these messages has been detected.
+     * one of these messages has been detected. Used for the app going to the background and sessions ending, so every upload lane is packaged.
      */
     public static final int UPLOAD_TRIGGER_MESSAGES = 5;
 
@@ -57,6 +74,12 @@ public class UploadHandler extends BaseHandler implements BackgroundTaskHandler
      */
     public static final int INIT_CONFIG = 6;
 
+    /**
+     * Same as {@link #UPLOAD_TRIGGER_MESSAGES}, but only packages the critical upload lane, the rest of the backlog waits
+     * for the next upload. Triggered by any other message in the critical lane.
+     */
+    public static final int UPLOAD_CRITICAL_MESSAGES = 7;
+
     private final SharedPreferences mPreferences;
     private final SegmentDatabase audienceDB;
 
@@ -71,6 +94,44 @@ public class UploadHandler extends BaseHandler implements BackgroundTaskHandler
      */
     volatile boolean isNetworkConnected = true;
 
+    /**
+     * Number of threads used when the ready uploads belong to more than one MPID. Each MPID's
+     * batches are uploaded on one thread, in order, one at a time.
+     */
+    int mpidUploadThreads = 1;
+    private ThreadPoolExecutor mUploadExecutor;
+
+    /**
+     * Decides the interval between periodic uploads, and the number of messages packaged for each.
+     */
+    UploadScheduler mUploadScheduler;
+    private final UploadScheduler.ConditionsSource mConditionsSource = new UploadScheduler.ConditionsSource() {
+        @Override
+        public int getPendingMessageCount() {
+            return mParticleDBManager.getPendingMessageCount();
+        }
+
+        @Override
+        public int getPendingUploadCount() {
+            return mParticleDBManager.getPendingUploadCount();
+        }
+
+        @Override
+        public UploadPolicy.NetworkType getNetworkType() {
+            return mMessageManager.getNetworkType();
+        }
+
+        @Override
+        public boolean isCharging() {
+            return mMessageManager.isCharging();
+        }
+
+        @Override
+        public double getBatteryLevel() {
+            return mMessageManager.getBatteryLevel();
+        }
+    };
+
     /**
      *
      * Only used for unit testing.
@@ -81,8 +142,9 @@ public class UploadHandler extends BaseHandler implements BackgroundTaskHandler
         mAppStateManager = appStateManager;
         audienceDB = new SegmentDatabase(mContext);
         mParticleDBManager = mparticleDBManager;
-        mPreferences = mContext.getSharedPreferences(Constants.PREFS_FILE, Context.MODE_PRIVATE);
+        mPreferences = KeyValueStore.getSharedPreferences(mContext, Constants.PREFS_FILE);
         mMessageManager = messageManager;
+        mUploadScheduler = new UploadScheduler(null);
         try {
             setApiClient(new MParticleApiClientImpl(configManager, mPreferences, context));
         } catch (MalformedURLException e) {
@@ -94,14 +156,24 @@ public class UploadHandler extends BaseHandler implements BackgroundTaskHandler
 
 
     public UploadHandler(Context context, Looper looper, ConfigManager configManager, AppStateManager appStateManager, MessageManager messageManager, MParticleDBManager mparticleDBManager) {
+        this(context, looper, configManager, appStateManager, messageManager, mparticleDBManager, 1);
+    }
+
+    public UploadHandler(Context context, Looper looper, ConfigManager configManager, AppStateManager appStateManager, MessageManager messageManager, MParticleDBManager mparticleDBManager, int mpidUploadThreads) {
+        this(context, looper, configManager, appStateManager, messageManager, mparticleDBManager, mpidUploadThreads, null);
+    }
+
+    public UploadHandler(Context context, Looper looper, ConfigManager configManager, AppStateManager appStateManager, MessageManager messageManager, MParticleDBManager mparticleDBManager, int mpidUploadThreads, @Nullable UploadPolicy uploadPolicy) {
         super(looper);
+        this.mpidUploadThreads = mpidUploadThreads;
         mConfigManager = configManager;
         mContext = context;
         mAppStateManager = appStateManager;
         audienceDB = new SegmentDatabase(mContext);
         mParticleDBManager = mparticleDBManager;
-        mPreferences = mContext.getSharedPreferences(Constants.PREFS_FILE, Context.MODE_PRIVATE);
+        mPreferences = KeyValueStore.getSharedPreferences(mContext, Constants.PREFS_FILE);
         mMessageManager = messageManager;
+        mUploadScheduler = new UploadScheduler(uploadPolicy);
         try {
             setApiClient(new MParticleApiClientImpl(configManager, mPreferences, context));
         } catch (MalformedURLException e) {
@@ -125,10 +197,16 @@ public class UploadHandler extends BaseHandler implements BackgroundTaskHandler
                     break;
                 case UPLOAD_MESSAGES:
                 case UPLOAD_TRIGGER_MESSAGES:
+                case UPLOAD_CRITICAL_MESSAGES:
+                    MessageManager.persistEventCounter();
                     long uploadInterval = mConfigManager.getUploadInterval();
                     if (isNetworkConnected) {
                         if (uploadInterval > 0 || msg.arg1 == 1) {
-                            prepareMessageUploads(false);
+                            if (msg.what == UPLOAD_CRITICAL_MESSAGES) {
+                                prepareMessageUploads(false, true, Constants.DEFAULT_UPLOAD_BATCH_SIZE);
+                            } else {
+                                prepareMessageUploads(false, false, mUploadScheduler.getBatchSize(uploadInterval, mConditionsSource));
+                            }
                             boolean needsHistory = upload(false);
                             if (needsHistory) {
                                 this.sendEmptyMessage(UPLOAD_HISTORY);
@@ -136,12 +214,12 @@ public class UploadHandler extends BaseHandler implements BackgroundTaskHandler
                         }
                     }
                     if (mAppStateManager.getSession().isActive() && uploadInterval > 0 && msg.arg1 == 0) {
-                        this.sendEmptyMessageDelayed(UPLOAD_MESSAGES, uploadInterval);
+                        this.sendEmptyMessageDelayed(UPLOAD_MESSAGES, mUploadScheduler.getUploadInterval(uploadInterval, mConditionsSource));
                     }
                     break;
                 case UPLOAD_HISTORY:
                     removeMessages(UPLOAD_HISTORY);
-                    prepareMessageUploads(true);
+                    prepareMessageUploads(true, false, Constants.DEFAULT_UPLOAD_BATCH_SIZE);
                     if (isNetworkConnected) {
                         upload(true);
                     }
@@ -164,8 +242,11 @@ public class UploadHandler extends BaseHandler implements BackgroundTaskHandler
      * - query app and device customAttributes, and add them to their respective batches
      * - persist all of the resulting upload batch objects
      * - mark the messages as having been uploaded.
+     *
+     * Messages are packaged one upload lane at a time, highest lane first, or only the critical lane
+     * if criticalOnly is set. At most batchSize messages are packaged from each lane.
      */
-    private void prepareMessageUploads(boolean history) throws Exception {
+    private void prepareMessageUploads(boolean history, boolean criticalOnly, int batchSize) throws Exception {
         String currentSessionId = mAppStateManager.getSession().mSessionID;
         long remainingHeap = MPUtility.getRemainingHeapInBytes();
         if (remainingHeap < Constants.LIMIT_MAX_UPLOAD_SIZE) {
@@ -180,8 +261,10 @@ public class UploadHandler extends BaseHandler implements BackgroundTaskHandler
             }
             if (history) {
                 mParticleDBManager.createSessionHistoryUploadMessage(mConfigManager, mMessageManager.getDeviceAttributes(), currentSessionId);
+            } else if (criticalOnly) {
+                mParticleDBManager.createMessagesForUploadMessage(mConfigManager, mMessageManager.getDeviceAttributes(), currentSessionId, sessionHistoryEnabled, Constants.MessagePriority.CRITICAL, batchSize);
             } else {
-                mParticleDBManager.createMessagesForUploadMessage(mConfigManager, mMessageManager.getDeviceAttributes(), currentSessionId, sessionHistoryEnabled);
+                mParticleDBManager.createMessagesForUploadMessage(mConfigManager, mMessageManager.getDeviceAttributes(), currentSessionId, sessionHistoryEnabled, batchSize);
             }
         } catch (Exception e) {
             Logger.verbose("Error preparing batch upload in mParticle DB: " + e.getMessage());
@@ -202,6 +285,10 @@ public class UploadHandler extends BaseHandler implements BackgroundTaskHandler
                 mApiClient.fetchConfig();
             }
             final boolean includeSessionHistory = mConfigManager.getIncludeSessionHistory();
+            Map<Long, List<MParticleDBManager.ReadyUpload>> uploadsByMpid = null;
+            if (mpidUploadThreads > 1 && readyUploads.size() > 1) {
+                uploadsByMpid = new LinkedHashMap<Long, List<MParticleDBManager.ReadyUpload>>();
+            }
             for (MParticleDBManager.ReadyUpload readyUpload : readyUploads) {
                 //This case actually shouldn't be needed anymore except for upgrade scenarios.
                 //As of version 4.9.0, upload batches for session history shouldn't even be created.
@@ -210,19 +297,27 @@ public class UploadHandler extends BaseHandler implements BackgroundTaskHandler
                 } else {
                     if (!history) {
                         // If message is the MessageType.SESSION_END, then remember so the session history can be triggered.
-                        if (!processingSessionEnd && readyUpload.getMessage().contains(containsClause)) {
+                        if (!processingSessionEnd && containsSessionEnd(readyUpload)) {
                             processingSessionEnd = true;
                         }
                     }
-                    String message = readyUpload.getMessage();
-                    InternalListenerManager.getListener().onCompositeObjects(readyUpload, message);
-                    if (readyUpload.isAliasRequest()) {
-                        uploadAliasRequest(readyUpload.getId(), message);
+                    if (uploadsByMpid != null) {
+                        //Alias requests, and batches stored without an MPID, share a single queue.
+                        Long mpid = readyUpload.isAliasRequest() ? null : readyUpload.getMpId();
+                        List<MParticleDBManager.ReadyUpload> mpidUploads = uploadsByMpid.get(mpid);
+                        if (mpidUploads == null) {
+                            mpidUploads = new ArrayList<MParticleDBManager.ReadyUpload>();
+                            uploadsByMpid.put(mpid, mpidUploads);
+                        }
+                        mpidUploads.add(readyUpload);
                     } else {
-                        uploadMessage(readyUpload.getId(), message);
+                        upload(readyUpload);
                     }
                 }
             }
+            if (uploadsByMpid != null) {
+                uploadByMpid(uploadsByMpid.values());
+            }
         } catch (MParticleApiClientImpl.MPThrottleException e) {
         } catch (SSLHandshakeException ssle) {
             Logger.debug("SSL handshake failed while preparing uploads - possible MITM attack detected.");
@@ -234,11 +329,103 @@ public class UploadHandler extends BaseHandler implements BackgroundTaskHandler
         return processingSessionEnd;
     }
 
+    /**
+     * Uses the flag recorded when the batch was stored. Only batches stored before the flag existed
+     * are read back to look for the session end message.
+     */
+    private boolean containsSessionEnd(MParticleDBManager.ReadyUpload readyUpload) {
+        Boolean containsSessionEnd = readyUpload.containsSessionEnd();
+        if (containsSessionEnd != null) {
+            return containsSessionEnd;
+        }
+        return readyUpload.getMessage().contains(containsClause);
+    }
+
+    private void upload(MParticleDBManager.ReadyUpload readyUpload) throws IOException, MParticleApiClientImpl.MPThrottleException {
+        String message = readyUpload.getMessage();
+        InternalListenerManager.getListener().onCompositeObjects(readyUpload, message);
+        if (readyUpload.isAliasRequest()) {
+            uploadAliasRequest(readyUpload.getId(), message);
+        } else {
+            uploadMessage(readyUpload.getId(), message, readyUpload.getGzippedMessage());
+        }
+    }
+
+    /**
+     * Upload each MPID's batches on its own upload executor thread. Nothing is pipelined: the batches
+     * of one MPID are uploaded in order, one request at a time, and a group stops at its first
+     * failure, just like the serial upload loop. A single group is uploaded on the calling thread.
+     * Once any request is throttled, every group stops. This method blocks until all of the groups
+     * are done, and then rethrows the first failure, preferring a throttle.
+     */
+    private void uploadByMpid(Collection<List<MParticleDBManager.ReadyUpload>> uploadGroups) throws Exception {
+        if (uploadGroups.size() == 1) {
+            for (MParticleDBManager.ReadyUpload readyUpload : uploadGroups.iterator().next()) {
+                upload(readyUpload);
+            }
+            return;
+        }
+        final AtomicBoolean throttled = new AtomicBoolean(false);
+        List<Future<Void>> results = new ArrayList<Future<Void>>(uploadGroups.size());
+        ThreadPoolExecutor executor = getUploadExecutor();
+        for (final List<MParticleDBManager.ReadyUpload> uploadGroup : uploadGroups) {
+            results.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (MParticleDBManager.ReadyUpload readyUpload : uploadGroup) {
+                        if (throttled.get()) {
+                            break;
+                        }
+                        try {
+                            upload(readyUpload);
+                        } catch (MParticleApiClientImpl.MPThrottleException e) {
+                            throttled.set(true);
+                            throw e;
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        Throwable failure = null;
+        for (Future<Void> result : results) {
+            try {
+                result.get();
+            } catch (ExecutionException e) {
+                if (failure == null || e.getCause() instanceof MParticleApiClientImpl.MPThrottleException) {
+                    failure = e.getCause();
+                }
+            }
+        }
+        if (failure instanceof Exception) {
+            throw (Exception) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getUploadExecutor() {
+        if (mUploadExecutor == null) {
+            mUploadExecutor = new ThreadPoolExecutor(mpidUploadThreads, mpidUploadThreads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new UploadThreadFactory());
+            mUploadExecutor.allowCoreThreadTimeOut(true);
+        }
+        return mUploadExecutor;
+    }
+
     void uploadMessage(int id, String message) throws IOException, MParticleApiClientImpl.MPThrottleException {
+        uploadMessage(id, message, null);
+    }
+
+    void uploadMessage(int id, String message, @Nullable byte[] gzippedMessage) throws IOException, MParticleApiClientImpl.MPThrottleException {
         int responseCode = -1;
         boolean sampling = false;
         try {
-            responseCode = mApiClient.sendMessageBatch(message);
+            if (gzippedMessage != null) {
+                responseCode = mApiClient.sendMessageBatch(message, gzippedMessage);
+            } else {
+                responseCode = mApiClient.sendMessageBatch(message);
+            }
         } catch (MParticleApiClientImpl.MPRampException e) {
             sampling = true;
             Logger.debug("This device is being sampled.");
@@ -248,12 +435,20 @@ public class UploadHandler extends BaseHandler implements BackgroundTaskHandler
             //there's not much to do in that case except catch the error and discard the data.
             Logger.error("API request failed " + e.toString());
             sampling = true;
+        } catch (IOException e) {
+            mUploadScheduler.onUploadResult(true);
+            throw e;
+        } catch (MParticleApiClientImpl.MPThrottleException e) {
+            mUploadScheduler.onUploadResult(true);
+            throw e;
         }
 
         if (sampling || shouldDelete(responseCode)) {
             mParticleDBManager.deleteUpload(id);
+            mUploadScheduler.onUploadResult(false);
         } else {
             Logger.warning("Upload failed and will be retried.");
+            mUploadScheduler.onUploadResult(true);
         }
     }
 
@@ -309,6 +504,10 @@ public class UploadHandler extends BaseHandler implements BackgroundTaskHandler
             }
         }catch (Exception e) {
 
+        }
+        if (!isNetworkConnected && connected) {
+            //failures during the outage say nothing about the network the device is now connected to
+            EndpointBackoff.getInstance(mContext).onReconnected();
         }
         isNetworkConnected = connected;
     }
@@ -322,4 +521,17 @@ public class UploadHandler extends BaseHandler implements BackgroundTaskHandler
         post(runnable);
     }
 
+    private static class UploadThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "mParticleUploadWorker-" + mCount.incrementAndGet());
+            //Android maps this to Process.THREAD_PRIORITY_BACKGROUND, the same as the upload HandlerThread.
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
 }
@@ -0,0 +1,114 @@
+package com.mparticle.internal;
+
+import androidx.annotation.Nullable;
+
+import com.mparticle.UploadPolicy;
+
+/**
+ * Consults the {@link UploadPolicy}, if one has been set, for the interval between periodic uploads
+ * and the number of messages packaged for each, and keeps track of how recent uploads went.
+ *
+ * The conditions are only gathered when a policy has been set, since counting the backlog costs a
+ * query. Without a policy, uploads are sent at the configured interval, in batches of the default size.
+ */
+class UploadScheduler {
+    //upload results older than this, or beyond the most recent MAX_TRACKED_RESULTS, are not "recent"
+    static final long RESULT_WINDOW_MILLIS = 30 * 60 * 1000;
+    static final int MAX_TRACKED_RESULTS = 20;
+
+    @Nullable
+    private final UploadPolicy mPolicy;
+    private final Clock mClock;
+
+    //ring buffers of the most recent upload results, and when they happened
+    private final long[] mResultTimes = new long[MAX_TRACKED_RESULTS];
+    private final boolean[] mResultFailures = new boolean[MAX_TRACKED_RESULTS];
+    private int mResultCount;
+    private int mNextResult;
+
+    UploadScheduler(@Nullable UploadPolicy policy) {
+        this(policy, Clock.SYSTEM);
+    }
+
+    UploadScheduler(@Nullable UploadPolicy policy, Clock clock) {
+        mPolicy = policy;
+        mClock = clock;
+    }
+
+    long getUploadInterval(long configuredInterval, ConditionsSource source) {
+        if (mPolicy == null) {
+            return configuredInterval;
+        }
+        UploadPolicy.Conditions conditions = getConditions(configuredInterval, source);
+        long interval = mPolicy.getUploadInterval(conditions);
+        if (interval <= 0) {
+            Logger.warning("Upload policy returned an interval of " + interval + " milliseconds, using " + configuredInterval + ".");
+            return configuredInterval;
+        }
+        Logger.verbose("Next upload in " + interval + " milliseconds, " + conditions);
+        return interval;
+    }
+
+    int getBatchSize(long configuredInterval, ConditionsSource source) {
+        if (mPolicy == null) {
+            return Constants.DEFAULT_UPLOAD_BATCH_SIZE;
+        }
+        int batchSize = mPolicy.getBatchSize(getConditions(configuredInterval, source));
+        if (batchSize <= 0) {
+            Logger.warning("Upload policy returned a batch size of " + batchSize + ", using " + Constants.DEFAULT_UPLOAD_BATCH_SIZE + ".");
+            return Constants.DEFAULT_UPLOAD_BATCH_SIZE;
+        }
+        return Math.min(batchSize, Constants.LIMIT_MAX_UPLOAD_BATCH_SIZE);
+    }
+
+    /**
+     * Record the result of an upload. Batches may be uploaded concurrently, so this may be called
+     * from any of the upload threads.
+     */
+    synchronized void onUploadResult(boolean failed) {
+        mResultTimes[mNextResult] = mClock.currentTimeMillis();
+        mResultFailures[mNextResult] = failed;
+        mNextResult = (mNextResult + 1) % MAX_TRACKED_RESULTS;
+        mResultCount = Math.min(mResultCount + 1, MAX_TRACKED_RESULTS);
+    }
+
+    UploadPolicy.Conditions getConditions(long configuredInterval, ConditionsSource source) {
+        UploadPolicy.NetworkType networkType = source.getNetworkType();
+        if (networkType == null) {
+            networkType = UploadPolicy.NetworkType.OTHER;
+        }
+        int recentUploads = 0;
+        int recentFailures = 0;
+        synchronized (this) {
+            long since = mClock.currentTimeMillis() - RESULT_WINDOW_MILLIS;
+            for (int i = 0; i < mResultCount; i++) {
+                if (mResultTimes[i] >= since) {
+                    recentUploads++;
+                    if (mResultFailures[i]) {
+                        recentFailures++;
+                    }
+                }
+            }
+        }
+        double recentFailureRate = recentUploads > 0 ? recentFailures / (double) recentUploads : 0;
+        return new UploadPolicy.Conditions(configuredInterval, source.getPendingMessageCount(), source.getPendingUploadCount(),
+                networkType, source.isCharging(), source.getBatteryLevel(), recentUploads, recentFailureRate);
+    }
+
+    /**
+     * The current state of the upload backlog and the device.
+     */
+    interface ConditionsSource {
+
+        int getPendingMessageCount();
+
+        int getPendingUploadCount();
+
+        @Nullable
+        UploadPolicy.NetworkType getNetworkType();
+
+        boolean isCharging();
+
+        double getBatteryLevel();
+    }
+}
@@ -0,0 +1,158 @@
+package com.mparticle.internal;
+
+import com.mparticle.internal.messages.BaseMPMessage;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The upload triggers from the server configuration ("tri"), compiled when the configuration is
+ * applied. Every stored message is checked against them, so the type of each match value is
+ * resolved once here, rather than by catching JSONExceptions for each message.
+ */
+class UploadTriggers {
+    static final UploadTriggers NONE = new UploadTriggers(null, Collections.<Integer>emptySet());
+
+    //null when there are no message matches, otherwise a message triggers an upload when it
+    //satisfies every one of them
+    private final List<FieldMatcher> mFieldMatchers;
+    private final Set<Integer> mTypeNameHashes;
+
+    private UploadTriggers(List<FieldMatcher> fieldMatchers, Set<Integer> typeNameHashes) {
+        mFieldMatchers = fieldMatchers;
+        mTypeNameHashes = typeNameHashes;
+    }
+
+    static UploadTriggers compile(JSONArray messageMatches, JSONArray triggerHashes) {
+        List<FieldMatcher> fieldMatchers = null;
+        if (messageMatches != null && messageMatches.length() > 0) {
+            fieldMatchers = new ArrayList<FieldMatcher>();
+            for (int i = 0; i < messageMatches.length(); i++) {
+                JSONObject messageMatch = messageMatches.optJSONObject(i);
+                if (messageMatch != null) {
+                    Iterator<?> keys = messageMatch.keys();
+                    while (keys.hasNext()) {
+                        String key = (String) keys.next();
+                        fieldMatchers.add(FieldMatcher.create(key, messageMatch.opt(key)));
+                    }
+                }
+            }
+        }
+        Set<Integer> typeNameHashes = new HashSet<Integer>();
+        if (triggerHashes != null) {
+            for (int i = 0; i < triggerHashes.length(); i++) {
+                try {
+                    typeNameHashes.add(triggerHashes.getInt(i));
+                } catch (JSONException jse) {
+
+                }
+            }
+        }
+        if (fieldMatchers == null && typeNameHashes.isEmpty()) {
+            return NONE;
+        }
+        return new UploadTriggers(fieldMatchers, typeNameHashes);
+    }
+
+    boolean shouldTrigger(BaseMPMessage message) {
+        if (mFieldMatchers != null && matchesAll(message)) {
+            return true;
+        }
+        return !mTypeNameHashes.isEmpty() && mTypeNameHashes.contains(message.getTypeNameHash());
+    }
+
+    private boolean matchesAll(BaseMPMessage message) {
+        for (FieldMatcher fieldMatcher : mFieldMatchers) {
+            Object value = message.opt(fieldMatcher.mKey);
+            if (value == null || !fieldMatcher.matches(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Matches the value of one message field. Values are compared as strings, ignoring case,
+     * unless the match value is a boolean or a number, in which case a message value of the same
+     * type is compared by value.
+     */
+    abstract static class FieldMatcher {
+        final String mKey;
+        final String mExpectedString;
+
+        FieldMatcher(String key, Object expected) {
+            mKey = key;
+            mExpectedString = String.valueOf(expected);
+        }
+
+        static FieldMatcher create(String key, Object expected) {
+            if (expected instanceof Boolean) {
+                return new BooleanMatcher(key, (Boolean) expected);
+            }
+            if (expected instanceof Number) {
+                return new NumberMatcher(key, (Number) expected);
+            }
+            return new StringMatcher(key, expected);
+        }
+
+        abstract boolean matches(Object value);
+
+        boolean matchesString(Object value) {
+            return mExpectedString.equalsIgnoreCase(String.valueOf(value));
+        }
+    }
+
+    static class StringMatcher extends FieldMatcher {
+
+        StringMatcher(String key, Object expected) {
+            super(key, expected);
+        }
+
+        @Override
+        boolean matches(Object value) {
+            return matchesString(value);
+        }
+    }
+
+    static class BooleanMatcher extends FieldMatcher {
+        private final Boolean mExpected;
+
+        BooleanMatcher(String key, Boolean expected) {
+            super(key, expected);
+            mExpected = expected;
+        }
+
+        @Override
+        boolean matches(Object value) {
+            if (value instanceof Boolean) {
+                return mExpected.equals(value);
+            }
+            return value instanceof String && matchesString(value);
+        }
+    }
+
+    static class NumberMatcher extends FieldMatcher {
+        private final double mExpected;
+
+        NumberMatcher(String key, Number expected) {
+            super(key, expected);
+            mExpected = expected.doubleValue();
+        }
+
+        @Override
+        boolean matches(Object value) {
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue() == mExpected;
+            }
+            return matchesString(value);
+        }
+    }
+}
@@ -56,6 +56,9 @@ public class UserStorage {
     }
 
     boolean deleteUserConfig(Context context, long mpId) {
+        if (KeyValueStore.isEnabled(context)) {
+            KeyValueStore.getSharedPreferences(context, getFileName(mpId)).edit().clear().apply();
+        }
         if (Build.VERSION.SDK_INT >= 24) {
             context.deleteSharedPreferences(getFileName(mpId));
         } else {
@@ -80,7 +83,7 @@ public class UserStorage {
             SharedPreferencesMigrator.setNeedsToMigrate(context, false);
             new SharedPreferencesMigrator(context).migrate(this);
         }
-        this.messageManagerSharedPreferences = mContext.getSharedPreferences(Constants.PREFS_FILE, Context.MODE_PRIVATE);
+        this.messageManagerSharedPreferences = KeyValueStore.getSharedPreferences(mContext, Constants.PREFS_FILE);
         setDefaultSeenTime();
     }
 
@@ -329,7 +332,7 @@ public class UserStorage {
         Set<Long> mpIds = getMpIdSet(mContext);
         mpIds.add(mpId);
         setMpIds(mpIds);
-        return mContext.getSharedPreferences(getFileName(mpId), Context.MODE_PRIVATE);
+        return KeyValueStore.getSharedPreferences(mContext, getFileName(mpId));
     }
 
     private static boolean removeMpId(Context context, long mpid) {
@@ -371,7 +374,7 @@ public class UserStorage {
     }
 
     private static SharedPreferences getMParticleSharedPrefs(Context context) {
-        return context.getSharedPreferences(PREFERENCES_FILE, Context.MODE_PRIVATE);
+        return KeyValueStore.getSharedPreferences(context, PREFERENCES_FILE);
     }
 
     /**
@@ -458,8 +461,8 @@ public class UserStorage {
         }
 
         SharedPreferencesMigrator(Context context) {
-            messageManagerSharedPreferences = context.getSharedPreferences(Constants.PREFS_FILE, Context.MODE_PRIVATE);
-            configManagerSharedPreferences = context.getSharedPreferences(PREFERENCES_FILE, Context.MODE_PRIVATE);
+            messageManagerSharedPreferences = KeyValueStore.getSharedPreferences(context, Constants.PREFS_FILE);
+            configManagerSharedPreferences = KeyValueStore.getSharedPreferences(context, PREFERENCES_FILE);
             this.apiKey = new AppConfig(context, null, configManagerSharedPreferences, null, null).mKey;
         }
 
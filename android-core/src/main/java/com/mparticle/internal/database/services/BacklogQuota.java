@@ -0,0 +1,226 @@
+package com.mparticle.internal.database.services;
+
+import android.database.Cursor;
+
+import androidx.annotation.Nullable;
+
+import com.mparticle.MParticleOptions;
+import com.mparticle.internal.Logger;
+import com.mparticle.internal.database.MPDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Enforces the {@link MParticleOptions.StorageQuota} on the messages and uploads tables, which
+ * otherwise grow without limit while a device is offline or throttled.
+ *
+ * Counting the rows and bytes in a table on every insert would cost more than the insert itself,
+ * so each table's size is measured once, and then tracked as rows are inserted. Rows deleted
+ * elsewhere, once they have been uploaded, are not tracked, so the tracked size is an upper bound,
+ * and the table is only measured again once the tracked size exceeds the quota. Evicting down to
+ * 90% of the quota leaves room for the next inserts before the table has to be measured again.
+ */
+class BacklogQuota {
+    static final BacklogQuota NONE = new BacklogQuota(0, 0, 0, 0, 0, MParticleOptions.StorageQuota.EvictionPolicy.OLDEST_FIRST);
+
+    private static final int EVICTION_TARGET_PERCENT = 90;
+    private static final int MAX_IDS_PER_DELETE = 500;
+
+    private final TableQuota mMessages;
+    private final TableQuota mUploads;
+
+    BacklogQuota(int maxMessages, long maxMessageBytes, int maxUploads, long maxUploadBytes, long maxAgeMillis, MParticleOptions.StorageQuota.EvictionPolicy evictionPolicy) {
+        boolean lowestPriorityFirst = evictionPolicy == MParticleOptions.StorageQuota.EvictionPolicy.LOWEST_PRIORITY_FIRST;
+        mMessages = MessageService.createTableQuota(maxMessages, maxMessageBytes, maxAgeMillis, lowestPriorityFirst);
+        mUploads = UploadService.createTableQuota(maxUploads, maxUploadBytes, maxAgeMillis, lowestPriorityFirst);
+    }
+
+    static BacklogQuota create(@Nullable MParticleOptions.StorageQuota storageQuota) {
+        if (storageQuota == null) {
+            return NONE;
+        }
+        return new BacklogQuota(
+                storageQuota.getMaxMessages(),
+                storageQuota.getMaxMessageBytes(),
+                storageQuota.getMaxUploads(),
+                storageQuota.getMaxUploadBytes(),
+                storageQuota.getMaxAge() * 1000,
+                storageQuota.getEvictionPolicy());
+    }
+
+    void onMessageInserted(MPDatabase database, long bytes) {
+        mMessages.onInserted(database, bytes);
+    }
+
+    void onUploadInserted(MPDatabase database, long bytes) {
+        mUploads.onInserted(database, bytes);
+    }
+
+    int evictExpiredMessages(MPDatabase database) {
+        return mMessages.evictExpired(database, System.currentTimeMillis());
+    }
+
+    int evictExpiredUploads(MPDatabase database) {
+        return mUploads.evictExpired(database, System.currentTimeMillis());
+    }
+
+    long getEvictedMessageCount() {
+        return mMessages.getEvictedCount();
+    }
+
+    long getEvictedUploadCount() {
+        return mUploads.getEvictedCount();
+    }
+
+    /**
+     * The size of a column in bytes. length() counts the characters of a TEXT value, so the value
+     * is cast to a BLOB first. BLOB values, such as gzipped uploads, are unchanged by the cast.
+     */
+    static String byteLengthExpression(String column) {
+        return "length(CAST(" + column + " AS BLOB))";
+    }
+
+    /**
+     * The size of a value in bytes once it is stored, which SQLite does as UTF-8.
+     */
+    static long getByteLength(String value) {
+        long bytes = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    static class TableQuota {
+        private final String mDescription;
+        private final String mTableName;
+        private final String mCreatedAtColumn;
+        private final String mBytesExpression;
+        private final String mEvictionOrder;
+        private final int mMaxRows;
+        private final long mMaxBytes;
+        private final long mMaxAgeMillis;
+        private final AtomicLong mEvictedCount = new AtomicLong();
+
+        //upper bounds of the table's size, -1 until the table has been measured
+        private long mRows = -1;
+        private long mBytes = -1;
+
+        TableQuota(String description, String tableName, String createdAtColumn, String bytesExpression, String evictionOrder, int maxRows, long maxBytes, long maxAgeMillis) {
+            mDescription = description;
+            mTableName = tableName;
+            mCreatedAtColumn = createdAtColumn;
+            mBytesExpression = bytesExpression;
+            mEvictionOrder = evictionOrder;
+            mMaxRows = maxRows;
+            mMaxBytes = maxBytes;
+            mMaxAgeMillis = maxAgeMillis;
+        }
+
+        synchronized void onInserted(MPDatabase database, long bytes) {
+            if (mMaxRows <= 0 && mMaxBytes <= 0) {
+                return;
+            }
+            if (mRows >= 0) {
+                mRows++;
+                mBytes += bytes;
+                if (!isOverQuota()) {
+                    return;
+                }
+            }
+            measure(database);
+            if (isOverQuota()) {
+                evict(database);
+            }
+        }
+
+        synchronized int evictExpired(MPDatabase database, long now) {
+            if (mMaxAgeMillis <= 0) {
+                return 0;
+            }
+            int deleted = database.delete(mTableName, mCreatedAtColumn + " < ?", new String[]{String.valueOf(now - mMaxAgeMillis)});
+            if (deleted > 0) {
+                mEvictedCount.addAndGet(deleted);
+                mRows = -1;
+                mBytes = -1;
+                Logger.warning("Evicted " + deleted + " " + mDescription + " older than " + mMaxAgeMillis / 1000 + " seconds.");
+            }
+            return deleted;
+        }
+
+        long getEvictedCount() {
+            return mEvictedCount.get();
+        }
+
+        private boolean isOverQuota() {
+            return (mMaxRows > 0 && mRows > mMaxRows) || (mMaxBytes > 0 && mBytes > mMaxBytes);
+        }
+
+        private void measure(MPDatabase database) {
+            Cursor cursor = null;
+            try {
+                cursor = database.query(mTableName, new String[]{"count(*)", "coalesce(sum(" + mBytesExpression + "), 0)"}, null, null, null, null, null);
+                if (cursor.moveToFirst()) {
+                    mRows = cursor.getLong(0);
+                    mBytes = cursor.getLong(1);
+                } else {
+                    mRows = 0;
+                    mBytes = 0;
+                }
+            } finally {
+                if (cursor != null && !cursor.isClosed()) {
+                    cursor.close();
+                }
+            }
+        }
+
+        private void evict(MPDatabase database) {
+            long targetRows = mMaxRows > 0 ? (long) mMaxRows * EVICTION_TARGET_PERCENT / 100 : Long.MAX_VALUE;
+            long targetBytes = mMaxBytes > 0 ? mMaxBytes * EVICTION_TARGET_PERCENT / 100 : Long.MAX_VALUE;
+            List<Integer> ids = new ArrayList<Integer>();
+            long rows = mRows;
+            long bytes = mBytes;
+            Cursor cursor = null;
+            try {
+                cursor = database.query(mTableName, new String[]{"_id", mBytesExpression}, null, null, null, null, mEvictionOrder);
+                while ((rows > targetRows || bytes > targetBytes) && cursor.moveToNext()) {
+                    ids.add(cursor.getInt(0));
+                    rows--;
+                    bytes -= cursor.getLong(1);
+                }
+            } finally {
+                if (cursor != null && !cursor.isClosed()) {
+                    cursor.close();
+                }
+            }
+            int deleted = 0;
+            for (int start = 0; start < ids.size(); start += MAX_IDS_PER_DELETE) {
+                List<Integer> chunk = ids.subList(start, Math.min(start + MAX_IDS_PER_DELETE, ids.size()));
+                StringBuilder selection = new StringBuilder("_id in (");
+                for (int i = 0; i < chunk.size(); i++) {
+                    if (i > 0) {
+                        selection.append(',');
+                    }
+                    selection.append(chunk.get(i));
+                }
+                deleted += database.delete(mTableName, selection.append(')').toString(), null);
+            }
+            mRows = rows;
+            mBytes = bytes;
+            mEvictedCount.addAndGet(deleted);
+            Logger.warning("Storage quota exceeded, evicted " + deleted + " " + mDescription + ".");
+        }
+    }
+}
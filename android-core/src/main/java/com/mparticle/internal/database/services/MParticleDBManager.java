@@ -1,14 +1,15 @@
 package com.mparticle.internal.database.services;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.location.Location;
 import android.os.Handler;
 import android.os.Looper;
+import androidx.annotation.Nullable;
 
 import com.google.android.gms.common.internal.Objects;
 import com.mparticle.MParticle;
+import com.mparticle.MParticleOptions;
 import com.mparticle.UserAttributeListener;
 import com.mparticle.internal.BatchId;
 import com.mparticle.internal.ConfigManager;
@@ -31,6 +32,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -40,18 +42,24 @@ import java.util.TreeMap;
 import java.util.UUID;
 
 public class MParticleDBManager {
-    private SharedPreferences mPreferences;
+    private static final String USER_IDENTITY_CHANGE_VALUE = JSONObject.quote(Constants.MessageType.USER_IDENTITY_CHANGE);
+    private static final String USER_ATTRIBUTE_CHANGE_VALUE = JSONObject.quote(Constants.MessageType.USER_ATTRIBUTE_CHANGE);
     private Context mContext;
     private DatabaseHelper mDatabaseHelper;
+    private BacklogQuota mBacklogQuota = BacklogQuota.NONE;
 
     MParticleDBManager() {
         //for unit testing
     }
 
     public MParticleDBManager(Context context) {
+        this(context, null);
+    }
+
+    public MParticleDBManager(Context context, @Nullable MParticleOptions.StorageQuota storageQuota) {
         this.mContext = context;
-        mPreferences = context.getSharedPreferences(Constants.PREFS_FILE, Context.MODE_PRIVATE);
         mDatabaseHelper = new DatabaseHelper(context);
+        mBacklogQuota = BacklogQuota.create(storageQuota);
     }
 
     /**
@@ -104,11 +112,11 @@ public class MParticleDBManager {
      */
 
     public void cleanupMessages() {
-        MessageService.cleanupMessages(getDatabase());
+        MessageService.cleanupMessages(getDatabase(), mBacklogQuota);
     }
 
     public void insertMessage(String apiKey, BaseMPMessage message, String dataplanId, Integer dataplanVersion) throws JSONException {
-        MessageService.insertMessage(getDatabase(), apiKey, message, message.getMpId(), dataplanId, dataplanVersion);
+        MessageService.insertMessage(getDatabase(), apiKey, message, message.getMpId(), dataplanId, dataplanVersion, mBacklogQuota);
         if (sMessageListener != null) {
             sMessageListener.onMessageStored(message);
         }
@@ -146,13 +154,13 @@ public class MParticleDBManager {
                 return;
             }
 
-            HashMap<BatchId, MessageBatch> uploadMessagesByBatchId = getUploadMessageByBatchIdMap(readyMessages, db, configManager, true);
+            HashMap<BatchId, MessageBatch> uploadMessagesByBatchId = getUploadMessageByBatchIdMap(readyMessages, db, configManager, true, false, Constants.MessagePriority.BULK);
 
             List<JSONObject> deviceInfos = SessionService.processSessions(db, uploadMessagesByBatchId);
             for (JSONObject deviceInfo : deviceInfos) {
                 deviceAttributes.updateDeviceInfo(mContext, deviceInfo);
             }
-            createUploads(uploadMessagesByBatchId, db, deviceAttributes, configManager, currentSessionId, true);
+            createUploads(uploadMessagesByBatchId, db, deviceAttributes, configManager, currentSessionId, true, false, Constants.MessagePriority.BULK);
             db.setTransactionSuccessful();
         }
         finally {
@@ -160,16 +168,49 @@ public class MParticleDBManager {
         }
     }
 
+    /**
+     * Package the messages in every upload lane, highest lane first.
+     */
     public void createMessagesForUploadMessage(ConfigManager configManager, DeviceAttributes deviceAttributes, String currentSessionId, boolean sessionHistoryEnabled) throws JSONException {
+        createMessagesForUploadMessage(configManager, deviceAttributes, currentSessionId, sessionHistoryEnabled, Constants.DEFAULT_UPLOAD_BATCH_SIZE);
+    }
+
+    /**
+     * Package at most batchSize messages in every upload lane, highest lane first.
+     */
+    public void createMessagesForUploadMessage(ConfigManager configManager, DeviceAttributes deviceAttributes, String currentSessionId, boolean sessionHistoryEnabled, int batchSize) throws JSONException {
+        boolean previousSessionPackaged = createMessagesForLane(configManager, deviceAttributes, currentSessionId, sessionHistoryEnabled, Constants.MessagePriority.CRITICAL, batchSize);
+        previousSessionPackaged |= createMessagesForLane(configManager, deviceAttributes, currentSessionId, sessionHistoryEnabled, Constants.MessagePriority.NORMAL, batchSize);
+        previousSessionPackaged |= createMessagesForLane(configManager, deviceAttributes, currentSessionId, sessionHistoryEnabled, Constants.MessagePriority.BULK, batchSize);
+        //Previous sessions are only deleted once every lane has read their app and device info.
+        if (previousSessionPackaged) {
+            SessionService.deleteSessions(getDatabase(), currentSessionId);
+        }
+    }
+
+    /**
+     * Package at most batchSize messages in a single upload lane, see {@link Constants.MessagePriority}.
+     * The resulting upload batches are stored in the same lane. Previous sessions are left in place,
+     * since other lanes may still hold their messages, and are cleaned up by the next pass over every lane.
+     */
+    public void createMessagesForUploadMessage(ConfigManager configManager, DeviceAttributes deviceAttributes, String currentSessionId, boolean sessionHistoryEnabled, int priority, int batchSize) throws JSONException {
+        createMessagesForLane(configManager, deviceAttributes, currentSessionId, sessionHistoryEnabled, priority, batchSize);
+    }
+
+    /**
+     * @return true if a batch for a session other than the current one was packaged and session
+     * history is disabled, meaning the previous sessions may be deleted.
+     */
+    private boolean createMessagesForLane(ConfigManager configManager, DeviceAttributes deviceAttributes, String currentSessionId, boolean sessionHistoryEnabled, int priority, int batchSize) throws JSONException {
        MPDatabase db = getDatabase();
         db.beginTransaction();
         try {
-            List<MessageService.ReadyMessage> readyMessages = MessageService.getMessagesForUpload(db);
+            List<MessageService.ReadyMessage> readyMessages = MessageService.getMessagesForUpload(db, priority, batchSize);
             if (readyMessages.size() <= 0) {
                 db.setTransactionSuccessful();
-                return;
+                return false;
             }
-            HashMap<BatchId, MessageBatch> uploadMessagesByBatchId = getUploadMessageByBatchIdMap(readyMessages, db, configManager, false, sessionHistoryEnabled);
+            HashMap<BatchId, MessageBatch> uploadMessagesByBatchId = getUploadMessageByBatchIdMap(readyMessages, db, configManager, false, sessionHistoryEnabled, priority);
 
             List<ReportingService.ReportingMessage> reportingMessages = ReportingService.getReportingMessagesForUpload(db);
             for (ReportingService.ReportingMessage reportingMessage : reportingMessages) {
@@ -205,8 +246,9 @@ public class MParticleDBManager {
             for (JSONObject deviceInfo : deviceInfos) {
                 deviceAttributes.updateDeviceInfo(mContext, deviceInfo);
             }
-            createUploads(uploadMessagesByBatchId, db, deviceAttributes, configManager, currentSessionId, false, sessionHistoryEnabled);
+            boolean previousSessionPackaged = createUploads(uploadMessagesByBatchId, db, deviceAttributes, configManager, currentSessionId, false, sessionHistoryEnabled, priority);
             db.setTransactionSuccessful();
+            return previousSessionPackaged;
         }
         finally {
             db.endTransaction();
@@ -221,11 +263,7 @@ public class MParticleDBManager {
         db.endTransaction();
     }
 
-    private HashMap<BatchId, MessageBatch> getUploadMessageByBatchIdMap(List<MessageService.ReadyMessage> readyMessages, MPDatabase db, ConfigManager configManager, boolean isHistory) throws JSONException {
-        return getUploadMessageByBatchIdMap(readyMessages, db, configManager, isHistory, false);
-    }
-
-    private HashMap<BatchId, MessageBatch> getUploadMessageByBatchIdMap(List<MessageService.ReadyMessage> readyMessages, MPDatabase db, ConfigManager configManager, boolean isHistory, boolean markAsUpload) throws JSONException {
+    private HashMap<BatchId, MessageBatch> getUploadMessageByBatchIdMap(List<MessageService.ReadyMessage> readyMessages, MPDatabase db, ConfigManager configManager, boolean isHistory, boolean markAsUpload, int priority) throws JSONException {
         HashMap<BatchId, MessageBatch> uploadMessagesByBatchId= new HashMap<BatchId, MessageBatch>();
         int highestUploadedMessageId = -1;
         for (MessageService.ReadyMessage readyMessage : readyMessages) {
@@ -235,35 +273,53 @@ public class MParticleDBManager {
                 uploadMessage = createUploadMessage(configManager, true, batchId);
                 uploadMessagesByBatchId.put(batchId, uploadMessage);
             }
-            int messageLength = readyMessage.getMessage().length();
-            JSONObject msgObject = new JSONObject(readyMessage.getMessage());
+            String message = readyMessage.getMessage();
+            int messageLength = message.length();
             if (messageLength + uploadMessage.getMessageLengthBytes() > Constants.LIMIT_MAX_UPLOAD_SIZE) {
                 break;
             }
-            if (isHistory) {
-                uploadMessage.addSessionHistoryMessage(msgObject);
+            //Messages are spliced into the batch as they were stored, only the ones which
+            //findIdentityState() and findUserAttributeState() need to inspect are parsed.
+            if (isStateChangeCandidate(message)) {
+                JSONObject msgObject = new JSONObject(message);
+                if (isHistory) {
+                    uploadMessage.addSessionHistoryMessage(msgObject);
+                } else {
+                    uploadMessage.addMessage(msgObject);
+                }
             } else {
-                uploadMessage.addMessage(msgObject);
+                if (isHistory) {
+                    uploadMessage.addSessionHistoryMessage(message);
+                } else {
+                    uploadMessage.addMessage(message);
+                }
+            }
+            if (Constants.MessageType.SESSION_END.equals(readyMessage.getMessageType())) {
+                uploadMessage.setContainsSessionEnd(true);
             }
             InternalListenerManager.getListener().onCompositeObjects(readyMessage, uploadMessage);
             uploadMessage.incrementMessageLengthBytes(messageLength);
             highestUploadedMessageId = readyMessage.getMessageId();
         }
-        if (markAsUpload) {
+        if (isHistory) {
+            //Messages in lower lanes may not have been packaged yet, so only uploaded messages are deleted.
+            MessageService.deleteUploadedMessages(db, highestUploadedMessageId);
+        } else if (markAsUpload) {
             //Else mark the messages as uploaded, so next time around it'll be included in session history.
-            MessageService.markMessagesAsUploaded(db, highestUploadedMessageId);
+            MessageService.markMessagesAsUploaded(db, highestUploadedMessageId, priority);
         } else {
             //If this is a session-less message, or if session history is disabled, just delete it.
-            MessageService.deleteMessages(db, highestUploadedMessageId);
+            MessageService.deleteMessages(db, highestUploadedMessageId, priority);
         }
         return uploadMessagesByBatchId;
     }
 
-    private void createUploads(Map<BatchId, MessageBatch> uploadMessagesByBatchId, MPDatabase db, DeviceAttributes deviceAttributes, ConfigManager configManager, String currentSessionId, boolean historyMessages) {
-        createUploads(uploadMessagesByBatchId, db, deviceAttributes, configManager, currentSessionId, historyMessages, false);
-    }
-
-    private void createUploads(Map<BatchId, MessageBatch> uploadMessagesByBatchId, MPDatabase db, DeviceAttributes deviceAttributes, ConfigManager configManager, String currentSessionId, boolean historyMessages, boolean sessionHistoryEnabled) {
+    /**
+     * @return true if this was not session history, session history is disabled, and a batch
+     * contained a previous session, in which case the caller should delete the previous sessions.
+     */
+    private boolean createUploads(Map<BatchId, MessageBatch> uploadMessagesByBatchId, MPDatabase db, DeviceAttributes deviceAttributes, ConfigManager configManager, String currentSessionId, boolean historyMessages, boolean sessionHistoryEnabled, int priority) {
+        boolean previousSessionPackaged = false;
         for (Map.Entry<BatchId, MessageBatch> messageBatchEntry : uploadMessagesByBatchId.entrySet()) {
             BatchId batchId = messageBatchEntry.getKey();
             MessageBatch uploadMessage = messageBatchEntry.getValue();
@@ -277,38 +333,46 @@ public class MParticleDBManager {
                 if (uploadMessage.getDeviceInfo() == null || sessionId.equals(currentSessionId)) {
                     uploadMessage.setDeviceInfo(deviceAttributes.getDeviceInfo(mContext));
                 }
-                JSONArray messages;
+                List<JSONObject> messages;
                 if (historyMessages) {
-                    messages = uploadMessage.getSessionHistoryMessages();
+                    messages = uploadMessage.getParsedSessionHistoryMessages();
                 } else {
-                    messages = uploadMessage.getMessages();
+                    messages = uploadMessage.getParsedMessages();
                 }
                 JSONArray identities = findIdentityState(configManager, messages, batchId.getMpid());
                 uploadMessage.setIdentities(identities);
                 JSONObject userAttributes = findUserAttributeState(messages, batchId.getMpid());
                 uploadMessage.setUserAttributes(userAttributes);
-                UploadService.insertUpload(db, uploadMessage, configManager.getApiKey());
-                //if this was to process session history, or
+                UploadService.insertUpload(db, uploadMessage, configManager.getApiKey(), batchId.getMpid(), priority, mBacklogQuota);
                 //if we're never going to process history AND
-                //this batch contains a previous session, then delete the session.
+                //this batch contains a previous session, then the session may be deleted.
                 if (!historyMessages && !sessionHistoryEnabled && !sessionId.equals(currentSessionId)) {
-                    SessionService.deleteSessions(db, currentSessionId);
+                    previousSessionPackaged = true;
                 }
             }
         }
+        return previousSessionPackaged;
+    }
+
+    /**
+     * Quick check on a serialized message for whether it might be a UIC or UAC message. False
+     * positives only cost a parse.
+     */
+    private static boolean isStateChangeCandidate(String message) {
+        return message.contains(USER_IDENTITY_CHANGE_VALUE) || message.contains(USER_ATTRIBUTE_CHANGE_VALUE);
     }
 
     /**
      * Look for the last UAC message to find the end-state of user attributes.
      */
-    private JSONObject findUserAttributeState(JSONArray messages, long mpId) {
+    private JSONObject findUserAttributeState(List<JSONObject> messages, long mpId) {
         JSONObject userAttributes = null;
         if (messages != null) {
-            for (int i = 0; i < messages.length(); i++) {
+            for (JSONObject message : messages) {
                 try {
-                    if (messages.getJSONObject(i).get(Constants.MessageKey.TYPE).equals(Constants.MessageType.USER_ATTRIBUTE_CHANGE)) {
-                        userAttributes = messages.getJSONObject(i).getJSONObject(Constants.MessageKey.USER_ATTRIBUTES);
-                        messages.getJSONObject(i).remove(Constants.MessageKey.USER_ATTRIBUTES);
+                    if (message.get(Constants.MessageKey.TYPE).equals(Constants.MessageType.USER_ATTRIBUTE_CHANGE)) {
+                        userAttributes = message.getJSONObject(Constants.MessageKey.USER_ATTRIBUTES);
+                        message.remove(Constants.MessageKey.USER_ATTRIBUTES);
                     }
                 }catch (JSONException jse) {
 
@@ -327,14 +391,14 @@ public class MParticleDBManager {
     /**
      * Look for the last UIC message to find the end-state of user identities.
      */
-    private JSONArray findIdentityState(ConfigManager configManager, JSONArray messages, long mpId) {
+    private JSONArray findIdentityState(ConfigManager configManager, List<JSONObject> messages, long mpId) {
         JSONArray identities = null;
         if (messages != null) {
-            for (int i = 0; i < messages.length(); i++) {
+            for (JSONObject message : messages) {
                 try {
-                    if (messages.getJSONObject(i).get(Constants.MessageKey.TYPE).equals(Constants.MessageType.USER_IDENTITY_CHANGE)) {
-                        identities = messages.getJSONObject(i).getJSONArray(Constants.MessageKey.USER_IDENTITIES);
-                        messages.getJSONObject(i).remove(Constants.MessageKey.USER_IDENTITIES);
+                    if (message.get(Constants.MessageKey.TYPE).equals(Constants.MessageType.USER_IDENTITY_CHANGE)) {
+                        identities = message.getJSONArray(Constants.MessageKey.USER_IDENTITIES);
+                        message.remove(Constants.MessageKey.USER_IDENTITIES);
                     }
                 }catch (JSONException jse) {
 
@@ -404,8 +468,7 @@ public class MParticleDBManager {
     }
 
     BaseMPMessage createMessageSessionEnd(String sessionId, long start, long end, long foregroundLength, JSONObject sessionAttributes, Location location, Set<Long> mpIds) throws JSONException{
-        int eventCounter = mPreferences.getInt(Constants.PrefKeys.EVENT_COUNTER, 0);
-        resetEventCounter();
+        int eventCounter = MessageManager.resetEventCounter();
         InternalSession session = new InternalSession();
         session.mSessionID = sessionId;
         session.mSessionStartTime = start;
@@ -430,11 +493,6 @@ public class MParticleDBManager {
         return message;
     }
 
-    private void resetEventCounter(){
-        mPreferences.edit().putInt(Constants.PrefKeys.EVENT_COUNTER, 0).apply();
-    }
-
-
     public List<String> getOrphanSessionIds(String apiKey) {
         return SessionService.getOrphanSessionIds(getDatabase(), apiKey);
     }
@@ -482,7 +540,35 @@ public class MParticleDBManager {
 
 
     public void cleanupUploadMessages() {
-        UploadService.cleanupUploadMessages(getDatabase());
+        UploadService.cleanupUploadMessages(getDatabase(), mBacklogQuota);
+    }
+
+    /**
+     * The number of messages evicted since the SDK started, to keep the backlog within the storage quota.
+     */
+    public long getEvictedMessageCount() {
+        return mBacklogQuota.getEvictedMessageCount();
+    }
+
+    /**
+     * The number of upload batches evicted since the SDK started, to keep the backlog within the storage quota.
+     */
+    public long getEvictedUploadCount() {
+        return mBacklogQuota.getEvictedUploadCount();
+    }
+
+    /**
+     * The number of stored messages which have not been packaged into an upload yet.
+     */
+    public int getPendingMessageCount() {
+        return MessageService.getPendingMessageCount(getDatabase());
+    }
+
+    /**
+     * The number of stored upload batches and alias requests waiting to be sent.
+     */
+    public int getPendingUploadCount() {
+        return UploadService.getUploadCount(getDatabase());
     }
 
     public List<ReadyUpload> getReadyUploads() {
@@ -710,7 +796,10 @@ public class MParticleDBManager {
     public static class ReadyUpload {
         private int id;
         private String message;
+        private byte[] gzippedMessage;
         private boolean isAliasRequest;
+        Long mpId;
+        Boolean containsSessionEnd;
 
         public ReadyUpload(int id, boolean isAliasRequest, String message) {
             this.id = id;
@@ -718,15 +807,57 @@ public class MParticleDBManager {
             this.isAliasRequest = isAliasRequest;
         }
 
+        public ReadyUpload(int id, boolean isAliasRequest, byte[] gzippedMessage) {
+            this.id = id;
+            this.gzippedMessage = gzippedMessage;
+            this.isAliasRequest = isAliasRequest;
+        }
+
 
         public int getId() {
             return id;
         }
 
+        /**
+         * The uncompressed message. For uploads stored gzipped, this is inflated on first access.
+         */
         public String getMessage() {
+            if (message == null && gzippedMessage != null) {
+                try {
+                    message = MPUtility.gunzip(gzippedMessage);
+                } catch (IOException e) {
+                    Logger.error(e, "Failed to decompress upload.");
+                }
+            }
             return message;
         }
 
+        /**
+         * @return the stored gzipped message, or null if the upload was stored uncompressed
+         */
+        @Nullable
+        public byte[] getGzippedMessage() {
+            return gzippedMessage;
+        }
+
+        /**
+         * @return the MPID of the batch, or null for alias requests and uploads stored before the
+         * MPID was recorded
+         */
+        @Nullable
+        public Long getMpId() {
+            return mpId;
+        }
+
+        /**
+         * @return whether the batch contains a session end message, or null for uploads stored
+         * before this was recorded
+         */
+        @Nullable
+        public Boolean containsSessionEnd() {
+            return containsSessionEnd;
+        }
+
         public boolean isAliasRequest() {
             return isAliasRequest;
         }
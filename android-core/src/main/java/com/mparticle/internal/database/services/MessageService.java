@@ -17,7 +17,7 @@ import java.util.List;
 
 public class MessageService extends MessageTable {
 
-    private final static String[] prepareSelection = new String[]{"_id", MessageTableColumns.MESSAGE, MessageTableColumns.CREATED_AT, MessageTableColumns.STATUS, MessageTableColumns.SESSION_ID, MessageTableColumns.MP_ID, MessageTableColumns.DATAPLAN_ID, MessageTableColumns.DATAPLAN_VERSION};
+    private final static String[] prepareSelection = new String[]{"_id", MessageTableColumns.MESSAGE, MessageTableColumns.CREATED_AT, MessageTableColumns.STATUS, MessageTableColumns.SESSION_ID, MessageTableColumns.MP_ID, MessageTableColumns.DATAPLAN_ID, MessageTableColumns.DATAPLAN_VERSION, MessageTableColumns.MESSAGE_TYPE};
     private final static String prepareOrderBy =  MessageTableColumns._ID + " asc";
 
     private static String getSessionHistorySelection(boolean includesMpid) {
@@ -32,6 +32,28 @@ public class MessageService extends MessageTable {
     public MessageService() {
     }
 
+    static BacklogQuota.TableQuota createTableQuota(int maxRows, long maxBytes, long maxAgeMillis, boolean lowestPriorityFirst) {
+        return new BacklogQuota.TableQuota(
+                "messages",
+                MessageTableColumns.TABLE_NAME,
+                MessageTableColumns.CREATED_AT,
+                BacklogQuota.byteLengthExpression(MessageTableColumns.MESSAGE),
+                lowestPriorityFirst ? getEvictionPriorityOrder() : MessageTableColumns._ID + " asc",
+                maxRows,
+                maxBytes,
+                maxAgeMillis);
+    }
+
+    /**
+     * Messages which have already been uploaded, and are only kept for session history, come
+     * first, followed by the bulk, normal and critical upload lanes, see {@link Constants.MessagePriority}.
+     * Rows stored before the lanes were recorded are in the normal lane.
+     */
+    static String getEvictionPriorityOrder() {
+        return "case when " + MessageTableColumns.STATUS + " = " + Constants.Status.UPLOADED + " then 0 else 1 end asc, " +
+                MessageTableColumns.PRIORITY + " asc, " + MessageTableColumns._ID + " asc";
+    }
+
     public static List<ReadyMessage> getSessionHistory(MPDatabase database, String currentSessionId) {
         return getSessionHistory(database, currentSessionId, false, Constants.TEMPORARY_MPID);
     }
@@ -55,6 +77,7 @@ public class MessageService extends MessageTable {
             int messageMpidIndex = readyMessagesCursor.getColumnIndex(MessageTableColumns.MP_ID);
             int dataplanIdIndex = readyMessagesCursor.getColumnIndex(MessageTableColumns.DATAPLAN_ID);
             int dataplanVersinIndex = readyMessagesCursor.getColumnIndex(MessageTableColumns.DATAPLAN_VERSION);
+            int messageTypeIndex = readyMessagesCursor.getColumnIndex(MessageTableColumns.MESSAGE_TYPE);
             while (readyMessagesCursor.moveToNext()) {
                 String sessionId = readyMessagesCursor.getString(sessionIdIndex);
                 int messageId = readyMessagesCursor.getInt(messageIdIndex);
@@ -65,7 +88,7 @@ public class MessageService extends MessageTable {
                 if (!readyMessagesCursor.isNull(dataplanVersinIndex)) {
                     dataplanVersion = readyMessagesCursor.getInt(dataplanVersinIndex);
                 }
-                ReadyMessage readyMessage = new ReadyMessage(messageMpid, sessionId, messageId, message, dataplanId, dataplanVersion);
+                ReadyMessage readyMessage = new ReadyMessage(messageMpid, sessionId, messageId, message, readyMessagesCursor.getString(messageTypeIndex), dataplanId, dataplanVersion);
                 InternalListenerManager.getListener().onCompositeObjects(readyMessagesCursor, readyMessage);
                 readyMessages.add(readyMessage);
             }
@@ -94,24 +117,51 @@ public class MessageService extends MessageTable {
         return getMessagesForUpload(database, false, Constants.TEMPORARY_MPID);
     }
 
+    /**
+     * Will return the Messages for upload in a single upload lane, see {@link Constants.MessagePriority}.
+     */
+    public static List<ReadyMessage> getMessagesForUpload(MPDatabase database, int priority) {
+        return getMessagesForUpload(database, priority, Constants.DEFAULT_UPLOAD_BATCH_SIZE);
+    }
+
+    /**
+     * Will return at most limit Messages for upload in a single upload lane.
+     */
+    public static List<ReadyMessage> getMessagesForUpload(MPDatabase database, int priority, int limit) {
+        return getMessagesForUpload(database, false, Constants.TEMPORARY_MPID, priority, limit);
+    }
+
     static List<ReadyMessage> getMessagesForUpload(MPDatabase database, boolean includes, long mpid){
+        return getMessagesForUpload(database, includes, mpid, null, Constants.DEFAULT_UPLOAD_BATCH_SIZE);
+    }
+
+    private static List<ReadyMessage> getMessagesForUpload(MPDatabase database, boolean includes, long mpid, Integer priority, int limit){
         Cursor readyMessagesCursor = null;
         List<ReadyMessage> readyMessages = new ArrayList<ReadyMessage>();
+        String selection = MessageTableColumns.STATUS + " != ? and " + MessageTableColumns.CREATED_AT + " < " + System.currentTimeMillis() + " and " + MessageTableColumns.MP_ID + (includes ? " = ?" : " != ?");
+        String[] selectionArgs;
+        if (priority == null) {
+            selectionArgs = new String[]{Integer.toString(Constants.Status.UPLOADED), String.valueOf(mpid)};
+        } else {
+            selection += " and " + MessageTableColumns.PRIORITY + " = ?";
+            selectionArgs = new String[]{Integer.toString(Constants.Status.UPLOADED), String.valueOf(mpid), String.valueOf(priority)};
+        }
         try {
             readyMessagesCursor = database.query(
                     MessageTableColumns.TABLE_NAME,
                     null,
-                    MessageTableColumns.STATUS + " != ? and " + MessageTableColumns.CREATED_AT + " < " + System.currentTimeMillis() + " and " + MessageTableColumns.MP_ID + (includes ? " = ?" : " != ?"),
-                    new String[]{Integer.toString(Constants.Status.UPLOADED), String.valueOf(mpid)},
+                    selection,
+                    selectionArgs,
                     null,
                     null,
-                    prepareOrderBy, "100");
+                    prepareOrderBy, String.valueOf(limit));
             int messageIdIndex = readyMessagesCursor.getColumnIndex(MessageTableColumns._ID);
             int messageIndex = readyMessagesCursor.getColumnIndex(MessageTableColumns.MESSAGE);
             int sessionIdIndex = readyMessagesCursor.getColumnIndex(MessageTableColumns.SESSION_ID);
             int messageMpidIndex = readyMessagesCursor.getColumnIndex(MessageTableColumns.MP_ID);
             int dataplanIdIndex = readyMessagesCursor.getColumnIndex(MessageTableColumns.DATAPLAN_ID);
             int dataplanVersinIndex = readyMessagesCursor.getColumnIndex(MessageTableColumns.DATAPLAN_VERSION);
+            int messageTypeIndex = readyMessagesCursor.getColumnIndex(MessageTableColumns.MESSAGE_TYPE);
             while (readyMessagesCursor.moveToNext()) {
                 String sessionId = readyMessagesCursor.getString(sessionIdIndex);
                 int messageId = readyMessagesCursor.getInt(messageIdIndex);
@@ -122,7 +172,7 @@ public class MessageService extends MessageTable {
                 if (!readyMessagesCursor.isNull(dataplanVersinIndex)) {
                     dataplanVersion = readyMessagesCursor.getInt(dataplanVersinIndex);
                 }
-                ReadyMessage readyMessage = new ReadyMessage(messageMpid, sessionId, messageId, message, dataplanId, dataplanVersion);
+                ReadyMessage readyMessage = new ReadyMessage(messageMpid, sessionId, messageId, message, readyMessagesCursor.getString(messageTypeIndex), dataplanId, dataplanVersion);
                 InternalListenerManager.getListener().onCompositeObjects(readyMessagesCursor, readyMessage);
                 readyMessages.add(readyMessage);
             }
@@ -135,8 +185,28 @@ public class MessageService extends MessageTable {
         return readyMessages;
     }
 
+    /**
+     * The number of stored messages which have not been packaged into an upload yet.
+     */
+    public static int getPendingMessageCount(MPDatabase database) {
+        Cursor cursor = null;
+        try {
+            cursor = database.query(MessageTableColumns.TABLE_NAME, new String[]{"count(*)"}, MessageTableColumns.STATUS + " != ?", new String[]{Integer.toString(Constants.Status.UPLOADED)}, null, null, null);
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            if (cursor != null && !cursor.isClosed()) {
+                cursor.close();
+            }
+        }
+    }
+
     public static int cleanupMessages(MPDatabase database) {
-        return database.delete(MessageTableColumns.TABLE_NAME, "length(" + MessageTableColumns.MESSAGE + ") > " + Constants.LIMIT_MAX_MESSAGE_SIZE, null);
+        return cleanupMessages(database, BacklogQuota.NONE);
+    }
+
+    static int cleanupMessages(MPDatabase database, BacklogQuota quota) {
+        return database.delete(MessageTableColumns.TABLE_NAME, "length(" + MessageTableColumns.MESSAGE + ") > " + Constants.LIMIT_MAX_MESSAGE_SIZE, null)
+                + quota.evictExpiredMessages(database);
     }
 
 
@@ -160,6 +230,17 @@ public class MessageService extends MessageTable {
         return database.update(MessageTableColumns.TABLE_NAME, contentValues, MessageTableColumns._ID + " <= ? and " + MessageTableColumns.MP_ID + " != ? ", whereArgs);
     }
 
+    /**
+     * Messages are packaged one upload lane at a time, so the messages up to messageId in other
+     * lanes are left as they are.
+     */
+    public static int markMessagesAsUploaded(MPDatabase database, int messageId, int priority) {
+        String[] whereArgs = new String[]{Integer.toString(messageId), String.valueOf(Constants.TEMPORARY_MPID), String.valueOf(priority)};
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(MessageTableColumns.STATUS, Constants.Status.UPLOADED);
+        return database.update(MessageTableColumns.TABLE_NAME, contentValues, MessageTableColumns._ID + " <= ? and " + MessageTableColumns.MP_ID + " != ? and " + MessageTableColumns.PRIORITY + " = ?", whereArgs);
+    }
+
     /**
      * Delete a message that has been uploaded in session history.
      */
@@ -168,7 +249,27 @@ public class MessageService extends MessageTable {
         return database.delete(MessageTableColumns.TABLE_NAME, MessageTableColumns._ID + " <= ? and " + MessageTableColumns.MP_ID + " != ?", whereArgs);
     }
 
+    /**
+     * Delete the messages up to messageId which have been uploaded, and were included in session history.
+     */
+    public static int deleteUploadedMessages(MPDatabase database, int messageId) {
+        String[] whereArgs = new String[]{Integer.toString(messageId), String.valueOf(Constants.TEMPORARY_MPID), Integer.toString(Constants.Status.UPLOADED)};
+        return database.delete(MessageTableColumns.TABLE_NAME, MessageTableColumns._ID + " <= ? and " + MessageTableColumns.MP_ID + " != ? and " + MessageTableColumns.STATUS + " = ?", whereArgs);
+    }
+
+    public static int deleteMessages(MPDatabase database, int messageId, int priority) {
+        String[] whereArgs = new String[]{Integer.toString(messageId), String.valueOf(Constants.TEMPORARY_MPID), String.valueOf(priority)};
+        return database.delete(MessageTableColumns.TABLE_NAME, MessageTableColumns._ID + " <= ? and " + MessageTableColumns.MP_ID + " != ? and " + MessageTableColumns.PRIORITY + " = ?", whereArgs);
+    }
+
     public static void insertMessage(MPDatabase db, String apiKey, BaseMPMessage message, long mpId, String dataplanId, Integer dataplanVersion) throws JSONException {
+        insertMessage(db, apiKey, message, mpId, dataplanId, dataplanVersion, BacklogQuota.NONE);
+    }
+
+    /**
+     * Insert a message, evicting older messages if the table then exceeds the storage quota.
+     */
+    static void insertMessage(MPDatabase db, String apiKey, BaseMPMessage message, long mpId, String dataplanId, Integer dataplanVersion, BacklogQuota quota) throws JSONException {
         ContentValues contentValues = new ContentValues();
         contentValues.put(MessageTableColumns.API_KEY, apiKey);
         contentValues.put(MessageTableColumns.CREATED_AT, message.getLong(Constants.MessageKey.TIMESTAMP));
@@ -186,8 +287,11 @@ public class MessageService extends MessageTable {
             return;
         }
         contentValues.put(MessageTableColumns.MESSAGE, messageString);
+        String messageType = message.getString(Constants.MessageKey.TYPE);
+        contentValues.put(MessageTableColumns.MESSAGE_TYPE, messageType);
+        contentValues.put(MessageTableColumns.PRIORITY, message.getPriority());
 
-        if (Constants.MessageType.FIRST_RUN.equals(message.getString(Constants.MessageKey.TYPE))) {
+        if (Constants.MessageType.FIRST_RUN.equals(messageType)) {
             // Force the first run message to be parsed immediately.
             contentValues.put(MessageTableColumns.STATUS, Constants.Status.BATCH_READY);
         } else {
@@ -195,6 +299,7 @@ public class MessageService extends MessageTable {
         }
         InternalListenerManager.getListener().onCompositeObjects(message, contentValues);
         db.insert(MessageTableColumns.TABLE_NAME, null, contentValues);
+        quota.onMessageInserted(db, BacklogQuota.getByteLength(messageString));
     }
 
     public static class ReadyMessage {
@@ -202,14 +307,16 @@ public class MessageService extends MessageTable {
         private String sessionId;
         private int messageId;
         private String message;
+        private String messageType;
         private String dataplanId;
         private Integer dataplanVersion;
 
-        private ReadyMessage(long mpid, String sessionId, int messageId, String message, String dataplanId, Integer dataplanVersion) {
+        private ReadyMessage(long mpid, String sessionId, int messageId, String message, String messageType, String dataplanId, Integer dataplanVersion) {
             this.mpid = mpid;
             this.sessionId = sessionId;
             this.messageId = messageId;
             this.message = message;
+            this.messageType = messageType;
             this.dataplanId = dataplanId;
             this.dataplanVersion = dataplanVersion;
         }
@@ -230,6 +337,10 @@ public class MessageService extends MessageTable {
             return message;
         }
 
+        public String getMessageType() {
+            return messageType;
+        }
+
         public String getDataplanId() {
             return dataplanId;
         }
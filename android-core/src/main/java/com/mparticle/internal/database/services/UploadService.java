@@ -4,6 +4,8 @@ import android.content.ContentValues;
 import android.database.Cursor;
 
 import com.mparticle.internal.Constants;
+import com.mparticle.internal.Logger;
+import com.mparticle.internal.MPUtility;
 import com.mparticle.internal.MessageBatch;
 import com.mparticle.internal.database.MPDatabase;
 import com.mparticle.internal.database.tables.UploadTable;
@@ -11,42 +13,123 @@ import com.mparticle.internal.listeners.InternalListenerManager;
 
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 public class UploadService extends UploadTable {
 
+    static BacklogQuota.TableQuota createTableQuota(int maxRows, long maxBytes, long maxAgeMillis, boolean lowestPriorityFirst) {
+        return new BacklogQuota.TableQuota(
+                "upload batches",
+                UploadTableColumns.TABLE_NAME,
+                UploadTableColumns.CREATED_AT,
+                BacklogQuota.byteLengthExpression(UploadTableColumns.MESSAGE),
+                lowestPriorityFirst ? getEvictionPriorityOrder() : UploadTableColumns._ID + " asc",
+                maxRows,
+                maxBytes,
+                maxAgeMillis);
+    }
+
+    /**
+     * Message batches come before alias requests, which hold no messages and are far smaller. Batches
+     * are evicted from the lowest upload lane first, see {@link Constants.MessagePriority}.
+     */
+    static String getEvictionPriorityOrder() {
+        return "case when " + UploadTableColumns.REQUEST_TYPE + " = '" + UploadTable.ALIAS_REQUEST + "' then 1 else 0 end asc, " +
+                UploadTableColumns.PRIORITY + " asc, " + UploadTableColumns._ID + " asc";
+    }
+
     public static int cleanupUploadMessages(MPDatabase database) {
-        return database.delete(UploadTableColumns.TABLE_NAME, "length(" + UploadTableColumns.MESSAGE + ") > " + Constants.LIMIT_MAX_UPLOAD_SIZE, null);
+        return cleanupUploadMessages(database, BacklogQuota.NONE);
+    }
+
+    static int cleanupUploadMessages(MPDatabase database, BacklogQuota quota) {
+        return database.delete(UploadTableColumns.TABLE_NAME, "coalesce(" + UploadTableColumns.MESSAGE_LENGTH + ", length(" + UploadTableColumns.MESSAGE + ")) > " + Constants.LIMIT_MAX_UPLOAD_SIZE, null)
+                + quota.evictExpiredUploads(database);
     }
 
     /**
      * Generic method to insert a new upload,
      * either a regular message batch, or a session history.
      *
+     * Batches are gzipped once here, and the stored bytes are sent as-is on every upload attempt.
+     *
      * @param message
      */
     public static void insertUpload(MPDatabase database, MessageBatch message, String apiKey) {
+        insertUpload(database, message, apiKey, getMpid(message), Constants.MessagePriority.NORMAL, BacklogQuota.NONE);
+    }
+
+    /**
+     * Insert an upload for the given MPID in the given upload lane, evicting older uploads if the
+     * table then exceeds the storage quota.
+     */
+    static void insertUpload(MPDatabase database, MessageBatch message, String apiKey, long mpid, int priority, BacklogQuota quota) {
         ContentValues contentValues = new ContentValues();
         contentValues.put(UploadTableColumns.API_KEY, apiKey);
         contentValues.put(UploadTableColumns.CREATED_AT, message.optLong(Constants.MessageKey.TIMESTAMP, System.currentTimeMillis()));
-        contentValues.put(UploadTableColumns.MESSAGE, message.toString());
+        String messageString = message.toString();
+        long storedLength;
+        try {
+            byte[] gzipped = MPUtility.gzip(messageString);
+            contentValues.put(UploadTableColumns.MESSAGE, gzipped);
+            contentValues.put(UploadTableColumns.CODEC, UploadTable.CODEC_GZIP);
+            storedLength = gzipped.length;
+        } catch (IOException e) {
+            Logger.warning("Failed to compress upload, storing it uncompressed: " + e.getMessage());
+            contentValues.put(UploadTableColumns.MESSAGE, messageString);
+            storedLength = BacklogQuota.getByteLength(messageString);
+        }
+        contentValues.put(UploadTableColumns.MESSAGE_LENGTH, messageString.length());
+        contentValues.put(UploadTableColumns.MP_ID, mpid);
         contentValues.put(UploadTableColumns.REQUEST_TYPE, UploadTable.UPLOAD_REQUEST);
+        contentValues.put(UploadTableColumns.PRIORITY, priority);
+        contentValues.put(UploadTableColumns.SESSION_END, message.containsSessionEnd() ? 1 : 0);
         InternalListenerManager.getListener().onCompositeObjects(message, contentValues);
         database.insert(UploadTableColumns.TABLE_NAME, null, contentValues);
+        quota.onUploadInserted(database, storedLength);
+    }
+
+    /**
+     * The batch holds its MPID as a String. Parse it directly, since optLong() goes through a double
+     * and would round MPIDs above 2^53.
+     */
+    private static long getMpid(MessageBatch message) {
+        try {
+            return Long.parseLong(message.optString(Constants.MessageKey.MPID));
+        } catch (NumberFormatException e) {
+            return Constants.TEMPORARY_MPID;
+        }
     }
 
     public static List<MParticleDBManager.ReadyUpload> getReadyUploads(MPDatabase database) {
         List<MParticleDBManager.ReadyUpload> readyUploads = new ArrayList<MParticleDBManager.ReadyUpload>();
         Cursor readyUploadsCursor = null;
         try {
-            readyUploadsCursor = database.query(UploadTableColumns.TABLE_NAME, new String[]{"_id", UploadTableColumns.MESSAGE, UploadTableColumns.REQUEST_TYPE},
-                    null, null, null, null, UploadTableColumns.CREATED_AT);
+            readyUploadsCursor = database.query(UploadTableColumns.TABLE_NAME, new String[]{"_id", UploadTableColumns.MESSAGE, UploadTableColumns.REQUEST_TYPE, UploadTableColumns.CODEC, UploadTableColumns.MP_ID, UploadTableColumns.SESSION_END},
+                    null, null, null, null, READY_UPLOADS_ORDER);
             int messageIdIndex = readyUploadsCursor.getColumnIndex(UploadTableColumns._ID);
             int messageIndex = readyUploadsCursor.getColumnIndex(UploadTableColumns.MESSAGE);
             int requestTypeIndex = readyUploadsCursor.getColumnIndex(UploadTableColumns.REQUEST_TYPE);
+            int codecIndex = readyUploadsCursor.getColumnIndex(UploadTableColumns.CODEC);
+            int mpIdIndex = readyUploadsCursor.getColumnIndex(UploadTableColumns.MP_ID);
+            int sessionEndIndex = readyUploadsCursor.getColumnIndex(UploadTableColumns.SESSION_END);
             while (readyUploadsCursor.moveToNext()) {
-                MParticleDBManager.ReadyUpload readyUpload = new MParticleDBManager.ReadyUpload(readyUploadsCursor.getInt(messageIdIndex), UploadTable.ALIAS_REQUEST.equals(readyUploadsCursor.getString(requestTypeIndex)), readyUploadsCursor.getString(messageIndex));
+                int id = readyUploadsCursor.getInt(messageIdIndex);
+                boolean isAliasRequest = UploadTable.ALIAS_REQUEST.equals(readyUploadsCursor.getString(requestTypeIndex));
+                MParticleDBManager.ReadyUpload readyUpload;
+                if (UploadTable.CODEC_GZIP.equals(readyUploadsCursor.getString(codecIndex))) {
+                    readyUpload = new MParticleDBManager.ReadyUpload(id, isAliasRequest, readyUploadsCursor.getBlob(messageIndex));
+                } else {
+                    readyUpload = new MParticleDBManager.ReadyUpload(id, isAliasRequest, readyUploadsCursor.getString(messageIndex));
+                }
+                if (!readyUploadsCursor.isNull(mpIdIndex)) {
+                    readyUpload.mpId = readyUploadsCursor.getLong(mpIdIndex);
+                }
+                if (!readyUploadsCursor.isNull(sessionEndIndex)) {
+                    readyUpload.containsSessionEnd = readyUploadsCursor.getInt(sessionEndIndex) == 1;
+                }
                 readyUploads.add(readyUpload);
                 InternalListenerManager.getListener().onCompositeObjects(readyUploadsCursor, readyUpload);
             }
@@ -60,6 +143,21 @@ public class UploadService extends UploadTable {
 
     }
 
+    /**
+     * The number of stored upload batches and alias requests waiting to be sent.
+     */
+    public static int getUploadCount(MPDatabase database) {
+        Cursor cursor = null;
+        try {
+            cursor = database.query(UploadTableColumns.TABLE_NAME, new String[]{"count(*)"}, null, null, null, null, null);
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            if (cursor != null && !cursor.isClosed()) {
+                cursor.close();
+            }
+        }
+    }
+
     /**
      * After an actually successful upload over the wire.
      *
@@ -75,8 +173,11 @@ public class UploadService extends UploadTable {
         ContentValues contentValues = new ContentValues();
         contentValues.put(UploadTableColumns.API_KEY, apiKey);
         contentValues.put(UploadTableColumns.CREATED_AT, System.currentTimeMillis());
-        contentValues.put(UploadTableColumns.MESSAGE, request.toString());
+        String message = request.toString();
+        contentValues.put(UploadTableColumns.MESSAGE, message);
+        contentValues.put(UploadTableColumns.MESSAGE_LENGTH, message.length());
         contentValues.put(UploadTableColumns.REQUEST_TYPE, UploadTable.ALIAS_REQUEST);
+        contentValues.put(UploadTableColumns.SESSION_END, 0);
         InternalListenerManager.getListener().onCompositeObjects(request, contentValues);
         return database.insert(UploadTableColumns.TABLE_NAME, null, contentValues);
     }
@@ -33,4 +33,13 @@ public class BreadcrumbTable extends MpIdDependentTable {
                     BreadcrumbTableColumns.CF_UUID + " TEXT, " +
                     BreadcrumbTableColumns.MP_ID + " INTEGER" +
                     ");";
+
+    /**
+     * Breadcrumbs are always looked up per MPID, and read back newest first.
+     */
+    static final String CREATE_BREADCRUMBS_MP_ID_INDEX_DDL =
+            "CREATE INDEX IF NOT EXISTS breadcrumbs_mp_id_idx ON " + BreadcrumbTableColumns.TABLE_NAME + " (" +
+                    BreadcrumbTableColumns.MP_ID + ", " +
+                    BreadcrumbTableColumns.CREATED_AT +
+                    ");";
 }
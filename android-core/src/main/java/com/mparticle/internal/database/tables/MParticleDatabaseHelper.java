@@ -9,6 +9,7 @@ import android.os.Message;
 import com.mparticle.MParticle;
 import com.mparticle.internal.ConfigManager;
 import com.mparticle.internal.Constants;
+import com.mparticle.internal.KeyValueStore;
 import com.mparticle.internal.Logger;
 import com.mparticle.internal.MPUtility;
 import com.mparticle.internal.database.services.SQLiteOpenHelperWrapper;
@@ -20,7 +21,7 @@ import java.util.Iterator;
 
 public class MParticleDatabaseHelper implements SQLiteOpenHelperWrapper {
     private final Context mContext;
-    public static final int DB_VERSION = 9;
+    public static final int DB_VERSION = 14;
     public static final String DB_NAME = "mparticle.db";
 
     public MParticleDatabaseHelper(Context context) {
@@ -35,6 +36,8 @@ public class MParticleDatabaseHelper implements SQLiteOpenHelperWrapper {
         db.execSQL(BreadcrumbTable.CREATE_BREADCRUMBS_DDL);
         db.execSQL(ReportingTable.CREATE_REPORTING_DDL);
         db.execSQL(UserAttributesTable.CREATE_USER_ATTRIBUTES_DDL);
+        createIndexes(db);
+        db.execSQL(UploadTable.CREATE_UPLOADS_PRIORITY_INDEX_DDL);
     }
 
     @Override
@@ -63,6 +66,21 @@ public class MParticleDatabaseHelper implements SQLiteOpenHelperWrapper {
             if (oldVersion < 9) {
                 upgradeMessageTable(db);
             }
+            if (oldVersion < 10) {
+                createIndexes(db);
+            }
+            if (oldVersion < 11) {
+                upgradeUploadTable(db);
+            }
+            if (oldVersion < 12) {
+                db.execSQL(UploadTable.ADD_MP_ID_COLUMN);
+            }
+            if (oldVersion < 13) {
+                upgradePriority(db);
+            }
+            if (oldVersion < 14) {
+                db.execSQL(UploadTable.ADD_SESSION_END_COLUMN);
+            }
         } catch (Exception e) {
             Logger.warning("Exception while upgrading SQLite Database:\n" + e.getMessage() + "\nThis may have been caused by the database having been already upgraded");
         }
@@ -93,6 +111,27 @@ public class MParticleDatabaseHelper implements SQLiteOpenHelperWrapper {
         db.execSQL(MessageTable.ADD_DATAPLAN_VERSION_COLUMN);
     }
 
+    private void upgradeUploadTable(SQLiteDatabase db) {
+        db.execSQL(UploadTable.ADD_CODEC_COLUMN);
+        db.execSQL(UploadTable.ADD_MESSAGE_LENGTH_COLUMN);
+    }
+
+    /**
+     * Existing messages and uploads are placed in the normal lane by the column default. The uploads
+     * index on creation time is replaced by one which matches the order ready uploads are read in.
+     */
+    private void upgradePriority(SQLiteDatabase db) {
+        db.execSQL(MessageTable.ADD_PRIORITY_COLUMN);
+        db.execSQL(UploadTable.ADD_PRIORITY_COLUMN);
+        db.execSQL(UploadTable.DROP_UPLOADS_CREATED_AT_INDEX_DDL);
+        db.execSQL(UploadTable.CREATE_UPLOADS_PRIORITY_INDEX_DDL);
+    }
+
+    private void createIndexes(SQLiteDatabase db) {
+        db.execSQL(MessageTable.CREATE_MESSAGES_STATUS_INDEX_DDL);
+        db.execSQL(BreadcrumbTable.CREATE_BREADCRUMBS_MP_ID_INDEX_DDL);
+    }
+
     private void upgradeMpId(SQLiteDatabase db) {
         String currentMpId = String.valueOf(ConfigManager.getMpid(mContext));
         db.execSQL(ReportingTable.getAddMpIdColumnString(currentMpId));
@@ -103,7 +142,7 @@ public class MParticleDatabaseHelper implements SQLiteOpenHelperWrapper {
     }
 
     private void upgradeUserAttributes(SQLiteDatabase db) {
-        SharedPreferences sharedPreferences = mContext.getSharedPreferences(Constants.PREFS_FILE, Context.MODE_PRIVATE);
+        SharedPreferences sharedPreferences = KeyValueStore.getSharedPreferences(mContext, Constants.PREFS_FILE);
 
         String userAttrs = sharedPreferences.getString(Constants.PrefKeys.DEPRECATED_USER_ATTRS + MParticle.getInstance().Internal().getConfigManager().getApiKey(), null);
         try {
@@ -2,12 +2,15 @@ package com.mparticle.internal.database.tables;
 
 import android.provider.BaseColumns;
 
+import com.mparticle.internal.Constants;
+
 public class MessageTable extends MpIdDependentTable {
 
     public static final String ADD_DATAPLAN_VERSION_COLUMN = "ALTER TABLE " + MessageTableColumns.TABLE_NAME +
             " ADD COLUMN " + MessageTableColumns.DATAPLAN_VERSION + " NUMBER";
     public static final String ADD_DATAPLAN_ID_COLUMN = "ALTER TABLE " + MessageTableColumns.TABLE_NAME +
             " ADD COLUMN " + MessageTableColumns.DATAPLAN_ID + " TEXT";
+    static final String ADD_PRIORITY_COLUMN = MParticleDatabaseHelper.addIntegerColumnString(MessageTableColumns.TABLE_NAME, MessageTableColumns.PRIORITY, String.valueOf(Constants.MessagePriority.NORMAL));
 
     @Override
     public String getTableName() {
@@ -26,6 +29,10 @@ public class MessageTable extends MpIdDependentTable {
         String MP_ID = MpIdDependentTable.MP_ID;
         String DATAPLAN_VERSION = "dataplan_version";
         String DATAPLAN_ID = "dataplan_id";
+        /**
+         * The upload lane of the message, see {@link Constants.MessagePriority}.
+         */
+        String PRIORITY = "priority";
     }
 
     static String getAddMpIdColumnString(String defaultValue) {
@@ -44,7 +51,19 @@ public class MessageTable extends MpIdDependentTable {
                     MessageTableColumns.CF_UUID + " TEXT, " +
                     MessageTableColumns.MP_ID + " INTEGER, " +
                     MessageTableColumns.DATAPLAN_ID + " TEXT," +
-                    MessageTableColumns.DATAPLAN_VERSION + " INTEGER" +
+                    MessageTableColumns.DATAPLAN_VERSION + " INTEGER, " +
+                    MessageTableColumns.PRIORITY + " INTEGER DEFAULT " + Constants.MessagePriority.NORMAL +
+                    ");";
+
+    /**
+     * Serves the session history selection, which matches on upload status and excludes the
+     * current session and the temporary MPID.
+     */
+    static final String CREATE_MESSAGES_STATUS_INDEX_DDL =
+            "CREATE INDEX IF NOT EXISTS messages_status_idx ON " + MessageTableColumns.TABLE_NAME + " (" +
+                    MessageTableColumns.STATUS + ", " +
+                    MessageTableColumns.SESSION_ID + ", " +
+                    MessageTableColumns.MP_ID +
                     ");";
 
 }
@@ -2,11 +2,19 @@ package com.mparticle.internal.database.tables;
 
 import android.provider.BaseColumns;
 
+import com.mparticle.internal.Constants;
+
 public class UploadTable {
 
     public static final String UPLOAD_REQUEST = "0";
     public static final String ALIAS_REQUEST = "1";
 
+    /**
+     * Value of the {@link UploadTableColumns#CODEC} column for uploads stored as gzipped BLOBs.
+     * Uploads with no codec are stored as JSON text.
+     */
+    public static final String CODEC_GZIP = "gzip";
+
     protected interface UploadTableColumns extends BaseColumns {
         String TABLE_NAME = "uploads";
         String API_KEY = "api_key";
@@ -18,8 +26,29 @@ public class UploadTable {
          */
         String REQUEST_TYPE = "cfuuid";
         String SESSION_ID = "session_id";
+        String CODEC = "codec";
+        /**
+         * Length of the uncompressed message, regardless of how it is stored.
+         */
+        String MESSAGE_LENGTH = "message_length";
+        String MP_ID = "mp_id";
+        /**
+         * The upload lane of the batch, see {@link Constants.MessagePriority}.
+         */
+        String PRIORITY = "priority";
+        /**
+         * 1 if the batch contains a session end message, 0 if not, null for batches stored before
+         * DB_VERSION 14.
+         */
+        String SESSION_END = "session_end";
     }
 
+    static final String ADD_CODEC_COLUMN = MParticleDatabaseHelper.addColumnString(UploadTableColumns.TABLE_NAME, UploadTableColumns.CODEC, "TEXT");
+    static final String ADD_MESSAGE_LENGTH_COLUMN = MParticleDatabaseHelper.addColumnString(UploadTableColumns.TABLE_NAME, UploadTableColumns.MESSAGE_LENGTH, "INTEGER");
+    static final String ADD_MP_ID_COLUMN = MParticleDatabaseHelper.addColumnString(UploadTableColumns.TABLE_NAME, UploadTableColumns.MP_ID, "INTEGER");
+    static final String ADD_PRIORITY_COLUMN = MParticleDatabaseHelper.addIntegerColumnString(UploadTableColumns.TABLE_NAME, UploadTableColumns.PRIORITY, String.valueOf(Constants.MessagePriority.NORMAL));
+    static final String ADD_SESSION_END_COLUMN = MParticleDatabaseHelper.addColumnString(UploadTableColumns.TABLE_NAME, UploadTableColumns.SESSION_END, "INTEGER");
+
 
     static final String CREATE_UPLOADS_DDL =
             "CREATE TABLE IF NOT EXISTS " + UploadTableColumns.TABLE_NAME + " (" + BaseColumns._ID +
@@ -28,6 +57,32 @@ public class UploadTable {
                     UploadTableColumns.MESSAGE + " TEXT, " +
                     UploadTableColumns.CREATED_AT + " INTEGER NOT NULL, " +
                     UploadTableColumns.REQUEST_TYPE + " TEXT, " +
-                    UploadTableColumns.SESSION_ID + " TEXT" +
+                    UploadTableColumns.SESSION_ID + " TEXT, " +
+                    UploadTableColumns.CODEC + " TEXT, " +
+                    UploadTableColumns.MESSAGE_LENGTH + " INTEGER, " +
+                    UploadTableColumns.MP_ID + " INTEGER, " +
+                    UploadTableColumns.PRIORITY + " INTEGER DEFAULT " + Constants.MessagePriority.NORMAL + ", " +
+                    UploadTableColumns.SESSION_END + " INTEGER" +
+                    ");";
+
+    /**
+     * The DB_VERSION 10 index on creation time only, superseded by uploads_priority_idx since ready
+     * uploads are read highest lane first.
+     */
+    static final String DROP_UPLOADS_CREATED_AT_INDEX_DDL =
+            "DROP INDEX IF EXISTS uploads_created_at_idx;";
+
+    /**
+     * The order ready uploads are read in: highest lane first, and in creation order within each lane.
+     */
+    protected static final String READY_UPLOADS_ORDER = UploadTableColumns.PRIORITY + " desc, " + UploadTableColumns.CREATED_AT;
+
+    /**
+     * Lets ready uploads be read in {@link #READY_UPLOADS_ORDER} without sorting the whole table.
+     */
+    static final String CREATE_UPLOADS_PRIORITY_INDEX_DDL =
+            "CREATE INDEX IF NOT EXISTS uploads_priority_idx ON " + UploadTableColumns.TABLE_NAME + " (" +
+                    UploadTableColumns.PRIORITY + " DESC, " +
+                    UploadTableColumns.CREATED_AT +
                     ");";
 }
@@ -10,6 +10,7 @@ import androidx.annotation.RequiresApi;
 import com.mparticle.SdkListener;
 import com.mparticle.identity.AliasResponse;
 import com.mparticle.internal.InternalSession;
+import com.mparticle.internal.KitInvocationStats;
 
 import org.json.JSONObject;
 
@@ -123,6 +124,13 @@ public interface InternalListener {
      */
     void onKitStarted(int kitId);
 
+    /**
+     * indicates how long a Kit has taken to handle the calls forwarded to it
+     * @param kitId
+     * @param stats
+     */
+    void onKitInvocationStats(int kitId, KitInvocationStats stats);
+
     void onAliasRequestFinished(AliasResponse aliasResponse);
 
     InternalListener EMPTY = new InternalListener() {
@@ -137,6 +145,7 @@ public interface InternalListener {
         public void onKitConfigReceived(int kitId, String configuration) { /* stub */}
         public void onKitExcluded(int kitId, String reason) { /* stub */}
         public void onKitStarted(int kitId) { /* stub */}
+        public void onKitInvocationStats(int kitId, KitInvocationStats stats) { /* stub */}
         public void onAliasRequestFinished(AliasResponse aliasResponse) { /* stub */}
 
         public void onCompositeObjects(Object child, Object parent) { /* stub */}
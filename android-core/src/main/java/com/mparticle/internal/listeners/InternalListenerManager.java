@@ -10,6 +10,7 @@ import com.mparticle.SdkListener;
 import com.mparticle.identity.AliasResponse;
 import com.mparticle.internal.InternalSession;
 import com.mparticle.internal.KitFrameworkWrapper;
+import com.mparticle.internal.KitInvocationStats;
 import com.mparticle.internal.MPUtility;
 
 import org.json.JSONException;
@@ -276,6 +277,16 @@ public class InternalListenerManager implements InternalListener {
         });
     }
 
+    @Override
+    public void onKitInvocationStats(final int kitId, final KitInvocationStats stats) {
+        broadcast(new SdkListenerRunnable() {
+            @Override
+            public void run(SdkListener listener) {
+                listener.onKitInvocationStats(kitId, stats);
+            }
+        });
+    }
+
     @Override
     public void onAliasRequestFinished(final AliasResponse aliasResponse) {
         broadcast(new SdkListenerRunnable() {
@@ -12,6 +12,7 @@ import org.json.JSONObject;
 
 public class BaseMPMessage extends JSONObject {
     private long mpId;
+    private Integer priority;
 
     protected BaseMPMessage(){}
 
@@ -81,6 +82,27 @@ public class BaseMPMessage extends JSONObject {
         return mpId;
     }
 
+    /**
+     * The upload lane of this message, one of the {@link Constants.MessagePriority} values. Unless
+     * it has been set, the lane is determined by the message type.
+     */
+    public int getPriority() {
+        if (priority != null) {
+            return priority;
+        }
+        String messageType = getMessageType();
+        if (Constants.MessageType.SCREEN_VIEW.equals(messageType) ||
+                Constants.MessageType.BREADCRUMB.equals(messageType) ||
+                Constants.MessageType.NETWORK_PERFORMNACE.equals(messageType)) {
+            return Constants.MessagePriority.BULK;
+        }
+        return Constants.MessagePriority.NORMAL;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
     public static class Builder extends BaseMPMessageBuilder {
 
         public Builder(String messageType) {
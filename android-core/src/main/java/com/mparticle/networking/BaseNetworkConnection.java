@@ -3,49 +3,59 @@ package com.mparticle.networking;
 import android.content.Context;
 import android.content.SharedPreferences;
 
-import com.mparticle.internal.Constants;
-import com.mparticle.internal.Logger;
 import com.mparticle.internal.MPUtility;
 
 import java.io.IOException;
 
 public abstract class BaseNetworkConnection {
-    private SharedPreferences mPreferences;
+    private final EndpointBackoff mBackoff;
 
     public abstract MPConnection makeUrlRequest(MParticleBaseClientImpl.Endpoint endpoint, MPConnection connection, String payload, boolean identity) throws IOException;
 
+    /**
+     * Make a request with a payload which has already been gzipped. Implementations should send the
+     * bytes as they are; by default the payload is inflated and sent through {@link #makeUrlRequest}.
+     */
+    public MPConnection makeGzippedUrlRequest(MParticleBaseClientImpl.Endpoint endpoint, MPConnection connection, byte[] gzippedPayload, boolean identity) throws IOException {
+        return makeUrlRequest(endpoint, connection, MPUtility.gunzip(gzippedPayload), identity);
+    }
+
     protected BaseNetworkConnection(Context context) {
-        this.mPreferences = context.getSharedPreferences(Constants.PREFS_FILE, Context.MODE_PRIVATE);
+        this(EndpointBackoff.getInstance(context));
     }
 
+    /**
+     * The backoff is kept in the given preferences, but not shared with the SDK's own clients.
+     */
     protected BaseNetworkConnection(SharedPreferences sharedPreferences) {
-        this.mPreferences = sharedPreferences;
+        this(new EndpointBackoff(sharedPreferences));
+    }
+
+    BaseNetworkConnection(EndpointBackoff backoff) {
+        this.mBackoff = backoff;
+    }
+
+    /**
+     * The retry state of each endpoint, which implementations should update with the outcome of each request.
+     */
+    public EndpointBackoff getBackoff() {
+        return mBackoff;
     }
 
     public void setNextAllowedRequestTime(MPConnection connection, MParticleBaseClientImpl.Endpoint endpoint) {
-        long throttle = NetworkConnection.DEFAULT_THROTTLE_MILLIS;
+        String retryAfter = null;
         if (connection != null) {
             //Most HttpUrlConnectionImpl's are case insensitive, but the interface
             //doesn't actually restrict it so let's be safe and check.
-            String retryAfter = connection.getHeaderField("Retry-After");
+            retryAfter = connection.getHeaderField("Retry-After");
             if (MPUtility.isEmpty(retryAfter)) {
                 retryAfter = connection.getHeaderField("retry-after");
             }
-            try {
-                long parsedThrottle = Long.parseLong(retryAfter) * 1000;
-                if (parsedThrottle > 0) {
-                    throttle = Math.min(parsedThrottle, NetworkConnection.MAX_THROTTLE_MILLIS);
-                }
-            } catch (NumberFormatException nfe) {
-                Logger.debug("Unable to parse retry-after header, using default.");
-            }
         }
-
-        long nextTime = System.currentTimeMillis() + throttle;
-        setNextRequestTime(endpoint, nextTime);
+        mBackoff.onThrottled(endpoint, retryAfter);
     }
 
     public void setNextRequestTime(MParticleBaseClientImpl.Endpoint endpoint, long timeMillis) {
-        mPreferences.edit().putLong(endpoint.name() + ":" + Constants.PrefKeys.NEXT_REQUEST_TIME, timeMillis).apply();
+        mBackoff.setNextRequestTime(endpoint, timeMillis);
     }
 }
@@ -0,0 +1,25 @@
+package com.mparticle.networking;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Opens a new {@link HttpURLConnection} for each request, and leaves it to the platform to decide
+ * whether its socket can be reused.
+ */
+public class BasicHttpTransport implements HttpTransport {
+
+    @NonNull
+    @Override
+    public MPConnection openConnection(@NonNull URL url, @NonNull MPUrl mpUrl) throws IOException {
+        return new MPConnectionImpl((HttpURLConnection) url.openConnection(), mpUrl);
+    }
+
+    @Override
+    public void release(@NonNull MPConnection connection) {
+
+    }
+}
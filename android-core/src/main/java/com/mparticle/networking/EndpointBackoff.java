@@ -0,0 +1,286 @@
+package com.mparticle.networking;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.mparticle.internal.Clock;
+import com.mparticle.internal.Constants;
+import com.mparticle.internal.KeyValueStore;
+import com.mparticle.internal.Logger;
+import com.mparticle.internal.MPUtility;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * The retry state of each {@link MParticleBaseClientImpl.Endpoint}, kept in the SDK's preferences so
+ * that it survives restarts.
+ *
+ * After each consecutive failed request, the next request to the endpoint is held back by a random
+ * delay between 0 and an exponentially growing ceiling ("full jitter"), so that devices which failed
+ * at the same moment during an outage do not all retry at the same moment. Timeouts, IO errors and
+ * 5xx responses start from a ceiling of {@link #BASE_DELAY_MILLIS}. 429 and 503 responses start
+ * from {@link NetworkConnection#DEFAULT_THROTTLE_MILLIS}, unless the server sent a Retry-After
+ * header, which is honored as it is. Any other response resets the endpoint.
+ *
+ * Requests which were already in flight when a failure was recorded, such as the other uploads of
+ * the same round, do not count as further failures. A failure backoff of the event and alias
+ * endpoints is reset when the device reconnects, since it most likely came from the outage.
+ *
+ * Every client of the SDK shares the instance returned by {@link #getInstance(Context)}, so that
+ * the updates of concurrent requests are serialized.
+ */
+public class EndpointBackoff {
+    static final long BASE_DELAY_MILLIS = 30 * 1000;
+    static final long MAX_DELAY_MILLIS = NetworkConnection.DEFAULT_THROTTLE_MILLIS;
+    //the ceiling stops doubling after this many consecutive failures, well before it could overflow
+    private static final int MAX_EXPONENT = 20;
+
+    private static Context sContext;
+    private static EndpointBackoff sInstance;
+
+    private final SharedPreferences mPreferences;
+    private final Clock mClock;
+    private final Random mRandom;
+
+    /**
+     * @return the backoff shared by every client of the given application
+     */
+    @NonNull
+    public static synchronized EndpointBackoff getInstance(@NonNull Context context) {
+        Context appContext = context.getApplicationContext();
+        if (appContext == null) {
+            appContext = context;
+        }
+        if (sInstance == null || sContext != appContext) {
+            sContext = appContext;
+            sInstance = new EndpointBackoff(KeyValueStore.getSharedPreferences(appContext, Constants.PREFS_FILE));
+        }
+        return sInstance;
+    }
+
+    EndpointBackoff(SharedPreferences preferences) {
+        this(preferences, Clock.SYSTEM, new Random());
+    }
+
+    EndpointBackoff(SharedPreferences preferences, Clock clock, Random random) {
+        mPreferences = preferences;
+        mClock = clock;
+        mRandom = random;
+    }
+
+    /**
+     * Record a request which the server handled, successfully or not, such that retrying it would not help.
+     */
+    public synchronized void onSuccess(MParticleBaseClientImpl.Endpoint endpoint) {
+        if (getFailures(endpoint) > 0 || getNextRequestTime(endpoint) > 0) {
+            reset(endpoint);
+        }
+    }
+
+    /**
+     * Record a request which timed out, failed with an IO error, or failed with a 5xx response.
+     * @return the delay before the next request, in milliseconds
+     */
+    public synchronized long onFailure(MParticleBaseClientImpl.Endpoint endpoint) {
+        return onFailure(endpoint, mClock.currentTimeMillis());
+    }
+
+    /**
+     * Record a request which timed out, failed with an IO error, or failed with a 5xx response.
+     * @param requestStartTime when the request was made, see {@link #currentTimeMillis()}. If a
+     *                         failure has been recorded since, this one is part of the same round and
+     *                         the backoff is left as it is
+     * @return the delay before the next request, in milliseconds
+     */
+    public synchronized long onFailure(MParticleBaseClientImpl.Endpoint endpoint, long requestStartTime) {
+        if (getFailures(endpoint) > 0 && mPreferences.getLong(key(endpoint, Constants.PrefKeys.BACKOFF_FAILED_AT), 0) > requestStartTime) {
+            return Math.max(0, getNextRequestTime(endpoint) - mClock.currentTimeMillis());
+        }
+        return backOff(endpoint, BASE_DELAY_MILLIS, MAX_DELAY_MILLIS, null, false);
+    }
+
+    /**
+     * Reset the failure backoff of the event and alias endpoints, which the SDK retries by itself.
+     * A backoff requested by the server with a 429 or 503 response is kept.
+     */
+    public synchronized void onReconnected() {
+        for (MParticleBaseClientImpl.Endpoint endpoint : new MParticleBaseClientImpl.Endpoint[]{MParticleBaseClientImpl.Endpoint.EVENTS, MParticleBaseClientImpl.Endpoint.ALIAS}) {
+            if (getFailures(endpoint) > 0 && !mPreferences.getBoolean(key(endpoint, Constants.PrefKeys.BACKOFF_THROTTLED), false)) {
+                Logger.debug("Network reconnected, resetting " + endpoint + " backoff.");
+                reset(endpoint);
+            }
+        }
+    }
+
+    /**
+     * The time to pass to {@link #onFailure(MParticleBaseClientImpl.Endpoint, long)} for a request made now.
+     */
+    public long currentTimeMillis() {
+        return mClock.currentTimeMillis();
+    }
+
+    /**
+     * Record a 429 or 503 response.
+     * @param retryAfter the response's Retry-After header, in seconds or as an HTTP date, if it had one
+     * @return the delay before the next request, in milliseconds
+     */
+    public synchronized long onThrottled(MParticleBaseClientImpl.Endpoint endpoint, @Nullable String retryAfter) {
+        long now = mClock.currentTimeMillis();
+        Long retryAfterMillis = parseRetryAfter(retryAfter, now);
+        if (retryAfterMillis != null) {
+            retryAfterMillis = Math.min(retryAfterMillis, NetworkConnection.MAX_THROTTLE_MILLIS);
+        }
+        return backOff(endpoint, NetworkConnection.DEFAULT_THROTTLE_MILLIS, NetworkConnection.MAX_THROTTLE_MILLIS, retryAfterMillis, true);
+    }
+
+    private long backOff(MParticleBaseClientImpl.Endpoint endpoint, long baseDelay, long maxDelay, @Nullable Long delay, boolean throttled) {
+        int failures = getFailures(endpoint) + 1;
+        if (delay == null) {
+            long ceiling = Math.min(maxDelay, baseDelay << Math.min(failures - 1, MAX_EXPONENT));
+            delay = (long) (mRandom.nextDouble() * ceiling);
+        }
+        long now = mClock.currentTimeMillis();
+        mPreferences.edit()
+                .putInt(key(endpoint, Constants.PrefKeys.BACKOFF_FAILURES), failures)
+                .putLong(key(endpoint, Constants.PrefKeys.BACKOFF_DELAY), delay)
+                .putLong(key(endpoint, Constants.PrefKeys.BACKOFF_FAILED_AT), now)
+                .putBoolean(key(endpoint, Constants.PrefKeys.BACKOFF_THROTTLED), throttled)
+                .putLong(key(endpoint, Constants.PrefKeys.NEXT_REQUEST_TIME), now + delay)
+                .apply();
+        Logger.debug(endpoint + " request failed " + failures + " time(s) in a row, backing off for " + delay + " milliseconds.");
+        return delay;
+    }
+
+    public long getNextRequestTime(MParticleBaseClientImpl.Endpoint endpoint) {
+        return mPreferences.getLong(key(endpoint, Constants.PrefKeys.NEXT_REQUEST_TIME), 0);
+    }
+
+    public void setNextRequestTime(MParticleBaseClientImpl.Endpoint endpoint, long timeMillis) {
+        mPreferences.edit().putLong(key(endpoint, Constants.PrefKeys.NEXT_REQUEST_TIME), timeMillis).apply();
+    }
+
+    /**
+     * Query the current backoff of an endpoint.
+     */
+    @NonNull
+    public State getState(MParticleBaseClientImpl.Endpoint endpoint) {
+        long nextRequestTime = getNextRequestTime(endpoint);
+        return new State(endpoint,
+                getFailures(endpoint),
+                mPreferences.getLong(key(endpoint, Constants.PrefKeys.BACKOFF_DELAY), 0),
+                nextRequestTime,
+                Math.max(0, nextRequestTime - mClock.currentTimeMillis()));
+    }
+
+    private void reset(MParticleBaseClientImpl.Endpoint endpoint) {
+        mPreferences.edit()
+                .remove(key(endpoint, Constants.PrefKeys.BACKOFF_FAILURES))
+                .remove(key(endpoint, Constants.PrefKeys.BACKOFF_DELAY))
+                .remove(key(endpoint, Constants.PrefKeys.BACKOFF_FAILED_AT))
+                .remove(key(endpoint, Constants.PrefKeys.BACKOFF_THROTTLED))
+                .remove(key(endpoint, Constants.PrefKeys.NEXT_REQUEST_TIME))
+                .apply();
+    }
+
+    private int getFailures(MParticleBaseClientImpl.Endpoint endpoint) {
+        return mPreferences.getInt(key(endpoint, Constants.PrefKeys.BACKOFF_FAILURES), 0);
+    }
+
+    private static String key(MParticleBaseClientImpl.Endpoint endpoint, String key) {
+        return endpoint.name() + ":" + key;
+    }
+
+    /**
+     * @return the delay requested by a Retry-After header, or null if it is missing, or is not a
+     * positive number of seconds or a date in the future
+     */
+    @Nullable
+    static Long parseRetryAfter(@Nullable String retryAfter, long now) {
+        if (MPUtility.isEmpty(retryAfter)) {
+            return null;
+        }
+        retryAfter = retryAfter.trim();
+        try {
+            long seconds = Long.parseLong(retryAfter);
+            return seconds > 0 ? seconds * 1000 : null;
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            Date date = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US).parse(retryAfter);
+            return date.getTime() > now ? date.getTime() - now : null;
+        } catch (ParseException e) {
+            Logger.debug("Unable to parse retry-after header, using default.");
+            return null;
+        }
+    }
+
+    /**
+     * A snapshot of an endpoint's backoff.
+     */
+    public static final class State {
+        private final MParticleBaseClientImpl.Endpoint mEndpoint;
+        private final int mConsecutiveFailures;
+        private final long mLastDelayMillis;
+        private final long mNextRequestTime;
+        private final long mRemainingMillis;
+
+        State(MParticleBaseClientImpl.Endpoint endpoint, int consecutiveFailures, long lastDelayMillis, long nextRequestTime, long remainingMillis) {
+            mEndpoint = endpoint;
+            mConsecutiveFailures = consecutiveFailures;
+            mLastDelayMillis = lastDelayMillis;
+            mNextRequestTime = nextRequestTime;
+            mRemainingMillis = remainingMillis;
+        }
+
+        @NonNull
+        public MParticleBaseClientImpl.Endpoint getEndpoint() {
+            return mEndpoint;
+        }
+
+        /**
+         * Query the number of requests which have failed in a row, 0 if the latest request succeeded.
+         */
+        public int getConsecutiveFailures() {
+            return mConsecutiveFailures;
+        }
+
+        /**
+         * Query the delay chosen after the latest failure, in milliseconds.
+         */
+        public long getLastDelayMillis() {
+            return mLastDelayMillis;
+        }
+
+        /**
+         * Query the earliest time at which the next request may be made, 0 if there is no backoff.
+         */
+        public long getNextRequestTime() {
+            return mNextRequestTime;
+        }
+
+        /**
+         * Query how long is left of the current backoff, in milliseconds.
+         */
+        public long getRemainingMillis() {
+            return mRemainingMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "State{" +
+                    "endpoint=" + mEndpoint +
+                    ", consecutiveFailures=" + mConsecutiveFailures +
+                    ", lastDelayMillis=" + mLastDelayMillis +
+                    ", nextRequestTime=" + mNextRequestTime +
+                    ", remainingMillis=" + mRemainingMillis +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.mparticle.networking;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzips request payloads into a buffer which is kept between requests. The payload is encoded and
+ * deflated in fixed size chunks, so the only memory which scales with the payload is the
+ * compressed output, and the Deflater is reused rather than being allocated per request.
+ *
+ * Instances are not thread safe.
+ */
+class GzipBuffer {
+    static final int CHUNK_SIZE = 8 * 1024;
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int HEADER_SIZE = 10;
+    private static final int TRAILER_SIZE = 8;
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 crc = new CRC32();
+    private final CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer input = ByteBuffer.allocate(CHUNK_SIZE);
+    private byte[] output = new byte[CHUNK_SIZE];
+    private int size;
+
+    /**
+     * Replace the contents of this buffer with the gzipped, UTF-8 encoded payload.
+     */
+    void compress(String payload) {
+        deflater.reset();
+        crc.reset();
+        encoder.reset();
+        size = 0;
+        writeHeader();
+        long inputLength = 0;
+        CharBuffer chars = CharBuffer.wrap(payload);
+        CoderResult result;
+        do {
+            input.clear();
+            result = encoder.encode(chars, input, true);
+            if (result.isUnderflow()) {
+                encoder.flush(input);
+            }
+            input.flip();
+            int length = input.remaining();
+            crc.update(input.array(), 0, length);
+            inputLength += length;
+            deflater.setInput(input.array(), 0, length);
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+        } while (result.isOverflow());
+        deflater.finish();
+        while (!deflater.finished()) {
+            deflate();
+        }
+        writeTrailer((int) crc.getValue(), (int) inputLength);
+    }
+
+    /**
+     * Free the Deflater's native memory straight away, rather than when it is finalized. The buffer
+     * cannot be used afterwards.
+     */
+    void end() {
+        deflater.end();
+    }
+
+    byte[] array() {
+        return output;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void deflate() {
+        ensureCapacity(size + CHUNK_SIZE);
+        size += deflater.deflate(output, size, output.length - size);
+    }
+
+    private void writeHeader() {
+        ensureCapacity(HEADER_SIZE);
+        writeShort(GZIP_MAGIC);
+        output[size++] = Deflater.DEFLATED;
+        //flags, modification time, extra flags and OS are all left empty
+        for (int i = 0; i < 7; i++) {
+            output[size++] = 0;
+        }
+    }
+
+    private void writeTrailer(int crc, int inputLength) {
+        ensureCapacity(size + TRAILER_SIZE);
+        writeInt(crc);
+        writeInt(inputLength);
+    }
+
+    private void writeInt(int value) {
+        writeShort(value & 0xffff);
+        writeShort((value >> 16) & 0xffff);
+    }
+
+    private void writeShort(int value) {
+        output[size++] = (byte) (value & 0xff);
+        output[size++] = (byte) ((value >> 8) & 0xff);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (output.length < capacity) {
+            byte[] expanded = new byte[Math.max(capacity, output.length * 2)];
+            System.arraycopy(output, 0, expanded, 0, size);
+            output = expanded;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.mparticle.networking;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Opens the connections for the SDK's requests - config fetches, event and alias uploads, identity
+ * and audience calls. A transport is shared by all of them, and is set with
+ * {@link NetworkOptions.Builder#setHttpTransport(HttpTransport)}.
+ *
+ * The SDK's own transports are backed by {@link java.net.HttpURLConnection}. An app which already
+ * ships another HTTP client, for example one that negotiates HTTP/2, may route the SDK's requests
+ * through it by implementing this interface and {@link MPConnection}.
+ *
+ * Transports are called from the SDK's background threads, possibly concurrently.
+ */
+public interface HttpTransport {
+
+    /**
+     * Open a connection for a single request. The request is not sent until its response, or its
+     * output stream, is asked for.
+     *
+     * @param url the URL of the request
+     * @param mpUrl the URL, as it should be returned by {@link MPConnection#getURL()}
+     */
+    @NonNull
+    MPConnection openConnection(@NonNull URL url, @NonNull MPUrl mpUrl) throws IOException;
+
+    /**
+     * Called once the SDK has handled a connection's response, so that the connection may be kept
+     * for the next request to the same host. Connections whose request failed with an exception are
+     * not released.
+     */
+    void release(@NonNull MPConnection connection);
+}
@@ -0,0 +1,64 @@
+package com.mparticle.networking;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * The default {@link HttpTransport}. It keeps no connections of its own: requests are sent with
+ * keep-alive, and once a response has been handled whatever is left of its body is read and the
+ * stream closed, which is what {@link java.net.HttpURLConnection} requires before its own keep-alive
+ * cache may reuse the socket. Config, upload and identity requests to the same host can then share
+ * one connection, and skip the TCP and TLS handshakes that opening a new one costs. Requests are
+ * still made one at a time on each connection, over HTTP/1.1.
+ *
+ * Sockets are only shared between requests which use the same SSLSocketFactory, so the pinned
+ * factories are cached by {@link NetworkConnection}.
+ */
+public class KeepAliveHttpTransport extends BasicHttpTransport {
+    //a body larger than this is not worth reading just to keep the socket, it is closed instead
+    static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    @NonNull
+    @Override
+    public MPConnection openConnection(@NonNull URL url, @NonNull MPUrl mpUrl) throws IOException {
+        MPConnection connection = super.openConnection(url, mpUrl);
+        connection.setRequestProperty("Connection", "keep-alive");
+        return connection;
+    }
+
+    @Override
+    public void release(@NonNull MPConnection connection) {
+        InputStream body = null;
+        try {
+            try {
+                body = connection.getInputStream();
+            } catch (IOException ex) {
+                body = connection.getErrorStream();
+            }
+            if (body != null) {
+                drain(body);
+            }
+        } catch (IOException ignored) {
+            //the stream was already consumed and closed, or the socket is unusable, either way there is nothing to keep
+        } finally {
+            if (body != null) {
+                try {
+                    body.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    static void drain(InputStream body) throws IOException {
+        byte[] buffer = new byte[4096];
+        int drained = 0;
+        int read;
+        while (drained <= MAX_DRAIN_BYTES && (read = body.read(buffer)) != -1) {
+            drained += read;
+        }
+    }
+}
@@ -11,7 +11,7 @@ import java.util.Map;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLSocketFactory;
 
-class MPConnectionImpl implements MPConnection {
+class MPConnectionImpl implements MPStreamingConnection {
     private HttpURLConnection httpURLConnection;
     private MPUrl url;
     private Integer responseCode = null;
@@ -52,6 +52,11 @@ class MPConnectionImpl implements MPConnection {
         httpURLConnection.setRequestProperty(key, value);
     }
 
+    @Override
+    public void setFixedLengthStreamingMode(int contentLength) {
+        httpURLConnection.setFixedLengthStreamingMode(contentLength);
+    }
+
     @Override
     public MPUrl getURL() {
         return url;
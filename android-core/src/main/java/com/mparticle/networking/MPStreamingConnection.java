@@ -0,0 +1,10 @@
+package com.mparticle.networking;
+
+/**
+ * An optional capability of an {@link MPConnection}. Connections which implement it have their
+ * request bodies streamed with a known length, rather than buffered by the connection; other
+ * implementations are used as they are.
+ */
+public interface MPStreamingConnection extends MPConnection {
+    void setFixedLengthStreamingMode(int contentLength);
+}
@@ -16,6 +16,10 @@ public abstract class MPUrl {
     }
 
     public static MPUrl getUrl(String url, @Nullable MPUrl defaultUrl) throws MalformedURLException {
+        return getUrl(url, defaultUrl, NetworkOptions.DEFAULT_HTTP_TRANSPORT);
+    }
+
+    static MPUrl getUrl(String url, @Nullable MPUrl defaultUrl, @NonNull HttpTransport transport) throws MalformedURLException {
         if (mpUrlFactory != null) {
             try {
                 return mpUrlFactory.getInstance(url)
@@ -24,7 +28,7 @@ public abstract class MPUrl {
 
             }
         }
-        return new MPUrlImpl(url)
+        return new MPUrlImpl(url, transport)
                 .setDefaultUrl(defaultUrl);
     }
 
@@ -57,6 +61,13 @@ public abstract class MPUrl {
         return this;
     }
 
+    /**
+     * Hand a connection opened by this URL back once its response has been handled.
+     */
+    void releaseConnection(@NonNull MPConnection connection) {
+
+    }
+
     interface UrlFactory {
         MPUrl getInstance(String url);
     }
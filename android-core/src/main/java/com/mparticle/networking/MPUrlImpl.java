@@ -1,24 +1,38 @@
 package com.mparticle.networking;
 
 import java.io.IOException;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 
 class MPUrlImpl extends MPUrl {
     private URL url;
+    private HttpTransport transport;
 
     MPUrlImpl(String url) throws MalformedURLException {
-        this.url = new URL(url);
+        this(url, NetworkOptions.DEFAULT_HTTP_TRANSPORT);
+    }
+
+    MPUrlImpl(String url, HttpTransport transport) throws MalformedURLException {
+        this(new URL(url), transport);
     }
 
     MPUrlImpl(URL url) {
+        this(url, NetworkOptions.DEFAULT_HTTP_TRANSPORT);
+    }
+
+    MPUrlImpl(URL url, HttpTransport transport) {
         this.url = url;
+        this.transport = transport;
     }
 
     @Override
     public MPConnection openConnection() throws IOException {
-        return new MPConnectionImpl((HttpURLConnection)url.openConnection(), this);
+        return transport.openConnection(url, this);
+    }
+
+    @Override
+    void releaseConnection(MPConnection connection) {
+        transport.release(connection);
     }
 
     @Override
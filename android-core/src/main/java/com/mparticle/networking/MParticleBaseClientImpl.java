@@ -1,7 +1,6 @@
 package com.mparticle.networking;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.net.Uri;
 import androidx.annotation.Nullable;
 
@@ -25,7 +24,6 @@ public class MParticleBaseClientImpl implements MParticleBaseClient {
     private Context mContext;
     private ConfigManager mConfigManager;
     private BaseNetworkConnection mRequestHandler;
-    private SharedPreferences mPreferences;
     private String mApiKey;
 
     private static final String SERVICE_VERSION_1 = "/v1";
@@ -37,8 +35,7 @@ public class MParticleBaseClientImpl implements MParticleBaseClient {
     public MParticleBaseClientImpl(Context context, ConfigManager configManager) {
         mContext = context;
         mConfigManager = configManager;
-        mPreferences = context.getSharedPreferences(Constants.PREFS_FILE, Context.MODE_PRIVATE);
-        mRequestHandler = new NetworkConnection(configManager, mPreferences);
+        mRequestHandler = new NetworkConnection(configManager, EndpointBackoff.getInstance(context));
         mApiKey = configManager.getApiKey();
     }
 
@@ -66,6 +63,21 @@ public class MParticleBaseClientImpl implements MParticleBaseClient {
         return mRequestHandler.makeUrlRequest(endpoint, connection, payload, identity);
     }
 
+    public MPConnection makeGzippedUrlRequest(Endpoint endpoint, MPConnection connection, byte[] gzippedPayload, boolean identity) throws IOException {
+        return mRequestHandler.makeGzippedUrlRequest(endpoint, connection, gzippedPayload, identity);
+    }
+
+    /**
+     * Hand a connection back to the {@link HttpTransport} which opened it, once its response has
+     * been read, so that it can be reused for the next request.
+     */
+    protected void releaseConnection(MPConnection connection) {
+        MPUrl url = connection.getURL();
+        if (url != null) {
+            url.releaseConnection(connection);
+        }
+    }
+
     protected String getHeaderDateString() {
         SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
         return format.format(new Date());
@@ -87,7 +99,14 @@ public class MParticleBaseClientImpl implements MParticleBaseClient {
     }
 
     public long getNextRequestTime(Endpoint endpoint) {
-        return mPreferences.getLong(endpoint.name() + ":" + Constants.PrefKeys.NEXT_REQUEST_TIME, 0);
+        return mRequestHandler.getBackoff().getNextRequestTime(endpoint);
+    }
+
+    /**
+     * @return true if requests to the endpoint are held back after a failure or a throttling response
+     */
+    protected boolean isBackingOff(Endpoint endpoint) {
+        return System.currentTimeMillis() < getNextRequestTime(endpoint);
     }
 
     protected MPUrl getUrl(Endpoint endpoint) throws MalformedURLException {
@@ -133,7 +152,7 @@ public class MParticleBaseClientImpl implements MParticleBaseClient {
                     }
                 }
                 uri = builder.build();
-                return MPUrl.getUrl(uri.toString(), defaultUrl);
+                return MPUrl.getUrl(uri.toString(), defaultUrl, networkOptions.getHttpTransport());
             case EVENTS:
                 subdirectory = overridesSubdirectory ? "" : SERVICE_VERSION_2 + "/";
                 uri = new Uri.Builder()
@@ -141,7 +160,7 @@ public class MParticleBaseClientImpl implements MParticleBaseClient {
                         .encodedAuthority(url)
                         .path(subdirectory + mApiKey + "/events")
                         .build();
-                return MPUrl.getUrl(uri.toString(), defaultUrl);
+                return MPUrl.getUrl(uri.toString(), defaultUrl, networkOptions.getHttpTransport());
             case ALIAS:
                 subdirectory = overridesSubdirectory ? "" : SERVICE_VERSION_1 + "/identity/";
                 uri = new Uri.Builder()
@@ -149,7 +168,7 @@ public class MParticleBaseClientImpl implements MParticleBaseClient {
                         .encodedAuthority(url)
                         .path(subdirectory + mApiKey + "/alias")
                         .build();
-                return MPUrl.getUrl(uri.toString(), defaultUrl);
+                return MPUrl.getUrl(uri.toString(), defaultUrl, networkOptions.getHttpTransport());
             case IDENTITY:
                 subdirectory = overridesSubdirectory ? "" : SERVICE_VERSION_1 + "/";
                 uri = new Uri.Builder()
@@ -157,14 +176,14 @@ public class MParticleBaseClientImpl implements MParticleBaseClient {
                         .encodedAuthority(url)
                         .path(subdirectory + identityPath)
                         .build();
-                return MPUrl.getUrl(uri.toString(), defaultUrl);
+                return MPUrl.getUrl(uri.toString(), defaultUrl, networkOptions.getHttpTransport());
             case AUDIENCE:
                 uri = new Uri.Builder()
                         .scheme(BuildConfig.SCHEME)
                         .encodedAuthority(url)
                         .path(SERVICE_VERSION_2 + "/" + mApiKey + "/audience?mpID=" + mConfigManager.getMpid())
                         .build();
-                return MPUrl.getUrl(uri.toString(), defaultUrl);
+                return MPUrl.getUrl(uri.toString(), defaultUrl, networkOptions.getHttpTransport());
             default:
                 return null;
         }
@@ -3,12 +3,13 @@ package com.mparticle.networking;
 import android.content.SharedPreferences;
 import android.os.Build;
 
+import androidx.annotation.WorkerThread;
+
 import com.mparticle.BuildConfig;
 import com.mparticle.MParticle;
 import com.mparticle.internal.ConfigManager;
 import com.mparticle.internal.Logger;
 
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -17,18 +18,27 @@ import java.security.KeyStore;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
-import java.util.zip.GZIPOutputStream;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManagerFactory;
 
 public class NetworkConnection extends BaseNetworkConnection {
     public static final int HTTP_TOO_MANY_REQUESTS = 429;
 
+    //shared by the api and identity clients, keyed by getCertificatesKey()
+    private static final ConcurrentHashMap<String, SSLSocketFactory> sSocketFactories = new ConcurrentHashMap<String, SSLSocketFactory>();
+    //each endpoint's host only needs a session or two, this leaves room for custom domain mappings
+    static final int SSL_SESSION_CACHE_SIZE = 16;
+    static final int SSL_SESSION_TIMEOUT_SECONDS = 60 * 60 * 24;
+
     private ConfigManager mConfigManager;
-    private SSLSocketFactory mSocketFactory;
     private boolean alreadyWarned;
+    private final AtomicReference<GzipBuffer> mGzipBuffer = new AtomicReference<GzipBuffer>();
 
     /**
      * Default throttle time - in the worst case scenario if the server is busy, the soonest
@@ -42,8 +52,24 @@ public class NetworkConnection extends BaseNetworkConnection {
         this.mConfigManager = configManager;
     }
 
+    NetworkConnection(ConfigManager configManager, EndpointBackoff backoff) {
+        super(backoff);
+        this.mConfigManager = configManager;
+    }
+
     @Override
     public MPConnection makeUrlRequest(MParticleBaseClientImpl.Endpoint endpoint, MPConnection connection, String payload, boolean identity) throws IOException {
+        return makeRequest(endpoint, connection, payload, null, identity);
+    }
+
+    @Override
+    public MPConnection makeGzippedUrlRequest(MParticleBaseClientImpl.Endpoint endpoint, MPConnection connection, byte[] gzippedPayload, boolean identity) throws IOException {
+        return makeRequest(endpoint, connection, null, gzippedPayload, identity);
+    }
+
+    private MPConnection makeRequest(MParticleBaseClientImpl.Endpoint endpoint, MPConnection connection, String payload, byte[] gzippedPayload, boolean identity) throws IOException {
+        int statusCode;
+        long requestStartTime = getBackoff().currentTimeMillis();
         try {
 
             //Gingerbread seems to dislike pinning w/ godaddy. Being that GB is near-dead anyway, just disable pinning for it.
@@ -55,29 +81,38 @@ public class NetworkConnection extends BaseNetworkConnection {
                 }
             }
 
-            if (payload != null) {
-                OutputStream zos = getOutputStream(connection);
+            if (gzippedPayload != null) {
+                writeBody(connection, gzippedPayload, gzippedPayload.length);
+            } else if (payload != null) {
+                GzipBuffer body = takeGzipBuffer();
                 try {
-                    zos.write(payload.getBytes());
+                    body.compress(payload);
+                    writeBody(connection, body.array(), body.size());
                 } finally {
-                    zos.close();
-                }
-            }
-
-            if (!identity) {
-                int statusCode = connection.getResponseCode();
-                if (statusCode == 400 && !alreadyWarned) {
-                    alreadyWarned = true;
-                    Logger.error("Bad API request - is the correct API key and secret configured?");
-                }
-                if ((statusCode == 503 || statusCode == HTTP_TOO_MANY_REQUESTS) && !BuildConfig.MP_DEBUG) {
-                    setNextAllowedRequestTime(connection, endpoint);
+                    releaseGzipBuffer(body);
                 }
             }
+            statusCode = connection.getResponseCode();
         }
         catch (IOException ex) {
+            if (!BuildConfig.MP_DEBUG) {
+                getBackoff().onFailure(endpoint, requestStartTime);
+            }
             throw ex;
         }
+        if (!identity && statusCode == 400 && !alreadyWarned) {
+            alreadyWarned = true;
+            Logger.error("Bad API request - is the correct API key and secret configured?");
+        }
+        if (!BuildConfig.MP_DEBUG) {
+            if (statusCode == 503 || statusCode == HTTP_TOO_MANY_REQUESTS) {
+                setNextAllowedRequestTime(connection, endpoint);
+            } else if (statusCode >= 500) {
+                getBackoff().onFailure(endpoint, requestStartTime);
+            } else if (statusCode >= 200) {
+                getBackoff().onSuccess(endpoint);
+            }
+        }
         return connection;
     }
 
@@ -85,36 +120,104 @@ public class NetworkConnection extends BaseNetworkConnection {
         return Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH;
     }
 
+    private void writeBody(MPConnection connection, byte[] body, int length) throws IOException {
+        if (connection instanceof MPStreamingConnection) {
+            ((MPStreamingConnection) connection).setFixedLengthStreamingMode(length);
+        }
+        OutputStream os = getOutputStream(connection);
+        try {
+            os.write(body, 0, length);
+        } finally {
+            os.close();
+        }
+    }
+
+    /**
+     * The stream the gzipped request body is written to.
+     */
     protected OutputStream getOutputStream(MPConnection connection) throws IOException {
-        return new GZIPOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+        return connection.getOutputStream();
     }
 
     /**
-     * Custom socket factory used for certificate pinning.
+     * Requests on this connection normally share a single buffer, a second one is only created if
+     * requests are made concurrently.
      */
+    GzipBuffer takeGzipBuffer() {
+        GzipBuffer buffer = mGzipBuffer.getAndSet(null);
+        if (buffer == null) {
+            buffer = new GzipBuffer();
+        }
+        return buffer;
+    }
+
+    /**
+     * Keep the buffer for the next request, unless a concurrent request has already put its own
+     * buffer back, in which case this one is ended rather than left for the finalizer.
+     */
+    void releaseGzipBuffer(GzipBuffer buffer) {
+        if (!mGzipBuffer.compareAndSet(null, buffer)) {
+            buffer.end();
+        }
+    }
+
+    /**
+     * Custom socket factory used for certificate pinning. Factories are cached by the certificates
+     * they pin, so each DomainMapping's certificates are only parsed once per process, and requests
+     * to the same host keep using the same SSLContext, which lets them resume its TLS sessions.
+     * Built lazily, on the first request which needs it, so never on the main thread.
+     */
+    @WorkerThread
     protected SSLSocketFactory getSocketFactory(MParticleBaseClientImpl.Endpoint endpoint) throws Exception{
-        if (mSocketFactory == null){
-            String keyStoreType = KeyStore.getDefaultType();
-            KeyStore keyStore = KeyStore.getInstance(keyStoreType);
-            keyStore.load(null, null);
-
-            CertificateFactory cf = CertificateFactory.getInstance("X.509");
-            NetworkOptions networkOptions = mConfigManager.getNetworkOptions();
-            DomainMapping domainMapping = networkOptions.getDomain(endpoint);
-            for (com.mparticle.networking.Certificate certificate: domainMapping != null ? domainMapping.getCertificates() : NetworkOptionsManager.getDefaultCertificates()) {
-                keyStore.setCertificateEntry(certificate.getAlias(), generateCertificate(cf, certificate.getCertificate()));
+        NetworkOptions networkOptions = mConfigManager.getNetworkOptions();
+        DomainMapping domainMapping = networkOptions.getDomain(endpoint);
+        List<com.mparticle.networking.Certificate> certificates = domainMapping != null ? domainMapping.getCertificates() : NetworkOptionsManager.getDefaultCertificates();
+        String key = getCertificatesKey(certificates);
+        SSLSocketFactory socketFactory = sSocketFactories.get(key);
+        if (socketFactory == null) {
+            socketFactory = createSslContext(certificates).getSocketFactory();
+            //another thread may have built the same one in the meantime, only one of them is kept
+            SSLSocketFactory existing = sSocketFactories.putIfAbsent(key, socketFactory);
+            if (existing != null) {
+                socketFactory = existing;
             }
-            String tmfAlgorithm = TrustManagerFactory.getDefaultAlgorithm();
-            TrustManagerFactory tmf = TrustManagerFactory.getInstance(tmfAlgorithm);
-            tmf.init(keyStore);
+        }
+        return socketFactory;
+    }
 
-            SSLContext context = SSLContext.getInstance("TLS");
-            context.init(null, tmf.getTrustManagers(), null);
-            mSocketFactory = context.getSocketFactory();
+    static String getCertificatesKey(List<com.mparticle.networking.Certificate> certificates) {
+        StringBuilder key = new StringBuilder();
+        for (com.mparticle.networking.Certificate certificate: certificates) {
+            key.append(certificate.getAlias())
+                    .append('\n')
+                    .append(certificate.getCertificate())
+                    .append('\n');
         }
-        return mSocketFactory;
+        return key.toString();
     }
 
+    static SSLContext createSslContext(List<com.mparticle.networking.Certificate> certificates) throws Exception {
+        String keyStoreType = KeyStore.getDefaultType();
+        KeyStore keyStore = KeyStore.getInstance(keyStoreType);
+        keyStore.load(null, null);
+
+        CertificateFactory cf = CertificateFactory.getInstance("X.509");
+        for (com.mparticle.networking.Certificate certificate: certificates) {
+            keyStore.setCertificateEntry(certificate.getAlias(), generateCertificate(cf, certificate.getCertificate()));
+        }
+        String tmfAlgorithm = TrustManagerFactory.getDefaultAlgorithm();
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(tmfAlgorithm);
+        tmf.init(keyStore);
+
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, tmf.getTrustManagers(), null);
+        SSLSessionContext sessionContext = context.getClientSessionContext();
+        if (sessionContext != null) {
+            sessionContext.setSessionCacheSize(SSL_SESSION_CACHE_SIZE);
+            sessionContext.setSessionTimeout(SSL_SESSION_TIMEOUT_SECONDS);
+        }
+        return context;
+    }
 
     private static Certificate generateCertificate(CertificateFactory certificateFactory, String encodedCertificate) throws IOException, CertificateException {
         Certificate certificate = null;
@@ -22,9 +22,11 @@ import static com.mparticle.networking.MParticleBaseClientImpl.Endpoint.EVENTS;
 import static com.mparticle.networking.MParticleBaseClientImpl.Endpoint.IDENTITY;
 
 public class NetworkOptions {
+    static final HttpTransport DEFAULT_HTTP_TRANSPORT = new KeepAliveHttpTransport();
 
     Map<Endpoint, DomainMapping> domainMappings = new HashMap<Endpoint, DomainMapping>();
     boolean pinningDisabledInDevelopment = false;
+    HttpTransport httpTransport = DEFAULT_HTTP_TRANSPORT;
 
     private NetworkOptions() {}
 
@@ -35,6 +37,9 @@ public class NetworkOptions {
         if (builder.pinningDisabledInDevelopment != null) {
             pinningDisabledInDevelopment = builder.pinningDisabledInDevelopment;
         }
+        if (builder.httpTransport != null) {
+            httpTransport = builder.httpTransport;
+        }
     }
 
     @NonNull
@@ -92,6 +97,15 @@ public class NetworkOptions {
         return pinningDisabledInDevelopment;
     }
 
+    /**
+     * Query the transport which opens the SDK's connections, a {@link KeepAliveHttpTransport} unless
+     * another one was set.
+     */
+    @NonNull
+    public HttpTransport getHttpTransport() {
+        return httpTransport;
+    }
+
     DomainMapping getDomain(Endpoint endpoint) {
         return domainMappings.get(endpoint);
     }
@@ -122,6 +136,7 @@ public class NetworkOptions {
     public static class Builder {
         private Map<Endpoint, DomainMapping> domainMappings = new HashMap<Endpoint, DomainMapping>();
         private Boolean pinningDisabledInDevelopment;
+        private HttpTransport httpTransport;
 
         private Builder() {
         }
@@ -163,6 +178,19 @@ public class NetworkOptions {
             return this;
         }
 
+        /**
+         * Set the transport which opens the connections for all of the SDK's requests. It is not
+         * part of the serialized options.
+         *
+         * @param httpTransport the transport, or null for the default {@link KeepAliveHttpTransport}
+         * @see BasicHttpTransport
+         */
+        @NonNull
+        public Builder setHttpTransport(@Nullable HttpTransport httpTransport) {
+            this.httpTransport = httpTransport;
+            return this;
+        }
+
         @NonNull
         public NetworkOptions build() {
             return new NetworkOptions(this);
@@ -0,0 +1,65 @@
+package com.mparticle;
+
+import com.mparticle.internal.Constants;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdaptiveUploadPolicyTest {
+    private static final long INTERVAL = 600000;
+    private final AdaptiveUploadPolicy policy = new AdaptiveUploadPolicy();
+
+    @Test
+    public void testNoBacklogOnWifi() {
+        UploadPolicy.Conditions conditions = conditions(10, UploadPolicy.NetworkType.WIFI, false, 0.5, 0);
+        assertEquals(INTERVAL, policy.getUploadInterval(conditions));
+        assertEquals(Constants.DEFAULT_UPLOAD_BATCH_SIZE, policy.getBatchSize(conditions));
+    }
+
+    @Test
+    public void testDrainOnWifiOrCharging() {
+        UploadPolicy.Conditions conditions = conditions(1000, UploadPolicy.NetworkType.WIFI, false, 0.5, 0);
+        assertEquals(INTERVAL / 4, policy.getUploadInterval(conditions));
+        assertEquals(Constants.DEFAULT_UPLOAD_BATCH_SIZE * 4, policy.getBatchSize(conditions));
+
+        conditions = conditions(250, UploadPolicy.NetworkType.CELLULAR, true, 0.5, 0);
+        assertEquals(INTERVAL / 4, policy.getUploadInterval(conditions));
+        assertEquals(250, policy.getBatchSize(conditions));
+
+        //short intervals, such as in development, are not shortened below the minimum
+        conditions = new UploadPolicy.Conditions(20000, 1000, 0, UploadPolicy.NetworkType.WIFI, false, 0.5, 0, 0);
+        assertEquals(AdaptiveUploadPolicy.MIN_DRAIN_INTERVAL_MILLIS, policy.getUploadInterval(conditions));
+        conditions = new UploadPolicy.Conditions(10000, 1000, 0, UploadPolicy.NetworkType.WIFI, false, 0.5, 0, 0);
+        assertEquals(10000, policy.getUploadInterval(conditions));
+    }
+
+    @Test
+    public void testFewerWakeUpsOnCellular() {
+        UploadPolicy.Conditions conditions = conditions(1000, UploadPolicy.NetworkType.CELLULAR, false, 0.5, 0);
+        assertEquals(INTERVAL * 2, policy.getUploadInterval(conditions));
+        assertEquals(Constants.DEFAULT_UPLOAD_BATCH_SIZE * 2, policy.getBatchSize(conditions));
+
+        conditions = conditions(1000, UploadPolicy.NetworkType.CELLULAR, false, 0.1, 0);
+        assertEquals(INTERVAL * 4, policy.getUploadInterval(conditions));
+    }
+
+    @Test
+    public void testBackOffWhileFailing() {
+        UploadPolicy.Conditions conditions = conditions(1000, UploadPolicy.NetworkType.WIFI, false, 0.5, 0.25);
+        assertEquals(INTERVAL / 2, policy.getUploadInterval(conditions));
+        assertEquals(Constants.DEFAULT_UPLOAD_BATCH_SIZE * 4, policy.getBatchSize(conditions));
+
+        conditions = conditions(1000, UploadPolicy.NetworkType.WIFI, false, 0.5, 0.75);
+        assertEquals(INTERVAL, policy.getUploadInterval(conditions));
+        assertEquals(Constants.DEFAULT_UPLOAD_BATCH_SIZE / 2, policy.getBatchSize(conditions));
+
+        //cellular, low battery and failing would be 16 times the interval, which is capped
+        conditions = conditions(1000, UploadPolicy.NetworkType.CELLULAR, false, 0.1, 1);
+        assertEquals(INTERVAL * AdaptiveUploadPolicy.MAX_INTERVAL_MULTIPLIER, policy.getUploadInterval(conditions));
+    }
+
+    private static UploadPolicy.Conditions conditions(int pendingMessages, UploadPolicy.NetworkType networkType, boolean charging, double batteryLevel, double failureRate) {
+        return new UploadPolicy.Conditions(INTERVAL, pendingMessages, 0, networkType, charging, batteryLevel, 4, failureRate);
+    }
+}
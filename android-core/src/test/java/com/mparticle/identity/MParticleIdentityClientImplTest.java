@@ -4,6 +4,8 @@ import android.content.Context;
 
 import com.mparticle.MParticle;
 import com.mparticle.internal.ConfigManager;
+import com.mparticle.mock.MockContext;
+import com.mparticle.networking.MParticleBaseClientImpl;
 
 import junit.framework.Assert;
 
@@ -40,4 +42,13 @@ public class MParticleIdentityClientImplTest {
             osStringValues.add(osString);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRequestsDeferredWhileBackingOff() throws Exception {
+        MParticleIdentityClientImpl client = new MParticleIdentityClientImpl(new MockContext(), Mockito.mock(ConfigManager.class), MParticle.OperatingSystem.ANDROID);
+        client.getRequestHandler().getBackoff().onThrottled(MParticleBaseClientImpl.Endpoint.IDENTITY, "60");
+        IdentityHttpResponse response = client.identify(IdentityApiRequest.withEmptyUser().build());
+        Assert.assertEquals(IdentityApi.THROTTLE_ERROR, response.getHttpCode());
+        assertFalse(response.isSuccessful());
+    }
+}
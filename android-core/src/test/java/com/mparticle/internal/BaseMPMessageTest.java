@@ -66,4 +66,16 @@ public class BaseMPMessageTest {
         BaseMPMessage message = builder.build(new InternalSession(), null, 0);
         assertNotNull(message);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPriority() throws Exception {
+        InternalSession session = new InternalSession();
+        BaseMPMessage event = new BaseMPMessage.Builder(Constants.MessageType.EVENT).build(session, null, 1);
+        assertEquals(Constants.MessagePriority.NORMAL, event.getPriority());
+        assertEquals(Constants.MessagePriority.BULK, new BaseMPMessage.Builder(Constants.MessageType.SCREEN_VIEW).build(session, null, 1).getPriority());
+        assertEquals(Constants.MessagePriority.BULK, new BaseMPMessage.Builder(Constants.MessageType.BREADCRUMB).build(session, null, 1).getPriority());
+
+        event.setPriority(Constants.MessagePriority.CRITICAL);
+        assertEquals(Constants.MessagePriority.CRITICAL, event.getPriority());
+    }
+}
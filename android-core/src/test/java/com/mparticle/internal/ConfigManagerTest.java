@@ -309,6 +309,40 @@ public class ConfigManagerTest {
         assertTrue(manager.shouldTrigger(message));
     }
 
+    @Test
+    public void testShouldTriggerMessageMatchesAndHashes() throws Exception {
+        JSONObject config = new JSONObject(sampleConfig);
+        config.put("tri", new JSONObject()
+                .put("mm", new JSONArray()
+                        .put(new JSONObject().put("dt", "E").put("eh", true))
+                        .put(new JSONObject().put("el", 2.0)))
+                .put("evts", new JSONArray().put(MPUtility.mpHash(Constants.MessageType.EVENT + "hashed event"))));
+        manager.updateConfig(config);
+
+        BaseMPMessage message = new BaseMPMessage.Builder(Constants.MessageType.EVENT).name("matched event").build(new InternalSession(), null, 1);
+        message.put("eh", true);
+        message.put("el", 2);
+        assertTrue(manager.shouldTrigger(message));
+        message.put("eh", "TRUE");
+        assertTrue(manager.shouldTrigger(message));
+        message.put("eh", false);
+        assertFalse(manager.shouldTrigger(message));
+        message.put("eh", true);
+        message.put("el", 2.5);
+        assertFalse(manager.shouldTrigger(message));
+        message.remove("el");
+        assertFalse(manager.shouldTrigger(message));
+
+        message = new BaseMPMessage.Builder(Constants.MessageType.EVENT).name("hashed event").build(new InternalSession(), null, 1);
+        assertTrue(manager.shouldTrigger(message));
+        message = new BaseMPMessage.Builder(Constants.MessageType.EVENT).name("other event").build(new InternalSession(), null, 1);
+        assertFalse(manager.shouldTrigger(message));
+
+        manager.updateConfig(new JSONObject(sampleConfig).put("tri", new JSONObject()));
+        message = new BaseMPMessage.Builder(Constants.MessageType.EVENT).name("hashed event").build(new InternalSession(), null, 1);
+        assertFalse(manager.shouldTrigger(message));
+    }
+
     @Test
     public void testGetMpid() throws Exception {
         SharedPreferences prefs = context.getSharedPreferences(null, 0);
@@ -0,0 +1,75 @@
+package com.mparticle.internal;
+
+import com.mparticle.mock.MockContext;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class DeviceStateSamplerTest {
+
+    @Test
+    public void testSamplingInterval() {
+        TestSampler sampler = new TestSampler(1000);
+        DeviceStateSampler.Snapshot snapshot = sampler.getSnapshot(true);
+        assertEquals(1, sampler.samples);
+
+        sampler.time = 999;
+        assertSame(snapshot, sampler.getSnapshot(true));
+        assertEquals(1, sampler.samples);
+
+        sampler.time = 1000;
+        DeviceStateSampler.Snapshot nextSnapshot = sampler.getSnapshot(true);
+        assertNotSame(snapshot, nextSnapshot);
+        assertEquals(2, sampler.samples);
+
+        sampler.invalidate();
+        assertNotSame(nextSnapshot, sampler.getSnapshot(true));
+        assertEquals(3, sampler.samples);
+    }
+
+    @Test
+    public void testDiskSampledWhenRequired() {
+        TestSampler sampler = new TestSampler(1000);
+        DeviceStateSampler.Snapshot snapshot = sampler.getSnapshot(false);
+        assertSame(snapshot, sampler.getSnapshot(false));
+        assertEquals(1, sampler.samples);
+
+        //a sample without disk space can't be reused once disk space is needed
+        DeviceStateSampler.Snapshot diskSnapshot = sampler.getSnapshot(true);
+        assertNotSame(snapshot, diskSnapshot);
+        assertEquals(1234, diskSnapshot.getAvailableDisk());
+        assertSame(diskSnapshot, sampler.getSnapshot(false));
+        assertEquals(2, sampler.samples);
+    }
+
+    @Test
+    public void testNoSamplingInterval() {
+        TestSampler sampler = new TestSampler(0);
+        sampler.getSnapshot(true);
+        sampler.getSnapshot(true);
+        assertEquals(2, sampler.samples);
+    }
+
+    private static class TestSampler extends DeviceStateSampler {
+        long time;
+        int samples;
+
+        TestSampler(long samplingIntervalMillis) {
+            super(new MockContext(), samplingIntervalMillis);
+        }
+
+        @Override
+        Snapshot sample(boolean includeDisk, long now) {
+            samples++;
+            return new Snapshot(now, includeDisk, includeDisk ? 1234 : 0, 0, 0, false, null, 0, null);
+        }
+
+        @Override
+        long now() {
+            return time;
+        }
+    }
+}
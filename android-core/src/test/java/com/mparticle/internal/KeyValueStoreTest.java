@@ -0,0 +1,200 @@
+package com.mparticle.internal;
+
+import android.content.SharedPreferences;
+
+import com.mparticle.mock.MockContext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class KeyValueStoreTest {
+    private MockContext context;
+    private File file;
+
+    @Before
+    public void before() throws IOException {
+        context = new MockContext();
+        file = File.createTempFile("mp_kv_store", null);
+        file.delete();
+    }
+
+    @After
+    public void after() {
+        file.delete();
+    }
+
+    @Test
+    public void testValuesSurviveReload() throws IOException {
+        KeyValueStore store = new KeyValueStore(context, file);
+        SharedPreferences preferences = store.getNamespace("first");
+        preferences.edit()
+                .putString("string", "value")
+                .putInt("int", 1)
+                .putLong("long", 2L)
+                .putFloat("float", 3f)
+                .putBoolean("boolean", true)
+                .putStringSet("set", new HashSet<String>(Arrays.asList("a", "b")))
+                .putString("removed", "value")
+                .commit();
+        preferences.edit().remove("removed").putString("null", null).commit();
+        store.getNamespace("second").edit().putString("string", "other").commit();
+
+        store = new KeyValueStore(context, file);
+        preferences = store.getNamespace("first");
+        assertEquals("value", preferences.getString("string", null));
+        assertEquals(1, preferences.getInt("int", 0));
+        assertEquals(2L, preferences.getLong("long", 0));
+        assertEquals(3f, preferences.getFloat("float", 0), 0);
+        assertTrue(preferences.getBoolean("boolean", false));
+        assertEquals(new HashSet<String>(Arrays.asList("a", "b")), preferences.getStringSet("set", null));
+        assertFalse(preferences.contains("removed"));
+        assertFalse(preferences.contains("null"));
+        assertEquals("other", store.getNamespace("second").getString("string", null));
+    }
+
+    @Test
+    public void testClearAppliedBeforePuts() throws IOException {
+        KeyValueStore store = new KeyValueStore(context, file);
+        SharedPreferences preferences = store.getNamespace("namespace");
+        preferences.edit().putString("old", "value").commit();
+        preferences.edit().putString("new", "value").clear().commit();
+        assertFalse(preferences.contains("old"));
+        assertTrue(preferences.contains("new"));
+
+        preferences = new KeyValueStore(context, file).getNamespace("namespace");
+        assertFalse(preferences.contains("old"));
+        assertTrue(preferences.contains("new"));
+    }
+
+    @Test
+    public void testSharedPreferencesImportedOnce() throws IOException {
+        context.getSharedPreferences("namespace", 0).edit().putString("legacy", "value").commit();
+        KeyValueStore store = new KeyValueStore(context, file);
+        SharedPreferences preferences = store.getNamespace("namespace");
+        assertEquals("value", preferences.getString("legacy", null));
+        preferences.edit().remove("legacy").commit();
+
+        store = new KeyValueStore(context, file);
+        assertNull(store.getNamespace("namespace").getString("legacy", null));
+    }
+
+    @Test
+    public void testIncompleteWriteDiscarded() throws IOException {
+        KeyValueStore store = new KeyValueStore(context, file);
+        store.getNamespace("namespace").edit().putString("first", "value").commit();
+        long length = file.length();
+        store.getNamespace("namespace").edit().putString("second", "value").commit();
+
+        //simulate the process dying part way through the second write
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(length + 6);
+        randomAccessFile.close();
+
+        SharedPreferences preferences = new KeyValueStore(context, file).getNamespace("namespace");
+        assertEquals("value", preferences.getString("first", null));
+        assertFalse(preferences.contains("second"));
+        assertTrue(file.length() < length + 6);
+    }
+
+    @Test
+    public void testCorruptLengthDiscarded() throws IOException {
+        KeyValueStore store = new KeyValueStore(context, file);
+        store.getNamespace("namespace").edit().putString("first", "value").commit();
+        long length = file.length();
+        store.getNamespace("namespace").edit().putString("second", "value").commit();
+
+        for (int corruptLength : new int[]{-1, Integer.MAX_VALUE}) {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            randomAccessFile.seek(length);
+            randomAccessFile.writeInt(corruptLength);
+            randomAccessFile.close();
+
+            SharedPreferences preferences = new KeyValueStore(context, file).getNamespace("namespace");
+            assertEquals("value", preferences.getString("first", null));
+            assertFalse(preferences.contains("second"));
+            preferences.edit().putString("second", "value").commit();
+        }
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        KeyValueStore store = new KeyValueStore(context, file);
+        SharedPreferences preferences = store.getNamespace("namespace");
+        preferences.edit().putInt("counter", 0).commit();
+        long length = file.length();
+        preferences.edit().putInt("counter", 1).commit();
+        long writeLength = file.length() - length;
+        for (int i = 2; i <= 2000; i++) {
+            preferences.edit().putInt("counter", i).commit();
+        }
+        assertTrue(file.length() < length + 1000 * writeLength);
+        assertEquals(2000, new KeyValueStore(context, file).getNamespace("namespace").getInt("counter", 0));
+    }
+
+    @Test
+    public void testSharedPreferencesFollowTheStoreWhenToggled() {
+        MockContext context = new FilesDirContext(file.getParentFile());
+        KeyValueStore.delete(context);
+        try {
+            SharedPreferences preferences = KeyValueStore.getSharedPreferences(context, "namespace");
+            preferences.edit().putString("before", "value").commit();
+
+            KeyValueStore.setEnabled(context, true);
+            assertTrue(KeyValueStore.isEnabled(context));
+            assertEquals("value", preferences.getString("before", null));
+            preferences.edit().putString("enabled", "value").commit();
+            assertNull(context.getSharedPreferences("namespace", 0).getString("enabled", null));
+
+            KeyValueStore.setEnabled(context, false);
+            assertFalse(KeyValueStore.isEnabled(context));
+            assertEquals("value", preferences.getString("enabled", null));
+            assertEquals("value", context.getSharedPreferences("namespace", 0).getString("enabled", null));
+        } finally {
+            KeyValueStore.delete(context);
+        }
+    }
+
+    @Test
+    public void testSharedPreferencesWritableAfterDelete() {
+        MockContext context = new FilesDirContext(file.getParentFile());
+        KeyValueStore.setEnabled(context, true);
+        try {
+            SharedPreferences preferences = KeyValueStore.getSharedPreferences(context, "namespace");
+            preferences.edit().putString("deleted", "value").commit();
+
+            KeyValueStore.delete(context);
+            assertFalse(KeyValueStore.isEnabled(context));
+            assertNull(preferences.getString("deleted", null));
+            preferences.edit().putString("after", "value").commit();
+            assertEquals("value", preferences.getString("after", null));
+            assertEquals("value", context.getSharedPreferences("namespace", 0).getString("after", null));
+        } finally {
+            KeyValueStore.delete(context);
+        }
+    }
+
+    private static class FilesDirContext extends MockContext {
+        private final File filesDir;
+
+        FilesDirContext(File filesDir) {
+            this.filesDir = filesDir;
+        }
+
+        @Override
+        public File getFilesDir() {
+            return filesDir;
+        }
+    }
+}
@@ -141,6 +141,35 @@ public class MPUtilityTest {
         }
     }
 
+    @Test
+    public void testGzipRoundTrip() throws Exception {
+        assertEquals("", MPUtility.gunzip(MPUtility.gzip("")));
+        String message = "{\"msgs\":[{\"dt\":\"e\",\"n\":\"\u00e9v\u00e9nement \u4e2d\"}]}";
+        byte[] gzipped = MPUtility.gzip(message);
+        assertEquals((byte) 0x1f, gzipped[0]);
+        assertEquals((byte) 0x8b, gzipped[1]);
+        assertEquals(message, MPUtility.gunzip(gzipped));
+        String random = RandomUtils.getInstance().getAlphaNumericString(100000);
+        assertEquals(random, MPUtility.gunzip(MPUtility.gzip(random)));
+    }
+
+    @Test
+    public void testMpHash() throws Exception {
+        String[] inputs = new String[]{"", "a", "Some Event Name", "UPPER lower 123 !@#", "Événement", "中文"};
+        for (String input : inputs) {
+            int expected = 0;
+            for (char c : input.toLowerCase().toCharArray()) {
+                expected = ((expected << 5) - expected) + c;
+            }
+            assertEquals(expected, MPUtility.mpHash(input));
+            for (String suffix : inputs) {
+                assertEquals(MPUtility.mpHash(input + suffix), MPUtility.mpHash(MPUtility.mpHash(input), suffix));
+            }
+        }
+        assertEquals(0, MPUtility.mpHash(null));
+        assertEquals(MPUtility.mpHash("1"), MPUtility.mpHash(MPUtility.mpHash("1"), null));
+    }
+
     private void assertUnorderedJsonEqual(JSONObject object1, JSONObject object2) {
         if (object1 == object2) {
             return;
@@ -213,9 +213,11 @@ public class MParticleApiClientImplTest {
     public void testConfigRequestWhileThrottled() throws Exception {
         setup();
         PowerMockito.mockStatic(MPUtility.class);
-        //set all endpoints throttled, Config should not be listening to any throttle
+        //set all other endpoints throttled, Config should only be listening to its own throttle
         for (MParticleBaseClientImpl.Endpoint endpoint: MParticleBaseClientImpl.Endpoint.values()) {
-            client.getRequestHandler().setNextRequestTime(endpoint, System.currentTimeMillis() + 1000);
+            if (endpoint != MParticleBaseClientImpl.Endpoint.CONFIG) {
+                client.getRequestHandler().setNextRequestTime(endpoint, System.currentTimeMillis() + 1000);
+            }
         }
         Mockito.when(mockConnection.getResponseCode()).thenReturn(200);
         JSONObject response = new JSONObject();
@@ -308,6 +310,18 @@ public class MParticleApiClientImplTest {
         assertNotNull(ex);
     }
 
+    @Test
+    @PrepareForTest({URL.class, MParticleApiClientImpl.class})
+    public void testRequestsDeferredWhileBackingOff() throws Exception {
+        setup();
+        client.getRequestHandler().getBackoff().onThrottled(MParticleBaseClientImpl.Endpoint.CONFIG, "60");
+        client.getRequestHandler().getBackoff().onThrottled(MParticleBaseClientImpl.Endpoint.AUDIENCE, "60");
+        client.fetchConfig(true);
+        assertNull(client.fetchAudiences());
+        Mockito.verify(mockConnection, Mockito.never()).getResponseCode();
+        Mockito.verify(configManager, Mockito.never()).updateConfig(Mockito.any(JSONObject.class));
+    }
+
     @Test
     @PrepareForTest({URL.class, MParticleApiClientImpl.class})
     public void testSetNextAllowedRequestTime() throws Exception {
@@ -318,34 +332,35 @@ public class MParticleApiClientImplTest {
             assertEquals(0, client.getNextRequestTime(endpoint));
             //need a delta to account for test timing variation
             double delta = 50;
+            //without a usable Retry-After header, the first throttle is jittered between 0 and the default
             client.getRequestHandler().setNextAllowedRequestTime(null, endpoint);
             assertTrue(client.getNextRequestTime(endpoint) <= client.DEFAULT_THROTTLE_MILLIS + System.currentTimeMillis());
-            assertTrue(client.getNextRequestTime(endpoint) > System.currentTimeMillis() + client.DEFAULT_THROTTLE_MILLIS - delta);
+            assertTrue(client.getNextRequestTime(endpoint) > System.currentTimeMillis() - delta);
 
 
             Mockito.when(mockConnection.getHeaderField(Mockito.anyString())).thenReturn(null);
-            client.getRequestHandler().setNextRequestTime(endpoint, 0);
+            client.getRequestHandler().getBackoff().onSuccess(endpoint);
             assertEquals(0, client.getNextRequestTime(endpoint));
             client.getRequestHandler().setNextAllowedRequestTime(mockConnection, endpoint);
             assertTrue(client.getNextRequestTime(endpoint) <= client.DEFAULT_THROTTLE_MILLIS + System.currentTimeMillis());
-            assertTrue(client.getNextRequestTime(endpoint) > client.DEFAULT_THROTTLE_MILLIS + System.currentTimeMillis() - delta);
+            assertTrue(client.getNextRequestTime(endpoint) > System.currentTimeMillis() - delta);
 
             Mockito.when(mockConnection.getHeaderField("Retry-After")).thenReturn("");
-            client.getRequestHandler().setNextRequestTime(endpoint, 0);
+            client.getRequestHandler().getBackoff().onSuccess(endpoint);
             assertEquals(0, client.getNextRequestTime(endpoint));
             client.getRequestHandler().setNextAllowedRequestTime(mockConnection, endpoint);
             assertTrue(client.getNextRequestTime(endpoint) <= client.DEFAULT_THROTTLE_MILLIS + System.currentTimeMillis());
-            assertTrue(client.getNextRequestTime(endpoint) > client.DEFAULT_THROTTLE_MILLIS + System.currentTimeMillis() - delta);
+            assertTrue(client.getNextRequestTime(endpoint) > System.currentTimeMillis() - delta);
 
             Mockito.when(mockConnection.getHeaderField("Retry-After")).thenReturn("-1000");
-            client.getRequestHandler().setNextRequestTime(endpoint, 0);
+            client.getRequestHandler().getBackoff().onSuccess(endpoint);
             assertEquals(0, client.getNextRequestTime(endpoint));
             client.getRequestHandler().setNextAllowedRequestTime(mockConnection, endpoint);
             assertTrue(client.getNextRequestTime(endpoint) <= client.DEFAULT_THROTTLE_MILLIS + System.currentTimeMillis());
-            assertTrue(client.getNextRequestTime(endpoint) > client.DEFAULT_THROTTLE_MILLIS + System.currentTimeMillis() - delta);
+            assertTrue(client.getNextRequestTime(endpoint) > System.currentTimeMillis() - delta);
 
             Mockito.when(mockConnection.getHeaderField("Retry-After")).thenReturn("60");
-            client.getRequestHandler().setNextRequestTime(endpoint, 0);
+            client.getRequestHandler().getBackoff().onSuccess(endpoint);
             assertEquals(0, client.getNextRequestTime(endpoint));
             client.getRequestHandler().setNextAllowedRequestTime(mockConnection, endpoint);
             assertTrue(client.getNextRequestTime(endpoint) <= 60 * 1000 + System.currentTimeMillis());
@@ -353,14 +368,14 @@ public class MParticleApiClientImplTest {
 
             Mockito.when(mockConnection.getHeaderField("Retry-After")).thenReturn("");
             Mockito.when(mockConnection.getHeaderField("retry-after")).thenReturn("100");
-            client.getRequestHandler().setNextRequestTime(endpoint, 0);
+            client.getRequestHandler().getBackoff().onSuccess(endpoint);
             assertEquals(0, client.getNextRequestTime(endpoint));
             client.getRequestHandler().setNextAllowedRequestTime(mockConnection, endpoint);
             assertTrue(client.getNextRequestTime(endpoint) <= 100 * 1000 + System.currentTimeMillis());
             assertTrue(client.getNextRequestTime(endpoint) > 100 * 1000 + System.currentTimeMillis() - 10);
 
             Mockito.when(mockConnection.getHeaderField("Retry-After")).thenReturn(Integer.toString(60 * 60 * 25));
-            client.getRequestHandler().setNextRequestTime(endpoint, 0);
+            client.getRequestHandler().getBackoff().onSuccess(endpoint);
             assertEquals(0, client.getNextRequestTime(endpoint));
             client.getRequestHandler().setNextAllowedRequestTime(mockConnection, endpoint);
             assertTrue(client.getNextRequestTime(endpoint) <= client.MAX_THROTTLE_MILLIS + System.currentTimeMillis());
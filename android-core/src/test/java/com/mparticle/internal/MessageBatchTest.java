@@ -6,10 +6,15 @@ import com.mparticle.consent.ConsentState;
 import com.mparticle.consent.GDPRConsent;
 import com.mparticle.mock.MockContext;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
 import static org.junit.Assert.*;
 
 public class MessageBatchTest {
@@ -105,4 +110,104 @@ public class MessageBatchTest {
         assertEquals("bar hardware id", consent.getString(Constants.MessageKey.CONSENT_STATE_HARDWARE_ID));
         assertEquals("bar document", consent.getString(Constants.MessageKey.CONSENT_STATE_DOCUMENT));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSerializedMessages() throws Exception {
+        MParticle mockMp = Mockito.mock(MParticle.class);
+        Mockito.when(mockMp.getEnvironment()).thenReturn(MParticle.Environment.Development);
+        MParticle.setInstance(mockMp);
+        ConfigManager manager = new ConfigManager(new MockContext(), MParticle.Environment.Production, "some api key", "some api secret", null, null, null);
+        BatchId batchId = new BatchId(manager.getMpid(), null, null, null);
+        MessageBatch batch = MessageBatch.create(false, manager, new JSONObject(), batchId);
+        String header = batch.toString();
+
+        JSONObject parsedMessage = new JSONObject().put("dt", "uic").put("ui", new JSONArray());
+        batch.addMessage("{\"dt\":\"e\",\"n\":\"first\"}");
+        batch.addMessage(parsedMessage);
+        batch.addMessage("{\"dt\":\"e\",\"n\":\"third\"}");
+        batch.addSessionHistoryMessage("{\"dt\":\"ss\"}");
+        assertEquals(1, batch.getParsedMessages().size());
+        assertEquals(0, batch.getParsedSessionHistoryMessages().size());
+
+        //changes to parsed messages are reflected in the payload
+        parsedMessage.remove("ui");
+        JSONObject payload = new JSONObject(batch.toString());
+        JSONArray messages = payload.getJSONArray("msgs");
+        assertEquals(3, messages.length());
+        assertEquals("first", messages.getJSONObject(0).getString("n"));
+        assertEquals("uic", messages.getJSONObject(1).getString("dt"));
+        assertFalse(messages.getJSONObject(1).has("ui"));
+        assertEquals("third", messages.getJSONObject(2).getString("n"));
+        assertEquals(1, payload.getJSONArray("sh").length());
+        assertEquals(new JSONObject(header).length() + 2, payload.length());
+    }
+
+    @Test
+    public void testJsonViewOfMessages() throws Exception {
+        MParticle mockMp = Mockito.mock(MParticle.class);
+        Mockito.when(mockMp.getEnvironment()).thenReturn(MParticle.Environment.Development);
+        MParticle.setInstance(mockMp);
+        ConfigManager manager = new ConfigManager(new MockContext(), MParticle.Environment.Production, "some api key", "some api secret", null, null, null);
+        BatchId batchId = new BatchId(manager.getMpid(), null, null, null);
+        MessageBatch batch = MessageBatch.create(false, manager, new JSONObject(), batchId);
+        assertFalse(batch.has("msgs"));
+        assertNull(batch.optJSONArray("msgs"));
+
+        batch.addMessage("{\"dt\":\"e\",\"n\":\"first\"}");
+        batch.addMessage(new JSONObject().put("dt", "uic"));
+        assertTrue(batch.has("msgs"));
+        assertFalse(batch.has("sh"));
+        JSONArray messages = batch.getJSONArray("msgs");
+        assertEquals(2, messages.length());
+        assertEquals("first", messages.getJSONObject(0).getString("n"));
+
+        //messages added later are part of the view, and changes made through it are uploaded
+        batch.addMessage("{\"dt\":\"e\",\"n\":\"third\"}");
+        messages = batch.getJSONArray("msgs");
+        assertEquals(3, messages.length());
+        messages.getJSONObject(0).put("n", "changed");
+        assertEquals("changed", new JSONObject(batch.toString()).getJSONArray("msgs").getJSONObject(0).getString("n"));
+
+        batch.put("sh", new JSONArray().put(new JSONObject().put("dt", "ss")));
+        assertEquals(1, batch.getParsedSessionHistoryMessages().size());
+        assertEquals(1, new JSONObject(batch.toString()).getJSONArray("sh").length());
+
+        assertEquals(3, ((JSONArray) batch.remove("msgs")).length());
+        assertFalse(batch.has("msgs"));
+        assertFalse(new JSONObject(batch.toString()).has("msgs"));
+    }
+
+    @Test
+    public void testKeysIncludeMessages() throws Exception {
+        MParticle mockMp = Mockito.mock(MParticle.class);
+        Mockito.when(mockMp.getEnvironment()).thenReturn(MParticle.Environment.Development);
+        MParticle.setInstance(mockMp);
+        ConfigManager manager = new ConfigManager(new MockContext(), MParticle.Environment.Production, "some api key", "some api secret", null, null, null);
+        BatchId batchId = new BatchId(manager.getMpid(), null, null, null);
+        MessageBatch batch = MessageBatch.create(false, manager, new JSONObject(), batchId);
+        int headerLength = batch.length();
+        assertEquals(headerLength, batch.names().length());
+
+        batch.addMessage("{\"dt\":\"e\",\"n\":\"first\"}");
+        batch.addSessionHistoryMessage(new JSONObject().put("dt", "ss"));
+        JSONObject payload = new JSONObject(batch.toString());
+        assertEquals(payload.length(), batch.length());
+        assertEquals(headerLength + 2, batch.length());
+
+        Set<String> keys = new HashSet<String>();
+        Iterator<String> iterator = batch.keys();
+        while (iterator.hasNext()) {
+            keys.add(iterator.next());
+        }
+        assertTrue(keys.contains("msgs"));
+        assertTrue(keys.contains("sh"));
+        assertEquals(batch.length(), keys.size());
+        JSONArray names = batch.names();
+        assertEquals(batch.length(), names.length());
+
+        JSONObject indented = new JSONObject(batch.toString(2));
+        assertEquals(payload.length(), indented.length());
+        assertEquals("first", indented.getJSONArray("msgs").getJSONObject(0).getString("n"));
+        assertEquals("ss", indented.getJSONArray("sh").getJSONObject(0).getString("dt"));
+    }
+}
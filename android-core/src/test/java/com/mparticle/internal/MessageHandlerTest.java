@@ -7,6 +7,7 @@ import com.mparticle.MockMParticle;
 import com.mparticle.identity.AliasRequest;
 import com.mparticle.internal.database.MPDatabase;
 import com.mparticle.internal.database.services.MParticleDBManager;
+import com.mparticle.internal.messages.BaseMPMessage;
 import com.mparticle.internal.messages.MPAliasMessage;
 import com.mparticle.mock.MockContext;
 import com.mparticle.testutils.AndroidUtils;
@@ -17,12 +18,19 @@ import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static com.mparticle.internal.Constants.MessageKey.REQUEST_ID;
 import static com.mparticle.testutils.TestingUtils.assertJsonEqual;
 import static junit.framework.TestCase.assertNull;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 @RunWith(PowerMockRunner.class)
@@ -85,4 +93,94 @@ public class MessageHandlerTest {
         insertedAliasRequest.value.remove(REQUEST_ID);
         assertJsonEqual(aliasMessage, insertedAliasRequest.value);
     }
+
+    @Test
+    @PrepareForTest({MessageManager.class})
+    public void testStoreMessagesSingleTransaction() throws Exception {
+        PowerMockito.mockStatic(MessageManager.class);
+        PowerMockito.when(MessageManager.getStateInfo()).thenReturn(new JSONObject());
+        MPDatabase database = Mockito.mock(MPDatabase.class);
+        Mockito.when(mParticleDatabaseManager.getDatabase()).thenReturn(database);
+
+        InternalSession session1 = new InternalSession();
+        session1.mSessionID = "session1";
+        InternalSession session2 = new InternalSession();
+        session2.mSessionID = "session2";
+        List<BaseMPMessage> messages = new ArrayList<BaseMPMessage>();
+        for (int i = 0; i < 10; i++) {
+            messages.add(new BaseMPMessage.Builder(Constants.MessageType.EVENT)
+                    .timestamp(100 + i)
+                    .build(i % 2 == 0 ? session1 : session2, null, 1));
+        }
+        handler.storeMessages(messages);
+
+        InOrder inOrder = Mockito.inOrder(database, mParticleDatabaseManager, mMessageManager);
+        inOrder.verify(database).beginTransaction();
+        inOrder.verify(mParticleDatabaseManager, Mockito.times(10)).insertMessage(Mockito.eq("apiKey"), Mockito.any(BaseMPMessage.class), Mockito.eq("dataplan1"), Mockito.eq(1));
+        inOrder.verify(database).setTransactionSuccessful();
+        inOrder.verify(database).endTransaction();
+        inOrder.verify(mMessageManager, Mockito.times(10)).checkForTrigger(Mockito.any(BaseMPMessage.class));
+        Mockito.verify(database, Mockito.times(1)).beginTransaction();
+        Mockito.verify(mParticleDatabaseManager).updateSessionEndTime("session1", 108L, 0L);
+        Mockito.verify(mParticleDatabaseManager).updateSessionEndTime("session2", 109L, 0L);
+        Mockito.verify(mParticleDatabaseManager, Mockito.times(2)).updateSessionEndTime(Mockito.anyString(), Mockito.anyLong(), Mockito.anyLong());
+    }
+
+    @Test
+    @PrepareForTest({MessageManager.class})
+    public void testCoalescedMessagesKeepQueueOrder() throws Exception {
+        PowerMockito.mockStatic(MessageManager.class);
+        PowerMockito.when(MessageManager.getStateInfo()).thenReturn(new JSONObject());
+        MPDatabase database = Mockito.mock(MPDatabase.class);
+        Mockito.when(mParticleDatabaseManager.getDatabase()).thenReturn(database);
+        final List<Message> queue = new ArrayList<Message>();
+        handler = new MessageHandler(mMessageManager, new MockContext(), mParticleDatabaseManager, "dataplan1", 1, true) {
+            @Override
+            boolean databaseAvailable() {
+                return true;
+            }
+
+            @Override
+            boolean postMessageAtTime(Message msg, long uptimeMillis) {
+                queue.add(msg);
+                return true;
+            }
+        };
+
+        InternalSession session = new InternalSession();
+        session.mSessionID = "session1";
+        session.mLastEventTime = 150;
+        BaseMPMessage first = new BaseMPMessage.Builder(Constants.MessageType.EVENT).timestamp(100).build(session, null, 1);
+        BaseMPMessage second = new BaseMPMessage.Builder(Constants.MessageType.EVENT).timestamp(110).build(session, null, 1);
+        BaseMPMessage third = new BaseMPMessage.Builder(Constants.MessageType.EVENT).timestamp(200).build(session, null, 1);
+        handler.sendMessageAtTime(message(MessageHandler.STORE_MESSAGE, first), 0);
+        handler.sendMessageAtTime(message(MessageHandler.STORE_MESSAGE, second), 0);
+        handler.sendMessageAtTime(message(MessageHandler.UPDATE_SESSION_END, session), 0);
+        handler.sendMessageAtTime(message(MessageHandler.STORE_MESSAGE, third), 0);
+
+        //the adjacent stores are coalesced, the one sent after the session update is not moved ahead of it
+        assertEquals(3, queue.size());
+        assertEquals(MessageHandler.STORE_PENDING_MESSAGES, queue.get(0).what);
+        assertEquals(MessageHandler.UPDATE_SESSION_END, queue.get(1).what);
+        assertEquals(MessageHandler.STORE_PENDING_MESSAGES, queue.get(2).what);
+
+        for (Message message : queue) {
+            handler.handleMessage(message);
+        }
+        InOrder inOrder = Mockito.inOrder(mParticleDatabaseManager);
+        inOrder.verify(mParticleDatabaseManager).insertMessage("apiKey", first, "dataplan1", 1);
+        inOrder.verify(mParticleDatabaseManager).insertMessage("apiKey", second, "dataplan1", 1);
+        inOrder.verify(mParticleDatabaseManager).updateSessionEndTime("session1", 110L, 0L);
+        inOrder.verify(mParticleDatabaseManager).updateSessionEndTime(Mockito.eq("session1"), Mockito.eq(150L), Mockito.anyLong());
+        inOrder.verify(mParticleDatabaseManager).insertMessage("apiKey", third, "dataplan1", 1);
+        inOrder.verify(mParticleDatabaseManager).updateSessionEndTime("session1", 200L, 0L);
+        Mockito.verify(database, Mockito.times(2)).beginTransaction();
+    }
+
+    private static Message message(int what, Object obj) {
+        Message message = new Message();
+        message.what = what;
+        message.obj = obj;
+        return message;
+    }
 }
@@ -214,10 +214,17 @@ public class MessageManagerTest {
         assertEquals("test event name", message.getName());
         assertEquals(message.get(Constants.MessageKey.EVENT_TYPE), MParticle.EventType.Location);
         assertEquals("test screen name", message.getString(Constants.MessageKey.CURRENT_ACTIVITY));
-        assertEquals(1, context.getSharedPreferences("name", 0).getInt(Constants.PrefKeys.EVENT_COUNTER, -1));
+        assertEquals(0, message.getInt(Constants.MessageKey.EVENT_COUNTER));
+        BaseMPMessage lastMessage = null;
         for (int i = 0; i < 100; i++){
-            manager.logEvent(event, "test screen name");
+            lastMessage = manager.logEvent(event, "test screen name");
         }
+        assertEquals(100, lastMessage.getInt(Constants.MessageKey.EVENT_COUNTER));
+        //the counter is only written to storage periodically, when the app is backgrounded or when the session ends
+        assertEquals(-1, context.getSharedPreferences("name", 0).getInt(Constants.PrefKeys.EVENT_COUNTER, -1));
+        MessageManager.persistEventCounter();
+        assertEquals(101, context.getSharedPreferences("name", 0).getInt(Constants.PrefKeys.EVENT_COUNTER, -1));
+        manager.logStateTransition(Constants.StateTransitionType.STATE_TRANS_BG, "test screen name", null, null, null, 0, 0, 0);
         JSONObject flags = message.getJSONObject("flags");
         JSONArray flag1 = flags.getJSONArray("flag 1");
         assertEquals(flag1.length(), 2);
@@ -227,7 +234,9 @@ public class MessageManagerTest {
         assertEquals(flag2.length(), 1);
         assertEquals(flag2.get(0), "value 3");
         assertEquals(101, context.getSharedPreferences("name", 0).getInt(Constants.PrefKeys.EVENT_COUNTER, -1));
-        Mockito.verify(messageHandler, Mockito.times(101)).sendMessage(Mockito.any(Message.class));
+        assertEquals(101, MessageManager.resetEventCounter());
+        assertEquals(0, context.getSharedPreferences("name", 0).getInt(Constants.PrefKeys.EVENT_COUNTER, -1));
+        Mockito.verify(messageHandler, Mockito.times(102)).sendMessage(Mockito.any(Message.class));
     }
 
     @Test
@@ -402,6 +411,32 @@ public class MessageManagerTest {
         Mockito.verify(uploadHandler, Mockito.times(1)).sendMessageDelayed(uploadHandler.obtainMessage(UploadHandler.UPLOAD_MESSAGES, configManager.getMpid()), Constants.INITIAL_UPLOAD_DELAY);
     }
 
+    @Test
+    public void testCheckForTrigger() throws Exception {
+        BaseMPMessage background = new BaseMPMessage.Builder(Constants.MessageType.APP_STATE_TRANSITION).build(new InternalSession(), null, defaultId);
+        background.put(Constants.MessageKey.STATE_TRANSITION_TYPE, Constants.StateTransitionType.STATE_TRANS_BG);
+        BaseMPMessage sessionEnd = new BaseMPMessage.Builder(Constants.MessageType.SESSION_END).build(new InternalSession(), null, defaultId);
+        BaseMPMessage commerceEvent = new BaseMPMessage.Builder(Constants.MessageType.COMMERCE_EVENT).build(new InternalSession(), null, defaultId);
+        BaseMPMessage screenView = new BaseMPMessage.Builder(Constants.MessageType.SCREEN_VIEW).build(new InternalSession(), null, defaultId);
+        for (BaseMPMessage message : new BaseMPMessage[]{background, sessionEnd, commerceEvent}) {
+            message.setPriority(Constants.MessagePriority.CRITICAL);
+        }
+
+        manager.checkForTrigger(screenView);
+        Mockito.verify(uploadHandler, Mockito.never()).removeMessages(Mockito.anyInt(), Mockito.any());
+
+        //the app going to the background or a session ending uploads every lane
+        manager.checkForTrigger(background);
+        manager.checkForTrigger(sessionEnd);
+        Mockito.verify(uploadHandler, Mockito.times(2)).removeMessages(UploadHandler.UPLOAD_TRIGGER_MESSAGES, configManager.getMpid());
+        Mockito.verify(uploadHandler, Mockito.times(2)).obtainMessage(UploadHandler.UPLOAD_TRIGGER_MESSAGES, 1, 0, configManager.getMpid());
+
+        //any other critical message only uploads the critical lane
+        manager.checkForTrigger(commerceEvent);
+        Mockito.verify(uploadHandler, Mockito.times(1)).removeMessages(UploadHandler.UPLOAD_CRITICAL_MESSAGES, configManager.getMpid());
+        Mockito.verify(uploadHandler, Mockito.times(1)).obtainMessage(UploadHandler.UPLOAD_CRITICAL_MESSAGES, 1, 0, configManager.getMpid());
+    }
+
     @Test
     public void testDoUpload() throws Exception {
         manager.doUpload();
@@ -231,6 +231,11 @@ public class MockKitManager implements KitManager {
         return new TreeMap<Integer, AttributionResult>();
     }
 
+    @Override
+    public Map<Integer, KitInvocationStats> getKitInvocationStats() {
+        return new TreeMap<Integer, KitInvocationStats>();
+    }
+
     @Override
     public void onIdentifyCompleted(MParticleUser user, IdentityApiRequest request) {
         
@@ -15,6 +15,8 @@ import com.mparticle.identity.AliasResponse;
 import com.mparticle.internal.database.services.MParticleDBManager;
 import com.mparticle.internal.messages.MPAliasMessage;
 import com.mparticle.mock.MockContext;
+import com.mparticle.networking.EndpointBackoff;
+import com.mparticle.networking.MParticleBaseClientImpl;
 import com.mparticle.testutils.AndroidUtils;
 import com.mparticle.testutils.RandomUtils;
 import com.mparticle.testutils.TestingUtils;
@@ -31,6 +33,10 @@ import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -40,6 +46,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @RunWith(PowerMockRunner.class)
 public class UploadHandlerTest {
@@ -54,6 +61,19 @@ public class UploadHandlerTest {
         handler = new UploadHandler(new MockContext(), mConfigManager, stateManager, Mockito.mock(MessageManager.class), Mockito.mock(MParticleDBManager.class));
     }
 
+    @Test
+    public void testReconnectResetsBackoff() throws Exception {
+        Context context = new MockContext();
+        handler = new UploadHandler(context, mConfigManager, Mockito.mock(AppStateManager.class), Mockito.mock(MessageManager.class), Mockito.mock(MParticleDBManager.class));
+        EndpointBackoff backoff = EndpointBackoff.getInstance(context);
+        backoff.onFailure(MParticleBaseClientImpl.Endpoint.EVENTS);
+        handler.setConnected(true);
+        assertEquals(1, backoff.getState(MParticleBaseClientImpl.Endpoint.EVENTS).getConsecutiveFailures());
+        handler.setConnected(false);
+        handler.setConnected(true);
+        assertEquals(0, backoff.getState(MParticleBaseClientImpl.Endpoint.EVENTS).getConsecutiveFailures());
+    }
+
     @Test
     public void testSetConnected() throws Exception {
         handler.isNetworkConnected = true;
@@ -213,6 +233,102 @@ public class UploadHandlerTest {
         Mockito.verify(mockApiClient).sendMessageBatch(Mockito.eq("a message batch"));
     }
 
+    @Test
+    public void testUploadGzippedMessage() throws Exception {
+        handler.handleMessage(null);
+        final byte[] gzipped = MPUtility.gzip("a message batch");
+        Mockito.when(handler.mParticleDBManager.getReadyUploads())
+                .thenReturn(new ArrayList<MParticleDBManager.ReadyUpload>(){
+                    {
+                        add(new MParticleDBManager.ReadyUpload(123, false, gzipped));
+                    }
+                });
+        MParticleApiClient mockApiClient = Mockito.mock(MParticleApiClient.class);
+        handler.setApiClient(mockApiClient);
+        handler.upload(false);
+        Mockito.verify(mockApiClient).sendMessageBatch(Mockito.eq("a message batch"), Mockito.same(gzipped));
+    }
+
+    @Test
+    public void testSessionEndUsesStoredFlag() throws Exception {
+        handler.handleMessage(null);
+        handler.setApiClient(Mockito.mock(MParticleApiClient.class));
+        String sessionEndBatch = "{\"msgs\":[{" + handler.containsClause + "}]}";
+
+        MParticleDBManager.ReadyUpload flagged = Mockito.mock(MParticleDBManager.ReadyUpload.class);
+        Mockito.when(flagged.containsSessionEnd()).thenReturn(true);
+        Mockito.when(flagged.getMessage()).thenReturn("a message batch");
+        Mockito.when(handler.mParticleDBManager.getReadyUploads()).thenReturn(Collections.singletonList(flagged));
+        assertTrue(handler.upload(false));
+
+        MParticleDBManager.ReadyUpload notFlagged = Mockito.mock(MParticleDBManager.ReadyUpload.class);
+        Mockito.when(notFlagged.containsSessionEnd()).thenReturn(false);
+        Mockito.when(notFlagged.getMessage()).thenReturn(sessionEndBatch);
+        Mockito.when(handler.mParticleDBManager.getReadyUploads()).thenReturn(Collections.singletonList(notFlagged));
+        assertFalse(handler.upload(false));
+
+        //uploads stored before the flag existed are still read back
+        MParticleDBManager.ReadyUpload legacy = Mockito.mock(MParticleDBManager.ReadyUpload.class);
+        Mockito.when(legacy.containsSessionEnd()).thenReturn(null);
+        Mockito.when(legacy.getMessage()).thenReturn(sessionEndBatch);
+        Mockito.when(handler.mParticleDBManager.getReadyUploads()).thenReturn(Collections.singletonList(legacy));
+        assertTrue(handler.upload(false));
+    }
+
+    @Test
+    public void testMpidUploadThreadsPreserveMpidOrder() throws Exception {
+        handler.handleMessage(null);
+        handler.mpidUploadThreads = 3;
+        final List<MParticleDBManager.ReadyUpload> readyUploads = new ArrayList<MParticleDBManager.ReadyUpload>();
+        for (int i = 0; i < 12; i++) {
+            MParticleDBManager.ReadyUpload readyUpload = Mockito.mock(MParticleDBManager.ReadyUpload.class);
+            Mockito.when(readyUpload.getId()).thenReturn(i);
+            Mockito.when(readyUpload.getMpId()).thenReturn((long) (i % 3));
+            Mockito.when(readyUpload.getMessage()).thenReturn(String.valueOf(i));
+            readyUploads.add(readyUpload);
+        }
+        Mockito.when(handler.mParticleDBManager.getReadyUploads()).thenReturn(readyUploads);
+
+        //the first request for each MPID blocks until all three are in flight
+        final CountDownLatch concurrentRequests = new CountDownLatch(3);
+        final Map<Long, List<Integer>> sentByMpid = Collections.synchronizedMap(new HashMap<Long, List<Integer>>());
+        handler.setApiClient(new AccessUtils.EmptyMParticleApiClient() {
+            @Override
+            public int sendMessageBatch(String message) {
+                int id = Integer.parseInt(message);
+                long mpid = id % 3;
+                synchronized (sentByMpid) {
+                    if (!sentByMpid.containsKey(mpid)) {
+                        sentByMpid.put(mpid, new ArrayList<Integer>());
+                    }
+                    sentByMpid.get(mpid).add(id);
+                }
+                if (id < 3) {
+                    concurrentRequests.countDown();
+                    try {
+                        assertTrue(concurrentRequests.await(5, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        fail(e.getMessage());
+                    }
+                }
+                return id == 4 ? 500 : 202;
+            }
+        });
+        handler.upload(false);
+
+        assertEquals(0, concurrentRequests.getCount());
+        for (long mpid = 0; mpid < 3; mpid++) {
+            List<Integer> sent = sentByMpid.get(mpid);
+            assertEquals(4, sent.size());
+            for (int i = 0; i < sent.size(); i++) {
+                assertEquals(mpid + i * 3, sent.get(i).longValue());
+            }
+        }
+        for (int i = 0; i < 12; i++) {
+            Mockito.verify(handler.mParticleDBManager, Mockito.times(i == 4 ? 0 : 1)).deleteUpload(i);
+        }
+    }
+
     @Test
     public void testRetryLogic() throws IOException, MParticleApiClientImpl.MPThrottleException, JSONException, MParticleApiClientImpl.MPRampException {
         final AndroidUtils.Mutable<Integer> deleteId = new AndroidUtils.Mutable<Integer>(null);
@@ -0,0 +1,123 @@
+package com.mparticle.internal;
+
+import androidx.annotation.NonNull;
+
+import com.mparticle.UploadPolicy;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class UploadSchedulerTest {
+    private long now;
+    private int pendingMessages;
+    private UploadPolicy.NetworkType networkType;
+    private Clock clock;
+    private UploadScheduler.ConditionsSource source;
+
+    @Before
+    public void before() {
+        now = 1000000;
+        pendingMessages = 0;
+        networkType = UploadPolicy.NetworkType.WIFI;
+        clock = new Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return now;
+            }
+        };
+        source = new UploadScheduler.ConditionsSource() {
+            @Override
+            public int getPendingMessageCount() {
+                return pendingMessages;
+            }
+
+            @Override
+            public int getPendingUploadCount() {
+                return 0;
+            }
+
+            @Override
+            public UploadPolicy.NetworkType getNetworkType() {
+                return networkType;
+            }
+
+            @Override
+            public boolean isCharging() {
+                return false;
+            }
+
+            @Override
+            public double getBatteryLevel() {
+                return 0.5;
+            }
+        };
+    }
+
+    @Test
+    public void testNoPolicy() {
+        UploadScheduler scheduler = new UploadScheduler(null, clock);
+        pendingMessages = 10000;
+        assertEquals(600000, scheduler.getUploadInterval(600000, source));
+        assertEquals(Constants.DEFAULT_UPLOAD_BATCH_SIZE, scheduler.getBatchSize(600000, source));
+    }
+
+    @Test
+    public void testRecentFailureRate() {
+        UploadScheduler scheduler = new UploadScheduler(null, clock);
+        UploadPolicy.Conditions conditions = scheduler.getConditions(600000, source);
+        assertEquals(0, conditions.getRecentUploads());
+        assertEquals(0, conditions.getRecentFailureRate(), 0);
+
+        scheduler.onUploadResult(true);
+        now += UploadScheduler.RESULT_WINDOW_MILLIS / 2;
+        scheduler.onUploadResult(false);
+        scheduler.onUploadResult(false);
+        scheduler.onUploadResult(true);
+        conditions = scheduler.getConditions(600000, source);
+        assertEquals(4, conditions.getRecentUploads());
+        assertEquals(0.5, conditions.getRecentFailureRate(), 0);
+
+        //the first failure falls out of the window
+        now += UploadScheduler.RESULT_WINDOW_MILLIS / 2 + 1;
+        conditions = scheduler.getConditions(600000, source);
+        assertEquals(3, conditions.getRecentUploads());
+        assertEquals(1 / 3.0, conditions.getRecentFailureRate(), 0.0001);
+
+        //and only the most recent results are kept
+        for (int i = 0; i < UploadScheduler.MAX_TRACKED_RESULTS; i++) {
+            scheduler.onUploadResult(false);
+        }
+        conditions = scheduler.getConditions(600000, source);
+        assertEquals(UploadScheduler.MAX_TRACKED_RESULTS, conditions.getRecentUploads());
+        assertEquals(0, conditions.getRecentFailureRate(), 0);
+    }
+
+    @Test
+    public void testPolicy() {
+        UploadScheduler scheduler = new UploadScheduler(new UploadPolicy() {
+            @Override
+            public long getUploadInterval(@NonNull Conditions conditions) {
+                return conditions.getNetworkType() == NetworkType.CELLULAR ? conditions.getUploadInterval() * 2 : 0;
+            }
+
+            @Override
+            public int getBatchSize(@NonNull Conditions conditions) {
+                return conditions.getPendingMessages();
+            }
+        }, clock);
+        networkType = UploadPolicy.NetworkType.CELLULAR;
+        pendingMessages = 150;
+        assertEquals(1200000, scheduler.getUploadInterval(600000, source));
+        assertEquals(150, scheduler.getBatchSize(600000, source));
+
+        //values which are out of range are replaced or capped
+        networkType = null;
+        pendingMessages = 0;
+        assertEquals(600000, scheduler.getUploadInterval(600000, source));
+        assertEquals(Constants.DEFAULT_UPLOAD_BATCH_SIZE, scheduler.getBatchSize(600000, source));
+        pendingMessages = 100000;
+        assertEquals(Constants.LIMIT_MAX_UPLOAD_BATCH_SIZE, scheduler.getBatchSize(600000, source));
+    }
+}
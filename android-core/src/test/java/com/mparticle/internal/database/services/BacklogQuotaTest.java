@@ -0,0 +1,229 @@
+package com.mparticle.internal.database.services;
+
+import android.database.Cursor;
+
+import com.mparticle.MParticleOptions;
+import com.mparticle.internal.Constants;
+import com.mparticle.internal.database.MPDatabase;
+import com.mparticle.internal.database.tables.MessageTable;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+
+public class BacklogQuotaTest {
+    private MPDatabase database;
+    private int measureCount;
+    private long measuredRows;
+    private long measuredBytes;
+    private long[][] evictionCandidates;
+    private String evictionOrder;
+
+    @Before
+    public void before() {
+        database = Mockito.mock(MPDatabase.class);
+        measureCount = 0;
+        evictionCandidates = new long[0][];
+        evictionOrder = null;
+        Mockito.when(database.query(anyString(), any(String[].class), (String) isNull(), (String[]) isNull(), (String) isNull(), (String) isNull(), (String) any()))
+                .thenAnswer(new Answer<Cursor>() {
+                    @Override
+                    public Cursor answer(InvocationOnMock invocation) {
+                        String[] columns = invocation.getArgument(1);
+                        if ("count(*)".equals(columns[0])) {
+                            measureCount++;
+                            return createCursor(new long[][]{{measuredRows, measuredBytes}});
+                        }
+                        evictionOrder = invocation.getArgument(6);
+                        return createCursor(evictionCandidates);
+                    }
+                });
+        Mockito.when(database.delete(anyString(), anyString(), (String[]) any())).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                String whereClause = invocation.getArgument(1);
+                return whereClause.split(",").length;
+            }
+        });
+    }
+
+    @Test
+    public void testNoQuotaNeverQueries() {
+        for (int i = 0; i < 10; i++) {
+            BacklogQuota.NONE.onMessageInserted(database, 100);
+            BacklogQuota.NONE.onUploadInserted(database, 100);
+        }
+        assertEquals(0, BacklogQuota.NONE.evictExpiredMessages(database));
+        Mockito.verifyZeroInteractions(database);
+    }
+
+    @Test
+    public void testTableIsMeasuredOnceWhileUnderQuota() {
+        BacklogQuota quota = new BacklogQuota(10, 0, 0, 0, 0, MParticleOptions.StorageQuota.EvictionPolicy.OLDEST_FIRST);
+        //the first insert measures the table, including the inserted row, and the next six
+        //bring the tracked size up to the quota
+        measuredRows = 4;
+        for (int i = 0; i < 7; i++) {
+            quota.onMessageInserted(database, 100);
+        }
+        assertEquals(1, measureCount);
+        Mockito.verify(database, Mockito.never()).delete(anyString(), anyString(), (String[]) any());
+
+        //the tracked size now exceeds the quota, so the table is measured again, and since
+        //rows have been deleted elsewhere, nothing is evicted
+        measuredRows = 5;
+        quota.onMessageInserted(database, 100);
+        assertEquals(2, measureCount);
+        Mockito.verify(database, Mockito.never()).delete(anyString(), anyString(), (String[]) any());
+        assertEquals(0, quota.getEvictedMessageCount());
+    }
+
+    @Test
+    public void testRowQuotaEvictsOldestDownToTarget() {
+        BacklogQuota quota = new BacklogQuota(10, 0, 0, 0, 0, MParticleOptions.StorageQuota.EvictionPolicy.OLDEST_FIRST);
+        measuredRows = 11;
+        evictionCandidates = new long[][]{{1, 10}, {2, 10}, {3, 10}, {4, 10}};
+        quota.onMessageInserted(database, 10);
+
+        Mockito.verify(database).delete(MessageTable.MessageTableColumns.TABLE_NAME, "_id in (1,2)", null);
+        assertEquals(MessageTable.MessageTableColumns._ID + " asc", evictionOrder);
+        assertEquals(2, quota.getEvictedMessageCount());
+        assertEquals(0, quota.getEvictedUploadCount());
+
+        //9 rows are now tracked, so the next insert does not measure the table again
+        quota.onMessageInserted(database, 10);
+        assertEquals(1, measureCount);
+    }
+
+    @Test
+    public void testByteQuotaEvictsUploads() {
+        BacklogQuota quota = new BacklogQuota(0, 0, 0, 100, 0, MParticleOptions.StorageQuota.EvictionPolicy.LOWEST_PRIORITY_FIRST);
+        measuredRows = 3;
+        measuredBytes = 150;
+        evictionCandidates = new long[][]{{7, 40}, {8, 40}, {9, 70}};
+        quota.onUploadInserted(database, 70);
+
+        Mockito.verify(database).delete("uploads", "_id in (7,8)", null);
+        assertEquals(UploadService.getEvictionPriorityOrder(), evictionOrder);
+        assertEquals(2, quota.getEvictedUploadCount());
+        assertEquals(0, quota.getEvictedMessageCount());
+    }
+
+    @Test
+    public void testEvictExpired() {
+        BacklogQuota quota = new BacklogQuota(10, 0, 0, 0, 60000, MParticleOptions.StorageQuota.EvictionPolicy.OLDEST_FIRST);
+        measuredRows = 5;
+        quota.onMessageInserted(database, 10);
+        Mockito.when(database.delete(eq(MessageTable.MessageTableColumns.TABLE_NAME), eq(MessageTable.MessageTableColumns.CREATED_AT + " < ?"), any(String[].class))).thenReturn(3);
+
+        assertEquals(3, quota.evictExpiredMessages(database));
+        assertEquals(3, quota.getEvictedMessageCount());
+
+        //the tracked size is discarded once rows have been evicted
+        quota.onMessageInserted(database, 10);
+        assertEquals(2, measureCount);
+    }
+
+    @Test
+    public void testMessagePriorityOrder() throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try {
+            Statement statement = connection.createStatement();
+            statement.execute("CREATE TABLE " + MessageTable.MessageTableColumns.TABLE_NAME + " (_id INTEGER PRIMARY KEY, " +
+                    MessageTable.MessageTableColumns.PRIORITY + " INTEGER, " +
+                    MessageTable.MessageTableColumns.STATUS + " INTEGER)");
+            int[][] messages = new int[][]{
+                    {Constants.MessagePriority.CRITICAL, Constants.Status.READY},
+                    {Constants.MessagePriority.NORMAL, Constants.Status.READY},
+                    {Constants.MessagePriority.BULK, Constants.Status.READY},
+                    {Constants.MessagePriority.NORMAL, Constants.Status.BATCH_READY},
+                    {Constants.MessagePriority.CRITICAL, Constants.Status.UPLOADED},
+                    {Constants.MessagePriority.BULK, Constants.Status.READY}};
+            for (int i = 0; i < messages.length; i++) {
+                statement.execute("INSERT INTO " + MessageTable.MessageTableColumns.TABLE_NAME + " (_id, " +
+                        MessageTable.MessageTableColumns.PRIORITY + ", " +
+                        MessageTable.MessageTableColumns.STATUS + ") VALUES (" + (i + 1) + ", " + messages[i][0] + ", " + messages[i][1] + ")");
+            }
+            ResultSet resultSet = statement.executeQuery("SELECT _id FROM " + MessageTable.MessageTableColumns.TABLE_NAME + " ORDER BY " + MessageService.getEvictionPriorityOrder());
+            List<Integer> ids = new ArrayList<Integer>();
+            while (resultSet.next()) {
+                ids.add(resultSet.getInt(1));
+            }
+            //uploaded, then the bulk, normal and critical lanes
+            assertEquals("[5, 3, 6, 2, 4, 1]", ids.toString());
+            statement.close();
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testBytesAreMeasuredInUtf8() throws Exception {
+        String value = "a\u00e9\u20ac\ud83d\ude00";
+        assertEquals(1 + 2 + 3 + 4, BacklogQuota.getByteLength(value));
+
+        Class.forName("org.sqlite.JDBC");
+        Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try {
+            Statement statement = connection.createStatement();
+            statement.execute("CREATE TABLE messages (message TEXT)");
+            PreparedStatement insert = connection.prepareStatement("INSERT INTO messages (message) VALUES (?)");
+            insert.setString(1, value);
+            insert.execute();
+            insert.close();
+            ResultSet resultSet = statement.executeQuery("SELECT " + BacklogQuota.byteLengthExpression("message") + " FROM messages");
+            assertEquals(BacklogQuota.getByteLength(value), resultSet.getLong(1));
+            statement.close();
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static Cursor createCursor(final long[][] rows) {
+        Cursor cursor = Mockito.mock(Cursor.class);
+        final int[] position = new int[]{-1};
+        Mockito.when(cursor.moveToFirst()).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                position[0] = 0;
+                return rows.length > 0;
+            }
+        });
+        Mockito.when(cursor.moveToNext()).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                return ++position[0] < rows.length;
+            }
+        });
+        Mockito.when(cursor.getLong(Mockito.anyInt())).thenAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) {
+                return rows[position[0]][(Integer) invocation.getArgument(0)];
+            }
+        });
+        Mockito.when(cursor.getInt(Mockito.anyInt())).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                return (int) rows[position[0]][(Integer) invocation.getArgument(0)];
+            }
+        });
+        return cursor;
+    }
+}
@@ -0,0 +1,76 @@
+package com.mparticle.internal.database.tables;
+
+import com.mparticle.internal.Constants;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks, against a JVM SQLite database, that the messages, uploads and breadcrumbs access paths
+ * use their indexes. Their timings are measured by DatabaseIndexBenchmark, in the
+ * benchmarks module.
+ */
+public class DatabaseIndexTest {
+    private Connection connection;
+
+    @Before
+    public void before() throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        Statement statement = connection.createStatement();
+        statement.execute(MessageTable.CREATE_MESSAGES_DDL);
+        statement.execute(UploadTable.CREATE_UPLOADS_DDL);
+        statement.execute(BreadcrumbTable.CREATE_BREADCRUMBS_DDL);
+        statement.execute(MessageTable.CREATE_MESSAGES_STATUS_INDEX_DDL);
+        statement.execute(UploadTable.CREATE_UPLOADS_PRIORITY_INDEX_DDL);
+        statement.execute(BreadcrumbTable.CREATE_BREADCRUMBS_MP_ID_INDEX_DDL);
+        statement.close();
+    }
+
+    @After
+    public void after() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    public void testIndexesAreUsed() throws Exception {
+        //mirrors MessageService.getSessionHistory()
+        assertTrue(queryPlan("SELECT _id, " + MessageTable.MessageTableColumns.MESSAGE + " FROM " + MessageTable.MessageTableColumns.TABLE_NAME +
+                " WHERE (" + MessageTable.MessageTableColumns.STATUS + " = " + Constants.Status.UPLOADED + ")" +
+                " and (" + MessageTable.MessageTableColumns.SESSION_ID + " != 'session0')" +
+                " and (" + MessageTable.MessageTableColumns.MP_ID + " != " + Constants.TEMPORARY_MPID + ")" +
+                " ORDER BY _id asc LIMIT 100").contains("messages_status_idx"));
+        //UploadService.getReadyUploads(), read in index order rather than sorted
+        String readyUploadsPlan = queryPlan("SELECT _id, " + UploadTable.UploadTableColumns.MESSAGE + ", " + UploadTable.UploadTableColumns.REQUEST_TYPE + ", " +
+                UploadTable.UploadTableColumns.CODEC + ", " + UploadTable.UploadTableColumns.MP_ID + " FROM " + UploadTable.UploadTableColumns.TABLE_NAME +
+                " ORDER BY " + UploadTable.READY_UPLOADS_ORDER);
+        assertTrue(readyUploadsPlan.contains("uploads_priority_idx"));
+        assertFalse(readyUploadsPlan.contains("TEMP B-TREE"));
+        //mirrors BreadcrumbService.getBreadcrumbs()
+        assertTrue(queryPlan("SELECT " + BreadcrumbTable.BreadcrumbTableColumns.CREATED_AT + ", " + BreadcrumbTable.BreadcrumbTableColumns.MESSAGE +
+                " FROM " + BreadcrumbTable.BreadcrumbTableColumns.TABLE_NAME +
+                " WHERE " + BreadcrumbTable.BreadcrumbTableColumns.MP_ID + " = 1234" +
+                " ORDER BY " + BreadcrumbTable.BreadcrumbTableColumns.CREATED_AT + " desc limit 50").contains("breadcrumbs_mp_id_idx"));
+    }
+
+    private String queryPlan(String query) throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery("EXPLAIN QUERY PLAN " + query);
+        while (resultSet.next()) {
+            plan.append(resultSet.getString("detail")).append('\n');
+        }
+        statement.close();
+        return plan.toString();
+    }
+}
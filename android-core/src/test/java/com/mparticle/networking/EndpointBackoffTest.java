@@ -0,0 +1,157 @@
+package com.mparticle.networking;
+
+import com.mparticle.internal.Clock;
+import com.mparticle.mock.MockSharedPreferences;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class EndpointBackoffTest {
+    private MockSharedPreferences preferences;
+    private long now;
+    private double jitter;
+    private EndpointBackoff backoff;
+
+    @Before
+    public void before() {
+        preferences = new MockSharedPreferences();
+        now = 1000000;
+        jitter = 1;
+        backoff = new EndpointBackoff(preferences, new Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return now;
+            }
+        }, new Random() {
+            @Override
+            public double nextDouble() {
+                return jitter;
+            }
+        });
+    }
+
+    @Test
+    public void testExponentialBackoff() {
+        MParticleBaseClientImpl.Endpoint endpoint = MParticleBaseClientImpl.Endpoint.EVENTS;
+        assertEquals(EndpointBackoff.BASE_DELAY_MILLIS, backoff.onFailure(endpoint));
+        assertEquals(EndpointBackoff.BASE_DELAY_MILLIS * 2, backoff.onFailure(endpoint));
+        assertEquals(EndpointBackoff.BASE_DELAY_MILLIS * 4, backoff.onFailure(endpoint));
+        assertEquals(now + EndpointBackoff.BASE_DELAY_MILLIS * 4, backoff.getNextRequestTime(endpoint));
+
+        //the delay is a random fraction of the ceiling
+        jitter = 0.25;
+        assertEquals(EndpointBackoff.BASE_DELAY_MILLIS * 2, backoff.onFailure(endpoint));
+
+        //the ceiling is capped
+        jitter = 1;
+        for (int i = 0; i < 100; i++) {
+            backoff.onFailure(endpoint);
+        }
+        assertEquals(EndpointBackoff.MAX_DELAY_MILLIS, backoff.onFailure(endpoint));
+
+        EndpointBackoff.State state = backoff.getState(endpoint);
+        assertEquals(105, state.getConsecutiveFailures());
+        assertEquals(EndpointBackoff.MAX_DELAY_MILLIS, state.getLastDelayMillis());
+        now += 1000;
+        assertEquals(EndpointBackoff.MAX_DELAY_MILLIS - 1000, backoff.getState(endpoint).getRemainingMillis());
+
+        backoff.onSuccess(endpoint);
+        state = backoff.getState(endpoint);
+        assertEquals(0, state.getConsecutiveFailures());
+        assertEquals(0, state.getNextRequestTime());
+        assertEquals(0, state.getRemainingMillis());
+        assertEquals(EndpointBackoff.BASE_DELAY_MILLIS, backoff.onFailure(endpoint));
+    }
+
+    @Test
+    public void testEndpointsAreIndependent() {
+        backoff.onFailure(MParticleBaseClientImpl.Endpoint.EVENTS);
+        backoff.onFailure(MParticleBaseClientImpl.Endpoint.EVENTS);
+        assertEquals(EndpointBackoff.BASE_DELAY_MILLIS, backoff.onFailure(MParticleBaseClientImpl.Endpoint.ALIAS));
+        assertEquals(0, backoff.getState(MParticleBaseClientImpl.Endpoint.IDENTITY).getConsecutiveFailures());
+        assertEquals(2, backoff.getState(MParticleBaseClientImpl.Endpoint.EVENTS).getConsecutiveFailures());
+    }
+
+    @Test
+    public void testThrottled() {
+        MParticleBaseClientImpl.Endpoint endpoint = MParticleBaseClientImpl.Endpoint.ALIAS;
+        assertEquals(NetworkConnection.DEFAULT_THROTTLE_MILLIS, backoff.onThrottled(endpoint, null));
+        assertEquals(NetworkConnection.DEFAULT_THROTTLE_MILLIS * 2, backoff.onThrottled(endpoint, "not a delay"));
+
+        //Retry-After is honored without jitter, but capped
+        jitter = 0.5;
+        assertEquals(120 * 1000, backoff.onThrottled(endpoint, "120"));
+        assertEquals(NetworkConnection.MAX_THROTTLE_MILLIS, backoff.onThrottled(endpoint, String.valueOf(60 * 60 * 25)));
+        assertEquals(4, backoff.getState(endpoint).getConsecutiveFailures());
+    }
+
+    @Test
+    public void testRequestsInFlightCountOnce() {
+        MParticleBaseClientImpl.Endpoint endpoint = MParticleBaseClientImpl.Endpoint.EVENTS;
+        long roundStart = backoff.currentTimeMillis();
+        now += 1000;
+        assertEquals(EndpointBackoff.BASE_DELAY_MILLIS, backoff.onFailure(endpoint, roundStart));
+        //the other uploads of the same round fail during the same outage
+        now += 1000;
+        assertEquals(EndpointBackoff.BASE_DELAY_MILLIS - 1000, backoff.onFailure(endpoint, roundStart));
+        assertEquals(EndpointBackoff.BASE_DELAY_MILLIS - 1000, backoff.onFailure(endpoint, roundStart));
+        assertEquals(1, backoff.getState(endpoint).getConsecutiveFailures());
+
+        //a request made after the failure was recorded counts
+        now += EndpointBackoff.BASE_DELAY_MILLIS;
+        long nextRoundStart = backoff.currentTimeMillis();
+        now += 1000;
+        assertEquals(EndpointBackoff.BASE_DELAY_MILLIS * 2, backoff.onFailure(endpoint, nextRoundStart));
+        assertEquals(2, backoff.getState(endpoint).getConsecutiveFailures());
+    }
+
+    @Test
+    public void testReconnectResetsFailures() {
+        backoff.onFailure(MParticleBaseClientImpl.Endpoint.EVENTS);
+        backoff.onFailure(MParticleBaseClientImpl.Endpoint.EVENTS);
+        backoff.onFailure(MParticleBaseClientImpl.Endpoint.CONFIG);
+        backoff.onThrottled(MParticleBaseClientImpl.Endpoint.ALIAS, "120");
+        backoff.onReconnected();
+
+        EndpointBackoff.State events = backoff.getState(MParticleBaseClientImpl.Endpoint.EVENTS);
+        assertEquals(0, events.getConsecutiveFailures());
+        assertEquals(0, events.getNextRequestTime());
+        //only the endpoints the SDK retries by itself are reset, and a throttle from the server is kept
+        assertEquals(1, backoff.getState(MParticleBaseClientImpl.Endpoint.CONFIG).getConsecutiveFailures());
+        assertEquals(now + 120 * 1000, backoff.getNextRequestTime(MParticleBaseClientImpl.Endpoint.ALIAS));
+
+        assertEquals(EndpointBackoff.BASE_DELAY_MILLIS, backoff.onFailure(MParticleBaseClientImpl.Endpoint.EVENTS));
+    }
+
+    @Test
+    public void testStateIsPersisted() {
+        backoff.onFailure(MParticleBaseClientImpl.Endpoint.CONFIG);
+        backoff.onFailure(MParticleBaseClientImpl.Endpoint.CONFIG);
+        EndpointBackoff restarted = new EndpointBackoff(preferences);
+        assertEquals(2, restarted.getState(MParticleBaseClientImpl.Endpoint.CONFIG).getConsecutiveFailures());
+        assertEquals(now + EndpointBackoff.BASE_DELAY_MILLIS * 2, restarted.getNextRequestTime(MParticleBaseClientImpl.Endpoint.CONFIG));
+    }
+
+    @Test
+    public void testParseRetryAfter() {
+        assertNull(EndpointBackoff.parseRetryAfter(null, now));
+        assertNull(EndpointBackoff.parseRetryAfter("", now));
+        assertNull(EndpointBackoff.parseRetryAfter("0", now));
+        assertNull(EndpointBackoff.parseRetryAfter("-10", now));
+        assertEquals(Long.valueOf(30000), EndpointBackoff.parseRetryAfter(" 30 ", now));
+
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        assertEquals(Long.valueOf(90000), EndpointBackoff.parseRetryAfter(format.format(new Date(now + 90000)), now));
+        assertNull(EndpointBackoff.parseRetryAfter(format.format(new Date(now - 90000)), now));
+    }
+}
@@ -0,0 +1,76 @@
+package com.mparticle.networking;
+
+import com.mparticle.internal.ConfigManager;
+import com.mparticle.mock.MockSharedPreferences;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class GzipBufferTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        GzipBuffer buffer = new GzipBuffer();
+        buffer.compress("");
+        assertEquals("", decompress(buffer));
+
+        buffer.compress("{\"dt\":\"e\",\"n\":\"some event\"}");
+        assertEquals("{\"dt\":\"e\",\"n\":\"some event\"}", decompress(buffer));
+
+        //multi-byte characters, including surrogate pairs, spanning several chunks
+        Random random = new Random();
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < GzipBuffer.CHUNK_SIZE * 30) {
+            builder.append("{\"n\":\"").append(random.nextLong()).append(" \u00e9\u4e2d\ud83d\ude00\"},");
+        }
+        String payload = builder.toString();
+        buffer.compress(payload);
+        assertEquals(payload, decompress(buffer));
+
+        //the buffer is reset between payloads
+        buffer.compress("short");
+        assertEquals("short", decompress(buffer));
+    }
+
+    @Test
+    public void testOnlyOneBufferIsKept() throws Exception {
+        NetworkConnection connection = new NetworkConnection(Mockito.mock(ConfigManager.class), new MockSharedPreferences());
+        GzipBuffer first = connection.takeGzipBuffer();
+        GzipBuffer second = connection.takeGzipBuffer();
+        assertNotSame(first, second);
+        connection.releaseGzipBuffer(first);
+        connection.releaseGzipBuffer(second);
+        assertSame(first, connection.takeGzipBuffer());
+
+        //the buffer which was not kept has been ended
+        first.compress("payload");
+        try {
+            second.compress("payload");
+            fail();
+        } catch (RuntimeException expected) {
+        }
+    }
+
+    private String decompress(GzipBuffer buffer) throws IOException {
+        GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(buffer.array(), 0, buffer.size()));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] bytes = new byte[1024];
+        int read;
+        while ((read = inputStream.read(bytes)) > 0) {
+            outputStream.write(bytes, 0, read);
+        }
+        inputStream.close();
+        return new String(outputStream.toByteArray(), "UTF-8");
+    }
+}
@@ -0,0 +1,118 @@
+package com.mparticle.networking;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class KeepAliveHttpTransportTest {
+
+    @Test
+    public void testReleaseDrainsBody() throws IOException {
+        TrackingInputStream body = new TrackingInputStream(1000);
+        MPConnection connection = Mockito.mock(MPConnection.class);
+        Mockito.when(connection.getInputStream()).thenReturn(body);
+        new KeepAliveHttpTransport().release(connection);
+        assertEquals(1000, body.read);
+        assertTrue(body.closed);
+    }
+
+    @Test
+    public void testReleaseDrainsErrorBody() throws IOException {
+        TrackingInputStream body = new TrackingInputStream(1000);
+        MPConnection connection = Mockito.mock(MPConnection.class);
+        Mockito.when(connection.getInputStream()).thenThrow(new IOException());
+        Mockito.when(connection.getErrorStream()).thenReturn(body);
+        new KeepAliveHttpTransport().release(connection);
+        assertEquals(1000, body.read);
+        assertTrue(body.closed);
+
+        //a response without a body has nothing to release
+        connection = Mockito.mock(MPConnection.class);
+        Mockito.when(connection.getInputStream()).thenThrow(new IOException());
+        new KeepAliveHttpTransport().release(connection);
+    }
+
+    @Test
+    public void testLargeBodyIsNotDrained() throws IOException {
+        TrackingInputStream body = new TrackingInputStream(KeepAliveHttpTransport.MAX_DRAIN_BYTES * 4);
+        MPConnection connection = Mockito.mock(MPConnection.class);
+        Mockito.when(connection.getInputStream()).thenReturn(body);
+        new KeepAliveHttpTransport().release(connection);
+        assertTrue(body.read < KeepAliveHttpTransport.MAX_DRAIN_BYTES * 2);
+        assertTrue(body.closed);
+    }
+
+    @Test
+    public void testConsumedBodyIsIgnored() throws IOException {
+        InputStream body = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("stream closed");
+            }
+        };
+        MPConnection connection = Mockito.mock(MPConnection.class);
+        Mockito.when(connection.getInputStream()).thenReturn(body);
+        new KeepAliveHttpTransport().release(connection);
+    }
+
+    @Test
+    public void testUrlsUseTransport() throws IOException {
+        final MPConnection connection = Mockito.mock(MPConnection.class);
+        final MPConnection[] released = new MPConnection[1];
+        HttpTransport transport = new HttpTransport() {
+            @Override
+            public MPConnection openConnection(URL url, MPUrl mpUrl) {
+                assertEquals("https://www.example.com/path", url.toString());
+                return connection;
+            }
+
+            @Override
+            public void release(MPConnection connection) {
+                released[0] = connection;
+            }
+        };
+        NetworkOptions options = NetworkOptions.builder()
+                .setHttpTransport(transport)
+                .build();
+        assertSame(transport, options.getHttpTransport());
+        assertNotNull(NetworkOptions.builder().build().getHttpTransport());
+
+        MPUrl url = new MPUrlImpl("https://www.example.com/path", options.getHttpTransport());
+        assertSame(connection, url.openConnection());
+        url.releaseConnection(connection);
+        assertSame(connection, released[0]);
+    }
+
+    private static class TrackingInputStream extends ByteArrayInputStream {
+        int read;
+        boolean closed;
+
+        TrackingInputStream(int length) {
+            super(new byte[length]);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                read += count;
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.mparticle.networking;
 import androidx.annotation.NonNull;
 
 import com.mparticle.internal.ConfigManager;
+import com.mparticle.internal.Constants;
 import com.mparticle.mock.MockSharedPreferences;
 
 import org.junit.Test;
@@ -12,9 +13,13 @@ import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.util.zip.GZIPOutputStream;
 
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocketFactory;
 
+import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
 
 
@@ -52,7 +57,7 @@ public class MParticleBaseClientImplTest {
                     }
 
                     @Override
-                    public void write(@NonNull byte[] b) throws IOException {
+                    public void write(@NonNull byte[] b, int off, int len) throws IOException {
                         writeCalled[0] = true;
                         assertTrue(getSocketFactoryCalled[0]);
 
@@ -67,4 +72,33 @@ public class MParticleBaseClientImplTest {
         assertTrue(getSocketFactoryCalled[0]);
         assertTrue(writeCalled[0]);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSocketFactoriesAreCachedByCertificates() throws Exception {
+        NetworkOptions networkOptions = NetworkOptionsManager.validateAndResolve(NetworkOptions.builder()
+                .addDomainMapping(DomainMapping.identityMapping("www.identityUrl.com")
+                        .addCertificate(Certificate.with("rootca", Constants.GODADDY_ROOT_CRT))
+                        .build())
+                .build());
+        ConfigManager mockConfigManager = Mockito.mock(ConfigManager.class);
+        Mockito.when(mockConfigManager.getNetworkOptions()).thenReturn(networkOptions);
+        NetworkConnection connection = new NetworkConnection(mockConfigManager, new MockSharedPreferences());
+
+        SSLSocketFactory eventsFactory = connection.getSocketFactory(MParticleBaseClientImpl.Endpoint.EVENTS);
+        assertSame(eventsFactory, connection.getSocketFactory(MParticleBaseClientImpl.Endpoint.EVENTS));
+        //endpoints which pin the same certificates share a factory, and its TLS sessions
+        assertSame(eventsFactory, connection.getSocketFactory(MParticleBaseClientImpl.Endpoint.CONFIG));
+        assertNotSame(eventsFactory, connection.getSocketFactory(MParticleBaseClientImpl.Endpoint.IDENTITY));
+
+        //and so do the api and identity clients' connections
+        NetworkConnection otherConnection = new NetworkConnection(mockConfigManager, new MockSharedPreferences());
+        assertSame(eventsFactory, otherConnection.getSocketFactory(MParticleBaseClientImpl.Endpoint.EVENTS));
+    }
+
+    @Test
+    public void testSslSessionCache() throws Exception {
+        SSLSessionContext sessionContext = NetworkConnection.createSslContext(NetworkOptionsManager.getDefaultCertificates()).getClientSessionContext();
+        assertEquals(NetworkConnection.SSL_SESSION_CACHE_SIZE, sessionContext.getSessionCacheSize());
+        assertEquals(NetworkConnection.SSL_SESSION_TIMEOUT_SECONDS, sessionContext.getSessionTimeout());
+    }
+}
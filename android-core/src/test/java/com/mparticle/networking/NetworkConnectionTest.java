@@ -0,0 +1,36 @@
+package com.mparticle.networking;
+
+import com.mparticle.internal.ConfigManager;
+import com.mparticle.mock.MockSharedPreferences;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NetworkConnectionTest {
+
+    @Test
+    public void testStreamingIsOptional() throws Exception {
+        NetworkConnection networkConnection = new NetworkConnection(Mockito.mock(ConfigManager.class), new MockSharedPreferences());
+
+        //a connection implemented outside of the SDK, without the streaming capability
+        MPConnection connection = Mockito.mock(MPConnection.class);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        Mockito.when(connection.getOutputStream()).thenReturn(body);
+        Mockito.when(connection.getResponseCode()).thenReturn(202);
+        networkConnection.makeUrlRequest(MParticleBaseClientImpl.Endpoint.EVENTS, connection, "{\"dt\":\"h\"}", false);
+        assertTrue(body.size() > 0);
+
+        MPStreamingConnection streamingConnection = Mockito.mock(MPStreamingConnection.class);
+        ByteArrayOutputStream streamedBody = new ByteArrayOutputStream();
+        Mockito.when(streamingConnection.getOutputStream()).thenReturn(streamedBody);
+        Mockito.when(streamingConnection.getResponseCode()).thenReturn(202);
+        networkConnection.makeUrlRequest(MParticleBaseClientImpl.Endpoint.EVENTS, streamingConnection, "{\"dt\":\"h\"}", false);
+        Mockito.verify(streamingConnection).setFixedLengthStreamingMode(streamedBody.size());
+        assertEquals(body.size(), streamedBody.size());
+    }
+}
@@ -212,6 +212,11 @@ public abstract class BaseKitManagerStarted extends BaseCleanInstallEachTest {
         @Override
         public void replayAndDisableQueue() { }
 
+        @Override
+        public int getKitDispatchQueueSize() {
+            return 0;
+        }
+
         @Override
         public KitListener getKitListener() {
             return KitListener.EMPTY;
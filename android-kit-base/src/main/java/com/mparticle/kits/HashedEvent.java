@@ -0,0 +1,137 @@
+package com.mparticle.kits;
+
+import com.mparticle.MParticle;
+import com.mparticle.commerce.CommerceEvent;
+
+import java.util.Map;
+
+/**
+ * The filtering hashes of an event's type, name and attribute keys. An event is hashed once, and the
+ * hashes are shared by every kit's {@link KitConfiguration}, rather than each kit concatenating and
+ * hashing "type + name + key" for every attribute.
+ */
+final class HashedEvent {
+    private final int mTypeHash;
+    private final int mEventHash;
+    private final Map<String, String> mAttributes;
+    private String[] mKeys;
+    private String[] mValues;
+    private int[] mKeyHashes;
+    private int[] mKeyOnlyHashes;
+    private int[] mValueHashes;
+
+    /**
+     * @param eventType the event type, or null for screen views, which are hashed with the type "0"
+     */
+    HashedEvent(MParticle.EventType eventType, String eventName, Map<String, String> attributes) {
+        mTypeHash = KitUtils.hashForFiltering(eventType == null ? "0" : Integer.toString(eventType.ordinal()));
+        mEventHash = KitUtils.hashForFiltering(mTypeHash, String.valueOf(eventName));
+        mAttributes = attributes;
+    }
+
+    private HashedEvent(int typeHash, int eventHash, Map<String, String> attributes) {
+        mTypeHash = typeHash;
+        mEventHash = eventHash;
+        mAttributes = attributes;
+    }
+
+    /**
+     * Commerce events have no name, so their attribute hashes are of the commerce event type and
+     * attribute key.
+     */
+    static HashedEvent forCommerceEvent(CommerceEvent event) {
+        int typeHash = KitUtils.hashForFiltering(Integer.toString(CommerceEventUtils.getEventType(event)));
+        return new HashedEvent(typeHash, typeHash, event.getCustomAttributes());
+    }
+
+    int getTypeHash() {
+        return mTypeHash;
+    }
+
+    /**
+     * @return the hash of the event type and name
+     */
+    int getEventHash() {
+        return mEventHash;
+    }
+
+    Map<String, String> getAttributes() {
+        return mAttributes;
+    }
+
+    int getAttributeCount() {
+        hashAttributes();
+        return mKeys.length;
+    }
+
+    String getAttributeKey(int index) {
+        return mKeys[index];
+    }
+
+    String getAttributeValue(int index) {
+        return mValues[index];
+    }
+
+    /**
+     * @return the hash of the event type, name and attribute key
+     */
+    int getAttributeHash(int index) {
+        return mKeyHashes[index];
+    }
+
+    /**
+     * @return the hash of the attribute key alone, as used by attribute value filtering
+     */
+    int getAttributeKeyHash(int index) {
+        hashAttributeValues();
+        return mKeyOnlyHashes[index];
+    }
+
+    /**
+     * @return the hash of the attribute value alone, as used by attribute value filtering
+     */
+    int getAttributeValueHash(int index) {
+        hashAttributeValues();
+        return mValueHashes[index];
+    }
+
+    /**
+     * Only kits with an attribute value filter need these, so they are hashed separately, on first use.
+     */
+    private synchronized void hashAttributeValues() {
+        if (mKeyOnlyHashes != null) {
+            return;
+        }
+        int size = getAttributeCount();
+        int[] keyHashes = new int[size];
+        int[] valueHashes = new int[size];
+        for (int i = 0; i < size; i++) {
+            keyHashes[i] = KitUtils.hashForFiltering(mKeys[i]);
+            valueHashes[i] = KitUtils.hashForFiltering(mValues[i]);
+        }
+        mValueHashes = valueHashes;
+        mKeyOnlyHashes = keyHashes;
+    }
+
+    private synchronized void hashAttributes() {
+        if (mKeys != null) {
+            return;
+        }
+        int size = mAttributes == null ? 0 : mAttributes.size();
+        String[] keys = new String[size];
+        String[] values = new String[size];
+        int[] hashes = new int[size];
+        if (size > 0) {
+            int i = 0;
+            for (Map.Entry<String, String> entry : mAttributes.entrySet()) {
+                keys[i] = entry.getKey();
+                values[i] = entry.getValue();
+                hashes[i] = KitUtils.hashForFiltering(mEventHash, String.valueOf(keys[i]));
+                i++;
+            }
+        }
+        mValues = values;
+        mKeyHashes = hashes;
+        mKeys = keys;
+    }
+}
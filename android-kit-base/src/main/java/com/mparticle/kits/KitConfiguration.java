@@ -17,6 +17,7 @@ import com.mparticle.internal.Constants;
 import com.mparticle.internal.Logger;
 import com.mparticle.internal.MPUtility;
 import com.mparticle.kits.mappings.CustomMapping;
+import com.mparticle.kits.mappings.CustomMappingIndex;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -88,11 +89,13 @@ public class KitConfiguration {
     private int lowBracket = 0;
     private int highBracket = 101;
     private LinkedList<CustomMapping> customMappingList;
+    private CustomMappingIndex customMappingIndex;
     private CustomMapping defaultCustomMapping = null;
     private CustomMapping defaultScreenCustomMapping = null;
     private CustomMapping defaultCommerceCustomMapping = null;
     private int kitId;
     protected boolean mExcludeAnonymousUsers;
+    private String commerceFilterKey;
 
     public SparseBooleanArray getEventTypeFilters() {
         return mTypeFilters;
@@ -145,8 +148,15 @@ public class KitConfiguration {
                 }
             }
         }
+        StringBuilder filterKey = new StringBuilder(getClass().getName());
+        if (avfIsActive) {
+            filterKey.append(avfShouldIncludeMatches).append(avfHashedAttribute).append(avfHashedValue);
+        }
         if (json.has(KEY_FILTERS)) {
             JSONObject filterJson = json.getJSONObject(KEY_FILTERS);
+            for (String key : new String[]{KEY_EVENT_TYPES_FILTER, KEY_COMMERCE_ENTITY_FILTERS, KEY_COMMERCE_ENTITY_ATTRIBUTE_FILTERS, KEY_COMMERCE_ATTRIBUTE_FILTER}) {
+                filterKey.append(',').append(key).append(filterJson.opt(key));
+            }
             if (filterJson.has(KEY_EVENT_TYPES_FILTER)) {
                 mTypeFilters = convertToSparseArray(filterJson.getJSONObject(KEY_EVENT_TYPES_FILTER));
             } else {
@@ -219,6 +229,7 @@ public class KitConfiguration {
                 mAttributeSingleItemUser.clear();
             }
         }
+        commerceFilterKey = filterKey.toString();
 
         if (json.has(KEY_BRACKETING)) {
             JSONObject bracketing = json.getJSONObject(KEY_BRACKETING);
@@ -247,6 +258,7 @@ public class KitConfiguration {
                 }
             }
         }
+        customMappingIndex = new CustomMappingIndex(customMappingList);
         mConsentForwardingRules.clear();
         if (json.has(KEY_CONSENT_FORWARDING_RULES)) {
             JSONObject consentForwardingRule = json.getJSONObject(KEY_CONSENT_FORWARDING_RULES);
@@ -263,24 +275,15 @@ public class KitConfiguration {
         return this;
     }
 
-    boolean shouldIncludeFromAttributeValueFiltering(Map<String, String> attributes) {
+    boolean shouldIncludeFromAttributeValueFiltering(HashedEvent event) {
         boolean shouldInclude = true;
         if (avfIsActive) {
             boolean isMatch = false;
-            if (attributes != null) {
-                Iterator<Map.Entry<String, String>> attIterator = attributes.entrySet().iterator();
-                while (attIterator.hasNext()) {
-                    Map.Entry<String, String> entry = attIterator.next();
-                    String key = entry.getKey();
-                    int keyHash = KitUtils.hashForFiltering(key);
-                    if (keyHash == avfHashedAttribute) {
-                        String value = entry.getValue();
-                        int valueHash = KitUtils.hashForFiltering(value);
-                        if (valueHash == avfHashedValue) {
-                            isMatch = true;
-                        }
-                        break;
-                    }
+            int count = event.getAttributeCount();
+            for (int i = 0; i < count; i++) {
+                if (event.getAttributeKeyHash(i) == avfHashedAttribute) {
+                    isMatch = event.getAttributeValueHash(i) == avfHashedValue;
+                    break;
                 }
             }
             shouldInclude = avfShouldIncludeMatches ? isMatch : !isMatch;
@@ -333,155 +336,338 @@ public class KitConfiguration {
         return false;
     }
 
+    /**
+     * Filter a CommerceEvent for this kit. The kit may change the event it is forwarded, so it is
+     * always given its own copy, never the original event.
+     *
+     * @return the event to forward, or null if the event should not be forwarded
+     */
     protected CommerceEvent filterCommerceEvent(CommerceEvent event) {
-        if (!shouldIncludeFromAttributeValueFiltering(event.getCustomAttributes())) {
+        CommerceEvent filteredEvent = applyCommerceFilters(HashedEvent.forCommerceEvent(event), event);
+        return filteredEvent == event ? new CommerceEvent.Builder(event).build() : filteredEvent;
+    }
+
+    /**
+     * Work out what the kit's filters remove from the event. The event is only rebuilt if at least one
+     * filter actually removes something from it, otherwise the original event is returned. A rebuilt
+     * event shares no mutable state with the original.
+     *
+     * @param hashedEvent the hashes of the event, shared by every kit
+     */
+    private CommerceEvent applyCommerceFilters(HashedEvent hashedEvent, CommerceEvent event) {
+        if (!shouldIncludeFromAttributeValueFiltering(hashedEvent)) {
             return null;
         }
-        if (mTypeFilters != null &&
-                !mTypeFilters.get(KitUtils.hashForFiltering(CommerceEventUtils.getEventType(event) + ""), true)) {
+        int eventTypeHash = hashedEvent.getTypeHash();
+        if (mTypeFilters != null && !mTypeFilters.get(eventTypeHash, true)) {
             return null;
         }
-        CommerceEvent filteredEvent = new CommerceEvent.Builder(event).build();
-        filteredEvent = filterCommerceEntities(filteredEvent);
-        filteredEvent = filterCommerceEntityAttributes(filteredEvent);
-        filteredEvent = filterCommerceEventAttributes(filteredEvent);
-        return filteredEvent;
-    }
-
-
-    private CommerceEvent filterCommerceEntityAttributes(CommerceEvent filteredEvent) {
-        if (mCommerceEntityAttributeFilters == null || mCommerceEntityAttributeFilters.size() == 0) {
-            return filteredEvent;
-        }
-        CommerceEvent.Builder builder = new CommerceEvent.Builder(filteredEvent);
-        for (Map.Entry<Integer, SparseBooleanArray> entry : mCommerceEntityAttributeFilters.entrySet()) {
-            int entity = entry.getKey();
-            SparseBooleanArray filters = entry.getValue();
-            switch (entity) {
-                case ENTITY_PRODUCT:
-                    if (filteredEvent.getProducts() != null && filteredEvent.getProducts().size() > 0) {
-                        List<Product> filteredProducts = new LinkedList<Product>();
-                        for (Product product : filteredEvent.getProducts()) {
-                            Product.Builder productBuilder = new Product.Builder(product);
-                            if (product.getCustomAttributes() != null && product.getCustomAttributes().size() > 0) {
-                                HashMap<String, String> filteredCustomAttributes = new HashMap<String, String>(product.getCustomAttributes().size());
-                                for (Map.Entry<String, String> customAttribute : product.getCustomAttributes().entrySet()) {
-                                    if (filters.get(KitUtils.hashForFiltering(customAttribute.getKey()), true)) {
-                                        filteredCustomAttributes.put(customAttribute.getKey(), customAttribute.getValue());
-                                    }
-                                }
-                                productBuilder.customAttributes(filteredCustomAttributes);
-                            }
-                            if (!MPUtility.isEmpty(product.getCouponCode()) && filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PRODUCT_COUPON_CODE), true)) {
-                                productBuilder.couponCode(product.getCouponCode());
-                            } else {
-                                productBuilder.couponCode(null);
-                            }
-                            if (product.getPosition() != null && filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PRODUCT_POSITION), true)) {
-                                productBuilder.position(product.getPosition());
-                            } else {
-                                productBuilder.position(null);
-                            }
-                            if (!MPUtility.isEmpty(product.getVariant()) && filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PRODUCT_VARIANT), true)) {
-                                productBuilder.variant(product.getVariant());
-                            } else {
-                                productBuilder.variant(null);
-                            }
-                            if (!MPUtility.isEmpty(product.getCategory()) && filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PRODUCT_CATEGORY), true)) {
-                                productBuilder.category(product.getCategory());
-                            } else {
-                                productBuilder.category(null);
-                            }
-                            if (!MPUtility.isEmpty(product.getBrand()) && filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PRODUCT_BRAND), true)) {
-                                productBuilder.brand(product.getBrand());
-                            } else {
-                                productBuilder.brand(null);
-                            }
-                            filteredProducts.add(productBuilder.build());
-                        }
-                        builder.products(filteredProducts);
+        //the getters return a new view of the event's lists on every call
+        List<Product> eventProducts = event.getProducts();
+        List<Impression> eventImpressions = event.getImpressions();
+        List<Promotion> eventPromotions = event.getPromotions();
+        List<Product> products = eventProducts;
+        List<Impression> impressions = eventImpressions;
+        List<Promotion> promotions = eventPromotions;
+        if (mCommerceEntityFilters != null && mCommerceEntityFilters.size() > 0) {
+            if (!mCommerceEntityFilters.get(ENTITY_PRODUCT, true)) {
+                products = null;
+                if (impressions != null) {
+                    List<Impression> filteredImpressions = new LinkedList<Impression>();
+                    for (Impression impression : impressions) {
+                        filteredImpressions.add(new Impression(impression.getListName(), null));
                     }
-                    break;
-                case ENTITY_PROMOTION:
-                    if (filteredEvent.getPromotions() != null && filteredEvent.getPromotions().size() > 0) {
-                        List<Promotion> filteredPromotions = new LinkedList<Promotion>();
-                        for (Promotion promotion : filteredEvent.getPromotions()) {
-                            Promotion filteredPromotion = new Promotion();
-                            if (!MPUtility.isEmpty(promotion.getId()) && filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PROMOTION_ID), true)) {
-                                filteredPromotion.setId(promotion.getId());
-                            }
-                            if (!MPUtility.isEmpty(promotion.getCreative()) && filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PROMOTION_CREATIVE), true)) {
-                                filteredPromotion.setCreative(promotion.getCreative());
-                            }
-                            if (!MPUtility.isEmpty(promotion.getName()) && filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PROMOTION_NAME), true)) {
-                                filteredPromotion.setName(promotion.getName());
-                            }
-                            if (!MPUtility.isEmpty(promotion.getPosition()) && filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PROMOTION_POSITION), true)) {
-                                filteredPromotion.setPosition(promotion.getPosition());
-                            }
-                            filteredPromotions.add(filteredPromotion);
-                        }
-                        builder.promotions(filteredPromotions);
-                    }
-
-                    break;
+                    impressions = filteredImpressions;
+                }
+            }
+            if (!mCommerceEntityFilters.get(ENTITY_PROMOTION, true)) {
+                promotions = new LinkedList<Promotion>();
+            }
+        }
+        if (mCommerceEntityAttributeFilters != null && mCommerceEntityAttributeFilters.size() > 0) {
+            SparseBooleanArray productFilters = mCommerceEntityAttributeFilters.get(ENTITY_PRODUCT);
+            if (productFilters != null && products != null && products.size() > 0) {
+                products = filterProducts(products, productFilters);
             }
+            SparseBooleanArray promotionFilters = mCommerceEntityAttributeFilters.get(ENTITY_PROMOTION);
+            if (promotionFilters != null && promotions != null && promotions.size() > 0) {
+                promotions = filterPromotions(promotions, promotionFilters);
+            }
+        }
+        Map<String, String> customAttributes = event.getCustomAttributes();
+        boolean removeCheckoutStep = false;
+        boolean removeCheckoutOptions = false;
+        TransactionAttributes transactionAttributes = event.getTransactionAttributes();
+        if (mCommerceAttributeFilters != null && mCommerceAttributeFilters.size() > 0) {
+            if (customAttributes != null) {
+                customAttributes = filterCommerceAttributes(hashedEvent, customAttributes);
+            }
+            removeCheckoutStep = event.getCheckoutStep() != null &&
+                    !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventTypeHash, CommerceEventUtils.Constants.ATT_ACTION_CHECKOUT_STEP), true);
+            removeCheckoutOptions = event.getCheckoutOptions() != null &&
+                    !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventTypeHash, CommerceEventUtils.Constants.ATT_ACTION_CHECKOUT_OPTIONS), true);
+            if (transactionAttributes != null) {
+                transactionAttributes = filterTransactionAttributes(eventTypeHash, transactionAttributes);
+            }
+        }
+
+        if (products == eventProducts && impressions == eventImpressions && promotions == eventPromotions
+                && customAttributes == event.getCustomAttributes() && !removeCheckoutStep && !removeCheckoutOptions
+                && transactionAttributes == event.getTransactionAttributes()) {
+            return event;
+        }
+        CommerceEvent.Builder builder = new CommerceEvent.Builder(event);
+        if (products != eventProducts) {
+            builder.products(products != null ? products : new LinkedList<Product>());
+        }
+        if (impressions != eventImpressions) {
+            builder.impressions(impressions);
+        }
+        if (promotions != eventPromotions) {
+            builder.promotions(promotions);
+        }
+        if (customAttributes != event.getCustomAttributes()) {
+            builder.customAttributes(customAttributes);
+        }
+        if (removeCheckoutStep) {
+            builder.checkoutStep(null);
+        }
+        if (removeCheckoutOptions) {
+            builder.checkoutOptions(null);
+        }
+        if (transactionAttributes != event.getTransactionAttributes()) {
+            builder.transactionAttributes(transactionAttributes);
         }
         return builder.build();
     }
 
+    /**
+     * Filter a CommerceEvent for this kit, sharing the filtering with any other kit whose commerce filters
+     * are identical to this kit's. The shared result is never forwarded itself, each kit is given its own copy.
+     *
+     * @param hashedEvent the hashes of the event, shared by every kit
+     * @param filteredEvents the results for the event so far, keyed by {@link #getCommerceFilterKey()}
+     */
+    final CommerceEvent filterCommerceEvent(HashedEvent hashedEvent, CommerceEvent event, Map<String, CommerceEvent> filteredEvents) {
+        String filterKey = getCommerceFilterKey();
+        CommerceEvent filteredEvent = filterKey == null ? null : filteredEvents.get(filterKey);
+        if (filteredEvent == null) {
+            filteredEvent = applyCommerceFilters(hashedEvent, event);
+            if (filteredEvent != null && filterKey != null) {
+                filteredEvents.put(filterKey, filteredEvent);
+            }
+        }
+        return filteredEvent == null ? null : new CommerceEvent.Builder(filteredEvent).build();
+    }
+
+    /**
+     * @return a key which is equal for any two kits whose commerce event filtering is identical, or null
+     * if the configuration has not been parsed
+     */
+    String getCommerceFilterKey() {
+        return commerceFilterKey;
+    }
+
+    private List<Product> filterProducts(List<Product> products, SparseBooleanArray filters) {
+        boolean couponCodeAllowed = filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PRODUCT_COUPON_CODE), true);
+        boolean positionAllowed = filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PRODUCT_POSITION), true);
+        boolean variantAllowed = filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PRODUCT_VARIANT), true);
+        boolean categoryAllowed = filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PRODUCT_CATEGORY), true);
+        boolean brandAllowed = filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PRODUCT_BRAND), true);
+        List<Product> filteredProducts = null;
+        int index = 0;
+        for (Product product : products) {
+            Map<String, String> customAttributes = product.getCustomAttributes();
+            Map<String, String> filteredCustomAttributes = customAttributes;
+            if (customAttributes != null && customAttributes.size() > 0) {
+                filteredCustomAttributes = filterCustomAttributes(customAttributes, filters);
+            }
+            Product filteredProduct = product;
+            if (filteredCustomAttributes != customAttributes
+                    || isFiltered(product.getCouponCode(), couponCodeAllowed)
+                    || (product.getPosition() != null && !positionAllowed)
+                    || isFiltered(product.getVariant(), variantAllowed)
+                    || isFiltered(product.getCategory(), categoryAllowed)
+                    || isFiltered(product.getBrand(), brandAllowed)) {
+                Product.Builder productBuilder = new Product.Builder(product)
+                        .couponCode(isFiltered(product.getCouponCode(), couponCodeAllowed) ? null : product.getCouponCode())
+                        .position(positionAllowed ? product.getPosition() : null)
+                        .variant(isFiltered(product.getVariant(), variantAllowed) ? null : product.getVariant())
+                        .category(isFiltered(product.getCategory(), categoryAllowed) ? null : product.getCategory())
+                        .brand(isFiltered(product.getBrand(), brandAllowed) ? null : product.getBrand());
+                if (filteredCustomAttributes != customAttributes) {
+                    productBuilder.customAttributes(filteredCustomAttributes);
+                }
+                filteredProduct = productBuilder.build();
+            }
+            if (filteredProduct != product && filteredProducts == null) {
+                //the untouched products are copied too, so the filtered event shares none of them
+                filteredProducts = new LinkedList<Product>();
+                for (Product unfilteredProduct : products.subList(0, index)) {
+                    filteredProducts.add(new Product.Builder(unfilteredProduct).build());
+                }
+            } else if (filteredProducts != null && filteredProduct == product) {
+                filteredProduct = new Product.Builder(product).build();
+            }
+            if (filteredProducts != null) {
+                filteredProducts.add(filteredProduct);
+            }
+            index++;
+        }
+        return filteredProducts != null ? filteredProducts : products;
+    }
+
+    private List<Promotion> filterPromotions(List<Promotion> promotions, SparseBooleanArray filters) {
+        boolean idAllowed = filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PROMOTION_ID), true);
+        boolean creativeAllowed = filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PROMOTION_CREATIVE), true);
+        boolean nameAllowed = filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PROMOTION_NAME), true);
+        boolean positionAllowed = filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PROMOTION_POSITION), true);
+        boolean filtered = false;
+        for (Promotion promotion : promotions) {
+            if (isFiltered(promotion.getId(), idAllowed)
+                    || isFiltered(promotion.getCreative(), creativeAllowed)
+                    || isFiltered(promotion.getName(), nameAllowed)
+                    || isFiltered(promotion.getPosition(), positionAllowed)) {
+                filtered = true;
+                break;
+            }
+        }
+        if (!filtered) {
+            return promotions;
+        }
+        List<Promotion> filteredPromotions = new LinkedList<Promotion>();
+        for (Promotion promotion : promotions) {
+            Promotion filteredPromotion = new Promotion();
+            if (!isFiltered(promotion.getId(), idAllowed)) {
+                filteredPromotion.setId(promotion.getId());
+            }
+            if (!isFiltered(promotion.getCreative(), creativeAllowed)) {
+                filteredPromotion.setCreative(promotion.getCreative());
+            }
+            if (!isFiltered(promotion.getName(), nameAllowed)) {
+                filteredPromotion.setName(promotion.getName());
+            }
+            if (!isFiltered(promotion.getPosition(), positionAllowed)) {
+                filteredPromotion.setPosition(promotion.getPosition());
+            }
+            filteredPromotions.add(filteredPromotion);
+        }
+        return filteredPromotions;
+    }
+
+    private Map<String, String> filterCommerceAttributes(HashedEvent hashedEvent, Map<String, String> customAttributes) {
+        Map<String, String> filteredCustomAttributes = null;
+        int count = hashedEvent.getAttributeCount();
+        for (int i = 0; i < count; i++) {
+            if (!mCommerceAttributeFilters.get(hashedEvent.getAttributeHash(i), true)) {
+                if (filteredCustomAttributes == null) {
+                    filteredCustomAttributes = new HashMap<String, String>(customAttributes);
+                }
+                filteredCustomAttributes.remove(hashedEvent.getAttributeKey(i));
+            }
+        }
+        return filteredCustomAttributes != null ? filteredCustomAttributes : customAttributes;
+    }
+
+    private TransactionAttributes filterTransactionAttributes(int eventTypeHash, TransactionAttributes attributes) {
+        boolean removeCouponCode = attributes.getCouponCode() != null &&
+                !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventTypeHash, CommerceEventUtils.Constants.ATT_TRANSACTION_COUPON_CODE), true);
+        boolean removeShipping = attributes.getShipping() != null &&
+                !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventTypeHash, CommerceEventUtils.Constants.ATT_SHIPPING), true);
+        boolean removeTax = attributes.getTax() != null &&
+                !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventTypeHash, CommerceEventUtils.Constants.ATT_TAX), true);
+        boolean removeRevenue = attributes.getRevenue() != null &&
+                !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventTypeHash, CommerceEventUtils.Constants.ATT_TOTAL), true);
+        boolean removeId = attributes.getId() != null &&
+                !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventTypeHash, CommerceEventUtils.Constants.ATT_TRANSACTION_ID), true);
+        boolean removeAffiliation = attributes.getAffiliation() != null &&
+                !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventTypeHash, CommerceEventUtils.Constants.ATT_AFFILIATION), true);
+        if (!removeCouponCode && !removeShipping && !removeTax && !removeRevenue && !removeId && !removeAffiliation) {
+            return attributes;
+        }
+        TransactionAttributes filteredAttributes = new TransactionAttributes(attributes);
+        if (removeCouponCode) {
+            filteredAttributes.setCouponCode(null);
+        }
+        if (removeShipping) {
+            filteredAttributes.setShipping(null);
+        }
+        if (removeTax) {
+            filteredAttributes.setTax(null);
+        }
+        if (removeRevenue) {
+            filteredAttributes.setRevenue(0.0);
+        }
+        if (removeId) {
+            filteredAttributes.setId(null);
+        }
+        if (removeAffiliation) {
+            filteredAttributes.setAffiliation(null);
+        }
+        return filteredAttributes;
+    }
+
+    private static Map<String, String> filterCustomAttributes(Map<String, String> customAttributes, SparseBooleanArray filters) {
+        Map<String, String> filteredCustomAttributes = null;
+        for (Map.Entry<String, String> entry : customAttributes.entrySet()) {
+            if (!filters.get(KitUtils.hashForFiltering(entry.getKey()), true)) {
+                if (filteredCustomAttributes == null) {
+                    filteredCustomAttributes = new HashMap<String, String>(customAttributes);
+                }
+                filteredCustomAttributes.remove(entry.getKey());
+            }
+        }
+        return filteredCustomAttributes != null ? filteredCustomAttributes : customAttributes;
+    }
+
+    /**
+     * @return true if the value is present, but must be removed - empty values are always removed
+     */
+    private static boolean isFiltered(String value, boolean allowed) {
+        return value != null && (!allowed || value.length() == 0);
+    }
+
     public final Map<String, String> filterEventAttributes(MPEvent event) {
-        return filterEventAttributes(event.getEventType(), event.getEventName(), mAttributeFilters, event.getCustomAttributes());
+        return filterEventAttributes(new HashedEvent(event.getEventType(), event.getEventName(), event.getCustomAttributes()), mAttributeFilters);
+    }
+
+    final Map<String, String> filterEventAttributes(HashedEvent event) {
+        return filterEventAttributes(event, mAttributeFilters);
     }
 
     public final Map<String, String> filterScreenAttributes(MParticle.EventType eventType, String eventName, Map<String, String> eventAttributes) {
         return filterEventAttributes(eventType, eventName, mScreenNameFilters, eventAttributes);
     }
 
+    final Map<String, String> filterScreenAttributes(HashedEvent screenEvent) {
+        return filterEventAttributes(screenEvent, mScreenNameFilters);
+    }
+
     public final Map<String, String> filterEventAttributes(MParticle.EventType eventType, String eventName, SparseBooleanArray filter, Map<String, String> eventAttributes) {
         if (eventAttributes != null && eventAttributes.size() > 0 && filter != null && filter.size() > 0) {
-            String eventTypeStr = "0";
-            if (eventType != null) {
-                eventTypeStr = eventType.ordinal() + "";
-            }
-            Iterator<Map.Entry<String, String>> attIterator = eventAttributes.entrySet().iterator();
-            Map<String, String> newAttributes = new HashMap<String, String>();
-            while (attIterator.hasNext()) {
-                Map.Entry<String, String> entry = attIterator.next();
-                String key = entry.getKey();
-                int hash = KitUtils.hashForFiltering(eventTypeStr + eventName + key);
-                if (filter.get(hash, true)) {
-                    newAttributes.put(key, entry.getValue());
-                }
-            }
-            return newAttributes;
+            return filterEventAttributes(new HashedEvent(eventType, eventName, eventAttributes), filter);
         } else {
             return eventAttributes;
         }
     }
 
-    private CommerceEvent filterCommerceEntities(CommerceEvent filteredEvent) {
-        if (mCommerceEntityFilters == null || mCommerceEntityFilters.size() == 0) {
-            return filteredEvent;
-        }
-        CommerceEvent.Builder builder = new CommerceEvent.Builder(filteredEvent);
-
-        boolean removeProducts = !mCommerceEntityFilters.get(ENTITY_PRODUCT, true);
-        boolean removePromotions = !mCommerceEntityFilters.get(ENTITY_PROMOTION, true);
-        if (removeProducts) {
-            builder.products(new LinkedList<Product>());
-            List<Impression> impressionList = filteredEvent.getImpressions();
-            if (impressionList != null) {
-                builder.impressions(null);
-                for (Impression impression : impressionList) {
-                    builder.addImpression(new Impression(impression.getListName(), null));
+    private Map<String, String> filterEventAttributes(HashedEvent event, SparseBooleanArray filter) {
+        Map<String, String> eventAttributes = event.getAttributes();
+        if (eventAttributes != null && eventAttributes.size() > 0 && filter != null && filter.size() > 0) {
+            int count = event.getAttributeCount();
+            Map<String, String> newAttributes = new HashMap<String, String>();
+            for (int i = 0; i < count; i++) {
+                if (filter.get(event.getAttributeHash(i), true)) {
+                    newAttributes.put(event.getAttributeKey(i), event.getAttributeValue(i));
                 }
             }
+            return newAttributes;
+        } else if (eventAttributes != null) {
+            //the event is shared by every kit, so each gets its own copy even when nothing is filtered
+            return new HashMap<String, String>(eventAttributes);
+        } else {
+            return null;
         }
-        if (removePromotions) {
-            builder.promotions(new LinkedList<Promotion>());
-        }
-        return builder.build();
     }
 
     public static final Map<String, ?> filterAttributes(SparseBooleanArray attributeFilters, Map<String, ?> attributes) {
@@ -504,78 +690,32 @@ public class KitConfiguration {
         return attributeFilters.get(hash, true);
     }
 
-    private CommerceEvent filterCommerceEventAttributes(CommerceEvent filteredEvent) {
-        String eventType = Integer.toString(CommerceEventUtils.getEventType(filteredEvent));
-        if (mCommerceAttributeFilters == null || mCommerceAttributeFilters.size() == 0) {
-            return filteredEvent;
-        }
-        CommerceEvent.Builder builder = new CommerceEvent.Builder(filteredEvent);
-        Map<String, String> customAttributes = filteredEvent.getCustomAttributes();
-        if (customAttributes != null) {
-            Map<String, String> filteredCustomAttributes = new HashMap<String, String>(customAttributes.size());
-            for (Map.Entry<String, String> entry : customAttributes.entrySet()) {
-                if (mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + entry.getKey()), true)) {
-                    filteredCustomAttributes.put(entry.getKey(), entry.getValue());
-                }
-            }
-            builder.customAttributes(filteredCustomAttributes);
-        }
-
-        if (filteredEvent.getCheckoutStep() != null &&
-                !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_ACTION_CHECKOUT_STEP), true)) {
-            builder.checkoutStep(null);
-        }
-        if (filteredEvent.getCheckoutOptions() != null &&
-                !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_ACTION_CHECKOUT_OPTIONS), true)) {
-            builder.checkoutOptions(null);
-        }
-        TransactionAttributes attributes = filteredEvent.getTransactionAttributes();
-        if (attributes != null) {
-            if (attributes.getCouponCode() != null &&
-                    !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_TRANSACTION_COUPON_CODE), true)) {
-                attributes.setCouponCode(null);
-            }
-            if (attributes.getShipping() != null &&
-                    !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_SHIPPING), true)) {
-                attributes.setShipping(null);
-            }
-            if (attributes.getTax() != null &&
-                    !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_TAX), true)) {
-                attributes.setTax(null);
-            }
-            if (attributes.getRevenue() != null &&
-                    !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_TOTAL), true)) {
-                attributes.setRevenue(0.0);
-            }
-            if (attributes.getId() != null &&
-                    !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_TRANSACTION_ID), true)) {
-                attributes.setId(null);
-            }
-            if (attributes.getAffiliation() != null &&
-                    !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_AFFILIATION), true)) {
-                attributes.setAffiliation(null);
-            }
-            builder.transactionAttributes(attributes);
-        }
+    public boolean shouldLogScreen(String screenName) {
+        return shouldLogScreen(KitUtils.hashForFiltering("0" + screenName));
+    }
 
-        return builder.build();
+    /**
+     * @param screenEvent the hashes of the screen view, shared by every kit
+     */
+    boolean shouldLogScreen(HashedEvent screenEvent) {
+        return shouldLogScreen(screenEvent.getEventHash());
     }
 
-    public boolean shouldLogScreen(String screenName) {
-        int nameHash = KitUtils.hashForFiltering("0" + screenName);
+    private boolean shouldLogScreen(int nameHash) {
         if (mScreenNameFilters.size() > 0 && !mScreenNameFilters.get(nameHash, true)) {
             return false;
         }
         return true;
     }
 
-
-    protected boolean shouldLogEvent(MPEvent event) {
-        if (!shouldIncludeFromAttributeValueFiltering(event.getCustomAttributes())) {
+    /**
+     * @param event the hashes of the event, shared by every kit
+     */
+    boolean shouldLogEvent(HashedEvent event) {
+        if (!shouldIncludeFromAttributeValueFiltering(event)) {
             return false;
         }
-        int typeHash = KitUtils.hashForFiltering(event.getEventType().ordinal() + "");
-        return mTypeFilters.get(typeHash, true) && mNameFilters.get(event.getEventHash(), true);
+        return mTypeFilters.get(event.getTypeHash(), true) && mNameFilters.get(event.getEventHash(), true);
     }
 
     public boolean passesBracketing(int userBucket) {
@@ -612,6 +752,13 @@ public class KitConfiguration {
         return customMappingList;
     }
 
+    /**
+     * @return the custom mapping list, indexed for projecting events
+     */
+    public final CustomMappingIndex getCustomMappingIndex() {
+        return customMappingIndex;
+    }
+
     public final CustomMapping getDefaultEventProjection() {
         return defaultCustomMapping;
     }
@@ -0,0 +1,124 @@
+package com.mparticle.kits;
+
+import androidx.annotation.Nullable;
+
+import com.mparticle.internal.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A serial background queue for a single kit. Calls are delivered to the kit in the order they were
+ * dispatched, on a thread which is not shared with any other kit, so one slow kit can neither block the
+ * caller nor delay the other kits.
+ * <p>
+ * Only droppable calls, which forward an event, are bounded. When a kit falls so far behind that
+ * capacity droppable calls are pending, the oldest of them is dropped to make room for the newest one.
+ * Every other call changes the kit's state, for example opt out, consent or identity, and is never dropped.
+ */
+final class KitDispatcher {
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final String mKitName;
+    private final int mCapacity;
+    private final ThreadPoolExecutor mExecutor;
+    private final AtomicLong mDroppedCount = new AtomicLong();
+    //droppable calls which have not started yet, oldest first, guarded by this
+    private final LinkedList<DroppableCall> mPendingDroppable = new LinkedList<DroppableCall>();
+
+    KitDispatcher(final int kitId, String kitName, int capacity) {
+        mKitName = kitName;
+        mCapacity = capacity;
+        mExecutor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "mParticle-kit-" + kitId);
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.NORM_PRIORITY - 1);
+                        return thread;
+                    }
+                },
+                new ThreadPoolExecutor.DiscardPolicy());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param droppable true if the call may be dropped when the kit falls behind
+     */
+    synchronized void execute(Runnable runnable, boolean droppable) {
+        if (mExecutor.isShutdown()) {
+            return;
+        }
+        if (!droppable) {
+            mExecutor.execute(runnable);
+            return;
+        }
+        if (mPendingDroppable.size() >= mCapacity) {
+            DroppableCall oldest = mPendingDroppable.poll();
+            oldest.mDropped = true;
+            mExecutor.getQueue().remove(oldest);
+            long dropped = mDroppedCount.incrementAndGet();
+            //log the first drop, and then progressively less often
+            if (Long.bitCount(dropped) == 1) {
+                Logger.warning("Dispatch queue is full for kit: " + mKitName + ", " + dropped + " calls have been dropped.");
+            }
+        }
+        DroppableCall call = new DroppableCall(runnable);
+        mPendingDroppable.add(call);
+        mExecutor.execute(call);
+    }
+
+    /**
+     * @return the number of calls which were dropped because the queue was full
+     */
+    long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * Stop the queue, discarding any calls which have not started yet. A call which is in progress is
+     * left to finish, since interrupting the kit's own code could leave it in an inconsistent state.
+     * Nothing waits for it: finalCall is run on the kit's thread once it has finished.
+     */
+    synchronized void shutdown(@Nullable Runnable finalCall) {
+        List<Runnable> pending = new ArrayList<Runnable>();
+        mExecutor.getQueue().drainTo(pending);
+        mPendingDroppable.clear();
+        if (pending.size() > 0) {
+            Logger.debug("Discarded " + pending.size() + " pending calls for kit: " + mKitName);
+        }
+        if (finalCall != null && !mExecutor.isShutdown()) {
+            mExecutor.execute(finalCall);
+        }
+        mExecutor.shutdown();
+    }
+
+    private final class DroppableCall implements Runnable {
+        private final Runnable mRunnable;
+        //guarded by the dispatcher
+        boolean mDropped;
+
+        DroppableCall(Runnable runnable) {
+            mRunnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            synchronized (KitDispatcher.this) {
+                if (mDropped) {
+                    return;
+                }
+                mPendingDroppable.remove(this);
+            }
+            mRunnable.run();
+        }
+    }
+}
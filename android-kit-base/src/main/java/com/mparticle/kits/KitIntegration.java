@@ -323,6 +323,18 @@ public abstract class KitIntegration {
         getKitManager().executeNetworkRequest(runnable);
     }
 
+    /**
+     * When the app has enabled background kit dispatch, events, user attributes and identity changes
+     * are forwarded to each kit on its own background thread. Kits which must not be called from a
+     * background thread should override this method and return false, and they will be called on the
+     * thread which made the call, as they are when background dispatch is off.
+     *
+     * @return true if this kit may be called from a background thread
+     */
+    public boolean isBackgroundDispatchSupported() {
+        return true;
+    }
+
     /**
      * Indicates that the user wishes to remove personal data and shutdown a Kit and/or underlying 3rd
      * party SDK
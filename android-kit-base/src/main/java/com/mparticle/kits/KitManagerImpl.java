@@ -8,6 +8,7 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
@@ -26,6 +27,7 @@ import com.mparticle.identity.IdentityStateListener;
 import com.mparticle.identity.MParticleUser;
 import com.mparticle.internal.BackgroundTaskHandler;
 import com.mparticle.internal.CoreCallbacks;
+import com.mparticle.internal.KitInvocationStats;
 import com.mparticle.internal.KitManager;
 import com.mparticle.internal.Logger;
 import com.mparticle.internal.MPUtility;
@@ -38,6 +40,7 @@ import org.json.JSONObject;
 
 import java.lang.ref.WeakReference;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -59,11 +62,20 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
     private static final String RESERVED_KEY_LTV = "$Amount";
     private static final String METHOD_NAME = "$MethodName";
     private static final String LOG_LTV = "LogLTVIncrease";
+    /**
+     * How long to wait for a kit to finish a call on its dispatch queue before the kit is de-initialized.
+     */
 
     private Map<Integer, AttributionResult> mAttributionResultsMap = new TreeMap<>();
 
 
     ConcurrentHashMap<Integer, KitIntegration> providers = new ConcurrentHashMap<Integer, KitIntegration>();
+    private final ConcurrentHashMap<Integer, KitDispatcher> mKitDispatchers = new ConcurrentHashMap<Integer, KitDispatcher>();
+    private final ConcurrentHashMap<Integer, KitInvocationHistogram> mInvocationHistograms = new ConcurrentHashMap<Integer, KitInvocationHistogram>();
+    //the most recently parsed configuration of each kit, so a configuration which is unchanged by a
+    //config refresh is neither parsed again nor applied to its kit again, guarded by this
+    private final Map<Integer, ParsedKitConfiguration> mParsedConfigurations = new HashMap<Integer, ParsedKitConfiguration>();
+    private final int mKitDispatchQueueSize;
     private final Context mContext;
 
     public KitManagerImpl(Context context, ReportingManager reportingManager, CoreCallbacks coreCallbacks, BackgroundTaskHandler backgroundTaskHandler) {
@@ -71,6 +83,7 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         mReportingManager = reportingManager;
         mCoreCallbacks = coreCallbacks;
         mBackgroundTaskHandler = backgroundTaskHandler;
+        mKitDispatchQueueSize = coreCallbacks.getKitDispatchQueueSize();
         mKitIntegrationFactory = new KitIntegrationFactory();
         if (mKitIntegrationFactory.supportedKits != null) {
             for (Integer kitId : mKitIntegrationFactory.supportedKits.keySet()) {
@@ -143,9 +156,40 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
 
     }
 
+    /**
+     * A kit's configuration JSON, and the KitConfiguration parsed from it, or the exception thrown
+     * while parsing it.
+     */
+    static class ParsedKitConfiguration {
+        final int kitId;
+        final JSONObject source;
+        final String json;
+        final KitConfiguration configuration;
+        final Exception exception;
+
+        ParsedKitConfiguration(JSONObject source, String json, KitConfiguration configuration) {
+            this.kitId = configuration.getKitId();
+            this.source = source;
+            this.json = json;
+            this.configuration = configuration;
+            this.exception = null;
+        }
+
+        ParsedKitConfiguration(int kitId, Exception exception) {
+            this.kitId = kitId;
+            this.source = null;
+            this.json = null;
+            this.configuration = null;
+            this.exception = exception;
+        }
+    }
+
     @Override
     public void updateKits(final JSONArray kitConfigs) {
         if (Looper.getMainLooper() != Looper.myLooper()) {
+            //the changed configurations are parsed on this thread, so that configuring the kits on
+            //the main thread finds every one of them already parsed
+            parseKitConfigurations(kitConfigs);
             Runnable runnable = new UpdateKitRunnable(kitConfigs);
             new Handler(Looper.getMainLooper()).post(runnable);
         } else {
@@ -175,54 +219,109 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
      * <p>
      * Note: This method is meant to always be run on the main thread.
      */
+    @MainThread
     protected void configureKits(JSONArray kitConfigs) {
-        MParticleUser user = MParticle.getInstance().Identity().getCurrentUser();
-        HashSet<Integer> activeIds = new HashSet<Integer>();
+        applyKitConfigurations(parseKitConfigurations(kitConfigs));
+    }
 
+    /**
+     * Parse each kit's configuration, unless its JSON is unchanged since it was last parsed, in
+     * which case the KitConfiguration parsed then is reused. A configuration response isn't
+     * modified once it's received, so the JSON is only compared when it's a different JSONObject
+     * from the one last parsed.
+     * <p>
+     * This is called both from the thread which received the configuration, in {@link #updateKits(JSONArray)},
+     * and from the main thread, in {@link #configureKits(JSONArray)}, so calls are serialized.
+     */
+    synchronized List<ParsedKitConfiguration> parseKitConfigurations(JSONArray kitConfigs) {
+        List<ParsedKitConfiguration> parsedConfigurations = new ArrayList<ParsedKitConfiguration>();
+        Set<Integer> kitIds = new HashSet<Integer>();
         if (kitConfigs != null) {
             for (int i = 0; i < kitConfigs.length(); i++) {
+                ParsedKitConfiguration parsedConfiguration;
                 try {
                     JSONObject current = kitConfigs.getJSONObject(i);
-                    KitConfiguration configuration = createKitConfiguration(current);
-                    int currentModuleID = configuration.getKitId();
-                    mCoreCallbacks.getKitListener().kitConfigReceived(currentModuleID, configuration.toString());
-                    if (configuration.shouldExcludeUser(user)) {
-                        mCoreCallbacks.getKitListener().kitExcluded(currentModuleID, "User was required to be known, but was not.");
-                        continue;
+                    parsedConfiguration = mParsedConfigurations.get(current.optInt(KitConfiguration.KEY_ID, -1));
+                    if (parsedConfiguration == null || parsedConfiguration.source != current) {
+                        String json = current.toString();
+                        if (parsedConfiguration == null || !json.equals(parsedConfiguration.json)) {
+                            parsedConfiguration = new ParsedKitConfiguration(current, json, createKitConfiguration(current));
+                        } else {
+                            parsedConfiguration = new ParsedKitConfiguration(current, json, parsedConfiguration.configuration);
+                        }
+                        mParsedConfigurations.put(parsedConfiguration.kitId, parsedConfiguration);
                     }
-                    if (!mKitIntegrationFactory.isSupported(configuration.getKitId())) {
-                        Logger.debug("Kit id configured but is not bundled: " + currentModuleID);
+                    kitIds.add(parsedConfiguration.kitId);
+                } catch (Exception e) {
+                    JSONObject current = kitConfigs.optJSONObject(i);
+                    parsedConfiguration = new ParsedKitConfiguration(current != null ? current.optInt(KitConfiguration.KEY_ID, -1) : -1, e);
+                }
+                parsedConfigurations.add(parsedConfiguration);
+            }
+        }
+        mParsedConfigurations.keySet().retainAll(kitIds);
+        return parsedConfigurations;
+    }
+
+    /**
+     * Start, update and stop kits according to their parsed configurations. A running kit whose
+     * configuration is unchanged is left as it is, though whether the current user is excluded
+     * from it is still checked.
+     */
+    @MainThread
+    private void applyKitConfigurations(List<ParsedKitConfiguration> parsedConfigurations) {
+        MParticleUser user = MParticle.getInstance().Identity().getCurrentUser();
+        HashSet<Integer> activeIds = new HashSet<Integer>();
+
+        for (ParsedKitConfiguration parsedConfiguration : parsedConfigurations) {
+            try {
+                if (parsedConfiguration.exception != null) {
+                    throw parsedConfiguration.exception;
+                }
+                KitConfiguration configuration = parsedConfiguration.configuration;
+                int currentModuleID = configuration.getKitId();
+                mCoreCallbacks.getKitListener().kitConfigReceived(currentModuleID, configuration.toString());
+                if (configuration.shouldExcludeUser(user)) {
+                    mCoreCallbacks.getKitListener().kitExcluded(currentModuleID, "User was required to be known, but was not.");
+                    continue;
+                }
+                if (!mKitIntegrationFactory.isSupported(configuration.getKitId())) {
+                    Logger.debug("Kit id configured but is not bundled: " + currentModuleID);
+                    continue;
+                }
+                KitIntegration activeKit = providers.get(currentModuleID);
+                if (activeKit == null) {
+                    activeKit = mKitIntegrationFactory.createInstance(KitManagerImpl.this, configuration);
+                    if (activeKit.isDisabled() ||
+                            !configuration.shouldIncludeFromConsentRules(user)) {
+                        Logger.debug("Kit id configured but is filtered or disabled: " + currentModuleID);
                         continue;
                     }
-                    KitIntegration activeKit = providers.get(currentModuleID);
-                    if (activeKit == null) {
-                        activeKit = mKitIntegrationFactory.createInstance(KitManagerImpl.this, configuration);
-                        if (activeKit.isDisabled() ||
-                                !configuration.shouldIncludeFromConsentRules(user)) {
-                            Logger.debug("Kit id configured but is filtered or disabled: " + currentModuleID);
-                            continue;
-                        }
-                        activeIds.add(currentModuleID);
-                        initializeKit(activeKit);
-                        providers.put(currentModuleID, activeKit);
-                        mCoreCallbacks.getKitListener().kitStarted(currentModuleID);
-                    } else {
+                    activeIds.add(currentModuleID);
+                    initializeKit(activeKit);
+                    if (mKitDispatchQueueSize > 0 && activeKit.isBackgroundDispatchSupported()) {
+                        mKitDispatchers.put(currentModuleID, new KitDispatcher(currentModuleID, activeKit.getName(), mKitDispatchQueueSize));
+                    }
+                    mInvocationHistograms.put(currentModuleID, new KitInvocationHistogram(currentModuleID));
+                    providers.put(currentModuleID, activeKit);
+                    mCoreCallbacks.getKitListener().kitStarted(currentModuleID);
+                } else {
+                    boolean configurationChanged = activeKit.getConfiguration() != configuration;
+                    if (configurationChanged) {
                         activeKit.setConfiguration(configuration);
-                        if (activeKit.isDisabled() ||
-                                !configuration.shouldIncludeFromConsentRules(user)) {
-                            continue;
-                        }
-                        activeIds.add(currentModuleID);
-                        activeKit.onSettingsUpdated(configuration.getSettings());
                     }
-                } catch (Exception e) {
-                    try {
-                        mCoreCallbacks.getKitListener().kitExcluded(kitConfigs.getJSONObject(i).optInt("id", -1), "exception while starting. Exception: " + e.getMessage());
-                    } catch (JSONException e1) {
-                        mCoreCallbacks.getKitListener().kitExcluded(-1, "exception while starting. Exception: " + e.getMessage());
+                    if (activeKit.isDisabled() ||
+                            !configuration.shouldIncludeFromConsentRules(user)) {
+                        continue;
+                    }
+                    activeIds.add(currentModuleID);
+                    if (configurationChanged) {
+                        activeKit.onSettingsUpdated(configuration.getSettings());
                     }
-                    Logger.error("Exception while starting kit: " + e.getMessage());
                 }
+            } catch (Exception e) {
+                mCoreCallbacks.getKitListener().kitExcluded(parsedConfiguration.kitId, "exception while starting. Exception: " + e.getMessage());
+                Logger.error("Exception while starting kit: " + e.getMessage());
             }
         }
 
@@ -230,12 +329,25 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         while (ids.hasNext()) {
             Integer id = ids.next();
             if (!activeIds.contains(id)) {
-                KitIntegration integration = providers.get(id);
+                //calls which are still queued for a kit which is being disabled, for example due to consent, are dropped
+                mInvocationHistograms.remove(id);
+                KitDispatcher dispatcher = mKitDispatchers.remove(id);
+                final KitIntegration integration = providers.get(id);
                 if (integration != null) {
                     Logger.debug("De-initializing kit: " + integration.getName());
                     clearIntegrationAttributes(integration);
-                    integration.onKitDestroy();
-                    integration.onKitCleanup();
+                }
+                if (dispatcher != null) {
+                    //don't destroy the kit while it is still handling a call, and don't wait for the call to
+                    //finish either: the kit is destroyed on its own thread, right after the call
+                    dispatcher.shutdown(integration == null ? null : new Runnable() {
+                        @Override
+                        public void run() {
+                            destroyKit(integration);
+                        }
+                    });
+                } else if (integration != null) {
+                    destroyKit(integration);
                 }
                 ids.remove();
                 Intent intent = new Intent(MParticle.ServiceProviders.BROADCAST_DISABLED + id);
@@ -245,6 +357,11 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         mCoreCallbacks.replayAndDisableQueue();
     }
 
+    private static void destroyKit(KitIntegration integration) {
+        integration.onKitDestroy();
+        integration.onKitCleanup();
+    }
+
     private void initializeKit(KitIntegration activeKit) {
         Logger.debug("Initializing kit: " + activeKit.getName());
         activeKit.onKitCreate(activeKit.getConfiguration().getSettings(), getContext());
@@ -325,37 +442,148 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         return kit == null ? null : kit.getInstance();
     }
 
+    /**
+     * A call to be made on each kit.
+     */
+    interface KitCall {
+        void call(KitIntegration provider);
+    }
+
+    /**
+     * A call which only forwards an event, screen view or commerce event. These are the only calls which
+     * are dropped when a kit falls behind, every other call changes the kit's state and is always delivered.
+     */
+    interface EventCall extends KitCall {
+    }
+
+    /**
+     * Kits with a dispatch queue are called after the caller has returned, and the app is free to change
+     * an event or a map once it has been logged. While any kit has a queue, those arguments are copied on
+     * the caller's thread before they are dispatched.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends BaseEvent> T snapshot(T event) {
+        if (mKitDispatchers.isEmpty() || event == null) {
+            return event;
+        }
+        if (event instanceof MPEvent) {
+            return (T) new MPEvent((MPEvent) event);
+        }
+        if (event instanceof CommerceEvent) {
+            return (T) new CommerceEvent.Builder((CommerceEvent) event).build();
+        }
+        return event;
+    }
+
+    private <K, V> Map<K, V> snapshot(Map<K, V> map) {
+        if (mKitDispatchers.isEmpty() || map == null) {
+            return map;
+        }
+        return new HashMap<K, V>(map);
+    }
+
+    private List<String> snapshot(List<String> list) {
+        if (mKitDispatchers.isEmpty() || list == null) {
+            return list;
+        }
+        return new ArrayList<String>(list);
+    }
+
+    /**
+     * Make the call on every active kit. Kits with a dispatch queue receive the call on their own background
+     * thread, in the order in which calls were dispatched, and all other kits receive it immediately on the
+     * caller's thread.
+     */
+    void dispatch(final KitCall kitCall) {
+        for (Map.Entry<Integer, KitIntegration> entry : providers.entrySet()) {
+            final KitIntegration provider = entry.getValue();
+            final KitInvocationHistogram histogram = mInvocationHistograms.get(entry.getKey());
+            KitDispatcher dispatcher = mKitDispatchers.isEmpty() ? null : mKitDispatchers.get(entry.getKey());
+            if (dispatcher == null) {
+                call(kitCall, provider, histogram);
+            } else {
+                dispatcher.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        call(kitCall, provider, histogram);
+                    }
+                }, kitCall instanceof EventCall);
+            }
+        }
+    }
+
+    /**
+     * Make the call on a single kit, recording how long it took.
+     */
+    private static void call(KitCall kitCall, KitIntegration provider, @Nullable KitInvocationHistogram histogram) {
+        if (histogram == null) {
+            kitCall.call(provider);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            kitCall.call(provider);
+        } finally {
+            histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    private void recordException(KitIntegration provider) {
+        KitConfiguration configuration = provider.getConfiguration();
+        KitInvocationHistogram histogram = configuration == null ? null : mInvocationHistograms.get(configuration.getKitId());
+        if (histogram != null) {
+            histogram.recordException();
+        }
+    }
+
+    @Override
+    public Map<Integer, KitInvocationStats> getKitInvocationStats() {
+        Map<Integer, KitInvocationStats> stats = new TreeMap<Integer, KitInvocationStats>();
+        for (Map.Entry<Integer, KitInvocationHistogram> entry : mInvocationHistograms.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().getStats());
+        }
+        return stats;
+    }
+
     //================================================================================
     // General KitIntegration forwarding
     //================================================================================
 
     @Override
-    public void setLocation(Location location) {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (!provider.isDisabled()) {
-                    provider.setLocation(location);
-                    mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), true, location);
+    public void setLocation(final Location location) {
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if (!provider.isDisabled()) {
+                        provider.setLocation(location);
+                        mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), true, location);
+                    }
+                } catch (Exception e) {
+                    Logger.warning("Failed to call setLocation for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call setLocation for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
     }
 
     @Override
-    public void logNetworkPerformance(String url, long startTime, String method, long length, long bytesSent, long bytesReceived, String requestString, int responseCode) {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (!provider.isDisabled()) {
-                    List<ReportingMessage> report = provider.logNetworkPerformance(url, startTime, method, length, bytesSent, bytesReceived, requestString, responseCode);
-                    getReportingManager().logAll(report);
-                    mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), url, startTime, method, length, bytesSent, bytesReceived, requestString, responseCode);
+    public void logNetworkPerformance(final String url, final long startTime, final String method, final long length, final long bytesSent, final long bytesReceived, final String requestString, final int responseCode) {
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if (!provider.isDisabled()) {
+                        List<ReportingMessage> report = provider.logNetworkPerformance(url, startTime, method, length, bytesSent, bytesReceived, requestString, responseCode);
+                        getReportingManager().logAll(report);
+                        mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), url, startTime, method, length, bytesSent, bytesReceived, requestString, responseCode);
+                    }
+                } catch (Exception e) {
+                    Logger.warning("Failed to call logNetworkPerformance for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call logNetworkPerformance for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
     }
 
     @Override
@@ -372,18 +600,22 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
     }
 
     @Override
-    public void setOptOut(boolean optOutStatus) {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (!provider.isDisabled(true)) {
-                    List<ReportingMessage> messages = provider.setOptOut(optOutStatus);
-                    getReportingManager().logAll(messages);
-                    mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(messages), optOutStatus);
+    public void setOptOut(final boolean optOutStatus) {
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if (!provider.isDisabled(true)) {
+                        List<ReportingMessage> messages = provider.setOptOut(optOutStatus);
+                        getReportingManager().logAll(messages);
+                        mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(messages), optOutStatus);
+                    }
+                } catch (Exception e) {
+                    Logger.warning("Failed to call setOptOut for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call setOptOut for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
         updateKits(mCoreCallbacks.getLatestKitConfiguration());
     }
 
@@ -393,23 +625,28 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
     }
 
     @Override
-    public void logEvent(BaseEvent event) {
+    public void logEvent(BaseEvent baseEvent) {
         if (mDataplanFilter != null) {
-            event = mDataplanFilter.transformEventForEvent(event);
-            if (event == null) {
+            baseEvent = mDataplanFilter.transformEventForEvent(baseEvent);
+            if (baseEvent == null) {
                 return;
             }
         }
-        for (KitIntegration provider: providers.values()) {
-            try {
-                List<ReportingMessage> messages = provider.logBaseEvent(event);
-                mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(messages), event);
-                mReportingManager.logAll(messages);
-            } catch (Exception e) {
-                Logger.warning("Failed to call logMPEvent for kit: " + provider.getName() + ": " + e.getMessage());
-                mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), false, event, e);
+        final BaseEvent event = snapshot(baseEvent);
+        dispatch(new EventCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    List<ReportingMessage> messages = provider.logBaseEvent(event);
+                    mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(messages), event);
+                    mReportingManager.logAll(messages);
+                } catch (Exception e) {
+                    Logger.warning("Failed to call logMPEvent for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
+                    mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), false, event, e);
+                }
             }
-        }
+        });
         if (event instanceof MPEvent) {
             logMPEvent((MPEvent) event);
         } else if (event instanceof CommerceEvent) {
@@ -421,82 +658,88 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
     // KitIntegration.CommerceListener forwarding
     //================================================================================
 
-    protected void logCommerceEvent(CommerceEvent event) {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (!provider.isDisabled()) {
-                    CommerceEvent filteredEvent = provider.getConfiguration().filterCommerceEvent(event);
-                    if (filteredEvent != null) {
-                        if (provider instanceof KitIntegration.CommerceListener) {
-                            List<CustomMapping.ProjectionResult> projectedEvents = CustomMapping.projectEvents(
-                                    filteredEvent,
-                                    provider.getConfiguration().getCustomMappingList(),
-                                    provider.getConfiguration().getDefaultCommerceCustomMapping()
-                            );
-                            if (projectedEvents != null && projectedEvents.size() > 0) {
-                                ReportingMessage masterMessage = ReportingMessage.fromEvent(provider, filteredEvent);
-                                boolean forwarded = false;
-                                for (int i = 0; i < projectedEvents.size(); i++) {
-                                    CustomMapping.ProjectionResult result = projectedEvents.get(i);
-                                    List<ReportingMessage> report = null;
-                                    String messageType = null;
-                                    if (result.getMPEvent() != null) {
-                                        MPEvent projectedEvent = projectedEvents.get(i).getMPEvent();
-                                        report = ((KitIntegration.EventListener) provider).logEvent(projectedEvent);
-                                        mCoreCallbacks.getKitListener().onKitApiCalled("logMPEvent()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), projectedEvent);
-                                        messageType = ReportingMessage.MessageType.EVENT;
-                                    } else {
-                                        CommerceEvent projectedEvent = projectedEvents.get(i).getCommerceEvent();
-                                        report = ((KitIntegration.CommerceListener) provider).logEvent(projectedEvent);
-                                        mCoreCallbacks.getKitListener().onKitApiCalled("logMPEvent()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), projectedEvent);
-                                        messageType = ReportingMessage.MessageType.COMMERCE_EVENT;
-                                    }
-                                    if (report != null && report.size() > 0) {
-                                        forwarded = true;
-                                        for (ReportingMessage message : report) {
-                                            masterMessage.addProjectionReport(
-                                                    new ReportingMessage.ProjectionReport(projectedEvents.get(i).getProjectionId(),
-                                                            messageType,
-                                                            message.getEventName(),
-                                                            message.getEventTypeString())
-                                            );
+    protected void logCommerceEvent(final CommerceEvent event) {
+        final HashedEvent hashedEvent = HashedEvent.forCommerceEvent(event);
+        final Map<String, CommerceEvent> filteredEvents = new ConcurrentHashMap<String, CommerceEvent>();
+        dispatch(new EventCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if (!provider.isDisabled()) {
+                        CommerceEvent filteredEvent = provider.getConfiguration().filterCommerceEvent(hashedEvent, event, filteredEvents);
+                        if (filteredEvent != null) {
+                            if (provider instanceof KitIntegration.CommerceListener) {
+                                List<CustomMapping.ProjectionResult> projectedEvents = CustomMapping.projectEvents(
+                                        filteredEvent,
+                                        provider.getConfiguration().getCustomMappingIndex(),
+                                        provider.getConfiguration().getDefaultCommerceCustomMapping()
+                                );
+                                if (projectedEvents != null && projectedEvents.size() > 0) {
+                                    ReportingMessage masterMessage = ReportingMessage.fromEvent(provider, filteredEvent);
+                                    boolean forwarded = false;
+                                    for (int i = 0; i < projectedEvents.size(); i++) {
+                                        CustomMapping.ProjectionResult result = projectedEvents.get(i);
+                                        List<ReportingMessage> report = null;
+                                        String messageType = null;
+                                        if (result.getMPEvent() != null) {
+                                            MPEvent projectedEvent = projectedEvents.get(i).getMPEvent();
+                                            report = ((KitIntegration.EventListener) provider).logEvent(projectedEvent);
+                                            mCoreCallbacks.getKitListener().onKitApiCalled("logMPEvent()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), projectedEvent);
+                                            messageType = ReportingMessage.MessageType.EVENT;
+                                        } else {
+                                            CommerceEvent projectedEvent = projectedEvents.get(i).getCommerceEvent();
+                                            report = ((KitIntegration.CommerceListener) provider).logEvent(projectedEvent);
+                                            mCoreCallbacks.getKitListener().onKitApiCalled("logMPEvent()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), projectedEvent);
+                                            messageType = ReportingMessage.MessageType.COMMERCE_EVENT;
+                                        }
+                                        if (report != null && report.size() > 0) {
+                                            forwarded = true;
+                                            for (ReportingMessage message : report) {
+                                                masterMessage.addProjectionReport(
+                                                        new ReportingMessage.ProjectionReport(projectedEvents.get(i).getProjectionId(),
+                                                                messageType,
+                                                                message.getEventName(),
+                                                                message.getEventTypeString())
+                                                );
+                                            }
                                         }
                                     }
+                                    if (forwarded) {
+                                        getReportingManager().log(masterMessage);
+                                    }
+                                } else {
+                                    List<ReportingMessage> reporting = ((KitIntegration.CommerceListener) provider).logEvent(filteredEvent);
+                                    mCoreCallbacks.getKitListener().onKitApiCalled("logMPEvent()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(reporting), filteredEvent);
+                                    if (reporting != null && reporting.size() > 0) {
+                                        getReportingManager().log(
+                                                ReportingMessage.fromEvent(provider, filteredEvent)
+                                        );
+                                    }
                                 }
-                                if (forwarded) {
-                                    getReportingManager().log(masterMessage);
+                            } else if (provider instanceof KitIntegration.EventListener) {
+                                List<MPEvent> events = CommerceEventUtils.expand(filteredEvent);
+                                boolean forwarded = false;
+                                if (events != null) {
+                                    for (MPEvent expandedEvent: events) {
+                                        List<ReportingMessage> reporting = ((KitIntegration.EventListener) provider).logEvent(expandedEvent);
+                                        mCoreCallbacks.getKitListener().onKitApiCalled("logMPEvent()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(reporting), expandedEvent);
+                                        forwarded = forwarded || (reporting != null && reporting.size() > 0);
+                                    }
                                 }
-                            } else {
-                                List<ReportingMessage> reporting = ((KitIntegration.CommerceListener) provider).logEvent(filteredEvent);
-                                mCoreCallbacks.getKitListener().onKitApiCalled("logMPEvent()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(reporting), filteredEvent);
-                                if (reporting != null && reporting.size() > 0) {
+                                if (forwarded) {
                                     getReportingManager().log(
                                             ReportingMessage.fromEvent(provider, filteredEvent)
                                     );
                                 }
                             }
-                        } else if (provider instanceof KitIntegration.EventListener) {
-                            List<MPEvent> events = CommerceEventUtils.expand(filteredEvent);
-                            boolean forwarded = false;
-                            if (events != null) {
-                                for (MPEvent expandedEvent: events) {
-                                    List<ReportingMessage> reporting = ((KitIntegration.EventListener) provider).logEvent(expandedEvent);
-                                    mCoreCallbacks.getKitListener().onKitApiCalled("logMPEvent()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(reporting), expandedEvent);
-                                    forwarded = forwarded || (reporting != null && reporting.size() > 0);
-                                }
-                            }
-                            if (forwarded) {
-                                getReportingManager().log(
-                                        ReportingMessage.fromEvent(provider, filteredEvent)
-                                );
-                            }
                         }
                     }
+                } catch (Exception e) {
+                    Logger.warning("Failed to call logCommerceEvent for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call logCommerceEvent for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
     }
 
     //================================================================================
@@ -553,44 +796,48 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
     // KitIntegration.AttributeListener forwarding
     //================================================================================
     @Override
-    public void onUserAttributesReceived(Map<String, String> userAttributes, Map<String, List<String>> userAttributeLists, Long mpid) {
-        userAttributes = mDataplanFilter.transformUserAttributes(userAttributes);
-        userAttributeLists = mDataplanFilter.transformUserAttributes(userAttributeLists);
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if ((provider instanceof KitIntegration.AttributeListener || provider instanceof KitIntegration.UserAttributeListener)
-                        && !provider.isDisabled()) {
-                    Map<String, String> filteredAttributeSingles = (Map<String, String>) KitConfiguration.filterAttributes(provider.getConfiguration().getUserAttributeFilters(),
-                            userAttributes);
-                    Map<String, List<String>> filteredAttributeLists = (Map<String, List<String>>) KitConfiguration.filterAttributes(provider.getConfiguration().getUserAttributeFilters(),
-                            userAttributeLists);
-                    if (provider instanceof KitIntegration.AttributeListener) {
-                        if (((KitIntegration.AttributeListener) provider).supportsAttributeLists()) {
-                            ((KitIntegration.AttributeListener) provider).setAllUserAttributes(filteredAttributeSingles, filteredAttributeLists);
-                        } else {
-                            Map<String, String> singlesCopy = new HashMap<>(filteredAttributeSingles);
-                            for (Map.Entry<String, List<String>> entry : filteredAttributeLists.entrySet()) {
-                                singlesCopy.put(entry.getKey(), KitUtils.join(entry.getValue()));
+    public void onUserAttributesReceived(Map<String, String> unfilteredUserAttributes, Map<String, List<String>> unfilteredUserAttributeLists, final Long mpid) {
+        final Map<String, String> userAttributes = snapshot(mDataplanFilter.transformUserAttributes(unfilteredUserAttributes));
+        final Map<String, List<String>> userAttributeLists = snapshot(mDataplanFilter.transformUserAttributes(unfilteredUserAttributeLists));
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if ((provider instanceof KitIntegration.AttributeListener || provider instanceof KitIntegration.UserAttributeListener)
+                            && !provider.isDisabled()) {
+                        Map<String, String> filteredAttributeSingles = (Map<String, String>) KitConfiguration.filterAttributes(provider.getConfiguration().getUserAttributeFilters(),
+                                userAttributes);
+                        Map<String, List<String>> filteredAttributeLists = (Map<String, List<String>>) KitConfiguration.filterAttributes(provider.getConfiguration().getUserAttributeFilters(),
+                                userAttributeLists);
+                        if (provider instanceof KitIntegration.AttributeListener) {
+                            if (((KitIntegration.AttributeListener) provider).supportsAttributeLists()) {
+                                ((KitIntegration.AttributeListener) provider).setAllUserAttributes(filteredAttributeSingles, filteredAttributeLists);
+                            } else {
+                                Map<String, String> singlesCopy = new HashMap<>(filteredAttributeSingles);
+                                for (Map.Entry<String, List<String>> entry : filteredAttributeLists.entrySet()) {
+                                    singlesCopy.put(entry.getKey(), KitUtils.join(entry.getValue()));
+                                }
+                                ((KitIntegration.AttributeListener) provider).setAllUserAttributes(singlesCopy, new HashMap<String, List<String>>());
                             }
-                            ((KitIntegration.AttributeListener) provider).setAllUserAttributes(singlesCopy, new HashMap<String, List<String>>());
                         }
-                    }
-                    if (provider instanceof KitIntegration.UserAttributeListener) {
-                        if (((KitIntegration.UserAttributeListener) provider).supportsAttributeLists()) {
-                            ((KitIntegration.UserAttributeListener) provider).onSetAllUserAttributes(filteredAttributeSingles, filteredAttributeLists, FilteredMParticleUser.getInstance(mpid, provider));
-                        } else {
-                            Map<String, String> singlesCopy = new HashMap<>(filteredAttributeSingles);
-                            for (Map.Entry<String, List<String>> entry : filteredAttributeLists.entrySet()) {
-                                singlesCopy.put(entry.getKey(), KitUtils.join(entry.getValue()));
+                        if (provider instanceof KitIntegration.UserAttributeListener) {
+                            if (((KitIntegration.UserAttributeListener) provider).supportsAttributeLists()) {
+                                ((KitIntegration.UserAttributeListener) provider).onSetAllUserAttributes(filteredAttributeSingles, filteredAttributeLists, FilteredMParticleUser.getInstance(mpid, provider));
+                            } else {
+                                Map<String, String> singlesCopy = new HashMap<>(filteredAttributeSingles);
+                                for (Map.Entry<String, List<String>> entry : filteredAttributeLists.entrySet()) {
+                                    singlesCopy.put(entry.getKey(), KitUtils.join(entry.getValue()));
+                                }
+                                ((KitIntegration.UserAttributeListener) provider).onSetAllUserAttributes(singlesCopy, new HashMap<String, List<String>>(), FilteredMParticleUser.getInstance(mpid, provider));
                             }
-                            ((KitIntegration.UserAttributeListener) provider).onSetAllUserAttributes(singlesCopy, new HashMap<String, List<String>>(), FilteredMParticleUser.getInstance(mpid, provider));
                         }
                     }
+                } catch (Exception e) {
+                    Logger.warning("Failed to call setUserAttributes for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call setUserAttributes for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
     }
 
     private void syncUserIdentities(KitIntegration.AttributeListener attributeListener, KitConfiguration configuration) {
@@ -608,31 +855,40 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
     }
 
     @Override
-    public void setUserAttribute(String attributeKey, String attributeValue, long mpid) {
+    public void setUserAttribute(final String attributeKey, final String attributeValue, final long mpid) {
         if (mDataplanFilter.isUserAttributeBlocked(attributeKey)) {
             return;
         }
-        for (KitIntegration provider : providers.values()) {
-            try {
-                setUserAttribute(provider, attributeKey, attributeValue, mpid);
-            } catch (Exception e) {
-                Logger.warning("Failed to call setUserAttributes/onSetUserAttribute for kit: " + provider.getName() + ": " + e.getMessage());
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    setUserAttribute(provider, attributeKey, attributeValue, mpid);
+                } catch (Exception e) {
+                    Logger.warning("Failed to call setUserAttributes/onSetUserAttribute for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
+                }
             }
-        }
+        });
     }
 
     @Override
-    public void setUserAttributeList(String attributeKey, List<String> valuesList, long mpid) {
+    public void setUserAttributeList(final String attributeKey, List<String> attributeValues, final long mpid) {
         if (mDataplanFilter.isUserAttributeBlocked(attributeKey)) {
             return;
         }
-        for (KitIntegration provider : providers.values()) {
-            try {
-                setUserAttribute(provider, attributeKey, valuesList, mpid);
-            } catch (Exception e) {
-                Logger.warning("Failed to call setUserAttributes/onSetUserAttribute for kit: " + provider.getName() + ": " + e.getMessage());
+        final List<String> valuesList = snapshot(attributeValues);
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    setUserAttribute(provider, attributeKey, valuesList, mpid);
+                } catch (Exception e) {
+                    Logger.warning("Failed to call setUserAttributes/onSetUserAttribute for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
+                }
             }
-        }
+        });
     }
 
     private void setUserAttribute(KitIntegration provider, String attributeKey, List<String> valueList, long mpid) {
@@ -671,109 +927,133 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
     }
 
     @Override
-    public void removeUserAttribute(String key, long mpid) {
+    public void removeUserAttribute(final String key, final long mpid) {
         if (mDataplanFilter.isUserAttributeBlocked(key)) {
             return;
         }
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if ((provider instanceof KitIntegration.AttributeListener || provider instanceof KitIntegration.UserAttributeListener)
-                        && !provider.isDisabled()
-                        && KitConfiguration.shouldForwardAttribute(provider.getConfiguration().getUserAttributeFilters(), key)) {
-                    if (provider instanceof KitIntegration.AttributeListener) {
-                        ((KitIntegration.AttributeListener) provider).removeUserAttribute(key);
-                    }
-                    if (provider instanceof KitIntegration.UserAttributeListener) {
-                        ((KitIntegration.UserAttributeListener) provider).onRemoveUserAttribute(key, FilteredMParticleUser.getInstance(mpid, provider));
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if ((provider instanceof KitIntegration.AttributeListener || provider instanceof KitIntegration.UserAttributeListener)
+                            && !provider.isDisabled()
+                            && KitConfiguration.shouldForwardAttribute(provider.getConfiguration().getUserAttributeFilters(), key)) {
+                        if (provider instanceof KitIntegration.AttributeListener) {
+                            ((KitIntegration.AttributeListener) provider).removeUserAttribute(key);
+                        }
+                        if (provider instanceof KitIntegration.UserAttributeListener) {
+                            ((KitIntegration.UserAttributeListener) provider).onRemoveUserAttribute(key, FilteredMParticleUser.getInstance(mpid, provider));
+                        }
                     }
+                } catch (Exception e) {
+                    Logger.warning("Failed to call removeUserAttribute/onRemoveUserAttribute for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call removeUserAttribute/onRemoveUserAttribute for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
     }
 
     @Override
-    public void incrementUserAttribute(String key, int incrementedBy, String newValue, long mpid) {
+    public void incrementUserAttribute(final String key, final int incrementedBy, final String newValue, final long mpid) {
         if (mDataplanFilter.isUserAttributeBlocked(key)) {
             return;
         }
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (!provider.isDisabled() && KitConfiguration.shouldForwardAttribute(provider.getConfiguration().getUserAttributeFilters(), key))
-                if (provider instanceof KitIntegration.UserAttributeListener) {
-                    ((KitIntegration.UserAttributeListener) provider).onIncrementUserAttribute(key, incrementedBy, newValue, FilteredMParticleUser.getInstance(mpid, provider));
-                }
-                if (provider instanceof KitIntegration.AttributeListener) {
-                    ((KitIntegration.AttributeListener) provider).setUserAttribute(key, newValue);
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if (!provider.isDisabled() && KitConfiguration.shouldForwardAttribute(provider.getConfiguration().getUserAttributeFilters(), key))
+                    if (provider instanceof KitIntegration.UserAttributeListener) {
+                        ((KitIntegration.UserAttributeListener) provider).onIncrementUserAttribute(key, incrementedBy, newValue, FilteredMParticleUser.getInstance(mpid, provider));
+                    }
+                    if (provider instanceof KitIntegration.AttributeListener) {
+                        ((KitIntegration.AttributeListener) provider).setUserAttribute(key, newValue);
+                    }
+                } catch (Exception e) {
+                    Logger.warning("Failed to call onIncrementUserAttribute for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call onIncrementUserAttribute for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
     }
 
     @Override
-    public void setUserTag(String tag, long mpid) {
+    public void setUserTag(final String tag, final long mpid) {
         if (mDataplanFilter.isUserAttributeBlocked(tag)) {
             return;
         }
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.UserAttributeListener && !provider.isDisabled()
-                        && KitConfiguration.shouldForwardAttribute(provider.getConfiguration().getUserAttributeFilters(), tag)) {
-                    ((KitIntegration.UserAttributeListener) provider).onSetUserTag(tag, FilteredMParticleUser.getInstance(mpid, provider));
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if (provider instanceof KitIntegration.UserAttributeListener && !provider.isDisabled()
+                            && KitConfiguration.shouldForwardAttribute(provider.getConfiguration().getUserAttributeFilters(), tag)) {
+                        ((KitIntegration.UserAttributeListener) provider).onSetUserTag(tag, FilteredMParticleUser.getInstance(mpid, provider));
+                    }
+                } catch (Exception e) {
+                    Logger.warning("Failed to call onSetUserTag for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call onSetUserTag for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
     }
 
     @Override
-    public void setUserIdentity(String id, MParticle.IdentityType identityType) {
+    public void setUserIdentity(final String id, final MParticle.IdentityType identityType) {
         if (mDataplanFilter.isUserIdentityBlocked(identityType)) {
             return;
         }
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.AttributeListener && !provider.isDisabled() && provider.getConfiguration().shouldSetIdentity(identityType)) {
-                    ((KitIntegration.AttributeListener) provider).setUserIdentity(identityType, id);
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if (provider instanceof KitIntegration.AttributeListener && !provider.isDisabled() && provider.getConfiguration().shouldSetIdentity(identityType)) {
+                        ((KitIntegration.AttributeListener) provider).setUserIdentity(identityType, id);
+                    }
+                } catch (Exception e) {
+                    Logger.warning("Failed to call setUserIdentity for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call setUserIdentity for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
     }
 
     @Override
-    public void removeUserIdentity(MParticle.IdentityType identityType) {
+    public void removeUserIdentity(final MParticle.IdentityType identityType) {
         if (mDataplanFilter.isUserIdentityBlocked(identityType)) {
             return;
         }
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.AttributeListener && !provider.isDisabled()) {
-                    ((KitIntegration.AttributeListener) provider).removeUserIdentity(identityType);
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if (provider instanceof KitIntegration.AttributeListener && !provider.isDisabled()) {
+                        ((KitIntegration.AttributeListener) provider).removeUserIdentity(identityType);
+                    }
+                } catch (Exception e) {
+                    Logger.warning("Failed to call removeUserIdentity for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call removeUserIdentity for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
     }
 
     @Override
     public void logout() {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.AttributeListener && !provider.isDisabled()) {
-                    List<ReportingMessage> report = ((KitIntegration.AttributeListener) provider).logout();
-                    getReportingManager().logAll(report);
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if (provider instanceof KitIntegration.AttributeListener && !provider.isDisabled()) {
+                        List<ReportingMessage> report = ((KitIntegration.AttributeListener) provider).logout();
+                        getReportingManager().logAll(report);
+                    }
+                } catch (Exception e) {
+                    Logger.warning("Failed to call logout for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call logout for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
     }
 
     //================================================================================
@@ -790,190 +1070,219 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
     }
 
 
-    protected void logMPEvent(MPEvent event) {
+    protected void logMPEvent(final MPEvent event) {
         if (event.isScreenEvent()) {
             logScreen(event);
             return;
         }
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.EventListener && !provider.isDisabled() && provider.getConfiguration().shouldLogEvent(event)) {
-                    MPEvent eventCopy = new MPEvent(event);
-                    eventCopy.setCustomAttributes(
-                            provider.getConfiguration().filterEventAttributes(eventCopy)
-                    );
-                    List<CustomMapping.ProjectionResult> projectedEvents = CustomMapping.projectEvents(
-                            eventCopy,
-                            provider.getConfiguration().getCustomMappingList(),
-                            provider.getConfiguration().getDefaultEventProjection()
-                    );
-                    List<ReportingMessage> reportingMessages = new LinkedList<ReportingMessage>();
-                    if (projectedEvents == null) {
-                        List<ReportingMessage> messages = null;
-                        if (eventCopy.getCustomAttributes() != null
-                                && eventCopy.getCustomAttributes().containsKey(METHOD_NAME)
-                                && eventCopy.getCustomAttributes().get(METHOD_NAME).equals(LOG_LTV)) {
-                            messages = ((KitIntegration.CommerceListener) provider).logLtvIncrease(
-                                    new BigDecimal(eventCopy.getCustomAttributes().get(RESERVED_KEY_LTV)),
-                                    new BigDecimal(eventCopy.getCustomAttributes().get(RESERVED_KEY_LTV)),
-                                    eventCopy.getEventName(),
-                                    eventCopy.getCustomAttributes());
+        final HashedEvent hashedEvent = new HashedEvent(event.getEventType(), event.getEventName(), event.getCustomAttributes());
+        dispatch(new EventCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if (provider instanceof KitIntegration.EventListener && !provider.isDisabled() && provider.getConfiguration().shouldLogEvent(hashedEvent)) {
+                        MPEvent eventCopy = new MPEvent(event);
+                        eventCopy.setCustomAttributes(
+                                provider.getConfiguration().filterEventAttributes(hashedEvent)
+                        );
+                        List<CustomMapping.ProjectionResult> projectedEvents = CustomMapping.projectEvents(
+                                eventCopy,
+                                provider.getConfiguration().getCustomMappingIndex(),
+                                provider.getConfiguration().getDefaultEventProjection()
+                        );
+                        List<ReportingMessage> reportingMessages = new LinkedList<ReportingMessage>();
+                        if (projectedEvents == null) {
+                            List<ReportingMessage> messages = null;
+                            if (eventCopy.getCustomAttributes() != null
+                                    && eventCopy.getCustomAttributes().containsKey(METHOD_NAME)
+                                    && eventCopy.getCustomAttributes().get(METHOD_NAME).equals(LOG_LTV)) {
+                                messages = ((KitIntegration.CommerceListener) provider).logLtvIncrease(
+                                        new BigDecimal(eventCopy.getCustomAttributes().get(RESERVED_KEY_LTV)),
+                                        new BigDecimal(eventCopy.getCustomAttributes().get(RESERVED_KEY_LTV)),
+                                        eventCopy.getEventName(),
+                                        eventCopy.getCustomAttributes());
+                            } else {
+                                messages = ((KitIntegration.EventListener) provider).logEvent(eventCopy);
+                                mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(messages), eventCopy);
+                            }
+                            if (messages != null && messages.size() > 0) {
+                                reportingMessages.addAll(messages);
+                            }
                         } else {
-                            messages = ((KitIntegration.EventListener) provider).logEvent(eventCopy);
-                            mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(messages), eventCopy);
-                        }
-                        if (messages != null && messages.size() > 0) {
-                            reportingMessages.addAll(messages);
-                        }
-                    } else {
-                        ReportingMessage masterMessage = ReportingMessage.fromEvent(provider, eventCopy);
-                        boolean forwarded = false;
-                        for (int i = 0; i < projectedEvents.size(); i++) {
-                            MPEvent projectedEvent = projectedEvents.get(i).getMPEvent();
-                            List<ReportingMessage> messages = ((KitIntegration.EventListener) provider).logEvent(projectedEvent);
-                            mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(messages), projectedEvent);
+                            ReportingMessage masterMessage = ReportingMessage.fromEvent(provider, eventCopy);
+                            boolean forwarded = false;
+                            for (int i = 0; i < projectedEvents.size(); i++) {
+                                MPEvent projectedEvent = projectedEvents.get(i).getMPEvent();
+                                List<ReportingMessage> messages = ((KitIntegration.EventListener) provider).logEvent(projectedEvent);
+                                mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(messages), projectedEvent);
+
+                                if (messages != null && messages.size() > 0) {
+                                    forwarded = true;
+                                    for (ReportingMessage message : messages) {
+                                        ReportingMessage.ProjectionReport report = new ReportingMessage.ProjectionReport(
+                                                projectedEvents.get(i).getProjectionId(),
+                                                ReportingMessage.MessageType.EVENT,
+                                                message.getEventName(),
+                                                message.getEventTypeString()
+                                        );
+                                        masterMessage.addProjectionReport(report);
+                                    }
 
-                            if (messages != null && messages.size() > 0) {
-                                forwarded = true;
-                                for (ReportingMessage message : messages) {
-                                    ReportingMessage.ProjectionReport report = new ReportingMessage.ProjectionReport(
-                                            projectedEvents.get(i).getProjectionId(),
-                                            ReportingMessage.MessageType.EVENT,
-                                            message.getEventName(),
-                                            message.getEventTypeString()
-                                    );
-                                    masterMessage.addProjectionReport(report);
                                 }
-
+                            }
+                            if (forwarded) {
+                                reportingMessages.add(masterMessage);
                             }
                         }
-                        if (forwarded) {
-                            reportingMessages.add(masterMessage);
-                        }
+                        getReportingManager().logAll(reportingMessages);
                     }
-                    getReportingManager().logAll(reportingMessages);
+                } catch (Exception e) {
+                    Logger.warning("Failed to call logMPEvent for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call logMPEvent for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
     }
 
     @Override
-    public void leaveBreadcrumb(String breadcrumb) {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.EventListener && !provider.isDisabled()) {
-                    List<ReportingMessage> report = ((KitIntegration.EventListener) provider).leaveBreadcrumb(breadcrumb);
-                    getReportingManager().logAll(report);
-                    mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), breadcrumb);
+    public void leaveBreadcrumb(final String breadcrumb) {
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if (provider instanceof KitIntegration.EventListener && !provider.isDisabled()) {
+                        List<ReportingMessage> report = ((KitIntegration.EventListener) provider).leaveBreadcrumb(breadcrumb);
+                        getReportingManager().logAll(report);
+                        mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), breadcrumb);
+                    }
+                } catch (Exception e) {
+                    Logger.warning("Failed to call leaveBreadcrumb for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call leaveBreadcrumb for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
     }
 
     @Override
-    public void logError(String message, Map<String, String> eventData) {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.EventListener && !provider.isDisabled()) {
-                    List<ReportingMessage> report = ((KitIntegration.EventListener) provider).logError(message, eventData);
-                    getReportingManager().logAll(report);
-                    mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), message, eventData);
+    public void logError(final String message, Map<String, String> errorAttributes) {
+        final Map<String, String> eventData = snapshot(errorAttributes);
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if (provider instanceof KitIntegration.EventListener && !provider.isDisabled()) {
+                        List<ReportingMessage> report = ((KitIntegration.EventListener) provider).logError(message, eventData);
+                        getReportingManager().logAll(report);
+                        mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), message, eventData);
+                    }
+                } catch (Exception e) {
+                    Logger.warning("Failed to call logError for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call logError for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
     }
 
     @Override
-    public void logException(Exception exception, Map<String, String> eventData, String message) {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.EventListener && !provider.isDisabled()) {
-                    List<ReportingMessage> report = ((KitIntegration.EventListener) provider).logException(exception, eventData, message);
-                    getReportingManager().logAll(report);
-                    mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), exception, message, eventData);
+    public void logException(final Exception exception, Map<String, String> exceptionAttributes, final String message) {
+        final Map<String, String> eventData = snapshot(exceptionAttributes);
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if (provider instanceof KitIntegration.EventListener && !provider.isDisabled()) {
+                        List<ReportingMessage> report = ((KitIntegration.EventListener) provider).logException(exception, eventData, message);
+                        getReportingManager().logAll(report);
+                        mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), exception, message, eventData);
+                    }
+                } catch (Exception e) {
+                    Logger.warning("Failed to call logException for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call logException for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
     }
 
     @Override
-    public void logScreen(MPEvent screenEvent) {
+    public void logScreen(MPEvent event) {
         if (mDataplanFilter != null) {
-            screenEvent = mDataplanFilter.transformEventForEvent(screenEvent);
-            if (screenEvent == null) {
+            event = mDataplanFilter.transformEventForEvent(event);
+            if (event == null) {
                 return;
             }
         }
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.EventListener && !provider.isDisabled() && provider.getConfiguration().shouldLogScreen(screenEvent.getEventName())) {
-                    MPEvent filteredEvent = new MPEvent.Builder(screenEvent)
-                            .customAttributes(provider.getConfiguration().filterScreenAttributes(null, screenEvent.getEventName(), screenEvent.getCustomAttributes()))
-                            .build();
-
-                    List<CustomMapping.ProjectionResult> projectedEvents = CustomMapping.projectEvents(
-                            filteredEvent,
-                            true,
-                            provider.getConfiguration().getCustomMappingList(),
-                            provider.getConfiguration().getDefaultEventProjection(),
-                            provider.getConfiguration().getDefaultScreenCustomMapping());
-                    if (projectedEvents == null) {
-                        String eventName = filteredEvent.getEventName();
-                        Map<String, String> eventInfo = filteredEvent.getCustomAttributes();
-                        List<ReportingMessage> report = ((KitIntegration.EventListener) provider).logScreen(eventName, eventInfo);
-                        mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), eventName, eventInfo);
-                        if (report != null && report.size() > 0) {
-                            for (ReportingMessage message : report) {
-                                message.setMessageType(ReportingMessage.MessageType.SCREEN_VIEW);
-                                message.setScreenName(filteredEvent.getEventName());
-                            }
-                        }
-                        getReportingManager().logAll(report);
-                    } else {
-                        ReportingMessage masterMessage = new ReportingMessage(provider,
-                                ReportingMessage.MessageType.SCREEN_VIEW,
-                                System.currentTimeMillis(),
-                                filteredEvent.getCustomAttributes());
-                        boolean forwarded = false;
-                        for (CustomMapping.ProjectionResult projectedEvent: projectedEvents) {
-                            List<ReportingMessage> report = ((KitIntegration.EventListener) provider).logEvent(projectedEvent.getMPEvent());
-                            mCoreCallbacks.getKitListener().onKitApiCalled("logMPEvent()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), projectedEvent);
+        final MPEvent screenEvent = snapshot(event);
+        final HashedEvent hashedScreenEvent = new HashedEvent(null, screenEvent.getEventName(), screenEvent.getCustomAttributes());
+        dispatch(new EventCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if (provider instanceof KitIntegration.EventListener && !provider.isDisabled() && provider.getConfiguration().shouldLogScreen(hashedScreenEvent)) {
+                        MPEvent filteredEvent = new MPEvent.Builder(screenEvent)
+                                .customAttributes(provider.getConfiguration().filterScreenAttributes(hashedScreenEvent))
+                                .build();
+
+                        List<CustomMapping.ProjectionResult> projectedEvents = CustomMapping.projectEvents(
+                                filteredEvent,
+                                true,
+                                provider.getConfiguration().getCustomMappingIndex(),
+                                provider.getConfiguration().getDefaultEventProjection(),
+                                provider.getConfiguration().getDefaultScreenCustomMapping());
+                        if (projectedEvents == null) {
+                            String eventName = filteredEvent.getEventName();
+                            Map<String, String> eventInfo = filteredEvent.getCustomAttributes();
+                            List<ReportingMessage> report = ((KitIntegration.EventListener) provider).logScreen(eventName, eventInfo);
+                            mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), eventName, eventInfo);
                             if (report != null && report.size() > 0) {
-                                forwarded = true;
                                 for (ReportingMessage message : report) {
-                                    ReportingMessage.ProjectionReport projectionReport = new ReportingMessage.ProjectionReport(
-                                            projectedEvent.getProjectionId(),
-                                            ReportingMessage.MessageType.EVENT,
-                                            message.getEventName(),
-                                            message.getEventTypeString()
-                                    );
-                                    masterMessage.addProjectionReport(projectionReport);
+                                    message.setMessageType(ReportingMessage.MessageType.SCREEN_VIEW);
+                                    message.setScreenName(filteredEvent.getEventName());
                                 }
                             }
-                        }
-                        if (forwarded) {
-                            getReportingManager().log(masterMessage);
+                            getReportingManager().logAll(report);
+                        } else {
+                            ReportingMessage masterMessage = new ReportingMessage(provider,
+                                    ReportingMessage.MessageType.SCREEN_VIEW,
+                                    System.currentTimeMillis(),
+                                    filteredEvent.getCustomAttributes());
+                            boolean forwarded = false;
+                            for (CustomMapping.ProjectionResult projectedEvent: projectedEvents) {
+                                List<ReportingMessage> report = ((KitIntegration.EventListener) provider).logEvent(projectedEvent.getMPEvent());
+                                mCoreCallbacks.getKitListener().onKitApiCalled("logMPEvent()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), projectedEvent);
+                                if (report != null && report.size() > 0) {
+                                    forwarded = true;
+                                    for (ReportingMessage message : report) {
+                                        ReportingMessage.ProjectionReport projectionReport = new ReportingMessage.ProjectionReport(
+                                                projectedEvent.getProjectionId(),
+                                                ReportingMessage.MessageType.EVENT,
+                                                message.getEventName(),
+                                                message.getEventTypeString()
+                                        );
+                                        masterMessage.addProjectionReport(projectionReport);
+                                    }
+                                }
+                            }
+                            if (forwarded) {
+                                getReportingManager().log(masterMessage);
+                            }
                         }
                     }
+                } catch (Exception e) {
+                    Logger.warning("Failed to call logScreen for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call logScreen for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
     }
 
     //================================================================================
     // KitIntegration.ActivityListener forwarding
+    //
+    // Activity and application lifecycle callbacks are never dispatched to a kit's
+    // background queue, since kits typically need to act on them before they return.
     //================================================================================
 
+    @MainThread
     @Override
     public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
         for (KitIntegration provider : providers.values()) {
@@ -988,6 +1297,7 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         }
     }
 
+    @MainThread
     @Override
     public void onActivityStarted(Activity activity) {
         for (KitIntegration provider : providers.values()) {
@@ -1002,6 +1312,7 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         }
     }
 
+    @MainThread
     @Override
     public void onActivityResumed(Activity activity) {
         for (KitIntegration provider : providers.values()) {
@@ -1016,6 +1327,7 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         }
     }
 
+    @MainThread
     @Override
     public void onActivityPaused(Activity activity) {
         for (KitIntegration provider : providers.values()) {
@@ -1030,6 +1342,7 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         }
     }
 
+    @MainThread
     @Override
     public void onActivityStopped(Activity activity) {
         for (KitIntegration provider : providers.values()) {
@@ -1044,6 +1357,7 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         }
     }
 
+    @MainThread
     @Override
     public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
         for (KitIntegration provider : providers.values()) {
@@ -1058,6 +1372,7 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         }
     }
 
+    @MainThread
     @Override
     public void onActivityDestroyed(Activity activity) {
         for (KitIntegration provider : providers.values()) {
@@ -1074,32 +1389,41 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
 
     @Override
     public void onSessionEnd() {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.SessionListener && !provider.isDisabled()) {
-                    List<ReportingMessage> reportingMessages = ((KitIntegration.SessionListener) provider).onSessionEnd();
-                    getReportingManager().logAll(reportingMessages);
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if (provider instanceof KitIntegration.SessionListener && !provider.isDisabled()) {
+                        List<ReportingMessage> reportingMessages = ((KitIntegration.SessionListener) provider).onSessionEnd();
+                        getReportingManager().logAll(reportingMessages);
+                    }
+                } catch (Exception e) {
+                    Logger.warning("Failed to call onSessionEnd for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call onSessionEnd for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
     }
 
     @Override
     public void onSessionStart() {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.SessionListener && !provider.isDisabled()) {
-                    List<ReportingMessage> reportingMessages = ((KitIntegration.SessionListener) provider).onSessionStart();
-                    getReportingManager().logAll(reportingMessages);
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if (provider instanceof KitIntegration.SessionListener && !provider.isDisabled()) {
+                        List<ReportingMessage> reportingMessages = ((KitIntegration.SessionListener) provider).onSessionStart();
+                        getReportingManager().logAll(reportingMessages);
+                    }
+                } catch (Exception e) {
+                    Logger.warning("Failed to call onSessionStart for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call onSessionStart for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
     }
 
+    @MainThread
     @Override
     public void onApplicationForeground() {
         for (KitIntegration provider : providers.values()) {
@@ -1113,6 +1437,7 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         }
     }
 
+    @MainThread
     @Override
     public void onApplicationBackground() {
         for (KitIntegration provider : providers.values()) {
@@ -1124,6 +1449,9 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
                 Logger.warning("Failed to call onApplicationBackground for kit: " + provider.getName() + ": " + e.getMessage());
             }
         }
+        for (KitInvocationStats stats : getKitInvocationStats().values()) {
+            mCoreCallbacks.getKitListener().kitInvocationStats(stats);
+        }
     }
 
     @Override
@@ -1155,87 +1483,110 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
 
     @Override
     public void installReferrerUpdated() {
-        Intent mockIntent = getMockInstallReferrerIntent(MParticle.getInstance().getInstallReferrer());
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (!provider.isDisabled()) {
-                    provider.setInstallReferrer(mockIntent);
+        final Intent mockIntent = getMockInstallReferrerIntent(MParticle.getInstance().getInstallReferrer());
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if (!provider.isDisabled()) {
+                        provider.setInstallReferrer(mockIntent);
+                    }
+                } catch (Exception e) {
+                    Logger.warning("Failed to update Install Referrer for kit: " + provider.getName() + ": " + e.getMessage());
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to update Install Referrer for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
     }
 
     //================================================================================
     // IdentityListener forwarding
     //================================================================================
     @Override
-    public void onUserIdentified(MParticleUser mParticleUser, MParticleUser previousUser) {
+    public void onUserIdentified(final MParticleUser mParticleUser, final MParticleUser previousUser) {
         //due to consent forwarding rules we need to re-verify kits whenever the user changes
         updateKits(mCoreCallbacks.getLatestKitConfiguration());
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.IdentityListener && !provider.isDisabled()) {
-                    ((KitIntegration.IdentityListener) provider).onUserIdentified(FilteredMParticleUser.getInstance(mParticleUser, provider));
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if (provider instanceof KitIntegration.IdentityListener && !provider.isDisabled()) {
+                        ((KitIntegration.IdentityListener) provider).onUserIdentified(FilteredMParticleUser.getInstance(mParticleUser, provider));
+                    }
+                } catch (Exception e) {
+                    Logger.warning("Failed to call onUserIdentified for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call onUserIdentified for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
         mParticleUser.getUserAttributes(this);
     }
 
     @Override
-    public void onIdentifyCompleted(MParticleUser mParticleUser, IdentityApiRequest identityApiRequest) {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.IdentityListener && !provider.isDisabled()) {
-                    ((KitIntegration.IdentityListener) provider).onIdentifyCompleted(FilteredMParticleUser.getInstance(mParticleUser, provider), new FilteredIdentityApiRequest(identityApiRequest, provider));
+    public void onIdentifyCompleted(final MParticleUser mParticleUser, final IdentityApiRequest identityApiRequest) {
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if (provider instanceof KitIntegration.IdentityListener && !provider.isDisabled()) {
+                        ((KitIntegration.IdentityListener) provider).onIdentifyCompleted(FilteredMParticleUser.getInstance(mParticleUser, provider), new FilteredIdentityApiRequest(identityApiRequest, provider));
+                    }
+                } catch (Exception e) {
+                    Logger.warning("Failed to call onIdentifyCompleted for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call onIdentifyCompleted for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
     }
 
     @Override
-    public void onLoginCompleted(MParticleUser mParticleUser, IdentityApiRequest identityApiRequest) {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.IdentityListener && !provider.isDisabled()) {
-                    ((KitIntegration.IdentityListener) provider).onLoginCompleted(FilteredMParticleUser.getInstance(mParticleUser, provider), new FilteredIdentityApiRequest(identityApiRequest, provider));
+    public void onLoginCompleted(final MParticleUser mParticleUser, final IdentityApiRequest identityApiRequest) {
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if (provider instanceof KitIntegration.IdentityListener && !provider.isDisabled()) {
+                        ((KitIntegration.IdentityListener) provider).onLoginCompleted(FilteredMParticleUser.getInstance(mParticleUser, provider), new FilteredIdentityApiRequest(identityApiRequest, provider));
+                    }
+                } catch (Exception e) {
+                    Logger.warning("Failed to call onLoginCompleted for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call onLoginCompleted for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
     }
 
     @Override
-    public void onLogoutCompleted(MParticleUser mParticleUser, IdentityApiRequest identityApiRequest) {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.IdentityListener && !provider.isDisabled()) {
-                    ((KitIntegration.IdentityListener) provider).onLogoutCompleted(FilteredMParticleUser.getInstance(mParticleUser, provider), new FilteredIdentityApiRequest(identityApiRequest, provider));
+    public void onLogoutCompleted(final MParticleUser mParticleUser, final IdentityApiRequest identityApiRequest) {
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if (provider instanceof KitIntegration.IdentityListener && !provider.isDisabled()) {
+                        ((KitIntegration.IdentityListener) provider).onLogoutCompleted(FilteredMParticleUser.getInstance(mParticleUser, provider), new FilteredIdentityApiRequest(identityApiRequest, provider));
+                    }
+                } catch (Exception e) {
+                    Logger.warning("Failed to call onLogoutCompleted for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call onLogoutCompleted for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
     }
 
     @Override
-    public void onModifyCompleted(MParticleUser mParticleUser, IdentityApiRequest identityApiRequest) {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.IdentityListener && !provider.isDisabled()) {
-                    ((KitIntegration.IdentityListener) provider).onModifyCompleted(FilteredMParticleUser.getInstance(mParticleUser, provider), new FilteredIdentityApiRequest(identityApiRequest, provider));
+    public void onModifyCompleted(final MParticleUser mParticleUser, final IdentityApiRequest identityApiRequest) {
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    if (provider instanceof KitIntegration.IdentityListener && !provider.isDisabled()) {
+                        ((KitIntegration.IdentityListener) provider).onModifyCompleted(FilteredMParticleUser.getInstance(mParticleUser, provider), new FilteredIdentityApiRequest(identityApiRequest, provider));
+                    }
+                } catch (Exception e) {
+                    Logger.warning("Failed to call onModifyCompleted for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call onModifyCompleted for kit: " + provider.getName() + ": " + e.getMessage());
             }
-        }
+        });
     }
 
     @Override
@@ -1245,18 +1596,22 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         Runnable runnable = new Runnable() {
             @Override
             public void run() {
-                for (KitIntegration provider : providers.values()) {
-                    if (provider instanceof KitIntegration.UserAttributeListener && !provider.isDisabled()) {
-                        try {
-                            ((KitIntegration.UserAttributeListener) provider).onConsentStateUpdated(oldState, newState, FilteredMParticleUser.getInstance(mpid, provider));
-                        } catch (Exception e) {
-                            Logger.warning("Failed to call onConsentStateUpdated for kit: " + provider.getName() + ": " + e.getMessage());
+                dispatch(new KitCall() {
+                    @Override
+                    public void call(KitIntegration provider) {
+                        if (provider instanceof KitIntegration.UserAttributeListener && !provider.isDisabled()) {
+                            try {
+                                ((KitIntegration.UserAttributeListener) provider).onConsentStateUpdated(oldState, newState, FilteredMParticleUser.getInstance(mpid, provider));
+                            } catch (Exception e) {
+                                Logger.warning("Failed to call onConsentStateUpdated for kit: " + provider.getName() + ": " + e.getMessage());
+                                recordException(provider);
+                            }
                         }
                     }
-                }
+                });
             }
         };
-        //This needs to be run on the main thread, after kit configuration/consent forwarding rules, which also happen on the main thread.
+        //This needs to be run (or dispatched) on the main thread, after kit configuration/consent forwarding rules, which also happen on the main thread.
         if (Looper.getMainLooper() != Looper.myLooper()) {
             Handler handler = new Handler(getContext().getMainLooper());
             handler.post(runnable);
@@ -1268,13 +1623,17 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
 
     @Override
     public void reset() {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                provider.reset();
-            } catch (Exception e) {
-                Logger.warning("Failed to call reset for kit: " + provider.getName() + ": " + e.getMessage());
+        dispatch(new KitCall() {
+            @Override
+            public void call(KitIntegration provider) {
+                try {
+                    provider.reset();
+                } catch (Exception e) {
+                    Logger.warning("Failed to call reset for kit: " + provider.getName() + ": " + e.getMessage());
+                    recordException(provider);
+                }
             }
-        }
+        });
     }
 
     public void executeNetworkRequest(Runnable runnable) {
@@ -59,6 +59,17 @@ public final class KitUtils {
         return MPUtility.mpHash(input);
     }
 
+    /**
+     * Continue a filtering hash, such that hashForFiltering(hashForFiltering(a), b) is the hash of a + b.
+     *
+     * @param hash the hash of the preceding input
+     * @param input
+     * @return return int hash
+     */
+    public static int hashForFiltering(int hash, String input) {
+        return MPUtility.mpHash(hash, input);
+    }
+
 
     /**
      * Determine if the given CharSequence is null or 0-length. This is the same
@@ -405,29 +405,34 @@ public class CustomMapping {
         return projectEvents(event, false, customMappingList, defaultCustomMapping, null);
     }
 
+    public static List<CustomMapping.ProjectionResult> projectEvents(MPEvent event, CustomMappingIndex customMappingIndex, CustomMapping defaultCustomMapping) {
+        return projectEvents(event, false, customMappingIndex, defaultCustomMapping, null);
+    }
+
     public static List<CustomMapping.ProjectionResult> projectEvents(CommerceEvent event, List<CustomMapping> customMappingList, CustomMapping defaultCommerceCustomMapping) {
         if (CommerceEventUtils.getEventType(event) == CommerceEventUtils.Constants.EVENT_TYPE_IMPRESSION) {
             return null;
         }
-        List<CustomMapping.ProjectionResult> events = new LinkedList<CustomMapping.ProjectionResult>();
-        EventWrapper.CommerceEventWrapper wrapper = new EventWrapper.CommerceEventWrapper(event);
-        for (int i = 0; i < customMappingList.size(); i++) {
-            CustomMapping customMapping = customMappingList.get(i);
-            if (customMapping.isMatch(wrapper)) {
-                List<CustomMapping.ProjectionResult> results = customMapping.project(wrapper);
-                if (results != null) {
-                    events.addAll(results);
-                }
-            }
+        return projectEvents(new EventWrapper.CommerceEventWrapper(event), customMappingList, defaultCommerceCustomMapping);
+    }
+
+    /**
+     * Project a CommerceEvent, only evaluating the mappings which are indexed under its message type and event hash.
+     */
+    public static List<CustomMapping.ProjectionResult> projectEvents(CommerceEvent event, CustomMappingIndex customMappingIndex, CustomMapping defaultCommerceCustomMapping) {
+        if (CommerceEventUtils.getEventType(event) == CommerceEventUtils.Constants.EVENT_TYPE_IMPRESSION) {
+            return null;
         }
-        if (events.isEmpty()) {
-            if (defaultCommerceCustomMapping != null) {
-                events.addAll(defaultCommerceCustomMapping.project(wrapper));
-            } else {
-                return null;
-            }
+        EventWrapper.CommerceEventWrapper wrapper = new EventWrapper.CommerceEventWrapper(event);
+        return projectEvents(wrapper, customMappingIndex.getCandidates(wrapper), defaultCommerceCustomMapping);
+    }
+
+    private List<ProjectionResult> projectWrapper(EventWrapper wrapper) {
+        if (wrapper instanceof EventWrapper.CommerceEventWrapper) {
+            return project((EventWrapper.CommerceEventWrapper) wrapper);
+        } else {
+            return project((EventWrapper.MPEventWrapper) wrapper);
         }
-        return events;
     }
 
     boolean isMatch(EventWrapper wrapper) {
@@ -443,13 +448,24 @@ public class CustomMapping {
     }
 
     public static List<CustomMapping.ProjectionResult> projectEvents(MPEvent event, boolean isScreenEvent, List<CustomMapping> customMappingList, CustomMapping defaultCustomMapping, CustomMapping defaultScreenCustomMapping) {
-        List<CustomMapping.ProjectionResult> events = new LinkedList<CustomMapping.ProjectionResult>();
+        EventWrapper.MPEventWrapper wrapper = new EventWrapper.MPEventWrapper(event, isScreenEvent);
+        return projectEvents(wrapper, customMappingList, isScreenEvent ? defaultScreenCustomMapping : defaultCustomMapping);
+    }
 
+    /**
+     * Project an MPEvent, only evaluating the mappings which are indexed under its message type and event hash.
+     */
+    public static List<CustomMapping.ProjectionResult> projectEvents(MPEvent event, boolean isScreenEvent, CustomMappingIndex customMappingIndex, CustomMapping defaultCustomMapping, CustomMapping defaultScreenCustomMapping) {
         EventWrapper.MPEventWrapper wrapper = new EventWrapper.MPEventWrapper(event, isScreenEvent);
+        return projectEvents(wrapper, customMappingIndex.getCandidates(wrapper), isScreenEvent ? defaultScreenCustomMapping : defaultCustomMapping);
+    }
+
+    private static List<CustomMapping.ProjectionResult> projectEvents(EventWrapper wrapper, List<CustomMapping> customMappingList, CustomMapping defaultCustomMapping) {
+        List<CustomMapping.ProjectionResult> events = new LinkedList<CustomMapping.ProjectionResult>();
         for (int i = 0; i < customMappingList.size(); i++) {
             CustomMapping customMapping = customMappingList.get(i);
             if (customMapping.isMatch(wrapper)) {
-                List<CustomMapping.ProjectionResult> newEvents = customMapping.project(wrapper);
+                List<CustomMapping.ProjectionResult> newEvents = customMapping.projectWrapper(wrapper);
                 if (newEvents != null) {
                     events.addAll(newEvents);
                 }
@@ -457,18 +473,10 @@ public class CustomMapping {
         }
 
         if (events.isEmpty()) {
-            if (isScreenEvent) {
-                if (defaultScreenCustomMapping != null) {
-                    events.addAll(defaultScreenCustomMapping.project(wrapper));
-                } else {
-                    return null;
-                }
+            if (defaultCustomMapping != null) {
+                events.addAll(defaultCustomMapping.projectWrapper(wrapper));
             } else {
-                if (defaultCustomMapping != null) {
-                    events.addAll(defaultCustomMapping.project(wrapper));
-                } else {
-                    return null;
-                }
+                return null;
             }
         }
 
@@ -0,0 +1,136 @@
+package com.mparticle.kits.mappings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A kit's custom mappings, indexed by message type and event hash when the configuration is parsed,
+ * so that projecting an event only evaluates the mappings which could match it, rather than every
+ * mapping the kit has.
+ */
+public final class CustomMappingIndex {
+    static final int MESSAGE_TYPE_COMMERCE = 16;
+
+    private final List<CustomMapping> mCustomMappings;
+    //the candidate lists are merged, ordered and made immutable here, and shared by every lookup
+    private final List<CustomMapping> mDefaults;
+    private final Map<Integer, List<CustomMapping>> mByMessageType = new HashMap<Integer, List<CustomMapping>>();
+    private final Map<Integer, Map<Integer, List<CustomMapping>>> mByEventHash = new HashMap<Integer, Map<Integer, List<CustomMapping>>>();
+
+    public CustomMappingIndex(List<CustomMapping> customMappings) {
+        mCustomMappings = new ArrayList<CustomMapping>(customMappings);
+        List<Candidate> defaults = new ArrayList<Candidate>();
+        Map<Integer, List<Candidate>> byMessageType = new HashMap<Integer, List<Candidate>>();
+        Map<Integer, Map<Integer, List<Candidate>>> byEventHash = new HashMap<Integer, Map<Integer, List<Candidate>>>();
+        for (int i = 0; i < mCustomMappings.size(); i++) {
+            CustomMapping customMapping = mCustomMappings.get(i);
+            Candidate candidate = new Candidate(i, customMapping);
+            if (customMapping.isDefault() || customMapping.getMatchList().isEmpty()) {
+                defaults.add(candidate);
+                continue;
+            }
+            //every match has to succeed, so the mapping only needs to be indexed by one of them
+            CustomMappingMatch indexedMatch = null;
+            for (CustomMappingMatch match : customMapping.getMatchList()) {
+                if (match.matchesEventHashOnly()) {
+                    indexedMatch = match;
+                    break;
+                }
+            }
+            if (indexedMatch != null) {
+                Map<Integer, List<Candidate>> eventHashes = byEventHash.get(indexedMatch.mMessageType);
+                if (eventHashes == null) {
+                    eventHashes = new HashMap<Integer, List<Candidate>>();
+                    byEventHash.put(indexedMatch.mMessageType, eventHashes);
+                }
+                add(eventHashes, indexedMatch.mEventHash, candidate);
+            } else {
+                add(byMessageType, customMapping.getMessageType(), candidate);
+            }
+        }
+        mDefaults = merge(defaults, null, null);
+        for (Map.Entry<Integer, List<Candidate>> messageType : byMessageType.entrySet()) {
+            mByMessageType.put(messageType.getKey(), merge(defaults, messageType.getValue(), null));
+        }
+        for (Map.Entry<Integer, Map<Integer, List<Candidate>>> messageType : byEventHash.entrySet()) {
+            Map<Integer, List<CustomMapping>> eventHashes = new HashMap<Integer, List<CustomMapping>>();
+            for (Map.Entry<Integer, List<Candidate>> eventHash : messageType.getValue().entrySet()) {
+                eventHashes.put(eventHash.getKey(), merge(defaults, byMessageType.get(messageType.getKey()), eventHash.getValue()));
+            }
+            mByEventHash.put(messageType.getKey(), eventHashes);
+        }
+    }
+
+    /**
+     * @return the mappings in their configured order
+     */
+    public List<CustomMapping> getCustomMappings() {
+        return mCustomMappings;
+    }
+
+    public int size() {
+        return mCustomMappings.size();
+    }
+
+    /**
+     * @return the mappings which may match the event, in their configured order. The list is
+     * immutable, and shared by every event with the same message type and event hash.
+     */
+    List<CustomMapping> getCandidates(EventWrapper wrapper) {
+        Map<Integer, List<CustomMapping>> eventHashes = mByEventHash.get(wrapper.getMessageType());
+        if (eventHashes != null) {
+            List<CustomMapping> candidates = eventHashes.get(wrapper.getEventHash());
+            if (candidates != null) {
+                return candidates;
+            }
+        }
+        List<CustomMapping> candidates = mByMessageType.get(wrapper.getMessageType());
+        return candidates != null ? candidates : mDefaults;
+    }
+
+    private static List<CustomMapping> merge(List<Candidate> defaults, List<Candidate> byMessageType, List<Candidate> byEventHash) {
+        List<Candidate> candidates = new ArrayList<Candidate>(defaults);
+        if (byMessageType != null) {
+            candidates.addAll(byMessageType);
+        }
+        if (byEventHash != null) {
+            candidates.addAll(byEventHash);
+        }
+        Collections.sort(candidates, POSITION_ORDER);
+        List<CustomMapping> customMappings = new ArrayList<CustomMapping>(candidates.size());
+        for (Candidate candidate : candidates) {
+            customMappings.add(candidate.mCustomMapping);
+        }
+        return Collections.unmodifiableList(customMappings);
+    }
+
+    private static void add(Map<Integer, List<Candidate>> index, int key, Candidate candidate) {
+        List<Candidate> candidates = index.get(key);
+        if (candidates == null) {
+            candidates = new ArrayList<Candidate>();
+            index.put(key, candidates);
+        }
+        candidates.add(candidate);
+    }
+
+    private static final Comparator<Candidate> POSITION_ORDER = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate lhs, Candidate rhs) {
+            return lhs.mPosition < rhs.mPosition ? -1 : (lhs.mPosition == rhs.mPosition ? 0 : 1);
+        }
+    };
+
+    private static final class Candidate {
+        final int mPosition;
+        final CustomMapping mCustomMapping;
+
+        Candidate(int position, CustomMapping customMapping) {
+            mPosition = position;
+            mCustomMapping = customMapping;
+        }
+    }
+}
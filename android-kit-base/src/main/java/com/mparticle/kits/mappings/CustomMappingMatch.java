@@ -33,6 +33,8 @@ final class CustomMappingMatch {
     String mMatchType = "String";
     String commerceMatchProperty = null;
     String commerceMatchPropertyName = null;
+    int commerceMatchPropertyHash;
+    boolean hasCommerceMatchPropertyHash = false;
     Set<String> commerceMatchPropertyValues = null;
     int mEventHash;
     String mEventName = null;
@@ -52,6 +54,14 @@ final class CustomMappingMatch {
             mMatchType = match.optString("event_match_type", "String");
             commerceMatchProperty = match.optString("property", PROPERTY_LOCATION_EVENT_ATTRIBUTE);
             commerceMatchPropertyName = match.optString("property_name", null);
+            if (commerceMatchPropertyName != null) {
+                try {
+                    commerceMatchPropertyHash = Integer.parseInt(commerceMatchPropertyName);
+                    hasCommerceMatchPropertyHash = true;
+                } catch (NumberFormatException nfe) {
+
+                }
+            }
             if (match.has("property_values")) {
                 try {
                     JSONArray propertyValues = match.getJSONArray("property_values");
@@ -94,6 +104,21 @@ final class CustomMappingMatch {
         }
     }
 
+    /**
+     * @return true if this match can only succeed for events with an event hash of mEventHash, which
+     * allows a {@link CustomMappingIndex} to look it up by hash rather than evaluating it for every event
+     */
+    boolean matchesEventHashOnly() {
+        if (!mMatchType.startsWith(MATCH_TYPE_HASH)) {
+            return false;
+        }
+        if (mMessageType == CustomMappingIndex.MESSAGE_TYPE_COMMERCE) {
+            //commerce events are matched on the property instead, if there is one
+            return commerceMatchProperty == null || commerceMatchPropertyName == null;
+        }
+        return true;
+    }
+
     /**
      * This is an optimization - check the basic stuff to see if we have a match before actually trying to do the projection.
      */
@@ -166,7 +191,10 @@ final class CustomMappingMatch {
     }
 
     private CommerceEvent matchPromotionFields(CommerceEvent event) {
-        int hash = Integer.parseInt(commerceMatchPropertyName);
+        if (!hasCommerceMatchPropertyHash) {
+            return null;
+        }
+        int typeHash = KitUtils.hashForFiltering(String.valueOf(CommerceEventUtils.getEventType(event)));
         List<Promotion> promotionList = event.getPromotions();
         if (promotionList == null || promotionList.size() == 0) {
             return null;
@@ -178,8 +206,8 @@ final class CustomMappingMatch {
             CommerceEventUtils.extractPromotionAttributes(promotion, promotionFields);
             if (promotionFields != null) {
                 for (Map.Entry<String, String> entry : promotionFields.entrySet()) {
-                    int attributeHash = KitUtils.hashForFiltering(CommerceEventUtils.getEventType(event) + entry.getKey());
-                    if (attributeHash == hash) {
+                    int attributeHash = KitUtils.hashForFiltering(typeHash, String.valueOf(entry.getKey()));
+                    if (attributeHash == commerceMatchPropertyHash) {
                         if (commerceMatchPropertyValues.contains(entry.getValue().toLowerCase(Locale.US))) {
                             matchedPromotions.add(promotion);
                         }
@@ -197,8 +225,10 @@ final class CustomMappingMatch {
     }
 
     private CommerceEvent matchProductFields(CommerceEvent event) {
-        int hash = Integer.parseInt(commerceMatchPropertyName);
-        int type = CommerceEventUtils.getEventType(event);
+        if (!hasCommerceMatchPropertyHash) {
+            return null;
+        }
+        int typeHash = KitUtils.hashForFiltering(String.valueOf(CommerceEventUtils.getEventType(event)));
         List<Product> productList = event.getProducts();
         if (productList == null || productList.size() == 0) {
             return null;
@@ -210,8 +240,8 @@ final class CustomMappingMatch {
             CommerceEventUtils.extractProductFields(product, productFields);
             if (productFields != null) {
                 for (Map.Entry<String, String> entry : productFields.entrySet()) {
-                    int attributeHash = KitUtils.hashForFiltering(type + entry.getKey());
-                    if (attributeHash == hash) {
+                    int attributeHash = KitUtils.hashForFiltering(typeHash, String.valueOf(entry.getKey()));
+                    if (attributeHash == commerceMatchPropertyHash) {
                         if (commerceMatchPropertyValues.contains(entry.getValue().toLowerCase(Locale.US))) {
                             matchedProducts.add(product);
                         }
@@ -229,7 +259,10 @@ final class CustomMappingMatch {
     }
 
     private CommerceEvent matchProductAttributes(CommerceEvent event) {
-        int hash = Integer.parseInt(commerceMatchPropertyName);
+        if (!hasCommerceMatchPropertyHash) {
+            return null;
+        }
+        int typeHash = KitUtils.hashForFiltering(String.valueOf(CommerceEventUtils.getEventType(event)));
         List<Product> productList = event.getProducts();
         if (productList == null || productList.size() == 0) {
             return null;
@@ -239,8 +272,8 @@ final class CustomMappingMatch {
             Map<String, String> attributes = product.getCustomAttributes();
             if (attributes != null) {
                 for (Map.Entry<String, String> entry : attributes.entrySet()) {
-                    int attributeHash = KitUtils.hashForFiltering(CommerceEventUtils.getEventType(event) + entry.getKey());
-                    if (attributeHash == hash) {
+                    int attributeHash = KitUtils.hashForFiltering(typeHash, String.valueOf(entry.getKey()));
+                    if (attributeHash == commerceMatchPropertyHash) {
                         if (commerceMatchPropertyValues.contains(entry.getValue().toLowerCase(Locale.US))) {
                             matchedProducts.add(product);
                         }
@@ -259,13 +292,13 @@ final class CustomMappingMatch {
 
     private boolean matchCommerceAttributes(CommerceEvent event) {
         Map<String, String> attributes = event.getCustomAttributes();
-        if (attributes == null || attributes.size() < 1) {
+        if (attributes == null || attributes.size() < 1 || !hasCommerceMatchPropertyHash) {
             return false;
         }
-        int hash = Integer.parseInt(commerceMatchPropertyName);
+        int typeHash = KitUtils.hashForFiltering(String.valueOf(CommerceEventUtils.getEventType(event)));
         for (Map.Entry<String, String> entry : attributes.entrySet()) {
-            int attributeHash = KitUtils.hashForFiltering(CommerceEventUtils.getEventType(event) + entry.getKey());
-            if (attributeHash == hash) {
+            int attributeHash = KitUtils.hashForFiltering(typeHash, String.valueOf(entry.getKey()));
+            if (attributeHash == commerceMatchPropertyHash) {
                 return commerceMatchPropertyValues.contains(entry.getValue().toLowerCase(Locale.US));
             }
         }
@@ -273,12 +306,15 @@ final class CustomMappingMatch {
     }
 
     private boolean matchCommerceFields(CommerceEvent event) {
-        int hash = Integer.parseInt(commerceMatchPropertyName);
+        if (!hasCommerceMatchPropertyHash) {
+            return false;
+        }
+        int typeHash = KitUtils.hashForFiltering(String.valueOf(CommerceEventUtils.getEventType(event)));
         Map<String, String> fields = new HashMap<String, String>();
         CommerceEventUtils.extractActionAttributes(event, fields);
         for (Map.Entry<String, String> entry : fields.entrySet()) {
-            int fieldHash = KitUtils.hashForFiltering(CommerceEventUtils.getEventType(event) + entry.getKey());
-            if (fieldHash == hash) {
+            int fieldHash = KitUtils.hashForFiltering(typeHash, String.valueOf(entry.getKey()));
+            if (fieldHash == commerceMatchPropertyHash) {
                 return commerceMatchPropertyValues.contains(entry.getValue().toLowerCase(Locale.US));
             }
 
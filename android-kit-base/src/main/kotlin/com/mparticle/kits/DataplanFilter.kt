@@ -10,6 +10,7 @@ import com.mparticle.internal.Logger
 import org.json.JSONArray
 
 import org.json.JSONObject;
+import java.util.EnumMap
 
 internal interface DataplanFilter {
     fun <T: BaseEvent> transformEventForEvent(event: T?): T?
@@ -49,6 +50,22 @@ Data Plan parsed for Kit Filtering:
         """)
         }
 
+    /**
+     * The data plan, compiled into lookups by event type and then by event name, so that finding
+     * the datapoint for an event does not require building its key
+     */
+    private val customEvents = EnumMap<MParticle.EventType, HashMap<String, EventDataPoint>>(MParticle.EventType::class.java)
+    private val screenEvents = HashMap<String, EventDataPoint>()
+    private val productActions = HashMap<String, EventDataPoint>()
+    private val promotionActions = HashMap<String, EventDataPoint>()
+    private var productImpressions: EventDataPoint? = null
+    private val userAttributesDataPoint = dataPoints[USER_ATTRIBUTES_KEY]
+    private val userIdentitiesDataPoint = dataPoints[USER_IDENTITIES_KEY]
+
+    init {
+        dataPoints.forEach { (key, attributes) -> compileDataPoint(key, attributes) }
+    }
+
     /**
      * filters out events and their attributes if
      * 1) they are not defined within the dataplan
@@ -61,61 +78,44 @@ Data Plan parsed for Kit Filtering:
             return null
         }
         if (blockEvents || blockEventAttributes) {
-            val dataPointKey = when {
+            val dataPoint = when {
                 event is MPEvent ->
                     when {
-                        event.isScreenEvent -> DataPoint(SCREEN_EVENT_KEY, event.eventName)
-                        else -> DataPoint(CUSTOM_EVENT_KEY, event.eventName, event.eventType.getEventsApiName())
+                        event.isScreenEvent -> screenEvents[event.eventName]
+                        else -> customEvents[event.eventType]?.get(event.eventName)
                     }
                 event is CommerceEvent ->
                     when {
-                        !event.productAction.isNullOrBlank() -> DataPoint(PRODUCT_ACTION_KEY, event.productAction)
-                        !event.promotionAction.isNullOrBlank() -> DataPoint(PROMOTION_ACTION_KEY, event.promotionAction)
-                        !event.impressions.isNullOrEmpty() -> DataPoint(PRODUCT_IMPRESSION_KEY)
-                        else -> null
+                        !event.productAction.isNullOrBlank() -> productActions[event.productAction]
+                        !event.promotionAction.isNullOrBlank() -> promotionActions[event.promotionAction]
+                        !event.impressions.isNullOrEmpty() -> productImpressions
+                        //shouldn't happen but we have to handle it
+                        else -> return event
                     }
-                else -> null
+                else -> return event
             }
-            //shouldn't happen but we have to handle it
-            dataPointKey ?: return event
             //if there is no valid datapoint then it is an unplanned event
-            if (blockEvents && !dataPoints.containsKey(dataPointKey.toString())) {
-                Logger.verbose("Blocking unplanned event: $dataPointKey")
+            if (blockEvents && dataPoint?.isPlanned != true) {
+                Logger.verbose("Blocking unplanned event: ${getDataPointKey(event)}")
                 return null
             }
-            val dataPoint = dataPoints[dataPointKey.toString()]
-            if (blockEventAttributes) {
-                event.customAttributes = event.customAttributes?.filterKeys {
-                    //null dataPoint means there are no constraints for custom attributes
-                    if (dataPoint == null || dataPoint.contains(it)) {
-                        true
-                    } else {
-                        Logger.verbose("Blocking unplanned attribute: $it")
-                        false
-                    }
+            if (blockEventAttributes && dataPoint != null) {
+                //null attributes means there are no constraints for custom attributes
+                val attributes = dataPoint.attributes
+                val customAttributes = event.customAttributes
+                if (attributes != null && customAttributes != null) {
+                    event.customAttributes = customAttributes.withoutUnplanned(attributes)
                 }
                 if (event is CommerceEvent) {
-                    val productActionDatapoint = dataPoints["$dataPointKey.$PRODUCT_ACTION_PRODUCTS"]
-                    event.products?.forEach { product ->
-                        product?.customAttributes?.apply {
-                            val filteredAttributes = filterKeys {
-                                productActionDatapoint?.contains(it) ?: true
-                            }
-                            clear()
-                            putAll(filteredAttributes)
+                    dataPoint.productActionAttributes?.let { productAttributes ->
+                        event.products?.forEach { product ->
+                            product?.customAttributes?.keys?.retainAll(productAttributes)
                         }
                     }
-                    val productImpressionDatapoint = dataPoints["$dataPointKey.$PRODUCT_IMPRESSION_PRODUCTS"]
-                    if (event.impressions?.size ?: 0 > 0) {
+                    dataPoint.productImpressionAttributes?.let { productAttributes ->
                         event.impressions?.forEach {
                             it.products.forEach { product ->
-                                product?.customAttributes?.apply {
-                                    val filteredAttributes = filterKeys {
-                                        productImpressionDatapoint?.contains(it) ?: true
-                                    }
-                                    clear()
-                                    putAll(filteredAttributes)
-                                }
+                                product?.customAttributes?.keys?.retainAll(productAttributes)
                             }
                         }
                     }
@@ -125,13 +125,64 @@ Data Plan parsed for Kit Filtering:
         }
         return event
     }
-    
+
+    /**
+     * @return the datapoint key for the event, only used for logging
+     */
+    private fun getDataPointKey(event: BaseEvent) =
+            when {
+                event is MPEvent ->
+                    when {
+                        event.isScreenEvent -> DataPoint(SCREEN_EVENT_KEY, event.eventName)
+                        else -> DataPoint(CUSTOM_EVENT_KEY, event.eventName, event.eventType.getEventsApiName())
+                    }
+                event is CommerceEvent ->
+                    when {
+                        !event.productAction.isNullOrBlank() -> DataPoint(PRODUCT_ACTION_KEY, event.productAction)
+                        !event.promotionAction.isNullOrBlank() -> DataPoint(PROMOTION_ACTION_KEY, event.promotionAction)
+                        else -> DataPoint(PRODUCT_IMPRESSION_KEY)
+                    }
+                else -> null
+            }
+
+    /**
+     * adds a datapoint to the compiled lookups. Keys are of the form generated by [DataPoint.toString],
+     * types never contain a period, and neither do custom event types or product attribute types
+     */
+    private fun compileDataPoint(key: String, attributes: HashSet<String>?) {
+        val type = key.substringBefore('.')
+        val rest = key.substringAfter('.', "")
+        when (type) {
+            CUSTOM_EVENT_KEY -> {
+                val name = rest.substringBeforeLast('.')
+                eventTypesByApiName[rest.substringAfterLast('.', "")]?.forEach { eventType ->
+                    customEvents.getOrPut(eventType) { HashMap() }
+                            .getOrPut(name) { EventDataPoint() }
+                            .setAttributes(null, attributes)
+                }
+            }
+            SCREEN_EVENT_KEY -> screenEvents.getOrPut(rest) { EventDataPoint() }.setAttributes(null, attributes)
+            PRODUCT_ACTION_KEY, PROMOTION_ACTION_KEY, PRODUCT_IMPRESSION_KEY -> {
+                val productAttributeType = listOf(PRODUCT_ACTION_PRODUCTS, PRODUCT_IMPRESSION_PRODUCTS).firstOrNull {
+                    rest == it || rest.endsWith(".$it")
+                }
+                val name = productAttributeType?.let { rest.removeSuffix(it).removeSuffix(".") } ?: rest
+                val dataPoint = when (type) {
+                    PRODUCT_ACTION_KEY -> productActions.getOrPut(name) { EventDataPoint() }
+                    PROMOTION_ACTION_KEY -> promotionActions.getOrPut(name) { EventDataPoint() }
+                    else -> productImpressions ?: EventDataPoint().also { productImpressions = it }
+                }
+                dataPoint.setAttributes(productAttributeType, attributes)
+            }
+        }
+    }
+
     override fun transformIdentities(identities: Map<MParticle.IdentityType, String?>?): Map<MParticle.IdentityType, String?>? {
         if (identities == null) {
             return null
         }
         if (blockUserIdentities) {
-            val datapoint = dataPoints[USER_IDENTITIES_KEY]
+            val datapoint = userIdentitiesDataPoint
             if (datapoint != null) {
                 return identities.filterKeys { identity ->
                     datapoint.contains(MParticleIdentityClientImpl.getStringValue(identity)).also {
@@ -150,7 +201,7 @@ Data Plan parsed for Kit Filtering:
             return null
         }
         if (blockUserAttributes) {
-            val datapoint = dataPoints[USER_ATTRIBUTES_KEY]
+            val datapoint = userAttributesDataPoint
             if (datapoint != null) {
                 return attributes.filterKeys { attribute ->
                     datapoint.contains(attribute).also {
@@ -166,7 +217,7 @@ Data Plan parsed for Kit Filtering:
 
     override fun isUserAttributeBlocked(key: String?): Boolean {
         if (blockUserAttributes && key != null) {
-            val datapoint = dataPoints[USER_ATTRIBUTES_KEY]
+            val datapoint = userAttributesDataPoint
             if (datapoint != null) {
                 return !datapoint.contains(key).also {
                     if (!it) {
@@ -180,7 +231,7 @@ Data Plan parsed for Kit Filtering:
 
     override fun isUserIdentityBlocked(key: MParticle.IdentityType?): Boolean {
         if (blockUserIdentities && key != null) {
-            val datapoint = dataPoints[USER_IDENTITIES_KEY]
+            val datapoint = userIdentitiesDataPoint
             if (datapoint != null) {
                 return !datapoint.contains(MParticleIdentityClientImpl.getStringValue(key)).also {
                     if (!it) {
@@ -207,6 +258,8 @@ Data Plan parsed for Kit Filtering:
 
         private val emptyJSONObject = JSONObject()
 
+        private val eventTypesByApiName = MParticle.EventType.values().groupBy { it.getEventsApiName() }
+
         @JvmField
         val EMPTY: DataplanFilter = EmptyDataplanFilter()
 
@@ -405,6 +458,20 @@ Data Plan parsed for Kit Filtering:
             }
         }
 
+        /**
+         * returns this map if all of its keys are planned, otherwise a copy without the unplanned keys
+         */
+        private fun <T> Map<String, T>.withoutUnplanned(planned: Set<String>): Map<String, T> {
+            var filtered: MutableMap<String, T>? = null
+            for (key in keys) {
+                if (!planned.contains(key)) {
+                    Logger.verbose("Blocking unplanned attribute: $key")
+                    filtered = (filtered ?: LinkedHashMap(this)).apply { remove(key) }
+                }
+            }
+            return filtered ?: this
+        }
+
         fun <T> Iterator<T>.toHashSet(): HashSet<T> {
             val set = HashSet<T>()
             this.forEach { set.add(it) }
@@ -430,6 +497,32 @@ Data Plan parsed for Kit Filtering:
         override fun toString() = "$type${if (name != null) ".$name" else ""}${if (eventType != null) ".$eventType" else ""}${productAttributeType?.let { ".$it" } ?: ""}"
     }
         
+    /**
+     * the compiled datapoint for a single event. `null` attribute sets mean all keys are allowed
+     */
+    private class EventDataPoint {
+        //false if only the product datapoints for the event are present
+        var isPlanned = false
+            private set
+        var attributes: HashSet<String>? = null
+            private set
+        var productActionAttributes: HashSet<String>? = null
+            private set
+        var productImpressionAttributes: HashSet<String>? = null
+            private set
+
+        fun setAttributes(productAttributeType: String?, attributes: HashSet<String>?) {
+            when (productAttributeType) {
+                PRODUCT_ACTION_PRODUCTS -> productActionAttributes = attributes
+                PRODUCT_IMPRESSION_PRODUCTS -> productImpressionAttributes = attributes
+                else -> {
+                    isPlanned = true
+                    this.attributes = attributes
+                }
+            }
+        }
+    }
+
     class EmptyDataplanFilter: DataplanFilter {
         override fun <T: BaseEvent> transformEventForEvent(event: T?) = event
         override fun transformIdentities(identities: Map<MParticle.IdentityType, String?>?) = identities
@@ -241,6 +241,65 @@ public class KitConfigurationTest {
 
     }
 
+    @Test
+    public void testFilterCommerceEventCopies() throws Exception {
+        KitConfiguration configuration = MockKitConfiguration.createKitConfiguration(new JSONObject(COMMERCE_FILTERS_2));
+        Product unfiltered = new Product.Builder("name", "sku", 5).build();
+        CommerceEvent event = new CommerceEvent.Builder(Product.CHECKOUT, unfiltered).customAttributes(new HashMap<String, String>()).build();
+        //nothing to filter, but the kit still gets its own copy
+        CommerceEvent filteredEvent = configuration.filterCommerceEvent(event);
+        assertTrue(event != filteredEvent);
+        filteredEvent.getCustomAttributes().put("changed by kit", "value");
+        assertTrue(event.getCustomAttributes().isEmpty());
+
+        Product filtered = new Product.Builder("name 2", "sku 2", 5).brand("cool brand").build();
+        event = new CommerceEvent.Builder(Product.CHECKOUT, unfiltered).addProduct(filtered).build();
+        filteredEvent = configuration.filterCommerceEvent(event);
+        assertTrue(event != filteredEvent);
+        assertTrue(unfiltered != filteredEvent.getProducts().get(0));
+        assertEquals("name", filteredEvent.getProducts().get(0).getName());
+        assertNull(filteredEvent.getProducts().get(1).getBrand());
+        assertEquals("cool brand", event.getProducts().get(1).getBrand());
+
+        //kits with identical filters share the filtering, but not the result
+        Map<String, CommerceEvent> filteredEvents = new HashMap<>();
+        HashedEvent hashedEvent = HashedEvent.forCommerceEvent(event);
+        CommerceEvent first = configuration.filterCommerceEvent(hashedEvent, event, filteredEvents);
+        CommerceEvent second = MockKitConfiguration.createKitConfiguration(new JSONObject(COMMERCE_FILTERS_2)).filterCommerceEvent(hashedEvent, event, filteredEvents);
+        assertEquals(1, filteredEvents.size());
+        assertTrue(first != second);
+        assertTrue(first.getProducts().get(1) != second.getProducts().get(1));
+        assertNull(second.getProducts().get(1).getBrand());
+        MockKitConfiguration.createKitConfiguration(new JSONObject(COMMERCE_FILTERS)).filterCommerceEvent(hashedEvent, event, filteredEvents);
+        assertEquals(2, filteredEvents.size());
+    }
+
+    @Test
+    public void testFilterEventAttributes() throws Exception {
+        JSONObject config = new JSONObject("{\"id\":28, \"hs\":{}}");
+        JSONObject eventAttributeFilters = new JSONObject();
+        eventAttributeFilters.put(String.valueOf(KitUtils.hashForFiltering(MParticle.EventType.Navigation.ordinal() + "Some Event" + "Filtered Key")), 0);
+        config.getJSONObject("hs").put("ea", eventAttributeFilters);
+        JSONObject screenAttributeFilters = new JSONObject();
+        screenAttributeFilters.put(String.valueOf(KitUtils.hashForFiltering("0" + "Some Screen" + "Filtered Key")), 0);
+        config.getJSONObject("hs").put("svec", screenAttributeFilters);
+        KitConfiguration configuration = MockKitConfiguration.createKitConfiguration(config);
+
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("filtered key", "value");
+        attributes.put("other key", "value");
+        HashedEvent hashedEvent = new HashedEvent(MParticle.EventType.Navigation, "some event", attributes);
+        Map<String, String> filtered = configuration.filterEventAttributes(hashedEvent);
+        assertEquals(1, filtered.size());
+        assertEquals("value", filtered.get("other key"));
+        assertEquals(filtered, configuration.filterEventAttributes(MParticle.EventType.Navigation, "some event", configuration.getEventAttributeFilters(), attributes));
+        assertEquals(2, configuration.filterEventAttributes(new HashedEvent(MParticle.EventType.Other, "some event", attributes)).size());
+
+        filtered = configuration.filterScreenAttributes(new HashedEvent(null, "Some Screen", attributes));
+        assertEquals(1, filtered.size());
+        assertEquals(filtered, configuration.filterScreenAttributes(null, "Some Screen", attributes));
+    }
+
     // attribute hash 3288498 matches "key1", value hash 3611952 matches "val1"
     static String ATTRIBUTE_VALUE_FILTERING_INCLUDE_TRUE = "{\"id\":28, \"avf\":{\"i\":true, \"a\":3288498, \"v\":3611952}, \"as\":{\"apiKey\":\"2687a8d1-1022-4820-9327-48582e930098\", \"sendPushOpenedWhenAppInForeground\":\"False\", \"push_enabled\":\"True\", \"register_inapp\":\"True\", \"appGroupId\":\"\"}, \"hs\":{\"et\":{\"1568\":0 }, \"cea\":{\"-1015386651\":0, \"-2090340318\":0, \"-1091394645\":0 }, \"ent\":{\"1\":0 }, \"afa\":{\"2\":{\"1820422063\":0 } } }, \"pr\":[] }";
     static String ATTRIBUTE_VALUE_FILTERING_INCLUDE_FALSE = "{\"id\":28, \"avf\":{\"i\":false, \"a\":3288498, \"v\":3611952}, \"as\":{\"apiKey\":\"2687a8d1-1022-4820-9327-48582e930098\", \"sendPushOpenedWhenAppInForeground\":\"False\", \"push_enabled\":\"True\", \"register_inapp\":\"True\", \"appGroupId\":\"\"}, \"hs\":{\"et\":{\"1568\":0 }, \"cea\":{\"-1015386651\":0, \"-2090340318\":0, \"-1091394645\":0 }, \"ent\":{\"1\":0 }, \"afa\":{\"2\":{\"1820422063\":0 } } }, \"pr\":[] }";
@@ -262,18 +321,18 @@ public class KitConfigurationTest {
 
         boolean result;
 
-        result = includeTrueConfiguration.shouldIncludeFromAttributeValueFiltering(matchingAttributes);
+        result = includeTrueConfiguration.shouldIncludeFromAttributeValueFiltering(new HashedEvent(MParticle.EventType.Other, "event", matchingAttributes));
         assertTrue(result);
-        result = includeTrueConfiguration.shouldIncludeFromAttributeValueFiltering(halfMatchingAttributes);
+        result = includeTrueConfiguration.shouldIncludeFromAttributeValueFiltering(new HashedEvent(MParticle.EventType.Other, "event", halfMatchingAttributes));
         assertFalse(result);
-        result = includeTrueConfiguration.shouldIncludeFromAttributeValueFiltering(nonMatchingAttributes);
+        result = includeTrueConfiguration.shouldIncludeFromAttributeValueFiltering(new HashedEvent(MParticle.EventType.Other, "event", nonMatchingAttributes));
         assertFalse(result);
 
-        result = includeFalseConfiguration.shouldIncludeFromAttributeValueFiltering(matchingAttributes);
+        result = includeFalseConfiguration.shouldIncludeFromAttributeValueFiltering(new HashedEvent(MParticle.EventType.Other, "event", matchingAttributes));
         assertFalse(result);
-        result = includeFalseConfiguration.shouldIncludeFromAttributeValueFiltering(halfMatchingAttributes);
+        result = includeFalseConfiguration.shouldIncludeFromAttributeValueFiltering(new HashedEvent(MParticle.EventType.Other, "event", halfMatchingAttributes));
         assertTrue(result);
-        result = includeFalseConfiguration.shouldIncludeFromAttributeValueFiltering(nonMatchingAttributes);
+        result = includeFalseConfiguration.shouldIncludeFromAttributeValueFiltering(new HashedEvent(MParticle.EventType.Other, "event", nonMatchingAttributes));
         assertTrue(result);
     }
 
@@ -0,0 +1,152 @@
+package com.mparticle.kits;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KitDispatcherTest {
+
+    @Test
+    public void testDropsOldestWhenFull() throws Exception {
+        KitDispatcher dispatcher = new KitDispatcher(1, "test kit", 2);
+        final List<Integer> executed = new ArrayList<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(3);
+        for (int i = 0; i < 6; i++) {
+            final int call = i;
+            dispatcher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (call == 0) {
+                        started.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException ignored) {
+                        }
+                    }
+                    executed.add(call);
+                    finished.countDown();
+                }
+            }, true);
+            if (i == 0) {
+                assertTrue(started.await(5, TimeUnit.SECONDS));
+            }
+        }
+        //the first call was running, so calls 1-3 were dropped to make room for 4 and 5
+        assertEquals(3, dispatcher.getDroppedCount());
+        release.countDown();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(0, 4, 5), executed);
+        dispatcher.shutdown(null);
+    }
+
+    @Test
+    public void testStateCallsNeverDropped() throws Exception {
+        KitDispatcher dispatcher = new KitDispatcher(1, "test kit", 1);
+        final List<String> executed = new ArrayList<>();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+        dispatcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }, false);
+        for (final String call : new String[]{"event 1", "opt out", "event 2", "consent", "event 3", "done"}) {
+            final boolean droppable = call.startsWith("event");
+            dispatcher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    executed.add(call);
+                    if (call.equals("done")) {
+                        finished.countDown();
+                    }
+                }
+            }, droppable);
+        }
+        assertEquals(2, dispatcher.getDroppedCount());
+        release.countDown();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("opt out", "consent", "event 3", "done"), executed);
+        dispatcher.shutdown(null);
+    }
+
+    @Test
+    public void testShutdownDiscardsPendingCalls() throws Exception {
+        KitDispatcher dispatcher = new KitDispatcher(1, "test kit", 10);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Integer> executed = new ArrayList<>();
+        dispatcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }, false);
+        dispatcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                executed.add(1);
+            }
+        }, true);
+        dispatcher.shutdown(null);
+        release.countDown();
+        dispatcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                executed.add(2);
+            }
+        }, false);
+        Thread.sleep(100);
+        assertTrue(executed.isEmpty());
+    }
+
+    @Test
+    public void testShutdownLetsCallInProgressFinish() throws Exception {
+        KitDispatcher dispatcher = new KitDispatcher(1, "test kit", 10);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch finalCall = new CountDownLatch(1);
+        final List<String> calls = new CopyOnWriteArrayList<>();
+        dispatcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                    calls.add("finished");
+                } catch (InterruptedException e) {
+                    calls.add("interrupted");
+                }
+            }
+        }, false);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        //shutdown returns without waiting for the call in progress
+        dispatcher.shutdown(new Runnable() {
+            @Override
+            public void run() {
+                calls.add("final call");
+                finalCall.countDown();
+            }
+        });
+        assertFalse(finalCall.await(50, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(finalCall.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("finished", "final call"), calls);
+    }
+}
@@ -0,0 +1,46 @@
+package com.mparticle.kits;
+
+import com.mparticle.internal.KitInvocationStats;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KitInvocationHistogramTest {
+
+    @Test
+    public void testBucketBounds() {
+        int previousIndex = -1;
+        for (long value = 0; value < 100000; value++) {
+            int index = KitInvocationHistogram.bucketIndex(value);
+            assertTrue(index >= previousIndex);
+            long upperBound = KitInvocationHistogram.bucketUpperBound(index);
+            assertTrue(value <= upperBound);
+            assertTrue(upperBound - value <= value / 8);
+            previousIndex = index;
+        }
+        assertEquals(KitInvocationHistogram.bucketUpperBound(KitInvocationHistogram.bucketIndex(Long.MAX_VALUE)), Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testStats() {
+        KitInvocationHistogram histogram = new KitInvocationHistogram(5);
+        KitInvocationStats stats = histogram.getStats();
+        assertEquals(5, stats.getKitId());
+        assertEquals(0, stats.getCount());
+        assertEquals(0, stats.getP95Nanos());
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        histogram.recordException();
+        stats = histogram.getStats();
+        assertEquals(1000, stats.getCount());
+        assertEquals(1, stats.getExceptionCount());
+        assertEquals(500500000L, stats.getTotalNanos());
+        assertEquals(1000000L, stats.getMaxNanos());
+        assertTrue(Math.abs(stats.getP50Nanos() - 500000L) <= 500000L / 8);
+        assertTrue(Math.abs(stats.getP95Nanos() - 950000L) <= 950000L / 8);
+    }
+}
@@ -10,11 +10,16 @@ import com.mparticle.consent.GDPRConsent;
 import com.mparticle.identity.IdentityApi;
 import com.mparticle.identity.MParticleUser;
 import com.mparticle.internal.CoreCallbacks;
+import com.mparticle.internal.KitInvocationStats;
 import com.mparticle.internal.KitManager;
+import com.mparticle.mock.MockKit;
+import com.mparticle.mock.MockKitIntegrationFactory;
 import com.mparticle.mock.MockKitManagerImpl;
 import com.mparticle.mock.MockMParticle;
 import com.mparticle.internal.BackgroundTaskHandler;
+import com.mparticle.mock.MockContext;
 import com.mparticle.mock.MockKitConfiguration;
+import com.mparticle.internal.ReportingManager;
 import com.mparticle.testutils.TestingUtils;
 
 import junit.framework.Assert;
@@ -25,11 +30,16 @@ import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertFalse;
@@ -160,6 +170,65 @@ public class KitManagerImplTest {
 
     }
 
+    @Test
+    public void testUnchangedKitConfigurationIsNotReapplied() throws Exception {
+        MParticleUser mockUser = Mockito.mock(MParticleUser.class);
+        Mockito.when(mockUser.getConsentState()).thenReturn(ConsentState.builder().build());
+        Mockito.when(mockIdentity.getCurrentUser()).thenReturn(mockUser);
+        final List<Integer> parsedKitIds = new LinkedList<>();
+        KitManagerImpl manager = new MockKitManagerImpl() {
+            @Override
+            protected KitConfiguration createKitConfiguration(JSONObject configuration) throws JSONException {
+                parsedKitIds.add(configuration.getInt("id"));
+                return super.createKitConfiguration(configuration);
+            }
+        };
+        final Map<Integer, Integer> settingsUpdates = new HashMap<>();
+        manager.setKitFactory(new MockKitIntegrationFactory() {
+            @Override
+            public KitIntegration createInstance(KitManagerImpl manager, final int moduleId) {
+                return new MockKit() {
+                    @Override
+                    public void onSettingsUpdated(Map<String, String> settings) {
+                        Integer updates = settingsUpdates.get(moduleId);
+                        settingsUpdates.put(moduleId, updates == null ? 1 : updates + 1);
+                    }
+                }.setKitManager(manager);
+            }
+        });
+        JSONArray kitConfiguration = new JSONArray();
+        kitConfiguration.put(new JSONObject("{ \"id\":1, \"as\":{ \"foo\":\"bar\" } }"));
+        kitConfiguration.put(new JSONObject("{ \"id\":2, \"as\":{ \"foo\":\"bar\" } }"));
+        manager.configureKits(kitConfiguration);
+        assertEquals(2, manager.providers.size());
+        assertEquals(2, parsedKitIds.size());
+        KitIntegration kit2 = manager.providers.get(2);
+        KitConfiguration kit2Configuration = kit2.getConfiguration();
+
+        manager.configureKits(new JSONArray(kitConfiguration.toString()));
+        assertEquals(2, parsedKitIds.size());
+        assertTrue(settingsUpdates.isEmpty());
+
+        kitConfiguration.put(0, new JSONObject("{ \"id\":1, \"as\":{ \"foo\":\"baz\" } }"));
+        manager.configureKits(kitConfiguration);
+        assertEquals(3, parsedKitIds.size());
+        assertEquals(1, parsedKitIds.get(2).intValue());
+        assertEquals(1, settingsUpdates.size());
+        assertEquals(1, settingsUpdates.get(1).intValue());
+        assertEquals("baz", manager.providers.get(1).getSettings().get("foo"));
+        assertTrue(kit2 == manager.providers.get(2));
+        assertTrue(kit2Configuration == kit2.getConfiguration());
+
+        //a kit which is removed and added back is parsed again
+        kitConfiguration.remove(1);
+        manager.configureKits(kitConfiguration);
+        assertEquals(1, manager.providers.size());
+        kitConfiguration.put(new JSONObject("{ \"id\":2, \"as\":{ \"foo\":\"bar\" } }"));
+        manager.configureKits(kitConfiguration);
+        assertEquals(2, manager.providers.size());
+        assertEquals(4, parsedKitIds.size());
+    }
+
     @Test
     public void testShouldEnableKitBasedOnActiveUser() throws JSONException, ClassNotFoundException {
        MParticleUser mockUser = Mockito.mock(MParticleUser.class);
@@ -387,6 +456,38 @@ public class KitManagerImplTest {
         assertEquals(1, manager.logCommerceEventCalled);
     }
 
+    @Test
+    public void testUnfilteredEventAttributesCopiedForEachKit() throws JSONException {
+        KitManagerImpl manager = new MockKitManagerImpl();
+        final List<MPEvent> loggedEvents = new LinkedList<>();
+        Answer<List<ReportingMessage>> logEvent = new Answer<List<ReportingMessage>>() {
+            @Override
+            public List<ReportingMessage> answer(InvocationOnMock invocation) {
+                loggedEvents.add((MPEvent) invocation.getArguments()[0]);
+                return null;
+            }
+        };
+        for (int id = 5; id <= 6; id++) {
+            KitIntegration integration = Mockito.mock(KitIntegration.class, Mockito.withSettings().extraInterfaces(KitIntegration.EventListener.class));
+            Mockito.when(integration.getConfiguration()).thenReturn(MockKitConfiguration.createKitConfiguration());
+            Mockito.when(((KitIntegration.EventListener) integration).logEvent(Mockito.any(MPEvent.class))).thenAnswer(logEvent);
+            manager.providers.put(id, integration);
+        }
+
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("key", "value");
+        manager.logEvent(new MPEvent.Builder("name", MParticle.EventType.Other).customAttributes(attributes).build());
+        assertEquals(2, loggedEvents.size());
+
+        attributes.put("app", "value");
+        loggedEvents.get(0).getCustomAttributes().put("kit", "value");
+        assertEquals(2, attributes.size());
+        assertFalse(attributes.containsKey("kit"));
+        Map<String, String> otherKitAttributes = loggedEvents.get(1).getCustomAttributes();
+        assertEquals(1, otherKitAttributes.size());
+        assertEquals("value", otherKitAttributes.get("key"));
+    }
+
     @Test
     public void testShouldEnableKitOnOptIn() throws Exception {
         MParticleUser mockUser = Mockito.mock(MParticleUser.class);
@@ -420,6 +521,112 @@ public class KitManagerImplTest {
         Assert.assertEquals(2, manager.providers.size());
     }
 
+    @Test
+    public void testBackgroundDispatch() throws Exception {
+        MParticleUser mockUser = Mockito.mock(MParticleUser.class);
+        Mockito.when(mockUser.getConsentState()).thenReturn(ConsentState.builder().build());
+        Mockito.when(mockIdentity.getCurrentUser()).thenReturn(mockUser);
+        CoreCallbacks coreCallbacks = Mockito.mock(CoreCallbacks.class);
+        Mockito.when(coreCallbacks.getKitListener()).thenReturn(CoreCallbacks.KitListener.EMPTY);
+        Mockito.when(coreCallbacks.getKitDispatchQueueSize()).thenReturn(100);
+        KitManagerImpl manager = new MockKitManagerImpl(new MockContext(), Mockito.mock(ReportingManager.class), coreCallbacks);
+        KitIntegrationFactory factory = Mockito.mock(KitIntegrationFactory.class);
+        manager.setKitFactory(factory);
+        Mockito.when(factory.isSupported(Mockito.anyInt())).thenReturn(true);
+
+        final Thread callerThread = Thread.currentThread();
+        final List<String> backgroundBreadcrumbs = new CopyOnWriteArrayList<>();
+        final List<String> mainBreadcrumbs = new CopyOnWriteArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(20);
+        KitIntegration backgroundKit = Mockito.mock(KitIntegration.class, Mockito.withSettings().extraInterfaces(KitIntegration.EventListener.class));
+        Mockito.when(backgroundKit.isBackgroundDispatchSupported()).thenReturn(true);
+        Mockito.when(backgroundKit.getConfiguration()).thenReturn(Mockito.mock(KitConfiguration.class));
+        Mockito.when(((KitIntegration.EventListener) backgroundKit).leaveBreadcrumb(Mockito.anyString())).thenAnswer(new Answer<List<ReportingMessage>>() {
+            @Override
+            public List<ReportingMessage> answer(InvocationOnMock invocation) {
+                assertFalse(callerThread == Thread.currentThread());
+                backgroundBreadcrumbs.add((String) invocation.getArguments()[0]);
+                latch.countDown();
+                return null;
+            }
+        });
+        KitIntegration mainThreadKit = Mockito.mock(KitIntegration.class, Mockito.withSettings().extraInterfaces(KitIntegration.EventListener.class));
+        Mockito.when(mainThreadKit.isBackgroundDispatchSupported()).thenReturn(false);
+        Mockito.when(mainThreadKit.getConfiguration()).thenReturn(Mockito.mock(KitConfiguration.class));
+        Mockito.when(((KitIntegration.EventListener) mainThreadKit).leaveBreadcrumb(Mockito.anyString())).thenAnswer(new Answer<List<ReportingMessage>>() {
+            @Override
+            public List<ReportingMessage> answer(InvocationOnMock invocation) {
+                assertTrue(callerThread == Thread.currentThread());
+                mainBreadcrumbs.add((String) invocation.getArguments()[0]);
+                return null;
+            }
+        });
+        Mockito.when(factory.createInstance(Mockito.any(KitManagerImpl.class), Mockito.any(KitConfiguration.class))).thenReturn(backgroundKit, mainThreadKit);
+        JSONArray kitConfiguration = new JSONArray();
+        kitConfiguration.put(new JSONObject("{\"id\":1}"));
+        kitConfiguration.put(new JSONObject("{\"id\":2}"));
+        manager.configureKits(kitConfiguration);
+        assertEquals(2, manager.providers.size());
+
+        List<String> expected = new LinkedList<>();
+        for (int i = 0; i < 20; i++) {
+            expected.add("breadcrumb " + i);
+            manager.leaveBreadcrumb("breadcrumb " + i);
+        }
+        assertEquals(expected, mainBreadcrumbs);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(expected, backgroundBreadcrumbs);
+        KitInvocationStats stats = manager.getKitInvocationStats().get(2);
+        assertEquals(20, stats.getCount());
+        assertEquals(0, stats.getExceptionCount());
+        assertTrue(stats.getP50Nanos() <= stats.getP95Nanos());
+        assertTrue(stats.getP95Nanos() <= stats.getMaxNanos());
+    }
+
+    @Test
+    public void testBackgroundDispatchCopiesEvent() throws Exception {
+        MParticleUser mockUser = Mockito.mock(MParticleUser.class);
+        Mockito.when(mockUser.getConsentState()).thenReturn(ConsentState.builder().build());
+        Mockito.when(mockIdentity.getCurrentUser()).thenReturn(mockUser);
+        CoreCallbacks coreCallbacks = Mockito.mock(CoreCallbacks.class);
+        Mockito.when(coreCallbacks.getKitListener()).thenReturn(CoreCallbacks.KitListener.EMPTY);
+        Mockito.when(coreCallbacks.getKitDispatchQueueSize()).thenReturn(100);
+        KitManagerImpl manager = new MockKitManagerImpl(new MockContext(), Mockito.mock(ReportingManager.class), coreCallbacks);
+        KitIntegrationFactory factory = Mockito.mock(KitIntegrationFactory.class);
+        manager.setKitFactory(factory);
+        Mockito.when(factory.isSupported(Mockito.anyInt())).thenReturn(true);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch logged = new CountDownLatch(1);
+        final List<Map<String, String>> loggedAttributes = new CopyOnWriteArrayList<>();
+        KitIntegration backgroundKit = Mockito.mock(KitIntegration.class);
+        Mockito.when(backgroundKit.isBackgroundDispatchSupported()).thenReturn(true);
+        Mockito.when(backgroundKit.getConfiguration()).thenReturn(Mockito.mock(KitConfiguration.class));
+        Mockito.when(backgroundKit.logBaseEvent(Mockito.any(BaseEvent.class))).thenAnswer(new Answer<List<ReportingMessage>>() {
+            @Override
+            public List<ReportingMessage> answer(InvocationOnMock invocation) throws InterruptedException {
+                release.await();
+                loggedAttributes.add(new HashMap<>(((MPEvent) invocation.getArguments()[0]).getCustomAttributes()));
+                logged.countDown();
+                return null;
+            }
+        });
+        Mockito.when(factory.createInstance(Mockito.any(KitManagerImpl.class), Mockito.any(KitConfiguration.class))).thenReturn(backgroundKit);
+        JSONArray kitConfiguration = new JSONArray();
+        kitConfiguration.put(new JSONObject("{\"id\":1}"));
+        manager.configureKits(kitConfiguration);
+
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("key", "value");
+        manager.logEvent(new MPEvent.Builder("name", MParticle.EventType.Other).customAttributes(attributes).build());
+        //the app changes the event's attributes before the kit's thread gets to it
+        attributes.put("changed", "value");
+        release.countDown();
+        assertTrue(logged.await(5, TimeUnit.SECONDS));
+        assertEquals(1, loggedAttributes.get(0).size());
+        assertEquals("value", loggedAttributes.get(0).get("key"));
+    }
+
     class KitManagerEventCounter extends MockKitManagerImpl {
             int logBaseEventCalled = 0;
             int logCommerceEventCalled = 0;
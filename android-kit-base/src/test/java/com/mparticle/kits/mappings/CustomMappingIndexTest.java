@@ -0,0 +1,157 @@
+package com.mparticle.kits.mappings;
+
+import com.mparticle.MPEvent;
+import com.mparticle.MParticle;
+import com.mparticle.commerce.CommerceEvent;
+import com.mparticle.commerce.Product;
+import com.mparticle.commerce.TransactionAttributes;
+import com.mparticle.kits.CommerceEventUtils;
+import com.mparticle.kits.KitConfiguration;
+import com.mparticle.kits.KitUtils;
+import com.mparticle.mock.MockKitConfiguration;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CustomMappingIndexTest {
+
+    @BeforeClass
+    public static void setupAll() {
+        MParticle mockMp = Mockito.mock(MParticle.class);
+        Mockito.when(mockMp.getEnvironment()).thenReturn(MParticle.Environment.Development);
+        MParticle.setInstance(mockMp);
+    }
+
+    @Test
+    public void testIndexMatchesList() throws Exception {
+        JSONObject json = new JSONObject(CustomMappingTest.JSON);
+        JSONArray kitConfigs = json.getJSONArray("eks");
+        List<MPEvent> events = new ArrayList<MPEvent>();
+        Map<String, String> attributes = new HashMap<String, String>();
+        attributes.put("$MethodName", "$ProductView");
+        attributes.put("Feedback Type", "value");
+        events.add(new MPEvent.Builder("Product View", MParticle.EventType.Transaction).customAttributes(attributes).build());
+        events.add(new MPEvent.Builder("account - check order status", MParticle.EventType.Navigation).customAttributes(attributes).build());
+        events.add(new MPEvent.Builder("whatever", MParticle.EventType.Other).build());
+        for (int i = 0; i < kitConfigs.length(); i++) {
+            KitConfiguration configuration = MockKitConfiguration.createKitConfiguration(kitConfigs.getJSONObject(i));
+            for (MPEvent event : events) {
+                for (boolean screen : new boolean[]{false, true}) {
+                    assertSameResults(
+                            CustomMapping.projectEvents(event, screen, configuration.getCustomMappingList(), configuration.getDefaultEventProjection(), configuration.getDefaultScreenCustomMapping()),
+                            CustomMapping.projectEvents(event, screen, configuration.getCustomMappingIndex(), configuration.getDefaultEventProjection(), configuration.getDefaultScreenCustomMapping()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIndexPreservesOrder() throws Exception {
+        KitConfiguration configuration = createConfiguration(30, 3);
+        //every 3rd projection matches "event 1" by name, and projection 1 matches it by hash
+        MPEvent event = new MPEvent.Builder("event 1", MParticle.EventType.Other).customAttributes(getAttributes()).build();
+        List<CustomMapping.ProjectionResult> results = CustomMapping.projectEvents(event, configuration.getCustomMappingIndex(), null);
+        assertSameResults(CustomMapping.projectEvents(event, configuration.getCustomMappingList(), null), results);
+        assertEquals(11, results.size());
+        for (int i = 1; i < results.size(); i++) {
+            assertTrue(results.get(i - 1).getProjectionId() < results.get(i).getProjectionId());
+        }
+    }
+
+    @Test
+    public void testCandidatesArePrebuilt() throws Exception {
+        CustomMappingIndex index = createConfiguration(30, 3).getCustomMappingIndex();
+        for (String eventName : new String[]{"event 1", "not indexed"}) {
+            MPEvent event = new MPEvent.Builder(eventName, MParticle.EventType.Other).build();
+            List<CustomMapping> candidates = index.getCandidates(new EventWrapper.MPEventWrapper(event, false));
+            assertTrue(candidates == index.getCandidates(new EventWrapper.MPEventWrapper(event, false)));
+            try {
+                candidates.clear();
+                fail("candidates should be immutable");
+            } catch (UnsupportedOperationException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testCommerceEventProjection() throws Exception {
+        int eventHash = KitUtils.hashForFiltering("" + CommerceEventUtils.getEventType(new CommerceEvent.Builder(Product.PURCHASE, new Product.Builder("name", "sku", 1).build()).build()));
+        JSONObject config = new JSONObject("{\"id\":1, \"hs\":{}, \"pr\":[" +
+                "{\"id\":1, \"pmid\":1, \"matches\":[{\"message_type\":16, \"event_match_type\":\"Hash\", \"event\":\"" + eventHash + "\"}], \"action\":{\"projected_event_name\":\"purchase\", \"outbound_message_type\":4, \"attribute_maps\":[]}}," +
+                "{\"id\":2, \"pmid\":2, \"matches\":[{\"message_type\":16, \"event_match_type\":\"Hash\", \"event\":\"1\"}], \"action\":{\"projected_event_name\":\"other\", \"outbound_message_type\":4, \"attribute_maps\":[]}}" +
+                "]}");
+        KitConfiguration configuration = MockKitConfiguration.createKitConfiguration(config);
+        CommerceEvent event = new CommerceEvent.Builder(Product.PURCHASE, new Product.Builder("name", "sku", 1).build()).transactionAttributes(new TransactionAttributes("id")).build();
+        List<CustomMapping.ProjectionResult> results = CustomMapping.projectEvents(event, configuration.getCustomMappingIndex(), null);
+        assertSameResults(CustomMapping.projectEvents(event, configuration.getCustomMappingList(), null), results);
+        assertEquals(1, results.size());
+        assertEquals(1, results.get(0).getProjectionId());
+        assertNull(CustomMapping.projectEvents(new CommerceEvent.Builder(Product.CHECKOUT, new Product.Builder("name", "sku", 1).build()).build(), configuration.getCustomMappingIndex(), null));
+    }
+
+    /**
+     * Projection i matches "event i" by hash, except every nth projection, which matches
+     * "event 1" with the attribute "key" = "value" by name.
+     */
+    private KitConfiguration createConfiguration(int projections, int stringMatchInterval) throws Exception {
+        JSONArray mappings = new JSONArray();
+        for (int i = 0; i < projections; i++) {
+            JSONObject match;
+            if (i % stringMatchInterval == 0) {
+                match = new JSONObject()
+                        .put("message_type", 4)
+                        .put("event_match_type", "String")
+                        .put("event", "event 1")
+                        .put("attribute_key", "key")
+                        .put("attribute_value", "value");
+            } else {
+                match = new JSONObject()
+                        .put("message_type", 4)
+                        .put("event_match_type", "Hash")
+                        .put("event", String.valueOf(KitUtils.hashForFiltering(MParticle.EventType.Other.ordinal() + "event " + i)));
+            }
+            mappings.put(new JSONObject()
+                    .put("id", i)
+                    .put("pmid", i)
+                    .put("matches", new JSONArray().put(match))
+                    .put("action", new JSONObject().put("projected_event_name", "projected " + i).put("attribute_maps", new JSONArray())));
+        }
+        return MockKitConfiguration.createKitConfiguration(new JSONObject().put("id", 1).put("hs", new JSONObject()).put("pr", mappings));
+    }
+
+    private Map<String, String> getAttributes() {
+        Map<String, String> attributes = new HashMap<String, String>();
+        attributes.put("key", "value");
+        return attributes;
+    }
+
+    private void assertSameResults(List<CustomMapping.ProjectionResult> expected, List<CustomMapping.ProjectionResult> actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getProjectionId(), actual.get(i).getProjectionId());
+            if (expected.get(i).getMPEvent() != null) {
+                assertEquals(expected.get(i).getMPEvent().getEventName(), actual.get(i).getMPEvent().getEventName());
+                assertEquals(expected.get(i).getMPEvent().getCustomAttributes(), actual.get(i).getMPEvent().getCustomAttributes());
+            } else {
+                assertEquals(expected.get(i).getCommerceEvent().getEventName(), actual.get(i).getCommerceEvent().getEventName());
+            }
+        }
+    }
+}
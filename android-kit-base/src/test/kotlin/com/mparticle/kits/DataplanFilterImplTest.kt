@@ -291,6 +291,29 @@ class DataplanFilterImplTest {
         }
     }
 
+    @Test
+    fun `test compiled datapoints match names containing periods and product attributes`() {
+        val points = hashMapOf<String, HashSet<String>?>(
+                "$CUSTOM_EVENT_KEY.v1.2 launch.navigation" to hashSetOf("allowed"),
+                "$SCREEN_EVENT_KEY.home.screen" to null,
+                "$PRODUCT_ACTION_KEY.purchase" to null,
+                "$PRODUCT_ACTION_KEY.purchase.$PRODUCT_ACTION_PRODUCTS" to hashSetOf("product allowed"))
+        val dataplanFilter = DataplanFilterImpl(points, true, true, false, false)
+
+        val event = MPEvent.Builder("v1.2 launch", MParticle.EventType.Navigation)
+                .customAttributes(mapOf("allowed" to "1", "blocked" to "2"))
+                .build()
+        assertEquals(mapOf("allowed" to "1"), dataplanFilter.transformEventForEvent(event)?.customAttributes)
+        assertNull(dataplanFilter.transformEventForEvent(MPEvent.Builder("v1.2 launch", MParticle.EventType.Other).build()))
+        assertNotNull(dataplanFilter.transformEventForEvent(ScreenEventBuilder("home.screen").build()))
+
+        val product = Product.Builder("a", "b", 1.0)
+                .customAttributes(hashMapOf("product allowed" to "1", "product blocked" to "2"))
+                .build()
+        val commerceEvent = CommerceEvent.Builder(Product.PURCHASE, product).build()
+        assertEquals(mapOf("product allowed" to "1"), dataplanFilter.transformEventForEvent(commerceEvent)?.products?.get(0)?.customAttributes)
+    }
+
     private val types = setOf(CUSTOM_EVENT_KEY, PRODUCT_ACTION_KEY, PROMOTION_ACTION_KEY, PRODUCT_IMPRESSION_KEY, SCREEN_EVENT_KEY)
 
     fun getRandomEvent(datapoint: DataplanPoint): BaseEvent {
@@ -0,0 +1,32 @@
+package com.mparticle.internal;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+
+import com.mparticle.MParticle;
+import com.mparticle.mock.MockSharedPreferences;
+
+import org.mockito.Mockito;
+
+/**
+ * Shared setup for the benchmarks which need a Context. MockContext, and the mocks built on it,
+ * can't be used here: they create a Resources instance, which requires the native framework under
+ * android-all.
+ */
+class Benchmarks {
+
+    static Context createContext() {
+        Context context = Mockito.mock(Context.class, Mockito.withSettings().stubOnly());
+        Mockito.when(context.getApplicationContext()).thenReturn(context);
+        Mockito.when(context.getResources()).thenReturn(Mockito.mock(Resources.class, Mockito.withSettings().stubOnly()));
+        Mockito.when(context.getPackageManager()).thenReturn(Mockito.mock(PackageManager.class, Mockito.withSettings().stubOnly()));
+        Mockito.when(context.getPackageName()).thenReturn("com.mparticle.benchmarks");
+        Mockito.when(context.getSharedPreferences(Mockito.anyString(), Mockito.anyInt())).thenReturn(new MockSharedPreferences());
+        return context;
+    }
+
+    static void setMParticleInstance() {
+        MParticle.setInstance(Mockito.mock(MParticle.class, Mockito.withSettings().stubOnly().defaultAnswer(Mockito.RETURNS_DEEP_STUBS)));
+    }
+}
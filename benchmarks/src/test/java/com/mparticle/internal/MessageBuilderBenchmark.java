@@ -0,0 +1,75 @@
+package com.mparticle.internal;
+
+import android.content.Context;
+
+import com.mparticle.MPEvent;
+import com.mparticle.MParticle;
+import com.mparticle.commerce.CommerceEvent;
+import com.mparticle.commerce.Product;
+import com.mparticle.internal.messages.BaseMPMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the message for a logged event, which MessageManager does on the caller's thread
+ * before the message is handed to the MessageHandler to be stored. MessageManager itself isn't
+ * used, Handler's final methods need the native framework under android-all.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBuilderBenchmark {
+    private static final long MPID = 1234;
+
+    private InternalSession session;
+    private MPEvent event;
+    private CommerceEvent commerceEvent;
+
+    @Setup
+    public void setup() {
+        Benchmarks.setMParticleInstance();
+        Context context = Benchmarks.createContext();
+        session = new InternalSession().start(context);
+
+        Map<String, String> attributes = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            attributes.put("attribute " + i, "value " + i);
+        }
+        event = new MPEvent.Builder("benchmark event", MParticle.EventType.Navigation)
+                .customAttributes(attributes)
+                .build();
+        commerceEvent = new CommerceEvent.Builder(Product.PURCHASE, new Product.Builder("product", "sku", 9.99).quantity(2).build())
+                .addProduct(new Product.Builder("other product", "other sku", 19.99).build())
+                .customAttributes(attributes)
+                .build();
+    }
+
+    @Benchmark
+    public BaseMPMessage buildEvent() throws Exception {
+        BaseMPMessage message = event.getMessage().build(session, null, MPID);
+        message.put(Constants.MessageKey.EVENT_START_TIME, session.mLastEventTime);
+        message.put(Constants.MessageKey.CURRENT_ACTIVITY, "BenchmarkActivity");
+        return message;
+    }
+
+    @Benchmark
+    public BaseMPMessage buildCommerceEvent() throws Exception {
+        return commerceEvent.getMessage().build(session, null, MPID);
+    }
+}
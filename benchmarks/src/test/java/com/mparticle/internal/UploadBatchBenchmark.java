@@ -0,0 +1,118 @@
+package com.mparticle.internal;
+
+import android.content.Context;
+
+import com.mparticle.MPEvent;
+import com.mparticle.MParticle;
+import com.mparticle.internal.database.MPDatabase;
+import com.mparticle.internal.database.services.MParticleDBManager;
+import com.mparticle.internal.database.services.MessageService;
+import com.mparticle.internal.database.tables.JdbcDatabase;
+import com.mparticle.internal.messages.BaseMPMessage;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assembling upload batches from the stored messages, against an in-memory SQLite database. Each
+ * invocation batches every stored message and marks it as uploaded, so the messages are stored
+ * again before each invocation; the benchmark is slow enough for the per-invocation setup not to
+ * skew it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UploadBatchBenchmark {
+    private static final String API_KEY = "benchmark-api-key";
+    private static final long MPID = 1234;
+
+    //at most 100 messages are read for each upload
+    @Param({"10", "100"})
+    public int messages;
+
+    private Context context;
+    private ConfigManager configManager;
+    private DeviceAttributes deviceAttributes;
+    private InternalSession session;
+    private JdbcDatabase database;
+    private MParticleDBManager dbManager;
+
+    @Setup
+    public void setup() {
+        Benchmarks.setMParticleInstance();
+        context = Benchmarks.createContext();
+        configManager = new ConfigManager(context, MParticle.Environment.Production, null, null, null, null, null);
+        //refreshing the stored device info reads android.os.Build, which requires the native
+        //framework under android-all
+        deviceAttributes = new DeviceAttributes(MParticle.OperatingSystem.ANDROID) {
+            @Override
+            public void updateDeviceInfo(Context context, JSONObject deviceInfo) {
+            }
+        };
+        session = new InternalSession().start(context);
+    }
+
+    @Setup(Level.Invocation)
+    public void storeMessages() throws Exception {
+        database = JdbcDatabase.createInMemory();
+        dbManager = new MParticleDBManager(context) {
+            @Override
+            public MPDatabase getDatabase() {
+                return database;
+            }
+        };
+        BaseMPMessage sessionStart = new BaseMPMessage.Builder(Constants.MessageType.SESSION_START)
+                .build(session, null, MPID);
+        dbManager.insertSession(sessionStart, API_KEY, new JSONObject().put("an", "benchmark"), new JSONObject().put("dp", "Android"));
+
+        Map<String, String> attributes = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            attributes.put("attribute " + i, "value " + i);
+        }
+        long createdAt = System.currentTimeMillis() - 1000;
+        database.beginTransaction();
+        try {
+            for (int i = 0; i < messages; i++) {
+                MPEvent event = new MPEvent.Builder("event " + i, MParticle.EventType.Other)
+                        .customAttributes(attributes)
+                        .build();
+                BaseMPMessage message = event.getMessage().build(session, null, MPID);
+                message.put(Constants.MessageKey.TIMESTAMP, createdAt + i);
+                MessageService.insertMessage(database, API_KEY, message, MPID, null, null);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeDatabase() throws Exception {
+        database.close();
+    }
+
+    @Benchmark
+    public void createMessagesForUploadMessage() throws Exception {
+        //the session isn't the current one, so its stored device info is used
+        dbManager.createMessagesForUploadMessage(configManager, deviceAttributes, "current session", true);
+    }
+}
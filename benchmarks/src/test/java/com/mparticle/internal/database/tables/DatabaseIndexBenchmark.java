@@ -0,0 +1,161 @@
+package com.mparticle.internal.database.tables;
+
+import com.mparticle.internal.Constants;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The messages, uploads and breadcrumbs access paths against a JVM SQLite database with a large
+ * backlog, with and without their indexes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DatabaseIndexBenchmark {
+    private static final long CURRENT_MPID = 1234;
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    @Param({"false", "true"})
+    public boolean indexed;
+
+    private Connection connection;
+
+    @Setup
+    public void setup() throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        Statement statement = connection.createStatement();
+        statement.execute(MessageTable.CREATE_MESSAGES_DDL);
+        statement.execute(UploadTable.CREATE_UPLOADS_DDL);
+        statement.execute(BreadcrumbTable.CREATE_BREADCRUMBS_DDL);
+        populate();
+        if (indexed) {
+            statement.execute(MessageTable.CREATE_MESSAGES_STATUS_INDEX_DDL);
+            statement.execute(UploadTable.CREATE_UPLOADS_PRIORITY_INDEX_DDL);
+            statement.execute(BreadcrumbTable.CREATE_BREADCRUMBS_MP_ID_INDEX_DDL);
+        }
+        statement.close();
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    /**
+     * Mirrors MessageService.getSessionHistory().
+     */
+    @Benchmark
+    public int sessionHistory() throws SQLException {
+        return query("SELECT _id, " + MessageTable.MessageTableColumns.MESSAGE + " FROM " + MessageTable.MessageTableColumns.TABLE_NAME +
+                " WHERE (" + MessageTable.MessageTableColumns.STATUS + " = " + Constants.Status.UPLOADED + ")" +
+                " and (" + MessageTable.MessageTableColumns.SESSION_ID + " != 'session0')" +
+                " and (" + MessageTable.MessageTableColumns.MP_ID + " != " + Constants.TEMPORARY_MPID + ")" +
+                " ORDER BY _id asc LIMIT 100");
+    }
+
+    /**
+     * Mirrors UploadService.getReadyUploads().
+     */
+    @Benchmark
+    public int readyUploads() throws SQLException {
+        return query("SELECT _id, " + UploadTable.UploadTableColumns.MESSAGE + " FROM " + UploadTable.UploadTableColumns.TABLE_NAME +
+                " ORDER BY " + UploadTable.READY_UPLOADS_ORDER);
+    }
+
+    /**
+     * Mirrors BreadcrumbService.getBreadcrumbs().
+     */
+    @Benchmark
+    public int breadcrumbs() throws SQLException {
+        return query("SELECT " + BreadcrumbTable.BreadcrumbTableColumns.CREATED_AT + ", " + BreadcrumbTable.BreadcrumbTableColumns.MESSAGE +
+                " FROM " + BreadcrumbTable.BreadcrumbTableColumns.TABLE_NAME +
+                " WHERE " + BreadcrumbTable.BreadcrumbTableColumns.MP_ID + " = " + CURRENT_MPID +
+                " ORDER BY " + BreadcrumbTable.BreadcrumbTableColumns.CREATED_AT + " desc limit 50");
+    }
+
+    private int query(String query) throws SQLException {
+        int count = 0;
+        Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery(query);
+        while (resultSet.next()) {
+            resultSet.getString(2);
+            count++;
+        }
+        statement.close();
+        return count;
+    }
+
+    /**
+     * A device that has been offline: most messages are waiting to be batched, a small number
+     * have already been uploaded and are kept for session history, and breadcrumbs are spread
+     * across a handful of MPIDs.
+     */
+    private void populate() throws SQLException {
+        connection.setAutoCommit(false);
+        PreparedStatement messages = connection.prepareStatement("INSERT INTO " + MessageTable.MessageTableColumns.TABLE_NAME + " (" +
+                MessageTable.MessageTableColumns.SESSION_ID + ", " +
+                MessageTable.MessageTableColumns.API_KEY + ", " +
+                MessageTable.MessageTableColumns.MESSAGE + ", " +
+                MessageTable.MessageTableColumns.STATUS + ", " +
+                MessageTable.MessageTableColumns.CREATED_AT + ", " +
+                MessageTable.MessageTableColumns.MP_ID + ") VALUES (?, 'key', ?, ?, ?, ?)");
+        PreparedStatement uploads = connection.prepareStatement("INSERT INTO " + UploadTable.UploadTableColumns.TABLE_NAME + " (" +
+                UploadTable.UploadTableColumns.API_KEY + ", " +
+                UploadTable.UploadTableColumns.MESSAGE + ", " +
+                UploadTable.UploadTableColumns.CREATED_AT + ") VALUES ('key', ?, ?)");
+        PreparedStatement breadcrumbs = connection.prepareStatement("INSERT INTO " + BreadcrumbTable.BreadcrumbTableColumns.TABLE_NAME + " (" +
+                BreadcrumbTable.BreadcrumbTableColumns.SESSION_ID + ", " +
+                BreadcrumbTable.BreadcrumbTableColumns.API_KEY + ", " +
+                BreadcrumbTable.BreadcrumbTableColumns.MESSAGE + ", " +
+                BreadcrumbTable.BreadcrumbTableColumns.CREATED_AT + ", " +
+                BreadcrumbTable.BreadcrumbTableColumns.MP_ID + ") VALUES (?, 'key', ?, ?, ?)");
+        for (int i = 0; i < rows; i++) {
+            String sessionId = "session" + (i / 500);
+            long mpid = CURRENT_MPID + i % 10;
+            messages.setString(1, sessionId);
+            messages.setString(2, "{\"dt\":\"e\",\"n\":\"event " + i + "\"}");
+            messages.setInt(3, i % 100 == 0 ? Constants.Status.UPLOADED : Constants.Status.READY);
+            messages.setLong(4, i);
+            messages.setLong(5, mpid);
+            messages.addBatch();
+            uploads.setString(1, "{\"msgs\":[]}");
+            uploads.setLong(2, rows - i);
+            uploads.addBatch();
+            breadcrumbs.setString(1, sessionId);
+            breadcrumbs.setString(2, "{\"dt\":\"bc\"}");
+            breadcrumbs.setLong(3, i);
+            breadcrumbs.setLong(4, mpid);
+            breadcrumbs.addBatch();
+        }
+        messages.executeBatch();
+        uploads.executeBatch();
+        breadcrumbs.executeBatch();
+        connection.commit();
+        connection.setAutoCommit(true);
+    }
+}
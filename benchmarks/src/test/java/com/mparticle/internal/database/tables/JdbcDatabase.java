@@ -0,0 +1,225 @@
+package com.mparticle.internal.database.tables;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteQueryBuilder;
+
+import com.mparticle.internal.database.MPDatabase;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An MPDatabase backed by an in-memory SQLite database, through the JDBC driver, so that the
+ * database services can be run on the JVM. Query results are copied into a MatrixCursor.
+ */
+public class JdbcDatabase implements MPDatabase {
+    private final Connection connection;
+    private final LinkedList<Boolean> transactions = new LinkedList<>();
+    private boolean transactionFailed;
+
+    private JdbcDatabase(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Create an empty database, with the same tables and indexes as MParticleDatabaseHelper.
+     */
+    public static JdbcDatabase createInMemory() throws SQLException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException(e);
+        }
+        Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute(SessionTable.CREATE_SESSIONS_DDL);
+            statement.execute(MessageTable.CREATE_MESSAGES_DDL);
+            statement.execute(UploadTable.CREATE_UPLOADS_DDL);
+            statement.execute(BreadcrumbTable.CREATE_BREADCRUMBS_DDL);
+            statement.execute(ReportingTable.CREATE_REPORTING_DDL);
+            statement.execute(UserAttributesTable.CREATE_USER_ATTRIBUTES_DDL);
+            statement.execute(MessageTable.CREATE_MESSAGES_STATUS_INDEX_DDL);
+            statement.execute(UploadTable.CREATE_UPLOADS_PRIORITY_INDEX_DDL);
+            statement.execute(BreadcrumbTable.CREATE_BREADCRUMBS_MP_ID_INDEX_DDL);
+        } finally {
+            statement.close();
+        }
+        return new JdbcDatabase(connection);
+    }
+
+    public void close() throws SQLException {
+        connection.close();
+    }
+
+    @Override
+    public long insert(String table, String nullColumnHack, ContentValues contentValues) {
+        StringBuilder columns = new StringBuilder();
+        StringBuilder placeholders = new StringBuilder();
+        List<Object> values = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : contentValues.valueSet()) {
+            if (values.size() > 0) {
+                columns.append(',');
+                placeholders.append(',');
+            }
+            columns.append(entry.getKey());
+            placeholders.append('?');
+            values.add(entry.getValue());
+        }
+        String sql = "INSERT INTO " + table + " (" + columns + ") VALUES (" + placeholders + ")";
+        try {
+            execute(sql, values.toArray());
+            Statement statement = connection.createStatement();
+            try {
+                ResultSet rowId = statement.executeQuery("SELECT last_insert_rowid()");
+                return rowId.next() ? rowId.getLong(1) : -1;
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public Cursor query(String table, String[] columns, String selection, String[] selectionArgs, String groupBy, String having, String orderBy, String limit) {
+        String sql = SQLiteQueryBuilder.buildQueryString(false, table, columns, selection, groupBy, having, orderBy, limit);
+        try {
+            PreparedStatement statement = prepare(sql, selectionArgs);
+            try {
+                ResultSet resultSet = statement.executeQuery();
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                String[] columnNames = new String[metaData.getColumnCount()];
+                for (int i = 0; i < columnNames.length; i++) {
+                    columnNames[i] = metaData.getColumnLabel(i + 1);
+                }
+                MatrixCursor cursor = new MatrixCursor(columnNames);
+                while (resultSet.next()) {
+                    Object[] row = new Object[columnNames.length];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = resultSet.getObject(i + 1);
+                    }
+                    cursor.addRow(row);
+                }
+                return cursor;
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public Cursor query(String table, String[] columns, String selection, String[] selectionArgs, String groupBy, String having, String orderBy) {
+        return query(table, columns, selection, selectionArgs, groupBy, having, orderBy, null);
+    }
+
+    @Override
+    public int delete(String table, String whereClause, String[] whereArgs) {
+        String sql = "DELETE FROM " + table + (whereClause != null ? " WHERE " + whereClause : "");
+        try {
+            return execute(sql, whereArgs);
+        } catch (SQLException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public int update(String tableName, ContentValues contentValues, String whereClause, String[] whereArgs) {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(tableName).append(" SET ");
+        List<Object> values = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : contentValues.valueSet()) {
+            if (values.size() > 0) {
+                sql.append(',');
+            }
+            sql.append(entry.getKey()).append("=?");
+            values.add(entry.getValue());
+        }
+        if (whereClause != null) {
+            sql.append(" WHERE ").append(whereClause);
+        }
+        if (whereArgs != null) {
+            for (String whereArg : whereArgs) {
+                values.add(whereArg);
+            }
+        }
+        try {
+            return execute(sql.toString(), values.toArray());
+        } catch (SQLException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Transactions may be nested, as they can be with SQLiteDatabase. Changes are committed when
+     * the outermost transaction ends, if every nested transaction was marked as successful.
+     */
+    @Override
+    public void beginTransaction() {
+        try {
+            if (transactions.isEmpty()) {
+                connection.setAutoCommit(false);
+                transactionFailed = false;
+            }
+            transactions.push(false);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+        transactions.pop();
+        transactions.push(true);
+    }
+
+    @Override
+    public void endTransaction() {
+        if (!transactions.pop()) {
+            transactionFailed = true;
+        }
+        if (transactions.isEmpty()) {
+            try {
+                if (transactionFailed) {
+                    connection.rollback();
+                } else {
+                    connection.commit();
+                }
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private int execute(String sql, Object[] args) throws SQLException {
+        PreparedStatement statement = prepare(sql, args);
+        try {
+            return statement.executeUpdate();
+        } finally {
+            statement.close();
+        }
+    }
+
+    private PreparedStatement prepare(String sql, Object[] args) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+        if (args != null) {
+            for (int i = 0; i < args.length; i++) {
+                statement.setObject(i + 1, args[i]);
+            }
+        }
+        return statement;
+    }
+}
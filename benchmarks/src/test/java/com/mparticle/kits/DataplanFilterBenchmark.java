@@ -0,0 +1,104 @@
+package com.mparticle.kits;
+
+import com.mparticle.BaseEvent;
+import com.mparticle.MPEvent;
+import com.mparticle.MParticle;
+import com.mparticle.commerce.CommerceEvent;
+import com.mparticle.commerce.Product;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Data plan filtering, which is applied to every event before it is forwarded to the kits, for
+ * data plans with 10, 100 and 1000 custom events.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataplanFilterBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int dataPoints;
+
+    private DataplanFilterImpl dataplanFilter;
+    private MPEvent plannedEvent;
+    private MPEvent unplannedEvent;
+    private MPEvent blockedAttributesEvent;
+    private Map<String, String> blockedAttributes;
+    private CommerceEvent commerceEvent;
+
+    @Setup
+    public void setup() {
+        HashSet<String> plannedAttributes = new HashSet<>();
+        Map<String, String> attributes = new HashMap<>();
+        for (int i = 0; i < 5; i++) {
+            plannedAttributes.add("attribute " + i);
+            attributes.put("attribute " + i, "value " + i);
+        }
+        Map<String, HashSet<String>> points = new HashMap<>();
+        for (int i = 0; i < dataPoints; i++) {
+            points.put(DataplanFilterImpl.CUSTOM_EVENT_KEY + ".event " + i + ".other", plannedAttributes);
+        }
+        points.put(DataplanFilterImpl.PRODUCT_ACTION_KEY + "." + Product.PURCHASE, plannedAttributes);
+        points.put(DataplanFilterImpl.PRODUCT_ACTION_KEY + "." + Product.PURCHASE + "." + DataplanFilterImpl.PRODUCT_ACTION_PRODUCTS, plannedAttributes);
+        dataplanFilter = new DataplanFilterImpl(points, true, true, false, false);
+
+        String eventName = "event " + (dataPoints / 2);
+        plannedEvent = new MPEvent.Builder(eventName, MParticle.EventType.Other)
+                .customAttributes(attributes)
+                .build();
+        unplannedEvent = new MPEvent.Builder("unplanned event", MParticle.EventType.Other)
+                .customAttributes(attributes)
+                .build();
+        blockedAttributes = new HashMap<>(attributes);
+        for (int i = 0; i < 5; i++) {
+            blockedAttributes.put("unplanned attribute " + i, "value " + i);
+        }
+        blockedAttributesEvent = new MPEvent.Builder(eventName, MParticle.EventType.Other).build();
+        commerceEvent = new CommerceEvent.Builder(Product.PURCHASE, new Product.Builder("product", "sku", 9.99).customAttributes(attributes).build())
+                .customAttributes(attributes)
+                .build();
+    }
+
+    @Benchmark
+    public BaseEvent plannedEvent() {
+        return dataplanFilter.transformEventForEvent(plannedEvent);
+    }
+
+    @Benchmark
+    public BaseEvent unplannedEvent() {
+        return dataplanFilter.transformEventForEvent(unplannedEvent);
+    }
+
+    /**
+     * The filtered attributes replace the event's attributes, so they are reset for each invocation.
+     */
+    @Benchmark
+    public BaseEvent blockedAttributes() {
+        blockedAttributesEvent.setCustomAttributes(blockedAttributes);
+        return dataplanFilter.transformEventForEvent(blockedAttributesEvent);
+    }
+
+    @Benchmark
+    public BaseEvent commerceEvent() {
+        return dataplanFilter.transformEventForEvent(commerceEvent);
+    }
+}
@@ -0,0 +1,96 @@
+package com.mparticle.kits;
+
+import com.mparticle.MPEvent;
+import com.mparticle.MParticle;
+import com.mparticle.commerce.CommerceEvent;
+import com.mparticle.commerce.Product;
+import com.mparticle.commerce.TransactionAttributes;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The filtering done for every kit, for every event. The configurations are parsed with
+ * KitConfiguration rather than MockKitConfiguration, android-all provides a working
+ * SparseBooleanArray.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KitConfigurationBenchmark {
+    private KitConfiguration unfiltered;
+    private KitConfiguration filtered;
+    private MPEvent event;
+    private CommerceEvent commerceEvent;
+
+    @Setup
+    public void setup() throws Exception {
+        Map<String, String> attributes = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            attributes.put("attribute " + i, "value " + i);
+        }
+        event = new MPEvent.Builder("benchmark event", MParticle.EventType.Navigation)
+                .customAttributes(attributes)
+                .build();
+        commerceEvent = new CommerceEvent.Builder(Product.PURCHASE, new Product.Builder("product", "sku", 9.99).brand("brand").build())
+                .addProduct(new Product.Builder("other product", "other sku", 19.99).build())
+                .transactionAttributes(new TransactionAttributes("transaction id").setAffiliation("affiliation"))
+                .customAttributes(attributes)
+                .build();
+
+        unfiltered = KitConfiguration.createKitConfiguration(new JSONObject().put("id", 1).put("hs", new JSONObject()));
+
+        String eventType = Integer.toString(CommerceEventUtils.getEventType(commerceEvent));
+        JSONObject attributeFilters = new JSONObject();
+        JSONObject commerceAttributeFilters = new JSONObject();
+        for (int i = 0; i < 10; i += 2) {
+            attributeFilters.put(Integer.toString(KitUtils.hashForFiltering(MParticle.EventType.Navigation.ordinal() + "benchmark event" + "attribute " + i)), 0);
+            commerceAttributeFilters.put(Integer.toString(KitUtils.hashForFiltering(eventType + "attribute " + i)), 0);
+        }
+        commerceAttributeFilters.put(Integer.toString(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_AFFILIATION)), 0);
+        JSONObject productAttributeFilters = new JSONObject()
+                .put(Integer.toString(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PRODUCT_BRAND)), 0);
+        filtered = KitConfiguration.createKitConfiguration(new JSONObject()
+                .put("id", 2)
+                .put("hs", new JSONObject()
+                        .put("ea", attributeFilters)
+                        .put("cea", commerceAttributeFilters)
+                        .put("afa", new JSONObject().put("1", productAttributeFilters))));
+    }
+
+    @Benchmark
+    public boolean shouldLogEvent() {
+        return filtered.shouldLogEvent(new HashedEvent(event.getEventType(), event.getEventName(), event.getCustomAttributes()));
+    }
+
+    @Benchmark
+    public Map<String, String> filterEventAttributes() {
+        return filtered.filterEventAttributes(event);
+    }
+
+    @Benchmark
+    public CommerceEvent filterCommerceEventUnfiltered() {
+        return unfiltered.filterCommerceEvent(commerceEvent);
+    }
+
+    @Benchmark
+    public CommerceEvent filterCommerceEventFiltered() {
+        return filtered.filterCommerceEvent(commerceEvent);
+    }
+}
@@ -0,0 +1,95 @@
+package com.mparticle.kits.mappings;
+
+import com.mparticle.MPEvent;
+import com.mparticle.MParticle;
+import com.mparticle.kits.KitConfiguration;
+import com.mparticle.kits.KitUtils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Projecting an event against every one of a kit's mappings, compared with projecting it against
+ * the candidates found in the kit's CustomMappingIndex.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomMappingBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int projections;
+
+    private KitConfiguration configuration;
+    private MPEvent event;
+
+    @Setup
+    public void setup() throws Exception {
+        configuration = createConfiguration(projections, 10);
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("key", "value");
+        //matched by the hash of projection (projections / 2 + 1), and by none of the names
+        event = new MPEvent.Builder("event " + (projections / 2 + 1), MParticle.EventType.Other)
+                .customAttributes(attributes)
+                .build();
+    }
+
+    @Benchmark
+    public List<CustomMapping.ProjectionResult> projectList() {
+        return CustomMapping.projectEvents(event, configuration.getCustomMappingList(), null);
+    }
+
+    @Benchmark
+    public List<CustomMapping.ProjectionResult> projectIndex() {
+        return CustomMapping.projectEvents(event, configuration.getCustomMappingIndex(), null);
+    }
+
+    /**
+     * Projection i matches "event i" by hash, except every nth projection, which matches
+     * "event 1" with the attribute "key" = "value" by name.
+     */
+    private static KitConfiguration createConfiguration(int projections, int stringMatchInterval) throws Exception {
+        JSONArray mappings = new JSONArray();
+        for (int i = 0; i < projections; i++) {
+            JSONObject match;
+            if (i % stringMatchInterval == 0) {
+                match = new JSONObject()
+                        .put("message_type", 4)
+                        .put("event_match_type", "String")
+                        .put("event", "event 1")
+                        .put("attribute_key", "key")
+                        .put("attribute_value", "value");
+            } else {
+                match = new JSONObject()
+                        .put("message_type", 4)
+                        .put("event_match_type", "Hash")
+                        .put("event", String.valueOf(KitUtils.hashForFiltering(MParticle.EventType.Other.ordinal() + "event " + i)));
+            }
+            mappings.put(new JSONObject()
+                    .put("id", i)
+                    .put("pmid", i)
+                    .put("matches", new JSONArray().put(match))
+                    .put("action", new JSONObject().put("projected_event_name", "projected " + i).put("attribute_maps", new JSONArray())));
+        }
+        return KitConfiguration.createKitConfiguration(new JSONObject().put("id", 1).put("hs", new JSONObject()).put("pr", mappings));
+    }
+}
@@ -0,0 +1,84 @@
+package com.mparticle.networking;
+
+import com.mparticle.internal.MPUtility;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The work done on every batch upload before it hits the network: gzipping the batch, either into
+ * a new array or into the reusable GzipBuffer, and signing it, as MParticleApiClientImpl does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UploadPayloadBenchmark {
+    private static final String API_SECRET = "benchmark-api-secret";
+
+    @Param({"10", "100"})
+    public int messages;
+
+    private String batch;
+    private String date;
+    private final GzipBuffer gzipBuffer = new GzipBuffer();
+
+    @Setup
+    public void setup() throws Exception {
+        JSONArray messageArray = new JSONArray();
+        for (int i = 0; i < messages; i++) {
+            JSONObject attributes = new JSONObject();
+            for (int j = 0; j < 10; j++) {
+                attributes.put("attribute " + j, "value " + i + " " + j);
+            }
+            messageArray.put(new JSONObject()
+                    .put("dt", "e")
+                    .put("n", "event " + i)
+                    .put("et", "Other")
+                    .put("ct", 1600000000000L + i)
+                    .put("sid", "c1c4fbb0-5b4b-4d1f-9d5b-4c1a0d0b5a6f")
+                    .put("attrs", attributes));
+        }
+        batch = new JSONObject()
+                .put("dt", "h")
+                .put("id", "9e8d8e5e-6a1f-4e43-9f3b-3a1c2b7d6e5f")
+                .put("msgs", messageArray)
+                .toString();
+        date = "Tue, 01 Sep 2020 00:00:00 GMT";
+    }
+
+    @Benchmark
+    public byte[] gzip() throws Exception {
+        return MPUtility.gzip(batch);
+    }
+
+    @Benchmark
+    public int gzipBuffer() {
+        gzipBuffer.compress(batch);
+        return gzipBuffer.size();
+    }
+
+    /**
+     * The same string MParticleBaseClientImpl.getHeaderHashString() signs.
+     */
+    @Benchmark
+    public String sign() throws Exception {
+        String hashString = "POST" + "\n" + date + "\n" + "/v2/api-key/events" + batch;
+        return MPUtility.hmacSha256Encode(API_SECRET, hashString);
+    }
+}
@@ -0,0 +1,22 @@
+package dalvik.system;
+
+import java.lang.reflect.Array;
+
+/**
+ * Takes the place of android-all's VMRuntime, whose array allocation is native. It's used by the
+ * framework's sparse arrays, which KitConfiguration parses its filters into.
+ */
+public final class VMRuntime {
+    private static final VMRuntime THE_ONE = new VMRuntime();
+
+    private VMRuntime() {
+    }
+
+    public static VMRuntime getRuntime() {
+        return THE_ONE;
+    }
+
+    public Object newUnpaddedArray(Class<?> componentType, int minLength) {
+        return Array.newInstance(componentType, minLength);
+    }
+}
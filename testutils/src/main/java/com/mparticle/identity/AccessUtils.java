@@ -4,6 +4,7 @@ import android.content.Context;
 import androidx.test.platform.app.InstrumentationRegistry;
 
 import com.mparticle.MParticle;
+import com.mparticle.internal.BaseHandler;
 import com.mparticle.internal.ConfigManager;
 import com.mparticle.internal.KitManager;
 import com.mparticle.networking.BaseNetworkConnection;
@@ -112,6 +113,10 @@ public class AccessUtils {
         MParticle.getInstance().Identity().mKitManager = kitManager;
     }
 
+    public static BaseHandler getIdentityHandler() {
+        return MParticle.getInstance().Identity().getBackgroundHandler();
+    }
+
     public static Set<IdentityStateListener> getIdentityStateListeners() {
         return MParticle.getInstance().Identity().identityStateListeners;
     }
@@ -26,6 +26,7 @@ public class AccessUtils {
 
     public static final int UPLOAD_MESSAGES = UploadHandler.UPLOAD_MESSAGES;
     public static final int UPLOAD_TRIGGER_MESSAGES = UploadHandler.UPLOAD_TRIGGER_MESSAGES;
+    public static final int UPLOAD_CRITICAL_MESSAGES = UploadHandler.UPLOAD_CRITICAL_MESSAGES;
 
     public static void clearMpId(Context context) {
         ConfigManager.clearMpid(context);
@@ -93,6 +94,19 @@ public class AccessUtils {
         return;
     }
 
+    /**
+     * This method will block the current thread until the identity requests already made have been
+     * sent, and their responses handled. Identity requests run on their own thread, not on the
+     * UploadHandler, so {@link #awaitUploadHandler()} does not wait for them.
+     * @throws InterruptedException
+     */
+    public static void awaitIdentityHandler() throws InterruptedException {
+        BaseHandler identityHandler = com.mparticle.identity.AccessUtils.getIdentityHandler();
+        CountDownLatch latch = new MPLatch(1);
+        identityHandler.await(latch);
+        latch.await();
+    }
+
     public static class EmptyMParticleApiClient implements MParticleApiClient {
         @Override
         public void fetchConfig() throws IOException, MParticleApiClientImpl.MPConfigException {
@@ -108,6 +122,11 @@ public class AccessUtils {
             return 0;
         }
 
+        @Override
+        public int sendMessageBatch(String message, byte[] gzippedMessage) throws IOException, MParticleApiClientImpl.MPThrottleException, MParticleApiClientImpl.MPRampException {
+            return sendMessageBatch(message);
+        }
+
         @Override
         public JSONObject fetchAudiences() {
             return null;
@@ -7,6 +7,8 @@ import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
 
+import java.io.File;
+
 /**
  * Created by sdozor on 4/10/15.
  */
@@ -62,4 +64,14 @@ public class MockApplication extends Application {
     public Resources getResources() {
         return mContext.getResources();
     }
+
+    @Override
+    public File getFilesDir() {
+        return mContext.getFilesDir();
+    }
+
+    @Override
+    public File getNoBackupFilesDir() {
+        return mContext.getNoBackupFilesDir();
+    }
 }
@@ -81,6 +81,11 @@ public class MockCoreCallbacks implements CoreCallbacks {
     @Override
     public void replayAndDisableQueue() { }
 
+    @Override
+    public int getKitDispatchQueueSize() {
+        return 0;
+    }
+
     @Override
     public KitListener getKitListener() {
         return KitListener.EMPTY;